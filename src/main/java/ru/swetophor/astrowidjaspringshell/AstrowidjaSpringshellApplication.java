@@ -2,12 +2,18 @@ package ru.swetophor.astrowidjaspringshell;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import ru.swetophor.astrowidjaspringshell.config.NativeHints;
+import ru.swetophor.astrowidjaspringshell.config.StartupPhases;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeHints.class)
 public class AstrowidjaSpringshellApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(AstrowidjaSpringshellApplication.class, args);
+        SpringApplication application = new SpringApplication(AstrowidjaSpringshellApplication.class);
+        application.setApplicationStartup(StartupPhases.recordFromMain());
+        application.run(args);
     }
 
 }
@@ -0,0 +1,182 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.exception.ChartNotFoundException;
+import ru.swetophor.astrowidjaspringshell.mainframe.Main;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.HarmonicProjection;
+import ru.swetophor.astrowidjaspringshell.model.MidpointTree;
+import ru.swetophor.astrowidjaspringshell.model.OrbSweep;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService;
+import ru.swetophor.astrowidjaspringshell.service.ExportService;
+import ru.swetophor.astrowidjaspringshell.service.JobService;
+import ru.swetophor.astrowidjaspringshell.service.ProfileService;
+import ru.swetophor.astrowidjaspringshell.service.SignificanceService;
+import ru.swetophor.astrowidjaspringshell.service.SimilarityService;
+import ru.swetophor.astrowidjaspringshell.service.SynastryService;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class AnalysisCommands {
+    @Lazy
+    private final BatchAnalysisService batchAnalysisService;
+    @Lazy
+    private final ExportService exportService;
+    @Lazy
+    private final ProfileService profileService;
+    @Lazy
+    private final SignificanceService significanceService;
+    @Lazy
+    private final SynastryService synastryService;
+    @Lazy
+    private final SimilarityService similarityService;
+    private final JobService jobService;
+    private final Main application;
+
+    @ShellMethod(key = "batch-analyze", value = "пакетно найти паттерны по всем картам (или парам карт) альбомов")
+    public String batchAnalyze(@ShellOption(help = "альбомы через запятую: номера или названия") String albums,
+                               @ShellOption(help = "файл для результатов") String output,
+                               @ShellOption(help = "анализировать пары карт (синастрии)", defaultValue = "false") boolean synastry,
+                               @ShellOption(help = "продолжить прерванный анализ", defaultValue = "false") boolean resume,
+                               @ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "batch-analyze " + albums,
+                () -> batchAnalysisService.analyzeAlbums(albums, Path.of(output), synastry, resume));
+    }
+
+    @ShellMethod(key = "export", value = "выгрузить резонансы и паттерны альбомов в колоночный файл")
+    public String export(@ShellOption(help = "альбомы через запятую: номера или названия") String albums,
+                         @ShellOption(help = "файл выгрузки") String output,
+                         @ShellOption(help = "выгружать пары карт (синастрии)", defaultValue = "false") boolean synastry,
+                         @ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "export " + albums,
+                () -> exportService.exportAlbums(albums, Path.of(output), synastry));
+    }
+
+    @ShellMethod(key = "profile", value = "гармонический профиль альбомов, с необязательным сравнением с базой")
+    public String profile(@ShellOption(help = "альбомы через запятую: номера или названия") String albums,
+                          @ShellOption(help = "базовые альбомы для сравнения", defaultValue = "") String baseline,
+                          @ShellOption(help = "профилировать пары карт (синастрии)", defaultValue = "false") boolean synastry,
+                          @ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "profile " + albums,
+                () -> profileService.profileAlbums(albums, baseline, synastry));
+    }
+
+    @ShellMethod(key = "synastry-grid", value = "оценить синастрическую совместимость всех пар карт альбомов")
+    public String synastryGrid(@ShellOption(help = "альбомы через запятую: номера или названия") String albums,
+                               @ShellOption(help = "файл для всех пар по убыванию оценки", defaultValue = "") String output,
+                               @ShellOption(help = "сколько лучших пар показать", defaultValue = "20") int limit,
+                               @ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "synastry-grid " + albums,
+                () -> synastryService.gridForAlbums(albums, output, limit));
+    }
+
+    @ShellMethod(key = "significance", value = "оценить значимость паттернов карты со стола по случайным картам")
+    public String significance(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                               @ShellOption(help = "число случайных карт", defaultValue = "100000") int runs,
+                               @ShellOption(help = "зерно генератора", defaultValue = "0") long seed,
+                               @ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        return found instanceof Chart single ?
+                jobService.run(background, "significance " + single.getName(),
+                        () -> significanceService.assess(single, runs, seed).toString()) :
+                "Значимость оценивается для одинарной карты.";
+    }
+
+    @ShellMethod(key = "similar", value = "найти в библиотеке карты, резонирующие похоже на карту со стола")
+    public String similar(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                          @ShellOption(help = "сколько карт выдать", defaultValue = "10") int k) {
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        return found instanceof Chart single ?
+                similarityService.findSimilar(single, k) :
+                "Похожие ищутся для одинарной карты.";
+    }
+
+    @ShellMethod(key = "similar-index", value = "перестроить индекс гармонических подписей библиотеки")
+    public String similarIndex(@ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "similar-index", similarityService::rebuild);
+    }
+
+    @ShellMethod(key = "harmonic-chart", value = "построить карту гармоники для карты со стола и положить на стол")
+    public String harmonicChart(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                                @ShellOption(help = "номер гармоники") int harmonic) {
+        if (harmonic < 1)
+            return "Номер гармоники должен быть натуральным.";
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        if (!(found instanceof Chart single))
+            return "Карта гармоники строится для одинарной карты.";
+        Chart projected = HarmonicProjection.harmonicChart(single, harmonic);
+        application.DESK.addResolving(projected, "на столе");
+        return projected.getAstrasList();
+    }
+
+    @ShellMethod(key = "midpoints", value = "найти резонансы астр (или мидпойнтов) с мидпойнтами карты со стола")
+    public String midpoints(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                            @ShellOption(help = "номер гармоники", defaultValue = "4") int harmonic,
+                            @ShellOption(help = "орбис в карте гармоники; 0 — первичный орбис из настроек", defaultValue = "0") double orb,
+                            @ShellOption(help = "искать резонансы мидпойнтов между собой", defaultValue = "false") boolean between,
+                            @ShellOption(help = "сколько резонансов показать", defaultValue = "50") int limit) {
+        if (harmonic < 1)
+            return "Номер гармоники должен быть натуральным.";
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        if (!(found instanceof Chart single))
+            return "Мидпойнты строятся для одинарной карты.";
+        MidpointTree tree = new MidpointTree(single);
+        double effectiveOrb = orb > 0 ? orb : Settings.getPrimalOrb();
+        List<MidpointTree.Resonance> resonances = between ?
+                tree.midpointResonances(harmonic, effectiveOrb) :
+                tree.astraResonances(harmonic, effectiveOrb);
+        return resonances.stream()
+                .limit(limit)
+                .map(MidpointTree.Resonance::toString)
+                .collect(Collectors.joining("\n", "",
+                        "%nмидпойнтов: %d, резонансов в %d-й гармонике: %d"
+                                .formatted(tree.size(), harmonic, resonances.size())));
+    }
+
+    @ShellMethod(key = "orb-sweep", value = "показать, как меняются паттерны карты со стола с делителем орбиса")
+    public String orbSweep(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                           @ShellOption(help = "наименьший делитель (наибольший орбис)", defaultValue = "10") int from,
+                           @ShellOption(help = "наибольший делитель (наименьший орбис)", defaultValue = "60") int to) {
+        if (from < 1 || to < from)
+            return "Делители должны быть натуральными, от меньшего к большему.";
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        return found instanceof Chart single ?
+                OrbSweep.of(single, from, to, Settings.getEdgeHarmonic()).getTable() :
+                "Орбисы проходятся для одинарной карты.";
+    }
+}
@@ -0,0 +1,131 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException;
+import ru.swetophor.astrowidjaspringshell.exception.ChartNotFoundException;
+import ru.swetophor.astrowidjaspringshell.mainframe.Main;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartList;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.model.MultiChart;
+import ru.swetophor.astrowidjaspringshell.service.HarmonicService;
+import ru.swetophor.astrowidjaspringshell.service.LibraryService;
+import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class DeskCommands {
+    @Lazy
+    private final HarmonicService harmonicService;
+    private final LibraryService libraryService;
+    private final Main application;
+
+    @ShellMethod(key = "desk", value = "показать карты на столе")
+    public String desk() {
+        ChartList desk = application.DESK;
+        return desk.isEmpty() ? "На столе нет ни одной карты." : desk.toString();
+    }
+
+    @ShellMethod(key = "desk-clear", value = "убрать все карты со стола")
+    public String deskClear() {
+        int count = application.DESK.size();
+        application.DESK.clear();
+        return "Со стола убрано карт: %d".formatted(count);
+    }
+
+    @ShellMethod(key = "desk-remove", value = "убрать карту со стола")
+    public String deskRemove(@ShellOption(help = "карта на столе: номер или имя") String chart) {
+        return withChart(chart, found -> {
+            application.DESK.remove(found.getName());
+            return "Карта убрана со стола: " + found.getName();
+        });
+    }
+
+    @ShellMethod(key = "astras", value = "положения астр карты со стола")
+    public String astras(@ShellOption(help = "карта на столе: номер или имя") String chart) {
+        return withChart(chart, ChartObject::getAstrasList);
+    }
+
+    @ShellMethod(key = "aspects", value = "резонансы карты со стола")
+    public String aspects(@ShellOption(help = "карта на столе: номер или имя") String chart) {
+        return withChart(chart, found -> harmonicService.calculateAspectTable(found).getAspectReport());
+    }
+
+    @ShellMethod(key = "patterns", value = "паттерны карты со стола")
+    public String patterns(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                           @ShellOption(help = "со статистикой", defaultValue = "false") boolean detailed) {
+        return withChart(chart, found -> harmonicService.calculatePatternTable(found).getPatternReport(detailed));
+    }
+
+    @ShellMethod(key = "synastry", value = "положить на стол синастрию двух карт со стола")
+    public String synastry(@ShellOption(help = "первая карта на столе") String first,
+                           @ShellOption(help = "вторая карта на столе") String second) {
+        return withChart(first, a -> withChart(second, b ->
+                toDesk(new MultiChart(a, b), CollisionPolicy.DEFAULT)));
+    }
+
+    @ShellMethod(key = "composite", value = "положить на стол композит группы карт со стола")
+    public String composite(@ShellOption(help = "карты на столе через пробел: номера или имена") String charts,
+                            @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        List<ChartObject> group = new ArrayList<>();
+        for (String order : charts.trim().split("\\s+"))
+            try {
+                group.add(application.DESK.findChart(order, "на столе"));
+            } catch (ChartNotFoundException e) {
+                return "Карта '%s' не найдена: %s".formatted(order, e.getLocalizedMessage());
+            }
+        return toDesk(Mechanics.composite(group.toArray(ChartObject[]::new)), onCollision);
+    }
+
+    @ShellMethod(key = "chart-add", value = "положить на стол карту, заданную позициями астр")
+    public String chartAdd(@ShellOption(help = "название карты") String name,
+                           @ShellOption(help = "астры через ';': 'название градусы минуты секунды', напр. 'Солнце 12 30; Луна 200'") String astras,
+                           @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        try {
+            return toDesk(Chart.readFromString(name + "\n" + astras.replace(';', '\n')), onCollision);
+        } catch (IllegalArgumentException e) {
+            return "Карта не прочитана: " + e.getLocalizedMessage();
+        }
+    }
+
+    @ShellMethod(key = "chart-save", value = "дописать карту со стола в альбом")
+    public String chartSave(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                            @ShellOption(help = "название альбома") String album,
+                            @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        return withChart(chart, found -> libraryService.addChartsToAlbum(album, onCollision, found));
+    }
+
+    /**
+     * Находит карту на столе и выполняет с ней действие.
+     *
+     * @return итог действия или сообщение, что карта не найдена.
+     */
+    private String withChart(String order, Function<ChartObject, String> action) {
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(order, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(order, e.getLocalizedMessage());
+        }
+        return action.apply(found);
+    }
+
+    private String toDesk(ChartObject chart, CollisionPolicy policy) {
+        try {
+            return application.DESK.addResolving(chart, "на столе", policy) ?
+                    "Карта загружена на стол: " + chart :
+                    "Карта не загружена.";
+        } catch (ChartCollisionException e) {
+            return "Карта не загружена: " + e.getLocalizedMessage();
+        }
+    }
+}
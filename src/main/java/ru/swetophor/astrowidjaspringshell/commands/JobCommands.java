@@ -0,0 +1,33 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.service.JobService;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class JobCommands {
+    private final JobService jobService;
+
+    @ShellMethod(key = "jobs", value = "показать фоновые задания")
+    public String jobs() {
+        return jobService.list();
+    }
+
+    @ShellMethod(key = "job-result", value = "выдать итог завершённого фонового задания")
+    public String jobResult(@ShellOption(help = "номер задания") int id) {
+        return jobService.result(id);
+    }
+
+    @ShellMethod(key = "job-cancel", value = "отменить фоновое задание")
+    public String jobCancel(@ShellOption(help = "номер задания") int id) {
+        return jobService.cancel(id);
+    }
+
+    @ShellMethod(key = "jobs-wait", value = "дождаться всех фоновых заданий и выдать их итоги")
+    public String jobsWait() {
+        return jobService.awaitAll();
+    }
+}
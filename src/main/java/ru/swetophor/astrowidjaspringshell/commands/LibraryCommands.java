@@ -0,0 +1,116 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.config.AstraCatalogueLoader;
+import ru.swetophor.astrowidjaspringshell.mainframe.Main;
+import ru.swetophor.astrowidjaspringshell.model.AstraCatalogue;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.repository.ResonanceStore;
+import ru.swetophor.astrowidjaspringshell.service.ImportService;
+import ru.swetophor.astrowidjaspringshell.service.JobService;
+import ru.swetophor.astrowidjaspringshell.service.LibraryService;
+import ru.swetophor.astrowidjaspringshell.service.ResonanceIndexService;
+
+import java.nio.file.Path;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class LibraryCommands {
+    @Lazy
+    private final ImportService importService;
+    private final LibraryService libraryService;
+    private final AstraCatalogueLoader catalogueLoader;
+    @Lazy
+    private final ResonanceIndexService resonanceIndexService;
+    @Lazy
+    private final ResonanceStore resonanceStore;
+    private final JobService jobService;
+    private final Main application;
+
+    @ShellMethod(key = "library", value = "список альбомов библиотеки")
+    public String library(@ShellOption(help = "с картами каждого альбома", defaultValue = "false") boolean full) {
+        return full ? libraryService.libraryListing() : libraryService.listLibrary();
+    }
+
+    @ShellMethod(key = "album-load", value = "положить на стол карты альбома")
+    public String albumLoad(@ShellOption(help = "альбом: номер или название") String album,
+                            @ShellOption(help = "добавить к картам на столе, а не заменить их", defaultValue = "false") boolean append,
+                            @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        String name;
+        try {
+            name = libraryService.findAlbumName(album);
+        } catch (IllegalArgumentException e) {
+            return e.getLocalizedMessage();
+        }
+        if (!append)
+            application.DESK.clear();
+        return libraryService.loadAlbum(name, application.DESK, onCollision);
+    }
+
+    @ShellMethod(key = "album-save", value = "записать стол в альбом")
+    public String albumSave(@ShellOption(help = "название альбома") String album,
+                            @ShellOption(help = "дописать к существующему альбому, а не создать новый", defaultValue = "false") boolean append,
+                            @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        if (append)
+            return libraryService.addChartListToAlbum(application.DESK, album, onCollision);
+        libraryService.saveChartsAsAlbum(application.DESK, album);
+        return "Стол записан в альбом " + album;
+    }
+
+    @ShellMethod(key = "album-delete", value = "удалить альбом")
+    public String albumDelete(@ShellOption(help = "название альбома") String album) {
+        return libraryService.deleteAlbum(album);
+    }
+
+    @ShellMethod(key = "charts-transfer", value = "перенести или скопировать карты из альбома в альбом")
+    public String chartsTransfer(@ShellOption(help = "исходный альбом: номер или название") String from,
+                                 @ShellOption(help = "карты исходного альбома через пробел: номера или имена") String charts,
+                                 @ShellOption(help = "целевой альбом") String to,
+                                 @ShellOption(help = "копировать, оставив карты в исходном", defaultValue = "false") boolean copy,
+                                 @ShellOption(help = "при совпадении имён: RENAME (с номером), REPLACE, SKIP или FAIL", defaultValue = "RENAME") CollisionPolicy onCollision) {
+        return libraryService.transferCharts(from, charts, to, !copy, onCollision);
+    }
+
+    @ShellMethod(key = "import", value = "пакетно загрузить карты из файла .awb, .csv или .tsv в альбом")
+    public String importCharts(@ShellOption(help = "путь к файлу с картами") String source,
+                               @ShellOption(help = "альбом, в который дописываются карты") String album) {
+        String report = importService.importCharts(Path.of(source), album);
+        libraryService.rereadLibrary();
+        return report;
+    }
+
+    @ShellMethod(key = "catalogue-load", value = "дополнить каталог точек (астероиды, звёзды, мидпойнты) из файла .tsv")
+    public String loadCatalogue(@ShellOption(help = "путь к файлу каталога") String source) {
+        return catalogueLoader.load(Path.of(source));
+    }
+
+    @ShellMethod(key = "catalogue-find", value = "найти точку каталога по имени, псевдониму или символу")
+    public String findInCatalogue(@ShellOption(help = "обозначение точки") String name) {
+        AstraCatalogue.Entry entry = AstraCatalogue.find(name);
+        return entry == null ?
+                "Точка '%s' не найдена среди %d точек каталога".formatted(name, AstraCatalogue.size()) :
+                "%d\t%c %s (%s)%s".formatted(entry.id(), entry.symbol(), entry.name(), entry.kind(),
+                        entry.aliases().isEmpty() ? "" : ": " + String.join(", ", entry.aliases()));
+    }
+
+    @ShellMethod(key = "query", value = "отобрать карты библиотеки по паттернам, напр. 'pattern(h = 7, with Солнце+Луна, strength > 60)'")
+    public String query(@ShellOption(help = "запрос") String text,
+                        @ShellOption(help = "альбомы через запятую; пусто — вся библиотека", defaultValue = "") String albums,
+                        @ShellOption(help = "сколько карт показать", defaultValue = "50") int limit) {
+        return resonanceIndexService.query(text, albums, limit);
+    }
+
+    @ShellMethod(key = "query-index", value = "перестроить индекс паттернов библиотеки для запросов")
+    public String queryIndex(@ShellOption(help = "выполнить в фоне, итог — командой job-result", defaultValue = "false") boolean background) {
+        return jobService.run(background, "query-index", resonanceIndexService::rebuild);
+    }
+
+    @ShellMethod(key = "resonances-clear", value = "удалить сохранённые расчёты резонансов карт")
+    public String resonancesClear() {
+        return resonanceStore.clear();
+    }
+}
@@ -0,0 +1,25 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
+import ru.swetophor.astrowidjaspringshell.service.MetricsService;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class MetricsCommands {
+    private final MetricsService metricsService;
+
+    @ShellMethod(key = "metrics", value = "показать измерения сеанса: время расчётов и обращений к хранилищам")
+    public String metrics(@ShellOption(help = "приставка имён измерений; пустая — все, включая JVM",
+            defaultValue = EngineMetrics.PREFIX) String prefix) {
+        return metricsService.report(prefix);
+    }
+
+    @ShellMethod(key = "metrics-export", value = "записать измерения в файл в формате Prometheus")
+    public String metricsExport(@ShellOption(help = "имя файла", defaultValue = "astrowidja.prom") String file) {
+        return metricsService.export(file);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.config.StartupPhases;
+import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
+
+import static ru.swetophor.astrowidjaspringshell.client.CommandLineController.negativeAnswer;
+import static ru.swetophor.astrowidjaspringshell.client.CommandLineController.positiveAnswer;
+import static ru.swetophor.astrowidjaspringshell.config.Settings.*;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class SettingsCommands {
+    private final StartupPhases startupPhases;
+
+    @ShellMethod(key = "settings", value = "показать настройки")
+    public String settings() {
+        return """
+                крайняя гармоника: %d
+                делитель для первичного орбиса: %d (первичный орбис = %s)
+                для двойных карт орбис уменьшен вдвое: %s
+                автосохранение стола при выходе: %s
+                файл загрузки при старте: %s"""
+                .formatted(getEdgeHarmonic(),
+                        getOrbDivisor(),
+                        Mechanics.secondFormat(getPrimalOrb(), false),
+                        isHalfOrbsForDoubles() ? "да" : "нет",
+                        isAutosave() ? "да" : "нет",
+                        getAutoloadFile());
+    }
+
+    @ShellMethod(key = "settings-set", value = "изменить и сохранить настройки; не указанные остаются как были")
+    public String settingsSet(@ShellOption(help = "крайняя гармоника", defaultValue = "") String harmonic,
+                              @ShellOption(help = "делитель для первичного орбиса", defaultValue = "") String divisor,
+                              @ShellOption(help = "уменьшать вдвое орбис для двойных карт: да/нет", defaultValue = "") String halfOrbs,
+                              @ShellOption(help = "автосохранение стола при выходе: да/нет", defaultValue = "") String autosave,
+                              @ShellOption(help = "файл загрузки при старте", defaultValue = "") String autoload) {
+        try {
+            if (!harmonic.isBlank()) setEdgeHarmonic(Integer.parseInt(harmonic.trim()));
+            if (!divisor.isBlank()) setOrbDivider(Integer.parseInt(divisor.trim()));
+        } catch (NumberFormatException e) {
+            return "Не удалось прочитать значение: " + e.getLocalizedMessage();
+        }
+        if (positiveAnswer(halfOrbs)) enableHalfOrbForDoubles();
+        if (negativeAnswer(halfOrbs)) disableHalfOrbForDoubles();
+        if (positiveAnswer(autosave)) setAutosave(true);
+        if (negativeAnswer(autosave)) setAutosave(false);
+        if (!autoload.isBlank()) setAutoloadFile(Mechanics.extendFileName(autoload, false));
+        saveSettings();
+        return settings();
+    }
+
+    @ShellMethod(key = "startup", value = "показать время фаз запуска и самые долгие создания бинов")
+    public String startup(@ShellOption(help = "сколько бинов перечислить", defaultValue = "10") int beans) {
+        return startupPhases.report(beans);
+    }
+}
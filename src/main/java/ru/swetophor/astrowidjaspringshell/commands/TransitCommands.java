@@ -0,0 +1,90 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import ru.swetophor.astrowidjaspringshell.exception.ChartNotFoundException;
+import ru.swetophor.astrowidjaspringshell.mainframe.Main;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.EphemerisSeries;
+import ru.swetophor.astrowidjaspringshell.repository.EphemerisStore;
+import ru.swetophor.astrowidjaspringshell.service.TransitService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.format.DateTimeParseException;
+
+import static ru.swetophor.astrowidjaspringshell.model.EphemerisSeries.parseTime;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class TransitCommands {
+    @Lazy
+    private final TransitService transitService;
+    @Lazy
+    private final EphemerisStore ephemerisStore;
+    private final Main application;
+
+    @ShellMethod(key = "transits", value = "найти окна транзитных резонансов к карте со стола")
+    public String transits(@ShellOption(help = "карта на столе: номер или имя") String chart,
+                           @ShellOption(help = "табличная эфемерида (.tsv); без неё — собранная эфемерида", defaultValue = "") String ephemeris,
+                           @ShellOption(help = "начало промежутка, напр. 2024-01-01", defaultValue = "") String from,
+                           @ShellOption(help = "конец промежутка", defaultValue = "") String to,
+                           @ShellOption(help = "шаг отсчётов по собранной эфемериде, минут", defaultValue = "360") int step,
+                           @ShellOption(help = "файл для всех окон", defaultValue = "") String output,
+                           @ShellOption(help = "сколько окон показать без файла", defaultValue = "200") int limit) {
+        ChartObject found;
+        try {
+            found = application.DESK.findChart(chart, "на столе");
+        } catch (ChartNotFoundException e) {
+            return "Карта '%s' не найдена: %s".formatted(chart, e.getLocalizedMessage());
+        }
+        if (!(found instanceof Chart natal))
+            return "Транзиты ищутся к одинарной карте.";
+
+        double start, end;
+        try {
+            start = from.isBlank() ? Double.NEGATIVE_INFINITY : parseTime(from);
+            end = to.isBlank() ? Double.POSITIVE_INFINITY : parseTime(to);
+        } catch (DateTimeParseException e) {
+            return "Момент не распознан: " + e.getParsedString();
+        }
+        EphemerisSeries series;
+        try {
+            series = ephemeris.isBlank() ?
+                    ephemerisStore.series(start, end, step * 60.0) :
+                    EphemerisSeries.read(Path.of(ephemeris));
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            return "Эфемерида недоступна: " + e.getLocalizedMessage();
+        }
+        return transitService.scanToText(natal, series, start, end, output, limit);
+    }
+
+    @ShellMethod(key = "ephemeris-compile", value = "собрать двоичную эфемериду из табличной")
+    public String compileEphemeris(@ShellOption(help = "табличная эфемерида (.tsv) с равным шагом") String source) {
+        return ephemerisStore.compileFrom(Path.of(source));
+    }
+
+    @ShellMethod(key = "chart-at", value = "построить по эфемериде карту на момент и положить на стол")
+    public String chartAt(@ShellOption(help = "имя карты") String name,
+                          @ShellOption(help = "момент UTC, напр. 2024-03-01T12:00") String time) {
+        double moment;
+        try {
+            moment = parseTime(time);
+        } catch (DateTimeParseException e) {
+            return "Момент не распознан: " + e.getParsedString();
+        }
+        Chart chart;
+        try {
+            chart = ephemerisStore.chartAt(name, moment);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            return "Карта не построена: " + e.getLocalizedMessage();
+        }
+        application.DESK.addResolving(chart, "на столе");
+        return chart.getAstrasList();
+    }
+}
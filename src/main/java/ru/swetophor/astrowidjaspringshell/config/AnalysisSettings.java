@@ -0,0 +1,28 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.CIRCLE;
+
+/**
+ * Неизменный снимок настроек расчёта, берётся один раз на анализ
+ * ({@link Settings#snapshot()}) и передаётся в Матрицу, пучки резонансов и паттерны,
+ * так что расчёт не разбирает строки настроек и не видит их изменений посреди работы.
+ *
+ * @param edgeHarmonic       предельная гармоника.
+ * @param orbDivisor         делитель орбиса.
+ * @param halfOrbsForDoubles сокращать ли вдвое орбис для астр разных карт.
+ * @param primalOrb          первичный орбис, Круг / делитель.
+ */
+public record AnalysisSettings(int edgeHarmonic, int orbDivisor, boolean halfOrbsForDoubles, double primalOrb) {
+
+    public AnalysisSettings(int edgeHarmonic, int orbDivisor, boolean halfOrbsForDoubles) {
+        this(edgeHarmonic, orbDivisor, halfOrbsForDoubles, CIRCLE / orbDivisor);
+    }
+
+    /**
+     * @param synastric относится ли орбис к астрам разных карт.
+     * @return первичный орбис, ополовиненный для разных карт, если так настроено.
+     */
+    public double orbFor(boolean synastric) {
+        return synastric && halfOrbsForDoubles ? primalOrb / 2 : primalOrb;
+    }
+}
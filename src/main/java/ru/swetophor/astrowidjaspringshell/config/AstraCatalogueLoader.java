@@ -0,0 +1,51 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import ru.swetophor.astrowidjaspringshell.model.AstraCatalogue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
+
+/**
+ * Дополняет {@link AstraCatalogue каталог точек} из локального файла при запуске.
+ * Если файла нет, в каталоге остаются только стандартные астросущности.
+ * Каталог статический и нужен разбору любых карт, поэтому загрузчик
+ * создаётся сразу и при ленивой инициализации контекста.
+ */
+@Component
+@Lazy(false)
+public class AstraCatalogueLoader {
+    private final Path source;
+
+    public AstraCatalogueLoader(@Value("${astrowidja.catalogue:base/catalogue.tsv}") String catalogueFile) {
+        source = Path.of(catalogueFile);
+    }
+
+    @PostConstruct
+    public void loadCatalogue() {
+        if (!Files.exists(source)) return;
+        print(load(source));
+    }
+
+    /**
+     * Дополняет каталог точками из файла.
+     *
+     * @param file путь к файлу каталога.
+     * @return сообщение о результате.
+     */
+    public String load(Path file) {
+        try {
+            int count = AstraCatalogue.load(file);
+            return "Каталог точек: прочитано %d из %s, всего %d"
+                    .formatted(count, file, AstraCatalogue.size());
+        } catch (IOException | IllegalArgumentException e) {
+            return "Каталог точек '%s' не загружен: %s".formatted(file, e.getLocalizedMessage());
+        }
+    }
+}
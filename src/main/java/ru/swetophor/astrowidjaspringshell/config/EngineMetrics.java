@@ -0,0 +1,92 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Измерители расчётного ядра. Объекты модели создаются не Spring, поэтому
+ * измерители заводятся в общем реестре {@link Metrics#globalRegistry}, к которому
+ * Spring Boot подключает свой реестр; без него (в тестах) измерения ничего не стоят
+ * и никуда не идут. Измерители создаются один раз, чтобы горячие места
+ * не искали их в реестре при каждом вызове.
+ * <p>Имена начинаются с {@link #PREFIX}; их показывает команда {@code metrics}.</p>
+ */
+public final class EngineMetrics {
+    public static final String PREFIX = "astrowidja.";
+
+    public static final Timer FULL_MATRIX = Timer.builder(PREFIX + "matrix.build")
+            .description("построение АстроМатрицы")
+            .tag("type", "full")
+            .register(Metrics.globalRegistry);
+    public static final Timer SPARSE_MATRIX = Timer.builder(PREFIX + "matrix.build")
+            .description("построение АстроМатрицы")
+            .tag("type", "sparse")
+            .register(Metrics.globalRegistry);
+    public static final Timer PATTERN_TABLE = Timer.builder(PREFIX + "table.build")
+            .description("построение таблицы по Матрице")
+            .tag("table", "patterns")
+            .register(Metrics.globalRegistry);
+    public static final Timer ASPECT_TABLE = Timer.builder(PREFIX + "table.build")
+            .description("построение таблицы по Матрице")
+            .tag("table", "aspects")
+            .register(Metrics.globalRegistry);
+    public static final Counter MATRIX_CACHE_HITS = Counter.builder(PREFIX + "harmonic.cache")
+            .description("обращения к Матрицам карт стола")
+            .tag("result", "hit")
+            .register(Metrics.globalRegistry);
+    public static final Counter MATRIX_CACHE_MISSES = Counter.builder(PREFIX + "harmonic.cache")
+            .description("обращения к Матрицам карт стола")
+            .tag("result", "miss")
+            .register(Metrics.globalRegistry);
+
+    /**
+     * До какой гармоники измерители поиска паттернов держатся под рукой;
+     * выше них измеритель всякий раз берётся из реестра.
+     */
+    private static final int KEPT_HARMONICS = 256;
+    /**
+     * Измерители поиска паттернов по гармоникам, создаваемые при первом поиске гармоники.
+     */
+    private static final AtomicReferenceArray<Timer> PATTERN_SEARCH = new AtomicReferenceArray<>(KEPT_HARMONICS + 1);
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * @param harmonic гармоника.
+     * @return измеритель поиска паттернов по этой гармонике.
+     */
+    public static Timer patternSearch(int harmonic) {
+        if (harmonic >= PATTERN_SEARCH.length())
+            return patternSearchTimer(harmonic);
+        Timer timer = PATTERN_SEARCH.get(harmonic);
+        if (timer == null) {
+            PATTERN_SEARCH.compareAndSet(harmonic, null, patternSearchTimer(harmonic));
+            timer = PATTERN_SEARCH.get(harmonic);
+        }
+        return timer;
+    }
+
+    private static Timer patternSearchTimer(int harmonic) {
+        return Timer.builder(PREFIX + "patterns.find")
+                .description("поиск паттернов одной гармоники")
+                .tag("harmonic", String.valueOf(harmonic))
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param store     хранилище.
+     * @param operation метод хранилища.
+     * @return измеритель обращений к хранилищу.
+     */
+    public static Timer repository(String store, String operation) {
+        return Timer.builder(PREFIX + "repository")
+                .description("обращения к хранилищам")
+                .tag("store", store)
+                .tag("operation", operation)
+                .register(Metrics.globalRegistry);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import ru.swetophor.astrowidjaspringshell.commands.*;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.repository.ChartRepository;
+
+/**
+ * Подсказки нативному образу о том, что достаётся отражением,
+ * сверх выведенного Spring AOT из контекста.
+ * <p>Команды оболочки вызываются по методам, найденным отражением; правила
+ * коллизий разбираются из строк параметров по именам констант; картохранилище
+ * для замеров подменяется посредником ({@link RepositoryMetrics}). Ресурсы
+ * {@code application*.yaml} Spring AOT включает в образ сам; файлы данных
+ * (настройки, альбомы, каталог, эфемерида) лежат на диске рядом с программой.</p>
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> commands : new Class<?>[]{
+                AnalysisCommands.class, DeskCommands.class, HelloCommands.class, JobCommands.class,
+                LibraryCommands.class, MetricsCommands.class, SettingsCommands.class, TransitCommands.class})
+            hints.reflection().registerType(commands,
+                    MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.INTROSPECT_PUBLIC_METHODS);
+        hints.reflection().registerType(CollisionPolicy.class,
+                MemberCategory.PUBLIC_FIELDS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.proxies().registerJdkProxy(ChartRepository.class);
+    }
+}
@@ -0,0 +1,41 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import ru.swetophor.astrowidjaspringshell.repository.ChartRepository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеряет каждое обращение к картохранилищу: хранилище ({@link ChartRepository})
+ * подменяется посредником, который засекает время вызова метода интерфейса
+ * измерителем {@link EngineMetrics#repository(String, String)} с именем метода.
+ * Вызовы, которые хранилище делает само себе (методы по умолчанию), входят
+ * во время внешнего вызова и отдельно не считаются.
+ */
+@Component
+public class RepositoryMetrics implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ChartRepository repository)) return bean;
+        String store = repository.getClass().getSimpleName();
+        return Proxy.newProxyInstance(ChartRepository.class.getClassLoader(),
+                new Class<?>[]{ChartRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class)
+                        return method.invoke(repository, args);
+                    long start = System.nanoTime();
+                    try {
+                        return method.invoke(repository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        EngineMetrics.repository(store, method.getName())
+                                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                });
+    }
+}
@@ -2,6 +2,7 @@ package ru.swetophor.astrowidjaspringshell.config;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
@@ -12,20 +13,31 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.CIRCLE;
 import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
 
 /**
  * Класс-хранилище статических глобальных переменных АстроВидьи.
+ * <p>Свойства лежат строками в потокобезопасной карте; настройки расчёта
+ * после каждого изменения разбираются один раз в неизменный снимок
+ * {@link AnalysisSettings}, и получатели читают уже его. Изменение свойства
+ * расчёта и пересборка снимка идут под одним замком, так что снимок
+ * не может отстать от карты при одновременных изменениях.</p>
+ * <p>Компонент никуда не внедряется, а нужен ради чтения файла настроек,
+ * поэтому создаётся сразу и при ленивой инициализации контекста.</p>
  */
 @Component
+@Lazy(false)
 public class Settings {
-    @Value("${astrowidja.settings}")
-    private static String sourcePath = "settings.ini";
-
-    private static final File settingsSourceFile = new File(sourcePath);
-    private static final Map<String, String> settingsMap = new HashMap<>();
+    /**
+     * Файл настроек, {@code astrowidja.settings}; задаётся при создании компонента,
+     * до того — файл по умолчанию.
+     */
+    private static volatile File settingsSourceFile = new File("settings.ini");
+    private static final Map<String, String> settingsMap = new ConcurrentHashMap<>();
+    private static volatile AnalysisSettings snapshot;
+    private static final Object lock = new Object();
 
     private static final int EDGE_HARMONIC_DEFAULT = 108;
     private static final int ORBS_DIVISOR_DEFAULT = 30;
@@ -41,10 +53,22 @@ public class Settings {
         settingsMap.put("AUTOSAVE", String.valueOf(AUTOSAVE_DEFAULT));
         settingsMap.put("AUTOLOAD_FILE", AUTOLOAD_FILE_DEFAULT);
         settingsMap.put("AUTOLOAD_ENABLED", String.valueOf(AUTOLOAD_ENABLED_DEFAULTS));
+        refreshSnapshot();
+    }
+
+    public Settings(@Value("${astrowidja.settings:settings.ini}") String sourcePath) {
+        settingsSourceFile = new File(sourcePath);
     }
 
     @PostConstruct
     public void loadSettings() {
+        synchronized (lock) {
+            readSettingsFile();
+            refreshSnapshot();
+        }
+    }
+
+    private static void readSettingsFile() {
         try {
             String source = Files.readString(Objects.requireNonNull(settingsSourceFile).toPath());
 
@@ -67,6 +91,35 @@ public class Settings {
         }
     }
 
+    /**
+     * Разбирает настройки расчёта из строк в новый снимок.
+     */
+    private static void refreshSnapshot() {
+        synchronized (lock) {
+            snapshot = new AnalysisSettings(
+                    getIntProperty("HARMONICA_ULTIMA").orElse(EDGE_HARMONIC_DEFAULT),
+                    getIntProperty("ORBS_DIVISOR").orElse(ORBS_DIVISOR_DEFAULT),
+                    getBoolProperty("ORBES_DIMIDII_DUPLICIBUS").orElse(HALF_ORBS_FOR_DOUBLES_DEFAULT));
+        }
+    }
+
+    /**
+     * Меняет свойство расчёта и пересобирает снимок под общим замком.
+     */
+    private static void setAnalysisProperty(String property, String value) {
+        synchronized (lock) {
+            settingsMap.put(property, value);
+            refreshSnapshot();
+        }
+    }
+
+    /**
+     * @return текущие настройки расчёта одним неизменным снимком.
+     */
+    public static AnalysisSettings snapshot() {
+        return snapshot;
+    }
+
 
     /*
         Методы доступа к свойствам
@@ -96,10 +149,10 @@ public class Settings {
      */
 
     public static int getEdgeHarmonic() {
-        return getIntProperty("HARMONICA_ULTIMA").orElse(EDGE_HARMONIC_DEFAULT);
+        return snapshot.edgeHarmonic();
     }
     public static boolean isHalfOrbsForDoubles() {
-        return getBoolProperty("ORBES_DIMIDII_DUPLICIBUS").orElse(HALF_ORBS_FOR_DOUBLES_DEFAULT);
+        return snapshot.halfOrbsForDoubles();
     }
 
     public static boolean isAutosave() {
@@ -111,7 +164,7 @@ public class Settings {
     }
 
     public static int getOrbDivisor() {
-        return getIntProperty("ORBS_DIVISOR").orElse(ORBS_DIVISOR_DEFAULT);
+        return snapshot.orbDivisor();
     }
     /**
      * Сообщает, какой первичный орбис следует использовать в расчётах в программе.
@@ -120,7 +173,7 @@ public class Settings {
      * (значение по умолчанию), первичный орбис возвращается как 12°.
      */
     public static double getPrimalOrb() {
-        return CIRCLE / getOrbDivisor();
+        return snapshot.primalOrb();
     }
 
     public static boolean isAutoloadEnabled() {
@@ -140,19 +193,19 @@ public class Settings {
     }
 
     public static void setEdgeHarmonic(int edgeHarmonic) {
-        settingsMap.put("HARMONICA_ULTIMA", String.valueOf(edgeHarmonic));
+        setAnalysisProperty("HARMONICA_ULTIMA", String.valueOf(edgeHarmonic));
     }
 
     public static void setOrbDivider(int orbsDivisor) {
-        settingsMap.put("ORBS_DIVISOR", String.valueOf(orbsDivisor));
+        setAnalysisProperty("ORBS_DIVISOR", String.valueOf(orbsDivisor));
     }
 
     public static void disableHalfOrbForDoubles() {
-        settingsMap.put("ORBES_DIMIDII_DUPLICIBUS", "false");
+        setAnalysisProperty("ORBES_DIMIDII_DUPLICIBUS", "false");
     }
 
     public static void enableHalfOrbForDoubles() {
-        settingsMap.put("ORBES_DIMIDII_DUPLICIBUS", "true");
+        setAnalysisProperty("ORBES_DIMIDII_DUPLICIBUS", "true");
     }
 
     /*
@@ -0,0 +1,109 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+
+import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
+
+/**
+ * Время фаз запуска: от старта процесса до входа в {@code main}, от {@code main}
+ * до готового контекста, от контекста до конца стартовых работ (приветствие,
+ * загрузка стола), после чего оболочка выдаёт приглашение; и самые долгие
+ * при запуске создания бинов, по записи {@link BufferingApplicationStartup}.
+ * <p>Отчёт выдаёт команда {@code startup}, а при {@code astrowidja.startup-report=true}
+ * он печатается и сразу по запуске.</p>
+ */
+@Component
+@Lazy(false)
+public class StartupPhases {
+    /**
+     * Сколько шагов запуска запоминается.
+     */
+    private static final int CAPACITY = 8192;
+    private static final BufferingApplicationStartup STARTUP = new BufferingApplicationStartup(CAPACITY);
+    private static volatile Instant mainEntered = Instant.now();
+
+    private final boolean printOnStart;
+    private volatile Instant refreshed;
+    private volatile Instant started;
+
+    public StartupPhases(@Value("${astrowidja.startup-report:false}") boolean printOnStart) {
+        this.printOnStart = printOnStart;
+    }
+
+    /**
+     * Отмечает вход в {@code main} и выдаёт запись шагов запуска для {@code SpringApplication}.
+     */
+    public static BufferingApplicationStartup recordFromMain() {
+        mainEntered = Instant.now();
+        return STARTUP;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void contextRefreshed() {
+        if (refreshed == null) refreshed = Instant.now();
+    }
+
+    /**
+     * Выполняется после прочих слушателей запуска, в том числе загрузки стола.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void applicationStarted() {
+        started = Instant.now();
+        if (printOnStart) print(report(10));
+    }
+
+    /**
+     * @param limit сколько самых долгих созданий бинов перечислить.
+     * @return фазы запуска и самые долгие создания бинов.
+     */
+    public String report(int limit) {
+        StringBuilder report = new StringBuilder("Фазы запуска, мс:\n");
+        Instant process = ProcessHandle.current().info().startInstant().orElse(null);
+        if (process != null)
+            phase(report, "запуск JVM до main", process, mainEntered);
+        phase(report, "main до готового контекста", mainEntered, refreshed);
+        phase(report, "стартовые работы", refreshed, started);
+        if (process != null)
+            phase(report, "всего до приглашения", process, started);
+
+        StartupTimeline timeline = STARTUP.getBufferedTimeline();
+        List<StartupTimeline.TimelineEvent> beans = timeline.getEvents().stream()
+                .filter(event -> event.getStartupStep().getName().equals("spring.beans.instantiate"))
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(limit)
+                .toList();
+        if (!beans.isEmpty()) {
+            report.append("Самые долгие создания бинов (с зависимостями), мс:\n");
+            for (StartupTimeline.TimelineEvent event : beans)
+                report.append("%8d\t%s%n".formatted(event.getDuration().toMillis(), beanName(event.getStartupStep())));
+        }
+        return report.toString().stripTrailing();
+    }
+
+    private static void phase(StringBuilder report, String title, Instant from, Instant to) {
+        if (from == null || to == null) return;
+        report.append("%8d\t%s%n".formatted(Duration.between(from, to).toMillis(), title));
+    }
+
+    private static String beanName(StartupStep step) {
+        for (StartupStep.Tag tag : step.getTags())
+            if (tag.getKey().equals("beanName")) return tag.getValue();
+        return step.getName();
+    }
+}
@@ -0,0 +1,12 @@
+package ru.swetophor.astrowidjaspringshell.exception;
+
+/**
+ * Добавляемая карта совпала по имени с картой списка,
+ * а правило {@link ru.swetophor.astrowidjaspringshell.model.CollisionPolicy#FAIL} велит прервать операцию.
+ */
+public class ChartCollisionException extends RuntimeException {
+
+    public ChartCollisionException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,9 @@
 package ru.swetophor.astrowidjaspringshell.mainframe;
 
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import ru.swetophor.astrowidjaspringshell.client.UserController;
@@ -33,20 +34,22 @@ public class Main {
 //    }
 
 
-    @EventListener(ApplicationReadyEvent.class)
+    /**
+     * Приветствует и загружает стол до того, как оболочка примет первую команду
+     * (или выполнит сценарий). Дальше программой правят команды оболочки.
+     */
+    @EventListener(ApplicationStartedEvent.class)
     public void runAstrowidja() {
         userController.welcome();
 
         if (isAutoloadEnabled())
             print(libraryService.loadAlbum(getAutoloadFile(), DESK));
+    }
 
-        userController.mainCycle(this);
-
+    @PreDestroy
+    public void closeAstrowidja() {
         if (isAutosave())
             print(libraryService.autosave(DESK));
+        print("Спасибо за ведание резонансов!");
     }
-
-
-
-
 }
@@ -0,0 +1,140 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.Arrays;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+/**
+ * Предрасчитанное решето аспектов по дуге для постоянных орбиса и предельной гармоники.
+ * <p>Полукруг дуг поделён на мелкие ячейки, и для каждой заранее отобраны гармоники,
+ * зазор в которых хоть где-то в ячейке может оказаться меньше орбиса
+ * (зазор в гармонике {@code h} меняется не быстрее {@code h} на градус дуги).
+ * Для конкретной дуги точный зазор считается только по этим гармоникам —
+ * в среднем по нескольку на дугу вместо всех до предельной, —
+ * а отбор аспектов повторяет {@link ResonanceBatch} с отсечением кратных,
+ * поэтому результат совпадает с ним до бита.</p>
+ * <p>Решето неизменяемо и может использоваться из многих потоков;
+ * черновики для расчёта передаёт вызывающий.</p>
+ */
+public final class ArcSieve {
+    /**
+     * Ячеек решета на градус дуги.
+     */
+    private static final int BINS_PER_DEGREE = 600;
+    /**
+     * Запас к орбису при отборе кандидатов на погрешность округления.
+     */
+    private static final double MARGIN = 1e-9;
+
+    private final double orb;
+    private final int edge;
+    /**
+     * Начала списков кандидатов ячеек в {@link #candidates}, последний элемент — общая длина.
+     */
+    private final int[] binStart;
+    /**
+     * Гармоники-кандидаты всех ячеек подряд, внутри ячейки по возрастанию.
+     */
+    private final short[] candidates;
+
+    /**
+     * Строит решето.
+     *
+     * @param orb  орбис для соединения, как {@link ResonanceBatch#getOrb()}.
+     * @param edge предельная гармоника.
+     */
+    public ArcSieve(double orb, int edge) {
+        if (edge < 1 || edge > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Предельная гармоника вне допустимого: " + edge);
+        this.orb = orb;
+        this.edge = edge;
+        int bins = (int) HALF_CIRCLE * BINS_PER_DEGREE + 1;
+        double width = 1.0 / BINS_PER_DEGREE;
+        binStart = new int[bins + 1];
+        short[] collected = new short[bins * 4];
+        int length = 0;
+        for (int bin = 0; bin < bins; bin++) {
+            binStart[bin] = length;
+            double center = (bin + 0.5) * width;
+            for (int h = 1; h <= edge; h++) {
+                if (getArcForHarmonic(center, h) - h * width / 2 >= orb + MARGIN) continue;
+                if (length == collected.length)
+                    collected = Arrays.copyOf(collected, length * 2);
+                collected[length++] = (short) h;
+            }
+        }
+        binStart[bins] = length;
+        candidates = Arrays.copyOf(collected, length);
+    }
+
+    public double getOrb() {
+        return orb;
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    /**
+     * Находит аспекты дуги по правилам {@link ResonanceBatch}.
+     *
+     * @param arc        дуга между астрами, от 0 до полукруга.
+     * @param harmonics  черновик длиной не меньше предельной гармоники;
+     *                   получает гармоники найденных аспектов по возрастанию.
+     * @param clearances получает зазоры найденных аспектов, или {@code null}.
+     * @return число найденных аспектов.
+     */
+    public int aspects(double arc, int[] harmonics, double[] clearances) {
+        int bin = (int) (arc * BINS_PER_DEGREE);
+        int count = 0;
+        for (int c = binStart[bin], end = binStart[bin + 1]; c < end; c++) {
+            int h = candidates[c];
+            double clearance = getArcForHarmonic(arc, h);
+            if (clearance >= orb || !isNewSimple(h, harmonics, count, arc))
+                continue;
+            if (clearances != null) clearances[count] = clearance;
+            harmonics[count++] = h;
+        }
+        return count;
+    }
+
+    /**
+     * @param arc     дуга между астрами, от 0 до полукруга.
+     * @param scratch черновик длиной не меньше предельной гармоники.
+     * @return сумму сил всех аспектов дуги в долях, как {@link Aspect#getStrength()} / 100.
+     */
+    public double strength(double arc, int[] scratch) {
+        int bin = (int) (arc * BINS_PER_DEGREE);
+        int count = 0;
+        double sum = 0;
+        for (int c = binStart[bin], end = binStart[bin + 1]; c < end; c++) {
+            int h = candidates[c];
+            double clearance = getArcForHarmonic(arc, h);
+            if (clearance >= orb || !isNewSimple(h, scratch, count, arc))
+                continue;
+            scratch[count++] = h;
+            sum += (orb - clearance) / orb;
+        }
+        return sum;
+    }
+
+    /**
+     * Повторяет отсечение кратных гармоник {@code ResonanceBatch.isNewSimple()}.
+     */
+    private boolean isNewSimple(int h, int[] found, int count, double arc) {
+        boolean isConjunction = false;
+        for (int a = 0; a < count; a++) {
+            int previous = found[a];
+            if (previous == 1)
+                isConjunction = true;
+            if (h % previous != 0)
+                continue;
+            if (isConjunction &&
+                    arc > orb / h &&
+                    Harmonics.findMultiplier(h, arc, orb) == 1)
+                continue;
+            return false;
+        }
+        return true;
+    }
+}
@@ -173,8 +173,8 @@ public class Astra {
 
     /**
      * Выдаёт астрологический символ для астры, если она распознана по названию
-     * в библиотеке {@link AstraEntity АстроСущность}. Если имя не найдено среди псевдонимов,
-     * библиотекой возвращается '*'.
+     * в {@link AstraCatalogue каталоге}. Если имя не найдено среди псевдонимов,
+     * каталогом возвращается '*'.
      *
      * @return определяемый классом АстроСущность астрологический символ для известных астр, '*' для неизвестных.
      */
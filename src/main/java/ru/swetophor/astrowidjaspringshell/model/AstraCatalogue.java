@@ -0,0 +1,220 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр именованных точек, которые могут быть астрами: кроме
+ * {@link AstraEntity стандартных астросущностей}, астероиды, неподвижные звёзды,
+ * мидпойнты и любые другие точки, загружаемые из локального файла.
+ * <p>Каждая точка получает компактный номер: стандартные астросущности — номера,
+ * равные их ординалу, загруженные — следующие по порядку. По номеру точки
+ * строятся наборы {@link AstroSet}. Имена и псевдонимы распознаются без учёта
+ * регистра, символ — если он закреплён только за одной точкой.</p>
+ * <p>Файл каталога — текст с разделителем-табуляцией, строка на точку:
+ * имя, символ (пусто или "*", если своего символа нет), вид ({@link Kind},
+ * по умолчанию {@code POINT}) и псевдонимы через запятую; последние колонки
+ * можно опускать. Пустые строки и строки с "//" пропускаются.</p>
+ */
+public final class AstraCatalogue {
+    /**
+     * Символ точки, для которой свой символ не задан.
+     */
+    public static final char NO_SYMBOL = '*';
+
+    /**
+     * Вид точки каталога.
+     */
+    public enum Kind {
+        /** Стандартная астросущность. */
+        ENTITY,
+        /** Астероид или малая планета. */
+        ASTEROID,
+        /** Неподвижная звезда. */
+        STAR,
+        /** Мидпойнт двух астр. */
+        MIDPOINT,
+        /** Прочая расчётная точка. */
+        POINT
+    }
+
+    /**
+     * Точка каталога.
+     *
+     * @param id      компактный номер в каталоге.
+     * @param name    основное имя.
+     * @param symbol  символ для отображения или {@link #NO_SYMBOL}.
+     * @param kind    вид точки.
+     * @param aliases альтернативные имена.
+     */
+    public record Entry(int id, String name, char symbol, Kind kind, List<String> aliases) {
+    }
+
+    private static volatile Entry[] entries = new Entry[0];
+    private static final Map<String, Integer> names = new ConcurrentHashMap<>();
+    private static final Map<Character, Integer> symbols = new ConcurrentHashMap<>();
+    /**
+     * Символы, закреплённые более чем за одной точкой и потому не распознаваемые.
+     */
+    private static final Set<Character> sharedSymbols = ConcurrentHashMap.newKeySet();
+
+    static {
+        for (AstraEntity entity : AstraEntity.values())
+            register(entity.name, entity.symbol, Kind.ENTITY, new ArrayList<>(entity.also));
+    }
+
+    private AstraCatalogue() {
+    }
+
+    /**
+     * Вносит точку в каталог. Если точка с таким именем уже есть,
+     * к ней добавляются новые псевдонимы, а номер остаётся прежним.
+     *
+     * @param name    основное имя.
+     * @param symbol  символ или {@link #NO_SYMBOL}.
+     * @param kind    вид точки.
+     * @param aliases альтернативные имена.
+     * @return номер точки в каталоге.
+     * @throws IllegalArgumentException если имя пусто или уже служит псевдонимом другой точки.
+     */
+    public static synchronized int register(String name, char symbol, Kind kind, List<String> aliases) {
+        String trimmed = name.trim();
+        if (trimmed.isEmpty())
+            throw new IllegalArgumentException("Пустое имя точки каталога");
+        Integer known = names.get(key(trimmed));
+        if (known != null && entries[known].name().equalsIgnoreCase(trimmed)) {
+            aliases.forEach(alias -> names.putIfAbsent(key(alias), known));
+            return known;
+        }
+        if (known != null)
+            throw new IllegalArgumentException("Имя '%s' уже служит псевдонимом точки '%s'"
+                    .formatted(trimmed, entries[known].name()));
+
+        int id = entries.length;
+        Entry entry = new Entry(id, trimmed, symbol, kind, List.copyOf(aliases));
+        Entry[] grown = Arrays.copyOf(entries, id + 1);
+        grown[id] = entry;
+        entries = grown;
+        names.put(key(trimmed), id);
+        aliases.forEach(alias -> names.putIfAbsent(key(alias), id));
+        if (symbol != NO_SYMBOL && !sharedSymbols.contains(symbol)
+                && symbols.putIfAbsent(symbol, id) != null) {
+            symbols.remove(symbol);
+            sharedSymbols.add(symbol);
+        }
+        return id;
+    }
+
+    /**
+     * Загружает точки из файла каталога.
+     *
+     * @param source путь к файлу.
+     * @return сколько точек прочитано.
+     * @throws IOException              если файл не читается.
+     * @throws IllegalArgumentException если строка не распознана.
+     */
+    public static int load(Path source) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("//")) continue;
+                String[] cells = line.split("\t", -1);
+                String symbol = cells.length > 1 ? cells[1].trim() : "";
+                if (symbol.length() > 1)
+                    throw new IllegalArgumentException("Строка %d: символ '%s' не одиночный".formatted(lineNumber, symbol));
+                Kind kind;
+                try {
+                    kind = cells.length > 2 && !cells[2].isBlank() ?
+                            Kind.valueOf(cells[2].trim().toUpperCase(Locale.ROOT)) :
+                            Kind.POINT;
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Строка %d: неизвестный вид точки '%s'"
+                            .formatted(lineNumber, cells[2].trim()));
+                }
+                List<String> aliases = cells.length > 3 ?
+                        Arrays.stream(cells[3].split(","))
+                                .map(String::trim)
+                                .filter(alias -> !alias.isEmpty())
+                                .toList() :
+                        List.of();
+                try {
+                    register(cells[0], symbol.isEmpty() ? NO_SYMBOL : symbol.charAt(0), kind, aliases);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Строка %d: %s".formatted(lineNumber, e.getMessage()));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return количество точек в каталоге; номера точек — от 0 до этого числа.
+     */
+    public static int size() {
+        return entries.length;
+    }
+
+    /**
+     * @param id номер точки.
+     * @return точку каталога с этим номером.
+     * @throws IndexOutOfBoundsException если такого номера нет.
+     */
+    public static Entry get(int id) {
+        return entries[id];
+    }
+
+    /**
+     * Определяет номер точки по имени, псевдониму или символу.
+     *
+     * @param name обозначение точки.
+     * @return номер точки или -1, если точка не распознана.
+     */
+    public static int idOf(String name) {
+        Integer id = names.get(key(name));
+        if (id != null) return id;
+        String trimmed = name.trim();
+        if (trimmed.length() == 1) {
+            id = symbols.get(trimmed.charAt(0));
+            if (id != null) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @return точку каталога для обозначения или {@code null}, если оно не распознано.
+     */
+    public static Entry find(String name) {
+        int id = idOf(name);
+        return id == -1 ? null : entries[id];
+    }
+
+    /**
+     * @return символ точки с таким обозначением или {@link #NO_SYMBOL},
+     * если точка не распознана или своего символа не имеет.
+     */
+    public static char symbolOf(String name) {
+        int id = idOf(name);
+        return id == -1 ? NO_SYMBOL : entries[id].symbol();
+    }
+
+    /**
+     * @return основное имя точки для обозначения, а если оно не распознано — само обозначение без пробелов по краям.
+     */
+    public static String canonicalName(String name) {
+        int id = idOf(name);
+        return id == -1 ? name.trim() : entries[id].name();
+    }
+}
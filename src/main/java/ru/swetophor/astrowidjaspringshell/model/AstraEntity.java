@@ -71,14 +71,13 @@ public enum AstraEntity {
     }
 
     /**
-     * Находит и отдаёт символ, связанный с астросущностью, какое-то
-     * имя которой передано в аргументе и распознано {@link #getEntityByName(String)}.
+     * Находит и отдаёт символ, связанный с астросущностью или другой точкой
+     * {@link AstraCatalogue каталога}, какое-то имя которой передано в аргументе.
      * @param name имя, псевдоним или символ астры.
-     * @return символ астросущности, распознанной в астре, или '*', если не распознано.
+     * @return символ распознанной точки, или '*', если не распознано или своего символа у точки нет.
      */
     public static char findSymbolFor(String name) {
-        AstraEntity astra = getEntityByName(name);
-        return astra != null ? astra.symbol : '*';
+        return AstraCatalogue.symbolOf(name);
     }
 
     /**
@@ -95,21 +94,21 @@ public enum AstraEntity {
 
     /**
      * Находит для данной астры, под каким номером значится
-     * соответствующая астросущность, т.е. какой ординал имеет в перечислении.
-     * Это зависит от конкретной реализации класса AstraEntity.
-     * Сущность ищется по совпадению имени астры.
+     * соответствующая точка в {@link AstraCatalogue каталоге}; для астросущностей
+     * он равен ординалу в перечислении.
+     * Точка ищется по совпадению имени астры.
      * Если имя не опознано, выдаётся следующий номер за наибольшим,
-     * т.е. равный размеру известных астросущностей.
+     * т.е. равный размеру каталога.
      *
      * @param astra астра, чей номер в реестре смотрится.
-     * @return ординальный номер соответствующей астре сущности,
-     * если же такой не найдено, то количество сущностей в реестре.
+     * @return номер соответствующей астре точки каталога,
+     * если же такой не найдено, то количество точек в каталоге.
      */
     public static int getAstraEntityNumber(Astra astra) {
-        AstraEntity entity = getEntityByName(astra.getName());
-        return entity != null ?
-                entity.ordinal() :
-                values().length;
+        int id = AstraCatalogue.idOf(astra.getName());
+        return id != -1 ?
+                id :
+                AstraCatalogue.size();
     }
 
 }
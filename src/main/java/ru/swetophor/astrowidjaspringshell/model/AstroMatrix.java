@@ -1,14 +1,19 @@
 package ru.swetophor.astrowidjaspringshell.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
 import ru.swetophor.astrowidjaspringshell.config.Settings;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.stream.IntStream.range;
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.normalizeCoordinate;
 
 @Getter
 public class AstroMatrix {
@@ -17,6 +22,11 @@ public class AstroMatrix {
      * в том порядке, как переданы аргументы в конструктор.
      */
     private final Chart[] heavens;
+    /**
+     * Настройки расчёта, взятые при построении Матрицы: по ним рассчитаны
+     * все её пучки резонансов и оцениваются её паттерны.
+     */
+    private final AnalysisSettings settings;
     /**
      * Объединённый массив астр из всех карт. Соответствующие картам блоки
      * следуют в порядке, как в {@link #heavens}, в каждом блоке астры
@@ -32,8 +42,26 @@ public class AstroMatrix {
      * Треугольный двумерный массив, отражающий все возможные парные отношения
      * между всеми астрами Матрицы. Если общее количество астр N,
      * то длина первого ряда равна N - 1, каждого последующего — на один меньше.
+     * У разреженной Матрицы ({@link #forHarmonics}) не строится и равен {@code null}.
      */
     private final ResonanceBatch[][] matrix;
+    /**
+     * Гармоники, для которых построена разреженная Матрица; {@code null} для полной.
+     */
+    private final BitSet sparseHarmonics;
+    /**
+     * Резонансы разреженной Матрицы: для каждой астры — её пучки с теми астрами,
+     * с которыми она связана хотя бы в одной из {@link #sparseHarmonics}, по номеру
+     * второй астры. Пучок пары лежит у обеих её астр. У полной Матрицы {@code null}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<NavigableMap<Integer, ResonanceBatch>> links;
+    /**
+     * Найденные по гармоникам паттерны. Гармоника вычёркивается отсюда,
+     * когда {@link #moveAstra(Astra, double) перемещение} астры может изменить её паттерны.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, List<Pattern>> patternCache = new HashMap<>();
 
     /**
      * Создание матрицы резонансов для некоторого количества
@@ -43,7 +71,47 @@ public class AstroMatrix {
      * @param charts карты, предоставляющие наборы астр для анализа.
      */
     public AstroMatrix(Chart... charts) {
-        // фиксация массива карт
+        this(Settings.snapshot(), charts);
+    }
+
+    /**
+     * Создание матрицы резонансов по данному снимку настроек расчёта.
+     * @param settings настройки, взятые на весь анализ.
+     * @param charts   карты, предоставляющие наборы астр для анализа.
+     */
+    public AstroMatrix(AnalysisSettings settings, Chart... charts) {
+        this(settings, charts, null);
+    }
+
+    /**
+     * Создание разреженной матрицы резонансов для больших наборов астр (астероидов,
+     * неподвижных звёзд), где полная матрица {@code N²} пучков не нужна и не помещается.
+     * Хранятся только пучки пар, связанных хотя бы в одной из указанных гармоник;
+     * пары отбираются проходом по гармоническим картам ({@link HarmonicProjection})
+     * за {@code O(N log N + K)} на гармонику вместо перебора всех пар.
+     * Паттерны такой Матрицы ищутся только по указанным гармоникам и совпадают
+     * с паттернами полной Матрицы.
+     *
+     * @param harmonics гармоники, по которым будут искаться паттерны.
+     * @param charts    карты, предоставляющие наборы астр для анализа.
+     * @return разреженную Матрицу.
+     */
+    public static AstroMatrix forHarmonics(Collection<Integer> harmonics, Chart... charts) {
+        AnalysisSettings settings = Settings.snapshot();
+        BitSet selected = new BitSet();
+        for (int h : harmonics) {
+            if (h < 1 || h > settings.edgeHarmonic())
+                throw new IllegalArgumentException("Гармоника %d вне 1–%d"
+                        .formatted(h, settings.edgeHarmonic()));
+            selected.set(h);
+        }
+        return new AstroMatrix(settings, charts, selected);
+    }
+
+    private AstroMatrix(AnalysisSettings settings, Chart[] charts, BitSet harmonics) {
+        long start = System.nanoTime();
+        // фиксация настроек и массива карт
+        this.settings = settings;
         heavens = charts;
 
         // создание общего массива астр
@@ -60,11 +128,74 @@ public class AstroMatrix {
                 index.get(chart).put(astra, counter++);
         }
 
-        // построение матрицы резонансов
-        matrix = new ResonanceBatch[allAstras.size()][allAstras.size()];
-        for (int i = 0; i < allAstras.size() - 1; i++)
-            for (int j = i + 1; j < allAstras.size(); j++)
-                matrix[i][j] = new ResonanceBatch(allAstras.get(i), allAstras.get(j));
+        sparseHarmonics = harmonics;
+        if (harmonics == null) {
+            // построение матрицы резонансов
+            links = null;
+            matrix = new ResonanceBatch[allAstras.size()][allAstras.size()];
+            for (int i = 0; i < allAstras.size() - 1; i++)
+                for (int j = i + 1; j < allAstras.size(); j++)
+                    matrix[i][j] = new ResonanceBatch(allAstras.get(i), allAstras.get(j), settings);
+            EngineMetrics.FULL_MATRIX.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        // отбор связанных пар по гармоническим картам; связь в гармонике
+        // возможна лишь при соединении в её карте с первичным орбисом
+        matrix = null;
+        links = new ArrayList<>(allAstras.size());
+        for (int i = 0; i < allAstras.size(); i++)
+            links.add(new TreeMap<>());
+        HarmonicProjection projection = new HarmonicProjection(allAstras.stream()
+                .mapToDouble(Astra::getZodiacPosition)
+                .toArray(), harmonics.length() - 1);
+        harmonics.stream().forEach(h ->
+                projection.forEachConjunction(h, settings.primalOrb(), (i, j, clearance) -> {
+                    if (!links.get(i).containsKey(j))
+                        putBatch(i, j, new ResonanceBatch(allAstras.get(i), allAstras.get(j), settings));
+                }));
+        EngineMetrics.SPARSE_MATRIX.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Сохраняет пучок пары {@code i < j}: в полной Матрице всегда, в разреженной —
+     * только если пара связана в одной из её гармоник, иначе убирает пару.
+     */
+    private void putBatch(int i, int j, ResonanceBatch batch) {
+        if (matrix != null) {
+            matrix[i][j] = batch;
+        } else if (sparseHarmonics.stream().anyMatch(batch::hasHarmonicPattern)) {
+            links.get(i).put(j, batch);
+            links.get(j).put(i, batch);
+        } else {
+            links.get(i).remove(j);
+            links.get(j).remove(i);
+        }
+    }
+
+    /**
+     * @return сохранённый пучок пары {@code i < j} или {@code null},
+     * если разреженная Матрица его не хранит.
+     */
+    private ResonanceBatch storedBatch(int i, int j) {
+        return matrix != null ? matrix[i][j] : links.get(i).get(j);
+    }
+
+    /**
+     * Сообщает, построена ли Матрица только для некоторых гармоник.
+     */
+    public boolean isSparse() {
+        return matrix == null;
+    }
+
+    /**
+     * @return гармоники, по которым в этой Матрице ищутся паттерны:
+     * для полной — все до предельной гармоники её {@link #settings настроек}.
+     */
+    public IntStream harmonics() {
+        return sparseHarmonics == null ?
+                IntStream.rangeClosed(1, settings.edgeHarmonic()) :
+                sparseHarmonics.stream();
     }
 
     /**
@@ -86,6 +217,7 @@ public class AstroMatrix {
 
     /**
      *  Выдаёт рассчитанный для пары астр резонанс.
+     *  Разреженная Матрица для несохранённой пары рассчитывает его заново.
      * @param a первая астра резонанса.
      * @param b вторая астра резонанса.
      * @return  объект резонанса, рассчитанный в Матрице для двух указанных астр.
@@ -99,9 +231,11 @@ public class AstroMatrix {
                                 "%s и %s".formatted(a.getSymbolWithOwner(), b.getSymbolWithOwner()) :
                                 "%s".formatted(a.getSymbolWithOwner()) :
                             "%s".formatted(b.getSymbolWithOwner())));
-        return iA < iB ?
-                matrix[iA][iB] :
-                matrix[iB][iA];
+        int i = Math.min(iA, iB), j = Math.max(iA, iB);
+        ResonanceBatch batch = storedBatch(i, j);
+        return batch != null ?
+                batch :
+                new ResonanceBatch(allAstras.get(i), allAstras.get(j), settings);
     }
 
     /**
@@ -122,11 +256,14 @@ public class AstroMatrix {
      * Выдаёт список {@link ResonanceBatch Резонансов}, которые указанная астра
      * делает со всеми остальными астрами в Матрице (из одной или разных карт).
      * @param a астра, резонансы которой интересуют.
-     * @return  список резонансов указанной астры с каждой из остальных астр Матрицы.
+     * @return  список резонансов указанной астры с каждой из остальных астр Матрицы;
+     * для разреженной Матрицы — только с астрами, связанными с ней в её гармониках.
      */
     public List<ResonanceBatch> resonancesFor(Astra a) {
-        List<ResonanceBatch> list = new ArrayList<>();
         int index = astraIndex(a);
+        if (links != null)
+            return new ArrayList<>(links.get(index).values());
+        List<ResonanceBatch> list = new ArrayList<>();
         int i = 0, j = index;
         boolean turning = false;
         while (i + j < allAstras.size() + index - 1) {
@@ -144,10 +281,15 @@ public class AstroMatrix {
     /**
      * Выплёскивает поток существующих в АстроМатрице резонансов,
      * проход матрицы осуществляем "косынкой": [0][1]→[0][2]→[0][3]→[1][2]→[1][3]→[2][3].
-     * Т.е. по резонансу для всех возможных пар между астрами анализируемой карты или карт.
+     * Т.е. по резонансу для всех возможных пар между астрами анализируемой карты или карт;
+     * у разреженной Матрицы — для сохранённых пар в том же порядке.
      * @return  поток объектов-резонансов, начиная с первой планеты первой карты.
      */
     public Stream<ResonanceBatch> stream() {
+        if (links != null)
+            return IntStream.range(0, allAstras.size())
+                    .mapToObj(i -> links.get(i).tailMap(i, false).values())
+                    .flatMap(Collection::stream);
         return IntStream.range(0, allAstras.size() - 1)
                 .mapToObj(i -> Arrays.asList(matrix[i])
                         .subList(i + 1, allAstras.size()))
@@ -172,6 +314,63 @@ public class AstroMatrix {
                 .toList();
     }
 
+    /**
+     * Перемещает астру Матрицы в новую позицию и пересчитывает только
+     * её резонансы, т.е. её строку и столбец: {@code N − 1} пучков вместо {@code N²/2}.
+     * Запомненные паттерны сбрасываются лишь для тех гармоник, в которых
+     * астра была или стала связана хоть с одной другой астрой, — в остальных
+     * она одиночка и до, и после перемещения, так что их паттерны не меняются.
+     *
+     * @param astra    перемещаемая астра из одной из карт Матрицы.
+     * @param position новая зодиакальная координата в градусах, приводится к 0°–360°.
+     * @return набор гармоник, паттерны которых могли измениться.
+     * @throws IllegalArgumentException если астры нет в Матрице.
+     */
+    public BitSet moveAstra(Astra astra, double position) {
+        int moved = astraIndex(astra);
+        if (moved == -1)
+            throw new IllegalArgumentException("Астра %s не найдена".formatted(astra.getSymbolWithOwner()));
+        astra.setZodiacPosition(normalizeCoordinate(position));
+
+        BitSet affected = new BitSet();
+        for (int other = 0; other < allAstras.size(); other++) {
+            if (other == moved) continue;
+            int i = Math.min(moved, other), j = Math.max(moved, other);
+            ResonanceBatch previous = storedBatch(i, j);
+            if (previous != null)
+                markPatternHarmonics(previous, affected);
+            ResonanceBatch batch = new ResonanceBatch(allAstras.get(i), allAstras.get(j), settings);
+            markPatternHarmonics(batch, affected);
+            putBatch(i, j, batch);
+        }
+        patternCache.keySet().removeIf(affected::get);
+        return affected;
+    }
+
+    /**
+     * Перемещает несколько астр Матрицы, как {@link #moveAstra(Astra, double)}.
+     *
+     * @param positions новые зодиакальные координаты перемещаемых астр.
+     * @return набор гармоник, паттерны которых могли измениться.
+     */
+    public BitSet moveAstras(Map<Astra, Double> positions) {
+        BitSet affected = new BitSet();
+        positions.forEach((astra, position) -> affected.or(moveAstra(astra, position)));
+        return affected;
+    }
+
+    /**
+     * Отмечает гармоники, в которых пучок связывает свои астры,
+     * как {@link ResonanceBatch#hasHarmonicPattern(int)}: кратные каждого
+     * аспекта вплоть до его глубины.
+     */
+    private static void markPatternHarmonics(ResonanceBatch batch, BitSet harmonics) {
+        for (Aspect aspect : batch.getAspects())
+            for (int m = 1; m <= aspect.getDepth()
+                    && (long) aspect.getNumeric() * m <= batch.getUltimateHarmonic(); m++)
+                harmonics.set(aspect.getNumeric() * m);
+    }
+
     /**
      * Находит и возвращает список всех паттернов, образованных астрами
      * данной карты или карт по указанной гармонике.
@@ -180,8 +379,17 @@ public class AstroMatrix {
      * @return список паттернов из астр этой карты или карт, резонирующих
      * по указанной гармонике, сортированный по средней силе.
      * Если ни одного паттерна не обнаруживается, то пустой список.
+     * Найденный список запоминается до перемещения астры, способного его изменить.
+     * @throws IllegalArgumentException если Матрица разреженная и построена не для этой гармоники.
      */
     public List<Pattern> findPatterns(int harmonic) {
+        if (sparseHarmonics != null && !sparseHarmonics.get(harmonic))
+            throw new IllegalArgumentException("Матрица построена только для гармоник " + sparseHarmonics);
+        return patternCache.computeIfAbsent(harmonic,
+                h -> EngineMetrics.patternSearch(h).record(() -> gatherPatterns(h)));
+    }
+
+    private List<Pattern> gatherPatterns(int harmonic) {
         boolean[] analyzed = new boolean[allAstras.size()];
         return range(0, allAstras.size())
                 .filter(i -> !analyzed[i])
@@ -194,10 +402,11 @@ public class AstroMatrix {
     /**
      * Выдаёт паттерн, состоящий из астр данной карты, связанных с указанной астрой
      * по указанной гармонике напрямую или посредством других астр.
-     * Исходная астра помещается сразу в паттерн, её номер отмечается как
-     * уже проверенный во вспомогательном массиве; затем функция рекурсивно
-     * запускается для каждой из ещё не проверенных астр, имеющих указанный
-     * резонанс с исходной, результат каждого вызова добавляется к паттерну.
+     * Связанные астры собираются обходом в ширину: исходная астра отмечается
+     * как проверенная во вспомогательном массиве, затем для каждой собранной астры
+     * добавляются ещё не проверенные астры, имеющие с ней указанный резонанс.
+     * Паттерн строится из собранных астр один раз, так что и большие
+     * наборы астр не упираются в глубину стека.
      *
      * @param astraIndex индекс исходной астры в списке астр этой Карты.
      * @param harmonic   номер гармоники, по которому надо проверить узор.
@@ -208,15 +417,17 @@ public class AstroMatrix {
      * содержащий одну исходную астру, если резонансов по этой гармонике нет.
      */
     private Pattern gatherResonants(int astraIndex, int harmonic, boolean[] analyzed) {
-        Astra startingAstra = allAstras.get(astraIndex);
         analyzed[astraIndex] = true;
-        Pattern currentPattern = new Pattern(harmonic, this);
-        currentPattern.addAstra(startingAstra);
-        getConnectedAstras(startingAstra, harmonic).stream()
-                .filter(a -> !analyzed[allAstras.indexOf(a)])
-                .map(a -> gatherResonants(allAstras.indexOf(a), harmonic, analyzed))
-                .forEach(currentPattern::addAllAstras);
-        return currentPattern;
+        List<Astra> gathered = new ArrayList<>();
+        gathered.add(allAstras.get(astraIndex));
+        for (int next = 0; next < gathered.size(); next++)
+            for (Astra connected : getConnectedAstras(gathered.get(next), harmonic)) {
+                int i = astraIndex(connected);
+                if (analyzed[i]) continue;
+                analyzed[i] = true;
+                gathered.add(connected);
+            }
+        return new Pattern(harmonic, gathered, this);
     }
 
     /**
@@ -279,11 +490,11 @@ public class AstroMatrix {
      * паттерны резонансов, найденные по этой Матрице.
      */
     public PatternTable buildPatternTable() {
-        return new PatternTable(this);
+        return EngineMetrics.PATTERN_TABLE.record(() -> new PatternTable(this));
     }
 
     public AspectTable buildAspectTable() {
-        return new AspectTable(this);
+        return EngineMetrics.ASPECT_TABLE.record(() -> new AspectTable(this));
     }
 
 
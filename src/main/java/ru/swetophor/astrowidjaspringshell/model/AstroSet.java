@@ -1,76 +1,163 @@
 package ru.swetophor.astrowidjaspringshell.model;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+/**
+ * Набор точек {@link AstraCatalogue каталога}, хранимый как битовый набор
+ * по их номерам: проверка принадлежности, объединение и пересечение не зависят
+ * от имён и стоят по биту на точку каталога.
+ * <p>Как {@link Iterable} набор перебирает только входящие в него
+ * {@link AstraEntity стандартные астросущности} (их номера в каталоге равны ординалам);
+ * все точки набора даёт {@link #entries()}.</p>
+ */
 public class AstroSet implements Iterable<AstraEntity> {
 
-    private final AstraEntity[] astras;
+    private final BitSet members;
+
     public AstroSet(AstraEntity[] values) {
-        astras = values;
+        members = new BitSet(AstraEntity.values().length);
+        for (AstraEntity entity : values)
+            members.set(entity.ordinal());
     }
 
-    public AstraEntity[] values() {
-        return astras;
+    public AstroSet() {
+        members = new BitSet();
+    }
+
+    private AstroSet(BitSet members) {
+        this.members = members;
     }
 
     /**
-     * Returns an iterator over elements of type {@code T}.
-     *
-     * @return an Iterator.
+     * @param ids номера точек каталога.
+     * @return набор из указанных точек.
      */
-    @Override
-    public Iterator<AstraEntity> iterator() {
-        return Arrays.asList(astras).iterator();
+    public static AstroSet of(int... ids) {
+        AstroSet set = new AstroSet();
+        for (int id : ids)
+            set.add(id);
+        return set;
     }
 
     /**
-     * Performs the given action for each element of the {@code Iterable}
-     * until all elements have been processed or the action throws an
-     * exception.  Actions are performed in the order of iteration, if that
-     * order is specified.  Exceptions thrown by the action are relayed to the
-     * caller.
-     * <p>
-     * The behavior of this method is unspecified if the action performs
-     * side-effects that modify the underlying source of elements, unless an
-     * overriding class has specified a concurrent modification policy.
+     * @param kind вид точек.
+     * @return набор всех точек каталога этого вида.
+     */
+    public static AstroSet ofKind(AstraCatalogue.Kind kind) {
+        return new AstroSet(IntStream.range(0, AstraCatalogue.size())
+                .filter(id -> AstraCatalogue.get(id).kind() == kind)
+                .collect(BitSet::new, BitSet::set, BitSet::or));
+    }
+
+    /**
+     * Добавляет точку каталога в набор.
      *
-     * @param action The action to be performed for each element
-     * @throws NullPointerException if the specified action is null
-     * @implSpec <p>The default implementation behaves as if:
-     * <pre>{@code
-     *     for (T t : this)
-     *         action.accept(t);
-     * }</pre>
-     * @since 1.8
+     * @param id номер точки.
+     * @return этот набор.
+     * @throws IllegalArgumentException если такого номера в каталоге нет.
      */
-    @Override
-    public void forEach(Consumer<? super AstraEntity> action) {
-        Arrays.stream(astras).forEach(action);
+    public AstroSet add(int id) {
+        if (id < 0 || id >= AstraCatalogue.size())
+            throw new IllegalArgumentException("Точки %d нет в каталоге".formatted(id));
+        members.set(id);
+        return this;
     }
 
     /**
-     * Creates a {@link Spliterator} over the elements described by this
-     * {@code Iterable}.
+     * Добавляет точку каталога, распознанную по имени, псевдониму или символу.
      *
-     * @return a {@code Spliterator} over the elements described by this
-     * {@code Iterable}.
-     * @implSpec The default implementation creates an
-     * <em><a href="../util/Spliterator.html#binding">early-binding</a></em>
-     * spliterator from the iterable's {@code Iterator}.  The spliterator
-     * inherits the <em>fail-fast</em> properties of the iterable's iterator.
-     * @implNote The default implementation should usually be overridden.  The
-     * spliterator returned by the default implementation has poor splitting
-     * capabilities, is unsized, and does not report any spliterator
-     * characteristics. Implementing classes can nearly always provide a
-     * better implementation.
-     * @since 1.8
+     * @param name обозначение точки.
+     * @return этот набор.
+     * @throws IllegalArgumentException если обозначение не распознано.
+     */
+    public AstroSet add(String name) {
+        int id = AstraCatalogue.idOf(name);
+        if (id == -1)
+            throw new IllegalArgumentException("Точка '%s' не найдена в каталоге".formatted(name));
+        members.set(id);
+        return this;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && members.get(id);
+    }
+
+    /**
+     * @return {@code true}, если астра по имени распознаётся как точка этого набора.
+     */
+    public boolean contains(Astra astra) {
+        return contains(AstraCatalogue.idOf(astra.getName()));
+    }
+
+    public int size() {
+        return members.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * @return новый набор из точек, входящих в этот или другой набор.
      */
+    public AstroSet union(AstroSet other) {
+        BitSet result = (BitSet) members.clone();
+        result.or(other.members);
+        return new AstroSet(result);
+    }
+
+    /**
+     * @return новый набор из точек, входящих и в этот, и в другой набор.
+     */
+    public AstroSet intersection(AstroSet other) {
+        BitSet result = (BitSet) members.clone();
+        result.and(other.members);
+        return new AstroSet(result);
+    }
+
+    /**
+     * @return номера точек набора по возрастанию.
+     */
+    public IntStream ids() {
+        return members.stream();
+    }
+
+    /**
+     * @return точки каталога, входящие в набор, по возрастанию номеров.
+     */
+    public Stream<AstraCatalogue.Entry> entries() {
+        return ids().mapToObj(AstraCatalogue::get);
+    }
+
+    /**
+     * @return стандартные астросущности, входящие в набор, по ординалу.
+     */
+    public AstraEntity[] values() {
+        AstraEntity[] all = AstraEntity.values();
+        return members.stream()
+                .takeWhile(id -> id < all.length)
+                .mapToObj(id -> all[id])
+                .toArray(AstraEntity[]::new);
+    }
+
+    @Override
+    public Iterator<AstraEntity> iterator() {
+        return Arrays.asList(values()).iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super AstraEntity> action) {
+        Arrays.stream(values()).forEach(action);
+    }
+
     @Override
     public Spliterator<AstraEntity> spliterator() {
-        return Arrays.spliterator(astras);
+        return Arrays.spliterator(values());
     }
 }
-
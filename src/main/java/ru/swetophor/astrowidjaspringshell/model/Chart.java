@@ -80,6 +80,13 @@ public final class Chart extends ChartObject {
         return 1;
     }
 
+    @Override
+    public Chart copyWithName(String name) {
+        return new Chart(name, astras.stream()
+                .map(astra -> new Astra(astra.getName(), astra.getZodiacPosition()))
+                .toList());
+    }
+
     public void addAstra(Astra astra) {
         astra.setHeaven(this);
         var name = astra.getName();
@@ -88,8 +95,8 @@ public final class Chart extends ChartObject {
                 astras.set(i, astra);
                 return;
             }
-            astras.add(astra);
         }
+        astras.add(astra);
     }
 
     public Astra getAstra(String name) {
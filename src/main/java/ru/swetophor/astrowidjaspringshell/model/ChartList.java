@@ -2,7 +2,6 @@ package ru.swetophor.astrowidjaspringshell.model;
 
 
 import ru.swetophor.astrowidjaspringshell.exception.ChartNotFoundException;
-import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
 
 import java.util.*;
 import java.util.function.Consumer;
@@ -24,6 +23,10 @@ public class ChartList {
      * Имена хранимых в списке карт.
      */
     private final List<String> names = new ArrayList<>();
+    /**
+     * Сколько карт списка носит каждое имя: проверка имени без прохода по списку.
+     */
+    private final Map<String, Integer> nameCount = new HashMap<>();
     private String listName = "список карт";
     protected transient int modCount = 0;
 
@@ -79,18 +82,31 @@ public class ChartList {
 
     /**
      * Процедура добавления карты к списку. Если название карты входит в
-     * коллизию с именем уже присутствующей карты, запускается интерактивная процедура
-     * в соответствии с методом {@link Mechanics#resolveCollision(ChartObject, String)}.
+     * коллизию с именем уже присутствующей карты, она разрешается
+     * по {@link CollisionPolicy#DEFAULT правилу по умолчанию}.
      *
      * @param chart      добавляемая карта.
-     * @param toListName название пополняемого списка (в предложном падеже,
-     *                   аналогично вышеуказанному методу).
-     * @return {@code ДА}, если список был обновлён в результате операции, или {@code НЕТ},
-     * если была выбрана отмена.
+     * @param toListName название пополняемого списка (в предложном падеже).
+     * @return {@code ДА}, если список был обновлён в результате операции.
      */
     public boolean addResolving(ChartObject chart, String toListName) {
+        return addResolving(chart, toListName, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Процедура добавления карты к списку, с разрешением коллизии имён
+     * по указанному правилу.
+     *
+     * @param chart      добавляемая карта.
+     * @param toListName название пополняемого списка (в предложном падеже).
+     * @param policy     что делать, если имя карты уже есть в списке.
+     * @return {@code ДА}, если список был обновлён в результате операции.
+     * @throws ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException
+     *          если имя занято, а правило {@link CollisionPolicy#FAIL}.
+     */
+    public boolean addResolving(ChartObject chart, String toListName, CollisionPolicy policy) {
         return contains(chart.getName()) ?
-                Mechanics.resolveCollision(this, chart, toListName) :
+                policy.resolve(this, chart, toListName) :
                 addItem(chart);
     }
 
@@ -144,18 +160,26 @@ public class ChartList {
 
     /**
      * Добавляет в список указанную карту.
-     * Если карта с таким именем уже в наличии, запускает интерактивную процедуру разрешения
-     * конфликта {@link Mechanics#resolveCollision(ChartList, ChartObject, String)} (с названием списка "этот список").
+     * Если карта с таким именем уже в наличии, коллизия разрешается
+     * по {@link CollisionPolicy#DEFAULT правилу по умолчанию}.
      *
      * @param chart добавляемая.
      * @return {@code true}, если список изменился в результате операции.
      */
     public boolean add(ChartObject chart) {
+        return add(chart, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Добавляет в список указанную карту, разрешая коллизию имён по указанному правилу.
+     *
+     * @param chart  добавляемая.
+     * @param policy что делать, если имя карты уже есть в списке.
+     * @return {@code true}, если список изменился в результате операции.
+     */
+    public boolean add(ChartObject chart, CollisionPolicy policy) {
         int mod = this.modCount;
-        if (contains(chart.getName()))
-            Mechanics.resolveCollision(this, chart, "этом списке");
-        else
-            addItem(chart);
+        addResolving(chart, "этом списке", policy);
         return this.modCount != mod;
     }
 
@@ -166,9 +190,21 @@ public class ChartList {
      * в результате вызова.
      */
     public boolean addAll(Collection<ChartObject> collection) {
+        return addAll(collection, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Добавляет к этому картосписку все карты из коллекции,
+     * разрешая коллизии имён по указанному правилу.
+     * @param collection любая коллекция карт.
+     * @param policy     что делать с картами, чьи имена уже есть в списке.
+     * @return  {@code true}, если картосписок изменился
+     * в результате вызова.
+     */
+    public boolean addAll(Collection<ChartObject> collection, CollisionPolicy policy) {
         if (collection == null) return false;
         int mod = this.modCount;
-        collection.forEach(this::add);
+        collection.forEach(chart -> add(chart, policy));
         return this.modCount != mod;
     }
 
@@ -180,7 +216,9 @@ public class ChartList {
      */
     public boolean addAll(int i, Collection<ChartObject> collection) {
         ++this.modCount;
-        names.addAll(i, collection.stream().map(ChartObject::getName).toList());
+        List<String> adding = collection.stream().map(ChartObject::getName).toList();
+        names.addAll(i, adding);
+        adding.forEach(this::countName);
         return charts.addAll(i, collection);
     }
 
@@ -218,6 +256,7 @@ public class ChartList {
         if (!isEmpty()) {
             charts.clear();
             names.clear();
+            nameCount.clear();
             ++this.modCount;
         }
     }
@@ -231,7 +270,8 @@ public class ChartList {
      * @throws IndexOutOfBoundsException если указана неадекватная позиция i.
      */
     public ChartObject setItem(int i, ChartObject chartObject) {
-        names.set(i, chartObject.getName());
+        uncountName(names.set(i, chartObject.getName()));
+        countName(chartObject.getName());
         ++this.modCount;
         return charts.set(i, chartObject);
     }
@@ -243,6 +283,7 @@ public class ChartList {
     public void insertItem(int i, ChartObject chartObject) {
         charts.add(i, chartObject);
         names.add(i, chartObject.getName());
+        countName(chartObject.getName());
     }
 
     /**
@@ -250,7 +291,7 @@ public class ChartList {
      * @return
      */
     public ChartObject remove(int i) {
-        names.remove(i);
+        uncountName(names.remove(i));
         ++this.modCount;
         return charts.remove(i);
     }
@@ -327,6 +368,7 @@ public class ChartList {
         names.retainAll(chartsToNames(collection));
         boolean changed = charts.retainAll(collection);
         if (changed) ++this.modCount;
+        recountNames();
         return changed;
     }
 
@@ -347,6 +389,7 @@ public class ChartList {
     public boolean removeAll(Collection<ChartObject> collection) {
         names.removeAll(chartsToNames(collection));
         boolean changed = charts.removeAll(collection);
+        recountNames();
         if (changed)
             ++this.modCount;
         return changed;
@@ -373,10 +416,24 @@ public class ChartList {
         if (add) {
             ++this.modCount;
             names.add(chart.getName());
+            countName(chart.getName());
         }
         return add;
     }
 
+    private void countName(String name) {
+        nameCount.merge(name, 1, Integer::sum);
+    }
+
+    private void uncountName(String name) {
+        nameCount.computeIfPresent(name, (n, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void recountNames() {
+        nameCount.clear();
+        names.forEach(this::countName);
+    }
+
     /**
      * Даёт карту по её индексу в списке.
      *
@@ -407,7 +464,7 @@ public class ChartList {
      * @return список имён карт в историческом порядке.
      */
     public List<String> getNames() {
-        return names;
+        return Collections.unmodifiableList(names);
     }
 
     /**
@@ -426,7 +483,7 @@ public class ChartList {
      * @return да, если есть, нет, если нет.
      */
     public boolean contains(String name) {
-        return names.contains(name);
+        return nameCount.containsKey(name);
     }
 
     /**
@@ -449,7 +506,7 @@ public class ChartList {
     public void remove(String name) {
         int index = names.indexOf(name);
         charts.remove(index);
-        names.remove(index);
+        uncountName(names.remove(index));
     }
 
     /**
@@ -461,7 +518,7 @@ public class ChartList {
      */
     public void remove(ChartObject item) {
         int index = charts.indexOf(item);
-        names.remove(index);
+        uncountName(names.remove(index));
         charts.remove(index);
     }
 
@@ -17,6 +17,14 @@ public abstract class ChartObject {
 
     public abstract int getDimension();
 
+    /**
+     * Выдаёт копию карты под другим именем; исходная карта не меняется.
+     *
+     * @param name имя копии.
+     * @return новую карту с теми же астрами и положениями.
+     */
+    public abstract ChartObject copyWithName(String name);
+
     /**
      * Выдаёт имя карты. Если оно длиннее указанного предела,
      * выдаёт его первые буквы и символ "…" в конце, так чтобы
@@ -0,0 +1,59 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Сохраняемый итог расчёта пар астр одиночной карты, из которого
+ * {@link MatrixBuffer#load(ChartResonances)} восстанавливает матрицу без перерасчёта аспектов.
+ * <p>Для каждой пары астр {@code i < j} (пары по строкам: (0,1), (0,2) … (1,2) …)
+ * хранятся дуга и битовый набор гармоник, в которых у пары есть аспект
+ * ({@link ResonanceBatch#hasGivenHarmonic(int)}). Зазор в любой гармонике
+ * получается из дуги точно, как {@link ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics#getArcForHarmonic(double, int)},
+ * поэтому вместо зазоров по гармоникам хранится одна дуга на пару.</p>
+ *
+ * @param contentHash отпечаток имён и позиций астр, как {@link #contentHash(Chart)}.
+ * @param orb         первичный орбис расчёта.
+ * @param edge        предельная гармоника расчёта.
+ * @param count       число астр.
+ * @param arcs        дуги пар.
+ * @param given       гармоники аспектов пар, {@code (edge >> 6) + 1} слов на пару.
+ */
+public record ChartResonances(long contentHash, double orb, int edge, int count, double[] arcs, long[] given) {
+
+    /**
+     * @return число слов битового набора гармоник одной пары.
+     */
+    public static int words(int edge) {
+        return (edge >> 6) + 1;
+    }
+
+    /**
+     * @return число пар астр.
+     */
+    public int pairs() {
+        return count * (count - 1) / 2;
+    }
+
+    /**
+     * @return годится ли этот расчёт для карты с таким отпечатком при таких настройках.
+     */
+    public boolean matches(long contentHash, double orb, int edge) {
+        return this.contentHash == contentHash && this.orb == orb && this.edge == edge;
+    }
+
+    /**
+     * Отпечаток содержимого карты: имена астр и точные позиции по порядку.
+     * Меняется при любом изменении состава или положения астр.
+     */
+    public static long contentHash(Chart chart) {
+        List<Astra> astras = chart.getAstras();
+        long hash = 0xcbf29ce484222325L;
+        for (Astra astra : astras) {
+            for (byte b : astra.getName().getBytes(StandardCharsets.UTF_8))
+                hash = (hash ^ b) * 0x100000001b3L;
+            hash = (hash ^ Double.doubleToLongBits(astra.getZodiacPosition())) * 0x100000001b3L;
+        }
+        return hash ^ astras.size();
+    }
+}
@@ -0,0 +1,63 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException;
+
+/**
+ * Что делать, если имя добавляемой в список карты уже есть в списке.
+ * Правило выбирается на операцию и не спрашивает пользователя,
+ * так что загрузка и слияние альбомов идут без остановок.
+ */
+public enum CollisionPolicy {
+    /**
+     * Добавить копию под именем с номером: "Имя (2)", "Имя (3)"…;
+     * сама добавляемая карта имени не меняет.
+     */
+    RENAME,
+    /**
+     * Поставить новую карту на место прежней с этим именем.
+     */
+    REPLACE,
+    /**
+     * Оставить прежнюю карту, новую не добавлять.
+     */
+    SKIP,
+    /**
+     * Прервать операцию исключением {@link ChartCollisionException}.
+     */
+    FAIL;
+
+    /**
+     * Правило для операций, где оно не указано: ничего не теряется.
+     */
+    public static final CollisionPolicy DEFAULT = RENAME;
+
+    /**
+     * Добавляет к списку карту, имя которой уже в нём есть.
+     *
+     * @param list     пополняемый список.
+     * @param chart    добавляемая карта.
+     * @param listName название списка в предложном падеже, для сообщения об ошибке.
+     * @return {@code ДА}, если список изменился.
+     * @throws ChartCollisionException если правило {@link #FAIL}.
+     */
+    boolean resolve(ChartList list, ChartObject chart, String listName) {
+        switch (this) {
+            case RENAME -> {
+                String base = chart.getName();
+                int number = 2;
+                while (list.contains("%s (%d)".formatted(base, number)))
+                    number++;
+                return list.addItem(chart.copyWithName("%s (%d)".formatted(base, number)));
+            }
+            case REPLACE -> {
+                list.setItem(list.indexOf(chart.getName()), chart);
+                return true;
+            }
+            case SKIP -> {
+                return false;
+            }
+            default -> throw new ChartCollisionException("Карта с именем '%s' уже есть %s"
+                    .formatted(chart.getName(), listName.startsWith("на ") ? listName : "в " + listName));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Упорядоченный по времени ряд эклиптических долгот астр, прочитанный
+ * из табличной эфемериды. Таблица — текст с разделителем-табуляцией: в заголовке
+ * первая колонка — время, остальные озаглавлены названиями астр (распознаются
+ * {@link AstraCatalogue#canonicalName(String) по каталогу}); в строках — дата
+ * ({@code 2024-03-01}) или дата-время ({@code 2024-03-01T12:00} либо через пробел)
+ * по UTC и долготы в градусах. Пустые строки и строки с "//" пропускаются.
+ * <p>Долготы каждой астры хранятся развёрнутыми: соседние отсчёты отличаются
+ * меньше чем на полкруга, так что движение между отсчётами, включая попятное,
+ * непрерывно и может интерполироваться линейно.</p>
+ */
+@Getter
+public class EphemerisSeries {
+    /**
+     * Моменты отсчётов в секундах эпохи UTC, по возрастанию.
+     */
+    private final double[] times;
+    /**
+     * Названия астр в порядке колонок.
+     */
+    private final List<String> astraNames;
+    /**
+     * Развёрнутые долготы: {@code [астра][отсчёт]}.
+     */
+    private final double[][] longitudes;
+
+    public EphemerisSeries(double[] times, List<String> astraNames, double[][] longitudes) {
+        for (int i = 1; i < times.length; i++)
+            if (times[i] <= times[i - 1])
+                throw new IllegalArgumentException("Отсчёты эфемериды не упорядочены по времени");
+        this.times = times;
+        this.astraNames = astraNames;
+        this.longitudes = longitudes;
+        for (double[] series : longitudes)
+            unwrap(series);
+    }
+
+    /**
+     * Разворачивает ряд долгот на месте, убирая скачки через 0°.
+     */
+    private static void unwrap(double[] series) {
+        for (int i = 1; i < series.length; i++) {
+            double step = series[i] - series[i - 1];
+            step -= 360.0 * Math.round(step / 360.0);
+            series[i] = series[i - 1] + step;
+        }
+    }
+
+    /**
+     * Читает эфемериду из табличного файла.
+     *
+     * @param source путь к файлу.
+     * @return прочитанный ряд.
+     * @throws IOException если файл не читается.
+     * @throws IllegalArgumentException если строка таблицы не распознана.
+     */
+    public static EphemerisSeries read(Path source) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null)
+                throw new IllegalArgumentException("Пустая эфемерида " + source);
+            String[] columns = header.split("\t");
+            List<String> names = Arrays.stream(columns, 1, columns.length)
+                    .map(AstraCatalogue::canonicalName)
+                    .toList();
+
+            List<double[]> rows = new ArrayList<>();
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("//")) continue;
+                String[] cells = line.split("\t");
+                if (cells.length != columns.length)
+                    throw new IllegalArgumentException("Строка %d: ожидалось %d колонок, найдено %d"
+                            .formatted(lineNumber, columns.length, cells.length));
+                double[] row = new double[cells.length];
+                row[0] = parseTime(cells[0]);
+                for (int i = 1; i < cells.length; i++)
+                    row[i] = Double.parseDouble(cells[i].trim());
+                rows.add(row);
+            }
+
+            double[] times = new double[rows.size()];
+            double[][] longitudes = new double[names.size()][rows.size()];
+            for (int r = 0; r < rows.size(); r++) {
+                times[r] = rows.get(r)[0];
+                for (int a = 0; a < names.size(); a++)
+                    longitudes[a][r] = rows.get(r)[a + 1];
+            }
+            return new EphemerisSeries(times, names, longitudes);
+        }
+    }
+
+    /**
+     * @param cell дата или дата-время UTC.
+     * @return момент в секундах эпохи.
+     */
+    public static double parseTime(String cell) {
+        String text = cell.trim().replace(' ', 'T');
+        LocalDateTime time = text.contains("T") ?
+                LocalDateTime.parse(text) :
+                LocalDate.parse(text).atStartOfDay();
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param seconds момент в секундах эпохи.
+     * @return этот момент как дата-время UTC с точностью до минуты.
+     */
+    public static LocalDateTime toDateTime(double seconds) {
+        return LocalDateTime.ofEpochSecond(Math.round(seconds / 60) * 60, 0, ZoneOffset.UTC);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @param name название астры.
+     * @return номер колонки астры или -1, если её нет в эфемериде.
+     */
+    public int indexOf(String name) {
+        return astraNames.indexOf(name);
+    }
+}
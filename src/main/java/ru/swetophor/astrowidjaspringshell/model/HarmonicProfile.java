@@ -0,0 +1,261 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * Гармонический профиль совокупности карт: по каждой гармонике от 1 до предельной
+ * накапливает, в скольких картах есть паттерны, сколько паттернов, среднее
+ * и дисперсию силы паттернов, среднее и дисперсию числа астр в паттернах на карту,
+ * а также сколько раз каждая астра входила в паттерн.
+ * <p>Накопители примитивные и сливаемые: среднее и дисперсия ведутся по Уэлфорду,
+ * частичные профили, собранные параллельно, объединяются
+ * по формуле Чана ({@link #combine(HarmonicProfile)}), так что профиль
+ * собирается параллельным потоком через {@link #collector(int)}.</p>
+ */
+public class HarmonicProfile {
+    /**
+     * Предельная гармоника профиля.
+     */
+    private final int edge;
+    /**
+     * Сколько карт учтено.
+     */
+    private long charts;
+    /**
+     * По гармоникам (индекс = гармоника): в скольких картах найден хоть один паттерн.
+     */
+    private final long[] chartsWithPatterns;
+    /**
+     * По гармоникам: количество паттернов, среднее и сумма квадратов отклонений их силы.
+     */
+    private final long[] patterns;
+    private final double[] strengthMean;
+    private final double[] strengthM2;
+    /**
+     * По гармоникам: среднее и сумма квадратов отклонений числа астр
+     * в паттернах на одну карту (по всем картам, включая карты без паттернов).
+     */
+    private final double[] participationMean;
+    private final double[] participationM2;
+    /**
+     * Имя астры → по гармоникам, в скольких паттернах она участвовала.
+     */
+    private final Map<String, long[]> astraParticipation = new TreeMap<>();
+
+    public HarmonicProfile(int edge) {
+        this.edge = edge;
+        chartsWithPatterns = new long[edge + 1];
+        patterns = new long[edge + 1];
+        strengthMean = new double[edge + 1];
+        strengthM2 = new double[edge + 1];
+        participationMean = new double[edge + 1];
+        participationM2 = new double[edge + 1];
+    }
+
+    /**
+     * @param edge предельная гармоника.
+     * @return параллельный собиратель профиля из узор-разборов отдельных карт.
+     */
+    public static Collector<PatternAnalysis, HarmonicProfile, HarmonicProfile> collector(int edge) {
+        return Collector.of(() -> new HarmonicProfile(edge),
+                HarmonicProfile::accept,
+                HarmonicProfile::combine);
+    }
+
+    /**
+     * Учитывает в профиле узор-разбор одной карты (или одного сочетания карт).
+     * @param analysis узор-разбор.
+     */
+    public void accept(PatternAnalysis analysis) {
+        charts++;
+        for (int h = 1; h <= edge; h++) {
+            List<Pattern> found = analysis.getPatternsFor(h);
+            int astras = 0;
+            for (Pattern pattern : found) {
+                patterns[h]++;
+                double delta = pattern.getAverageStrength() - strengthMean[h];
+                strengthMean[h] += delta / patterns[h];
+                strengthM2[h] += delta * (pattern.getAverageStrength() - strengthMean[h]);
+                astras += pattern.size();
+                for (Astra astra : pattern.getAstrasByConnectivity())
+                    astraParticipation.computeIfAbsent(astra.getName(), n -> new long[edge + 1])[h]++;
+            }
+            if (!found.isEmpty())
+                chartsWithPatterns[h]++;
+            double delta = astras - participationMean[h];
+            participationMean[h] += delta / charts;
+            participationM2[h] += delta * (astras - participationMean[h]);
+        }
+    }
+
+    /**
+     * Учитывает в профиле одиночную карту, уже загруженную в буфер матрицы,
+     * по тем же правилам, что {@link #accept(PatternAnalysis)}.
+     * @param buffer буфер с загруженной картой.
+     * @param names  имена астр карты в порядке загрузки.
+     */
+    public void accept(MatrixBuffer buffer, List<String> names) {
+        charts++;
+        int n = buffer.size();
+        for (int h = 1; h <= edge; h++) {
+            buffer.analyzeHarmonic(h);
+            int astras = 0;
+            boolean found = false;
+            for (int root = 0; root < n; root++) {
+                if (buffer.patternOf(root) != root || !buffer.inValidPattern(root)) continue;
+                found = true;
+                patterns[h]++;
+                double strength = buffer.patternStrength(root);
+                double delta = strength - strengthMean[h];
+                strengthMean[h] += delta / patterns[h];
+                strengthM2[h] += delta * (strength - strengthMean[h]);
+                astras += buffer.patternSize(root);
+                for (int a = 0; a < n; a++)
+                    if (buffer.patternOf(a) == root)
+                        astraParticipation.computeIfAbsent(names.get(a), k -> new long[edge + 1])[h]++;
+            }
+            if (found)
+                chartsWithPatterns[h]++;
+            double delta = astras - participationMean[h];
+            participationMean[h] += delta / charts;
+            participationM2[h] += delta * (astras - participationMean[h]);
+        }
+    }
+
+    /**
+     * Вливает в этот профиль другой, собранный по другой части совокупности.
+     * @param other другой профиль той же предельной гармоники.
+     * @return этот профиль.
+     */
+    public HarmonicProfile combine(HarmonicProfile other) {
+        if (other.edge != edge)
+            throw new IllegalArgumentException("Профили с разной предельной гармоникой не сливаются");
+        for (int h = 1; h <= edge; h++) {
+            mergeMoments(patterns[h], strengthMean, strengthM2, other.patterns[h],
+                    other.strengthMean[h], other.strengthM2[h], h);
+            mergeMoments(charts, participationMean, participationM2, other.charts,
+                    other.participationMean[h], other.participationM2[h], h);
+            patterns[h] += other.patterns[h];
+            chartsWithPatterns[h] += other.chartsWithPatterns[h];
+        }
+        charts += other.charts;
+        other.astraParticipation.forEach((name, counts) -> {
+            long[] own = astraParticipation.computeIfAbsent(name, n -> new long[edge + 1]);
+            for (int h = 1; h <= edge; h++)
+                own[h] += counts[h];
+        });
+        return this;
+    }
+
+    /**
+     * Слияние среднего и суммы квадратов отклонений двух выборок по Чану.
+     */
+    private static void mergeMoments(long n, double[] mean, double[] m2,
+                                     long otherN, double otherMean, double otherM2, int h) {
+        if (otherN == 0) return;
+        long total = n + otherN;
+        double delta = otherMean - mean[h];
+        mean[h] += delta * otherN / total;
+        m2[h] += otherM2 + delta * delta * ((double) n * otherN / total);
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    public long getCharts() {
+        return charts;
+    }
+
+    public long getPatternCount(int harmonic) {
+        return patterns[harmonic];
+    }
+
+    /**
+     * @return долю карт, где по гармонике найден хоть один паттерн.
+     */
+    public double getPatternRate(int harmonic) {
+        return charts == 0 ? 0 : (double) chartsWithPatterns[harmonic] / charts;
+    }
+
+    public double getStrengthMean(int harmonic) {
+        return strengthMean[harmonic];
+    }
+
+    /**
+     * @return выборочную дисперсию силы паттернов по гармонике.
+     */
+    public double getStrengthVariance(int harmonic) {
+        return patterns[harmonic] < 2 ? 0 : strengthM2[harmonic] / (patterns[harmonic] - 1);
+    }
+
+    public double getParticipationMean(int harmonic) {
+        return participationMean[harmonic];
+    }
+
+    /**
+     * @return выборочную дисперсию числа астр в паттернах на карту по гармонике.
+     */
+    public double getParticipationVariance(int harmonic) {
+        return charts < 2 ? 0 : participationM2[harmonic] / (charts - 1);
+    }
+
+    /**
+     * @return сколько раз астра входила в паттерны по гармонике.
+     */
+    public long getAstraParticipation(String astraName, int harmonic) {
+        long[] counts = astraParticipation.get(astraName);
+        return counts == null ? 0 : counts[harmonic];
+    }
+
+    /**
+     * Выдаёт таблицу профиля: по строке на гармонику с долей карт с паттернами,
+     * числом паттернов, средней силой (± ст. откл.) и средним числом астр
+     * в паттернах на карту (± ст. откл.).
+     * @return многостроку таблицы.
+     */
+    public String getTable() {
+        StringBuilder table = new StringBuilder("Профиль по %d картам%n".formatted(charts))
+                .append("  h  карт%%  паттернов  сила          астр на карту%n".formatted());
+        for (int h = 1; h <= edge; h++)
+            table.append("%3d  %5.1f  %9d  %5.1f ± %4.1f  %5.2f ± %4.2f%n".formatted(h,
+                    getPatternRate(h) * 100, patterns[h],
+                    strengthMean[h], Math.sqrt(getStrengthVariance(h)),
+                    participationMean[h], Math.sqrt(getParticipationVariance(h))));
+        return table.toString();
+    }
+
+    /**
+     * Сравнивает профиль с базовым. По каждой гармонике выдаёт разность долей
+     * карт с паттернами, разность средней силы с t-статистикой Уэлча и разность
+     * среднего числа астр в паттернах с t-статистикой Уэлча.
+     * @param baseline базовый профиль той же предельной гармоники.
+     * @return многостроку сравнения.
+     */
+    public String compareWith(HarmonicProfile baseline) {
+        int top = Math.min(edge, baseline.edge);
+        StringBuilder table = new StringBuilder("Сравнение: %d карт против %d базовых%n"
+                .formatted(charts, baseline.charts))
+                .append("  h  Δкарт%%   Δсила (t)        Δастр (t)%n".formatted());
+        for (int h = 1; h <= top; h++)
+            table.append("%3d  %+6.1f  %+6.1f (%+5.1f)  %+6.2f (%+5.1f)%n".formatted(h,
+                    (getPatternRate(h) - baseline.getPatternRate(h)) * 100,
+                    strengthMean[h] - baseline.strengthMean[h],
+                    welch(strengthMean[h], getStrengthVariance(h), patterns[h],
+                            baseline.strengthMean[h], baseline.getStrengthVariance(h), baseline.patterns[h]),
+                    participationMean[h] - baseline.participationMean[h],
+                    welch(participationMean[h], getParticipationVariance(h), charts,
+                            baseline.participationMean[h], baseline.getParticipationVariance(h), baseline.charts)));
+        return table.toString();
+    }
+
+    /**
+     * @return t-статистику Уэлча для разности двух средних или 0, если она не определена.
+     */
+    private static double welch(double mean1, double var1, long n1, double mean2, double var2, long n2) {
+        if (n1 == 0 || n2 == 0) return 0;
+        double se = Math.sqrt(var1 / n1 + var2 / n2);
+        return se == 0 ? 0 : (mean1 - mean2) / se;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+/**
+ * Гармонические карты набора позиций: для каждой гармоники {@code N} от 1 до предельной
+ * позиции умножаются на {@code N} и приводятся к кругу. Все гармоники считаются
+ * одним проходом при создании, так что соединения в карте {@code N} — это
+ * резонанс {@code N} в исходной карте.
+ * <p>Соединения в гармонической карте ищутся сортировкой и проходом по кругу:
+ * позиции упорядочиваются, и для каждой берутся следующие за ней, пока расстояние
+ * меньше орбиса, — {@code O(n log n + k)} вместо перебора всех пар. Найденные
+ * кандидаты проверяются точным зазором по дуге, как
+ * {@link ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics#getArcForHarmonic(double, int)},
+ * поэтому результат совпадает с попарным расчётом до бита и годится для сверки
+ * с {@link ResonanceBatch}.</p>
+ * <p>Буферы сортировки общие для всех гармоник, так что объект не потокобезопасен.</p>
+ */
+public final class HarmonicProjection {
+    private static final double INVERSE_CIRCLE = 1 / CIRCLE;
+    /**
+     * Запас к орбису при проходе: проекции вычислены с погрешностью округления,
+     * окончательное решение принимается по точному зазору.
+     */
+    private static final double SWEEP_MARGIN = 1e-9;
+    /**
+     * Битов под номер астры в упакованном ключе сортировки.
+     */
+    private static final int INDEX_BITS = 16;
+    private static final double KEY_SCALE = (1L << (63 - INDEX_BITS)) / CIRCLE;
+
+    private final int count;
+    private final int edge;
+    private final double[] positions;
+    /**
+     * Гармонические позиции: {@code [гармоника][астра]}, строка 0 не используется.
+     */
+    private final double[][] projections;
+    private final long[] keys;
+    private final int[] order;
+    private final double[] sorted;
+
+    /**
+     * Обработчик найденного соединения.
+     */
+    @FunctionalInterface
+    public interface PairVisitor {
+        /**
+         * @param i         номер первой астры, меньший.
+         * @param j         номер второй астры.
+         * @param clearance зазор между ними в гармонике.
+         */
+        void visit(int i, int j, double clearance);
+    }
+
+    /**
+     * Строит гармонические карты позиций до предельной гармоники.
+     *
+     * @param zodiacPositions зодиакальные позиции астр.
+     * @param edge            предельная гармоника.
+     */
+    public HarmonicProjection(double[] zodiacPositions, int edge) {
+        if (zodiacPositions.length >= 1 << INDEX_BITS)
+            throw new IllegalArgumentException("Слишком много астр: " + zodiacPositions.length);
+        this.count = zodiacPositions.length;
+        this.edge = edge;
+        this.positions = new double[count];
+        for (int i = 0; i < count; i++)
+            positions[i] = normalizeCoordinate(zodiacPositions[i]);
+        this.projections = new double[edge + 1][count];
+        for (int h = 1; h <= edge; h++) {
+            double[] row = projections[h];
+            for (int i = 0; i < count; i++) {
+                double x = positions[i] * h;
+                double p = x - CIRCLE * Math.floor(x * INVERSE_CIRCLE);
+                row[i] = p >= CIRCLE ? p - CIRCLE : p < 0 ? p + CIRCLE : p;
+            }
+        }
+        this.keys = new long[count];
+        this.order = new int[count];
+        this.sorted = new double[count];
+    }
+
+    /**
+     * Строит гармонические карты для астр карты в порядке {@link Chart#getAstras()}.
+     */
+    public static HarmonicProjection of(Chart chart, int edge) {
+        return new HarmonicProjection(chart.getAstras().stream()
+                .mapToDouble(Astra::getZodiacPosition)
+                .toArray(), edge);
+    }
+
+    /**
+     * Строит карту указанной гармоники: те же астры в позициях, умноженных на гармонику.
+     *
+     * @param chart    исходная карта.
+     * @param harmonic номер гармоники.
+     * @return новую карту с именем вида "Карта (N)".
+     */
+    public static Chart harmonicChart(Chart chart, int harmonic) {
+        HarmonicProjection projection = of(chart, harmonic);
+        List<Astra> astras = chart.getAstras();
+        Chart result = new Chart("%s (%d)".formatted(chart.getName(), harmonic));
+        for (int i = 0; i < astras.size(); i++)
+            result.addAstra(new Astra(astras.get(i).getName(), projection.projections[harmonic][i]));
+        return result;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    /**
+     * @return позиции астр в карте указанной гармоники. Массив общий, не изменять.
+     */
+    public double[] projection(int harmonic) {
+        return projections[harmonic];
+    }
+
+    /**
+     * Упорядочивает астры по позиции в карте гармоники.
+     *
+     * @return номера астр по возрастанию гармонической позиции.
+     * Массив общий и переписывается следующим вызовом.
+     */
+    public int[] sortedOrder(int harmonic) {
+        double[] row = projections[harmonic];
+        for (int i = 0; i < count; i++)
+            keys[i] = (long) (row[i] * KEY_SCALE) << INDEX_BITS | i;
+        Arrays.sort(keys);
+        int mask = (1 << INDEX_BITS) - 1;
+        for (int k = 0; k < count; k++) {
+            order[k] = (int) (keys[k] & mask);
+            sorted[k] = row[order[k]];
+        }
+        return order;
+    }
+
+    /**
+     * Находит все пары астр, соединённые в карте гармоники, т.е. с зазором
+     * в этой гармонике меньше орбиса.
+     *
+     * @param harmonic номер гармоники.
+     * @param orb      орбис, меньше полукруга.
+     * @param visitor  получает каждую пару один раз.
+     */
+    public void forEachConjunction(int harmonic, double orb, PairVisitor visitor) {
+        if (count < 2) return;
+        sortedOrder(harmonic);
+        double window = orb + SWEEP_MARGIN;
+        for (int k = 0; k < count; k++) {
+            for (int step = 1; step < count; step++) {
+                int next = k + step;
+                double distance = next < count ?
+                        sorted[next] - sorted[k] :
+                        sorted[next - count] + CIRCLE - sorted[k];
+                if (distance >= window) break;
+                int a = order[k], b = order[next < count ? next : next - count];
+                double clearance = getArcForHarmonic(getArc(positions[a], positions[b]), harmonic);
+                if (clearance < orb)
+                    visitor.visit(Math.min(a, b), Math.max(a, b), clearance);
+            }
+        }
+    }
+
+    /**
+     * @return пары номеров астр, соединённых в карте гармоники, как {@link #forEachConjunction}.
+     */
+    public List<int[]> conjunctions(int harmonic, double orb) {
+        List<int[]> pairs = new ArrayList<>();
+        forEachConjunction(harmonic, orb, (i, j, clearance) -> pairs.add(new int[]{i, j}));
+        return pairs;
+    }
+}
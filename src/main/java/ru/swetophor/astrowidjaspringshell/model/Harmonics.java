@@ -25,6 +25,19 @@ public final class Harmonics extends Number implements Comparable<Harmonics> {
      */
     private final Integer[] multipliers;
 
+    /**
+     * До какого числа разложения на множители хранятся готовыми.
+     */
+    static final int FACTOR_TABLE_EDGE = 1024;
+    /**
+     * Готовые разложения чисел от 0 до {@link #FACTOR_TABLE_EDGE}. Таблица не зависит
+     * ни от настроек, ни от окружения, поэтому в нативном образе класс
+     * инициализируется при сборке и таблица попадает в образ готовой.
+     */
+    private static final List<List<Integer>> FACTORS = IntStream.rangeClosed(0, FACTOR_TABLE_EDGE)
+            .mapToObj(n -> List.copyOf(factorize(n)))
+            .toList();
+
 
     public Harmonics(int number) {
         this.number = number;
@@ -98,9 +111,16 @@ public final class Harmonics extends Number implements Comparable<Harmonics> {
      * @param number неотрицательное число, разлагаемое на множители.
      * @return  список неравных единице множителей, дающих исходное число,
      * от большего к меньшему. Для ноля {0}, для единицы {1}.
+     * Список неизменяем.
      * @throws IllegalArgumentException при отрицательном аргументе.
      */
     public static List<Integer> multipliersExplicate(int number) {
+        return number >= 0 && number <= FACTOR_TABLE_EDGE ?
+                FACTORS.get(number) :
+                List.copyOf(factorize(number));
+    }
+
+    private static List<Integer> factorize(int number) {
         if (number < 0) throw new IllegalArgumentException("функция работает с положительными числами");
         if (number == 0) return List.of(0);
         if (number == 1) return List.of(1);
@@ -94,8 +94,8 @@ public class Matrix {
         datum2 = astras_2.toArray(Astra[]::new);
         type = Arrays.equals(datum1, datum2) ? COSMOGRAM : SYNASTRY;
 
-        this.orbsDivider = type == SYNASTRY &&
-                Settings.isHalfOrbsForDoubles() ?
+        boolean halfOrbs = Settings.snapshot().halfOrbsForDoubles();
+        this.orbsDivider = type == SYNASTRY && halfOrbs ?
                 orbsDivider * 2 :
                 orbsDivider;
 
@@ -107,7 +107,8 @@ public class Matrix {
                 resonanceBatches[i][j] = new ResonanceBatch(datum1[i],
                         datum2[j],
                         CIRCLE / this.orbsDivider,
-                        this.edgeHarmonic);
+                        this.edgeHarmonic,
+                        halfOrbs);
     }
 
     /**
@@ -0,0 +1,449 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+/**
+ * Переиспользуемый примитивный буфер резонансной матрицы для массовых расчётов.
+ * Воспроизводит правила {@link ResonanceBatch} (отбор аспектов по орбису
+ * с отсечением кратных, множитель по {@link Harmonics#findMultiplier},
+ * глубина как {@code floor(орбис / зазор)}) и {@link AstroMatrix#findPatterns(int)}
+ * (паттерн — связная компонента по {@link ResonanceBatch#hasHarmonicPattern(int)},
+ * валидна при наличии хотя бы одной пары с номинальным аспектом этой гармоники,
+ * сила — по среднему зазору всех пар паттерна, как в {@link Pattern#getAverageStrength()}),
+ * но без объектов: позиции, дуги и битовые наборы связей лежат в массивах,
+ * выделенных один раз под наибольшее число астр.
+ * <p>Расчёт одиночной карты можно снять ({@link #snapshot(long)}) и затем загрузить
+ * обратно ({@link #load(ChartResonances)}) без перерасчёта аспектов.</p>
+ * <p>Зазоры в гармониках берутся
+ * {@link ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics#getArcForHarmonic(double, int)}:
+ * остаток от деления на Круг — через {@code floor} с поправкой, а не через {@code %}.
+ * Разность {@code x - 360k} при верном {@code k} вычисляется точно, так что результат
+ * побитно совпадает с {@code x % 360}, но без медленного {@code fmod}.</p>
+ * <p>Буфер не потокобезопасен: каждому рабочему потоку — свой буфер.</p>
+ */
+public final class MatrixBuffer {
+
+    /**
+     * Способ загрузить в буфер карту с данным номером: расчётом по позициям
+     * или готовым сохранённым расчётом.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        void load(MatrixBuffer buffer, int chart);
+    }
+
+    private final int capacity;
+    private final int edge;
+    /**
+     * Длина битового набора гармоник одной пары в словах {@code long}.
+     */
+    private final int words;
+
+    private int n;
+    private double primalOrb;
+    private boolean halfOrbsForDoubles;
+    private final double[] positions;
+    private final int[] heavens;
+
+    /**
+     * Дуги пар, индекс пары {@code i * capacity + j} при {@code i < j}.
+     */
+    private final double[] arcs;
+    /**
+     * Гармоники, в которых пара связана ({@link ResonanceBatch#hasHarmonicPattern(int)}).
+     */
+    private final long[] connected;
+    /**
+     * Гармоники, по которым у пары есть номинальный аспект ({@link ResonanceBatch#hasGivenHarmonic(int)}).
+     */
+    private final long[] given;
+    /**
+     * Черновик резонансных чисел найденных аспектов пары для отсечения кратных.
+     */
+    private final int[] found;
+
+    // система непересекающихся множеств для поиска паттернов одной гармоники
+    private final int[] parent;
+    private final int[] componentSize;
+    private final boolean[] componentValid;
+    private final boolean[] componentMixed;
+    private final double[] componentClearance;
+    private final int[] firstMember;
+    private final int[] nextMember;
+    private final int[] linkedPairs;
+    private int analyzedHarmonic;
+
+    // итоги по гармоникам после analyze()
+    private final int[] patternCount;
+    private final int[] participation;
+    private final double[] weight;
+
+    /**
+     * @param capacity наибольшее число астр в матрице.
+     * @param edge     предельная гармоника.
+     */
+    public MatrixBuffer(int capacity, int edge) {
+        this.capacity = capacity;
+        this.edge = edge;
+        words = (edge >> 6) + 1;
+        positions = new double[capacity];
+        heavens = new int[capacity];
+        arcs = new double[capacity * capacity];
+        connected = new long[capacity * capacity * words];
+        given = new long[capacity * capacity * words];
+        found = new int[edge + 1];
+        parent = new int[capacity];
+        componentSize = new int[capacity];
+        componentValid = new boolean[capacity];
+        componentMixed = new boolean[capacity];
+        componentClearance = new double[capacity];
+        firstMember = new int[capacity];
+        nextMember = new int[capacity];
+        linkedPairs = new int[capacity * capacity];
+        patternCount = new int[edge + 1];
+        participation = new int[edge + 1];
+        weight = new double[edge + 1];
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Загружает астры и рассчитывает все пары.
+     *
+     * @param zodiacPositions    зодиакальные позиции астр.
+     * @param heavenIds          номера карт, к которым принадлежат астры
+     *                           (все нули для одиночной карты).
+     * @param count              сколько астр взять из массивов.
+     * @param primalOrb          первичный орбис, как {@link ru.swetophor.astrowidjaspringshell.config.Settings#getPrimalOrb()}.
+     * @param halfOrbsForDoubles сокращать ли вдвое орбис для астр разных карт.
+     */
+    public void load(double[] zodiacPositions, int[] heavenIds, int count,
+                     double primalOrb, boolean halfOrbsForDoubles) {
+        if (count > capacity)
+            throw new IllegalArgumentException("Буфер рассчитан на %d астр, передано %d".formatted(capacity, count));
+        n = count;
+        this.primalOrb = primalOrb;
+        this.halfOrbsForDoubles = halfOrbsForDoubles;
+        for (int i = 0; i < n; i++) {
+            positions[i] = normalizeCoordinate(zodiacPositions[i]);
+            heavens[i] = heavenIds == null ? 0 : heavenIds[i];
+        }
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++)
+                computePair(i, j);
+        analyzedHarmonic = 0;
+    }
+
+    /**
+     * Загружает астры одиночной карты и рассчитывает все пары.
+     */
+    public void load(double[] zodiacPositions, int count, double primalOrb) {
+        load(zodiacPositions, null, count, primalOrb, false);
+    }
+
+    /**
+     * Загружает астры одиночной карты в порядке {@link Chart#getAstras()} и рассчитывает все пары.
+     */
+    public void load(Chart chart, double primalOrb) {
+        List<Astra> astras = chart.getAstras();
+        if (astras.size() > capacity)
+            throw new IllegalArgumentException("Буфер рассчитан на %d астр, передано %d".formatted(capacity, astras.size()));
+        for (int a = 0; a < astras.size(); a++)
+            positions[a] = astras.get(a).getZodiacPosition();
+        load(positions, null, astras.size(), primalOrb, false);
+    }
+
+    /**
+     * Перерасчёт одной пары по правилам конструктора {@link ResonanceBatch}.
+     */
+    private void computePair(int i, int j) {
+        int pair = i * capacity + j;
+        double arc = abs(positions[i] - positions[j]);
+        if (arc > HALF_CIRCLE) arc = CIRCLE - arc;
+        arcs[pair] = arc;
+        double orb = heavens[i] != heavens[j] && halfOrbsForDoubles ? primalOrb / 2 : primalOrb;
+        resonate(arc, orb, edge, found, connected, given, pair * words);
+    }
+
+    /**
+     * Правила {@link ResonanceBatch} для одной дуги: отмечает гармоники аспектов
+     * и связанность в гармониках до предельной.
+     *
+     * @param arc       дуга между астрами.
+     * @param orb       орбис пары.
+     * @param edge      предельная гармоника.
+     * @param found     рабочий массив не короче {@code edge}.
+     * @param connected биты связанности, заполняются с {@code base}.
+     * @param given     биты аспектов, заполняются с {@code base}.
+     * @param base      первое слово пары в битовых массивах.
+     */
+    static void resonate(double arc, double orb, int edge, int[] found,
+                         long[] connected, long[] given, int base) {
+        int words = (edge >> 6) + 1;
+        Arrays.fill(connected, base, base + words, 0L);
+        Arrays.fill(given, base, base + words, 0L);
+        int aspects = 0;
+        for (int h = 1; h <= edge; h++) {
+            double clearance = getArcForHarmonic(arc, h);
+            if (clearance >= orb || !isNewSimple(h, found, aspects, arc, orb))
+                continue;
+            found[aspects++] = h;
+            given[base + (h >> 6)] |= 1L << h;
+            connectMultiples(connected, base, edge, h, orb / clearance);
+        }
+    }
+
+    /**
+     * Отмечает связанность пары в кратных гармоники аспекта, до глубины {@code floor(орбис / зазор)}.
+     */
+    private static void connectMultiples(long[] connected, int base, int edge, int h, double depthRatio) {
+        long depth = (long) Math.floor(depthRatio);
+        for (long multiple = h, m = 1; m <= depth && multiple <= edge; m++, multiple += h)
+            connected[base + (int) (multiple >> 6)] |= 1L << multiple;
+    }
+
+    /**
+     * Загружает сохранённый расчёт одиночной карты без перерасчёта аспектов:
+     * дуги и гармоники аспектов берутся готовыми, связанность по кратным
+     * восстанавливается по зазорам, как при расчёте.
+     *
+     * @param stored расчёт, снятый {@link #snapshot(long)} с буфера той же предельной гармоники.
+     */
+    public void load(ChartResonances stored) {
+        if (stored.edge() != edge)
+            throw new IllegalArgumentException("Расчёт до %d-й гармоники, буфер до %d-й".formatted(stored.edge(), edge));
+        if (stored.count() > capacity)
+            throw new IllegalArgumentException("Буфер рассчитан на %d астр, передано %d".formatted(capacity, stored.count()));
+        n = stored.count();
+        primalOrb = stored.orb();
+        halfOrbsForDoubles = false;
+        Arrays.fill(heavens, 0, n, 0);
+        double[] storedArcs = stored.arcs();
+        long[] storedGiven = stored.given();
+        int k = 0;
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++, k++) {
+                int pair = i * capacity + j;
+                int base = pair * words;
+                double arc = storedArcs[k];
+                arcs[pair] = arc;
+                System.arraycopy(storedGiven, k * words, given, base, words);
+                Arrays.fill(connected, base, base + words, 0L);
+                for (int w = 0; w < words; w++)
+                    for (long bits = given[base + w]; bits != 0; bits &= bits - 1) {
+                        int h = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        connectMultiples(connected, base, edge, h, primalOrb / getArcForHarmonic(arc, h));
+                    }
+            }
+        analyzedHarmonic = 0;
+    }
+
+    /**
+     * Снимает расчёт пар загруженной одиночной карты для сохранения.
+     *
+     * @param contentHash отпечаток карты, как {@link ChartResonances#contentHash(Chart)}.
+     * @return дуги и гармоники аспектов всех пар.
+     */
+    public ChartResonances snapshot(long contentHash) {
+        int pairs = n * (n - 1) / 2;
+        double[] storedArcs = new double[pairs];
+        long[] storedGiven = new long[pairs * words];
+        int k = 0;
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++, k++) {
+                int pair = i * capacity + j;
+                storedArcs[k] = arcs[pair];
+                System.arraycopy(given, pair * words, storedGiven, k * words, words);
+            }
+        return new ChartResonances(contentHash, primalOrb, edge, n, storedArcs, storedGiven);
+    }
+
+    private static double abs(double x) {
+        return x < 0 ? -x : x;
+    }
+
+    /**
+     * Повторяет отсечение кратных гармоник {@code ResonanceBatch.isNewSimple()}.
+     */
+    private static boolean isNewSimple(int h, int[] found, int aspects, double arc, double orb) {
+        boolean isConjunction = false;
+        for (int a = 0; a < aspects; a++) {
+            int previous = found[a];
+            if (previous == 1)
+                isConjunction = true;
+            if (h % previous != 0)
+                continue;
+            if (isConjunction &&
+                    arc > orb / h &&
+                    Harmonics.findMultiplier(h, arc, orb) == 1)
+                continue;
+            return false;
+        }
+        return true;
+    }
+
+    private int pairIndex(int i, int j) {
+        return i < j ? i * capacity + j : j * capacity + i;
+    }
+
+    /**
+     * @return связаны ли астры в указанной гармонике, как {@link ResonanceBatch#hasHarmonicPattern(int)}.
+     */
+    public boolean isConnected(int i, int j, int harmonic) {
+        return (connected[pairIndex(i, j) * words + (harmonic >> 6)] & 1L << harmonic) != 0;
+    }
+
+    /**
+     * @return есть ли у астр номинальный аспект указанной гармоники, как {@link ResonanceBatch#hasGivenHarmonic(int)}.
+     */
+    public boolean hasGiven(int i, int j, int harmonic) {
+        return (given[pairIndex(i, j) * words + (harmonic >> 6)] & 1L << harmonic) != 0;
+    }
+
+    /**
+     * @return дугу между астрами.
+     */
+    public double arc(int i, int j) {
+        return arcs[pairIndex(i, j)];
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Находит паттерны одной гармоники: связные компоненты, их валидность
+     * и смешанность карт, а для валидных — сумму зазоров всех пар.
+     *
+     * @param harmonic гармоника.
+     */
+    public void analyzeHarmonic(int harmonic) {
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            componentSize[i] = 0;
+            componentValid[i] = false;
+            componentMixed[i] = false;
+            componentClearance[i] = 0;
+            firstMember[i] = -1;
+        }
+        int word = harmonic >> 6;
+        long bit = 1L << harmonic;
+        int linked = 0;
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++) {
+                int pair = i * capacity + j;
+                if ((connected[pair * words + word] & bit) != 0) {
+                    linkedPairs[linked++] = pair;
+                    int a = find(i), b = find(j);
+                    if (a != b) parent[b] = a;
+                }
+            }
+        for (int i = n - 1; i >= 0; i--) {
+            int root = find(i);
+            componentSize[root]++;
+            if (heavens[i] != heavens[root]) componentMixed[root] = true;
+            nextMember[i] = firstMember[root];
+            firstMember[root] = i;
+        }
+        for (int k = 0; k < linked; k++) {
+            int pair = linkedPairs[k];
+            if ((given[pair * words + word] & bit) != 0)
+                componentValid[find(pair / capacity)] = true;
+        }
+        for (int root = 0; root < n; root++) {
+            if (!componentValid[root] || parent[root] != root) continue;
+            double sum = 0;
+            for (int a = firstMember[root]; a != -1; a = nextMember[a])
+                for (int b = nextMember[a]; b != -1; b = nextMember[b])
+                    sum += getArcForHarmonic(arcs[a * capacity + b], harmonic);
+            componentClearance[root] = sum;
+        }
+        analyzedHarmonic = harmonic;
+    }
+
+    /**
+     * @return номер корневой астры паттерна, в который входит астра, по последней
+     * {@link #analyzeHarmonic разобранной} гармонике.
+     */
+    public int patternOf(int i) {
+        return find(i);
+    }
+
+    /**
+     * @return входит ли астра в валидный паттерн по последней разобранной гармонике.
+     */
+    public boolean inValidPattern(int i) {
+        int root = find(i);
+        return componentSize[root] > 1 && componentValid[root];
+    }
+
+    /**
+     * @return число астр в паттерне астры по последней разобранной гармонике.
+     */
+    public int patternSize(int i) {
+        return componentSize[find(i)];
+    }
+
+    /**
+     * @return среднюю силу валидного паттерна астры по последней разобранной гармонике,
+     * как {@link Pattern#getAverageStrength()}; для невалидного — 0.
+     */
+    public double patternStrength(int i) {
+        int root = find(i);
+        int size = componentSize[root];
+        if (size < 2 || !componentValid[root]) return 0.0;
+        double orb = componentMixed[root] && halfOrbsForDoubles ? primalOrb / 2 : primalOrb;
+        return calculateStrength(orb, componentClearance[root] / (size * (size - 1) / 2));
+    }
+
+    /**
+     * Разбирает все гармоники от 1 до предельной и сводит итоги по каждой:
+     * число валидных паттернов, число астр в них и вес —
+     * сумму по паттернам произведения числа астр на среднюю силу в долях.
+     */
+    public void analyze() {
+        for (int h = 1; h <= edge; h++) {
+            analyzeHarmonic(h);
+            int count = 0, astras = 0;
+            double w = 0;
+            for (int i = 0; i < n; i++) {
+                if (parent[i] != i || componentSize[i] < 2 || !componentValid[i]) continue;
+                count++;
+                astras += componentSize[i];
+                w += componentSize[i] * patternStrength(i) / 100;
+            }
+            patternCount[h] = count;
+            participation[h] = astras;
+            weight[h] = w;
+        }
+    }
+
+    public int getPatternCount(int harmonic) {
+        return patternCount[harmonic];
+    }
+
+    public int getParticipation(int harmonic) {
+        return participation[harmonic];
+    }
+
+    public double getWeight(int harmonic) {
+        return weight[harmonic];
+    }
+
+    public int getAnalyzedHarmonic() {
+        return analyzedHarmonic;
+    }
+}
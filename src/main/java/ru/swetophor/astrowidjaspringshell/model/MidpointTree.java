@@ -0,0 +1,245 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+/**
+ * Все мидпойнты астр карты в отсортированном по долготе примитивном массиве
+ * и поиск резонансов с ними.
+ * <p>Мидпойнт пары — середина меньшей дуги между астрами, как
+ * {@link ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics#findMedian(double, double)}.
+ * Точка резонирует с мидпойнтом по гармонике {@code h}, если их зазор в этой гармонике
+ * меньше орбиса, т.е. дуга между ними отстоит от кратного {@code 360°/h}
+ * меньше чем на {@code орбис/h}. Поэтому для точки проверяются лишь {@code h} окон
+ * шириной {@code 2·орбис/h} вокруг {@code точка + k·360°/h}, каждое находится
+ * двоичным поиском по кругу: {@code O(h log M + K)} вместо перебора всех
+ * {@code M = n(n−1)/2} мидпойнтов.</p>
+ */
+public final class MidpointTree {
+    /**
+     * Битов под номер мидпойнта в упакованном ключе сортировки.
+     */
+    private static final int INDEX_BITS = 24;
+    private static final double KEY_SCALE = (1L << (63 - INDEX_BITS)) / CIRCLE;
+    /**
+     * Запас к ширине окна на погрешность округления; решение принимается по точному зазору.
+     */
+    private static final double WINDOW_MARGIN = 1e-9;
+
+    private final List<Astra> astras;
+    private final double[] positions;
+    /**
+     * Долготы мидпойнтов по возрастанию.
+     */
+    private final double[] midpoints;
+    /**
+     * Номера астр пары для каждого мидпойнта, {@code first < second}.
+     */
+    private final int[] firsts;
+    private final int[] seconds;
+
+    /**
+     * Обработчик найденного резонанса.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param midpoint  номер мидпойнта в порядке долгот.
+         * @param clearance зазор в гармонике.
+         */
+        void visit(int midpoint, double clearance);
+    }
+
+    /**
+     * Резонанс с мидпойнтом: точка (астра или другой мидпойнт) и мидпойнт пары астр.
+     *
+     * @param point     обозначение точки: символ астры или "символ/символ" для мидпойнта.
+     * @param first     первая астра мидпойнта.
+     * @param second    вторая астра мидпойнта.
+     * @param harmonic  гармоника.
+     * @param clearance зазор в гармонике.
+     * @param strength  сила, как {@link Aspect#getStrength()}.
+     */
+    public record Resonance(String point, Astra first, Astra second, int harmonic,
+                            double clearance, double strength) {
+        @Override
+        public String toString() {
+            return "%s = %s/%s\t%.0f%%".formatted(point, label(first), label(second), strength);
+        }
+    }
+
+    /**
+     * @return символ астры, а для астры без своего символа — её имя.
+     */
+    private static String label(Astra astra) {
+        char symbol = astra.getSymbol();
+        return symbol == AstraCatalogue.NO_SYMBOL ? astra.getName() : String.valueOf(symbol);
+    }
+
+    /**
+     * Строит мидпойнты всех пар астр карты.
+     *
+     * @param chart карта.
+     * @throws IllegalArgumentException если пар больше, чем умещается в индекс.
+     */
+    public MidpointTree(Chart chart) {
+        this(chart.getAstras());
+    }
+
+    /**
+     * Строит мидпойнты всех пар астр из списка.
+     *
+     * @param astras астры.
+     * @throws IllegalArgumentException если пар больше, чем умещается в индекс.
+     */
+    public MidpointTree(List<Astra> astras) {
+        this.astras = List.copyOf(astras);
+        int n = astras.size();
+        long pairs = (long) n * (n - 1) / 2;
+        if (pairs >= 1L << INDEX_BITS)
+            throw new IllegalArgumentException("Слишком много мидпойнтов: " + pairs);
+        positions = new double[n];
+        for (int i = 0; i < n; i++)
+            positions[i] = astras.get(i).getZodiacPosition();
+
+        int count = (int) pairs;
+        double[] unsorted = new double[count];
+        long[] keys = new long[count];
+        int[] pairFirst = new int[count], pairSecond = new int[count];
+        int k = 0;
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++, k++) {
+                unsorted[k] = findMedian(positions[i], positions[j]);
+                pairFirst[k] = i;
+                pairSecond[k] = j;
+                keys[k] = (long) (unsorted[k] * KEY_SCALE) << INDEX_BITS | k;
+            }
+        Arrays.sort(keys);
+
+        midpoints = new double[count];
+        firsts = new int[count];
+        seconds = new int[count];
+        int mask = (1 << INDEX_BITS) - 1;
+        for (int s = 0; s < count; s++) {
+            int original = (int) (keys[s] & mask);
+            midpoints[s] = unsorted[original];
+            firsts[s] = pairFirst[original];
+            seconds[s] = pairSecond[original];
+        }
+    }
+
+    /**
+     * @return количество мидпойнтов.
+     */
+    public int size() {
+        return midpoints.length;
+    }
+
+    public double midpoint(int k) {
+        return midpoints[k];
+    }
+
+    public Astra first(int k) {
+        return astras.get(firsts[k]);
+    }
+
+    public Astra second(int k) {
+        return astras.get(seconds[k]);
+    }
+
+    /**
+     * Находит мидпойнты, резонирующие с точкой по гармонике.
+     *
+     * @param position долгота точки.
+     * @param harmonic гармоника.
+     * @param orb      орбис в карте гармоники, меньше полукруга.
+     * @param visitor  получает каждый найденный мидпойнт один раз.
+     */
+    public void forEachResonating(double position, int harmonic, double orb, Visitor visitor) {
+        if (midpoints.length == 0) return;
+        double step = CIRCLE / harmonic;
+        double halfWidth = orb / harmonic + WINDOW_MARGIN;
+        for (int k = 0; k < harmonic; k++) {
+            double low = normalizeCoordinate(position + k * step - halfWidth);
+            double high = low + 2 * halfWidth;
+            if (high < CIRCLE) {
+                scan(lowerBound(low), high, position, harmonic, orb, visitor);
+            } else {
+                scan(lowerBound(low), CIRCLE, position, harmonic, orb, visitor);
+                scan(0, high - CIRCLE, position, harmonic, orb, visitor);
+            }
+        }
+    }
+
+    private void scan(int from, double high, double position, int harmonic, double orb, Visitor visitor) {
+        for (int m = from; m < midpoints.length && midpoints[m] <= high; m++) {
+            double clearance = getArcForHarmonic(getArc(position, midpoints[m]), harmonic);
+            if (clearance < orb)
+                visitor.visit(m, clearance);
+        }
+    }
+
+    /**
+     * @return номер первого мидпойнта с долготой не меньше указанной.
+     */
+    private int lowerBound(double longitude) {
+        int low = 0, high = midpoints.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (midpoints[middle] < longitude) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Находит резонансы астр с мидпойнтами пар других астр.
+     *
+     * @param harmonic гармоника.
+     * @param orb      орбис в карте гармоники.
+     * @return резонансы по убыванию силы.
+     */
+    public List<Resonance> astraResonances(int harmonic, double orb) {
+        List<Resonance> found = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            int astra = i;
+            forEachResonating(positions[i], harmonic, orb, (m, clearance) -> {
+                if (firsts[m] != astra && seconds[m] != astra)
+                    found.add(resonance(label(astras.get(astra)), m, harmonic, orb, clearance));
+            });
+        }
+        found.sort(Comparator.comparingDouble(Resonance::strength).reversed());
+        return found;
+    }
+
+    /**
+     * Находит резонансы мидпойнтов между собой: каждую пару мидпойнтов
+     * из четырёх разных астр один раз.
+     *
+     * @param harmonic гармоника.
+     * @param orb      орбис в карте гармоники.
+     * @return резонансы по убыванию силы.
+     */
+    public List<Resonance> midpointResonances(int harmonic, double orb) {
+        List<Resonance> found = new ArrayList<>();
+        for (int p = 0; p < midpoints.length; p++) {
+            int point = p;
+            forEachResonating(midpoints[p], harmonic, orb, (m, clearance) -> {
+                if (m > point && firsts[m] != firsts[point] && firsts[m] != seconds[point]
+                        && seconds[m] != firsts[point] && seconds[m] != seconds[point])
+                    found.add(resonance("%s/%s".formatted(label(first(point)), label(second(point))),
+                            m, harmonic, orb, clearance));
+            });
+        }
+        found.sort(Comparator.comparingDouble(Resonance::strength).reversed());
+        return found;
+    }
+
+    private Resonance resonance(String point, int m, int harmonic, double orb, double clearance) {
+        return new Resonance(point, first(m), second(m), harmonic, clearance, calculateStrength(orb, clearance));
+    }
+}
@@ -54,4 +54,9 @@ public class MultiChart extends ChartObject {
     public int getDimension() {
         return moments.length;
     }
+
+    @Override
+    public MultiChart copyWithName(String name) {
+        return new MultiChart(name, moments.clone());
+    }
 }
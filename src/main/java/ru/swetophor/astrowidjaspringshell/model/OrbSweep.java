@@ -0,0 +1,452 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoublePredicate;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+/**
+ * Паттерны одиночной карты сразу для ряда делителей орбиса
+ * (первичный орбис = Круг / делитель), без перерасчёта карты на каждый делитель.
+ * <p>Дуги пар считаются один раз. Биты аспектов и связанности пары по правилам
+ * {@link MatrixBuffer} меняются только там, где орбис переходит один из порогов,
+ * определяемых зазорами пары: зазор гармоники (появление аспекта), его кратные
+ * (глубина связанности кратных гармоник) и границы отсечения кратных гармоник
+ * при соединении ({@code ResonanceBatch.isNewSimple}). Для каждого порога один
+ * раз находится первый делитель (делители идут от большего к меньшему, т.е.
+ * орбис растёт), на котором он пройден; пара пересчитывается только на этих
+ * делителях, и записываются изменения её битов — события. События сортируются
+ * по гармонике и делителю и проигрываются в системе непересекающихся множеств:
+ * появившиеся связи объединяют паттерны, у паттерна ведутся число астр, сумма
+ * зазоров всех его пар и число пар с аспектом этой гармоники (паттерн валиден,
+ * если оно не ноль). Связанность почти всегда только растёт с орбисом, но
+ * отсечение кратных гармоник изредка снимает связь; на таком шаге гармоника
+ * собирается заново.</p>
+ * <p>Итоги шага совпадают с {@link MatrixBuffer#analyze()} при этом орбисе:
+ * число паттернов, число астр в них и вес.</p>
+ */
+public final class OrbSweep {
+    private static final int CONNECT = 0, DISCONNECT = 1, GIVE = 2, TAKE = 3;
+    /**
+     * Раскладка события в {@code long}: гармоника, шаг, вид, пара — так что
+     * сортировка упорядочивает события по гармонике, шагу и виду.
+     */
+    private static final int PAIR_BITS = 22, KIND_SHIFT = PAIR_BITS, STEP_SHIFT = KIND_SHIFT + 2,
+            STEP_BITS = 20, HARMONIC_SHIFT = STEP_SHIFT + STEP_BITS;
+
+    private final int edge;
+    private final int count;
+    /**
+     * Делители по шагам, по убыванию.
+     */
+    private final int[] divisors;
+    private final int[][] patternCount;
+    private final int[][] participation;
+    private final double[][] weight;
+    private final int events;
+
+    private OrbSweep(int edge, int count, int[] divisors, int[][] patternCount,
+                     int[][] participation, double[][] weight, int events) {
+        this.edge = edge;
+        this.count = count;
+        this.divisors = divisors;
+        this.patternCount = patternCount;
+        this.participation = participation;
+        this.weight = weight;
+        this.events = events;
+    }
+
+    /**
+     * Проходит орбисы одиночной карты.
+     *
+     * @param chart       карта.
+     * @param fromDivisor наименьший делитель (наибольший орбис).
+     * @param toDivisor   наибольший делитель (наименьший орбис).
+     * @param edge        предельная гармоника.
+     * @return итоги по всем делителям.
+     */
+    public static OrbSweep of(Chart chart, int fromDivisor, int toDivisor, int edge) {
+        List<Astra> astras = chart.getAstras();
+        double[] positions = new double[astras.size()];
+        for (int a = 0; a < positions.length; a++)
+            positions[a] = astras.get(a).getZodiacPosition();
+        return of(positions, fromDivisor, toDivisor, edge);
+    }
+
+    /**
+     * Проходит орбисы для астр с данными позициями.
+     *
+     * @see #of(Chart, int, int, int)
+     */
+    public static OrbSweep of(double[] positions, int fromDivisor, int toDivisor, int edge) {
+        if (fromDivisor < 1 || toDivisor < fromDivisor)
+            throw new IllegalArgumentException("Делители должны идти от %d до %d по возрастанию"
+                    .formatted(fromDivisor, toDivisor));
+        int n = positions.length;
+        int steps = toDivisor - fromDivisor + 1;
+        int pairs = n * (n - 1) / 2;
+        if (steps >= 1 << STEP_BITS || pairs >= 1 << PAIR_BITS)
+            throw new IllegalArgumentException("Слишком много делителей или астр для прохода орбисов");
+        int[] divisors = new int[steps];
+        for (int s = 0; s < steps; s++)
+            divisors[s] = toDivisor - s;
+
+        int[] first = new int[pairs], second = new int[pairs];
+        double[] arcs = new double[pairs];
+        for (int i = 0, k = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++, k++) {
+                first[k] = i;
+                second[k] = j;
+                double arc = Math.abs(normalizeCoordinate(positions[i]) - normalizeCoordinate(positions[j]));
+                arcs[k] = arc > HALF_CIRCLE ? CIRCLE - arc : arc;
+            }
+
+        Events events = new Events();
+        Crossings crossings = new Crossings(divisors, edge);
+        int words = (edge >> 6) + 1;
+        long[] connected = new long[words], given = new long[words];
+        long[] nextConnected = new long[words], nextGiven = new long[words];
+        int[] found = new int[edge + 1];
+        for (int k = 0; k < pairs; k++) {
+            Arrays.fill(connected, 0L);
+            Arrays.fill(given, 0L);
+            int[] breaks = crossings.of(arcs[k]);
+            for (int b = 0; b < breaks.length; b++) {
+                int s = breaks[b];
+                MatrixBuffer.resonate(arcs[k], CIRCLE / divisors[s], edge, found, nextConnected, nextGiven, 0);
+                for (int w = 0; w < words; w++) {
+                    long linkChange = connected[w] ^ nextConnected[w];
+                    long aspectChange = given[w] ^ nextGiven[w];
+                    for (long bits = linkChange | aspectChange; bits != 0; bits &= bits - 1) {
+                        int bit = Long.numberOfTrailingZeros(bits);
+                        int h = (w << 6) + bit;
+                        long mask = 1L << bit;
+                        if ((linkChange & mask) != 0)
+                            events.add(h, s, (nextConnected[w] & mask) != 0 ? CONNECT : DISCONNECT, k);
+                        if ((aspectChange & mask) != 0)
+                            events.add(h, s, (nextGiven[w] & mask) != 0 ? GIVE : TAKE, k);
+                    }
+                }
+                long[] swap = connected;
+                connected = nextConnected;
+                nextConnected = swap;
+                swap = given;
+                given = nextGiven;
+                nextGiven = swap;
+            }
+        }
+        return replay(n, edge, divisors, first, second, arcs, events.sorted());
+    }
+
+    /**
+     * Проигрывает события по гармоникам в порядке делителей и сводит итоги каждого шага.
+     *
+     * @param events события, отсортированные по гармонике, шагу и виду.
+     */
+    private static OrbSweep replay(int n, int edge, int[] divisors, int[] first, int[] second, double[] arcs,
+                                   long[] events) {
+        int steps = divisors.length;
+        int[][] patternCount = new int[steps][edge + 1];
+        int[][] participation = new int[steps][edge + 1];
+        double[][] weight = new double[steps][edge + 1];
+        Patterns patterns = new Patterns(n);
+        boolean[] linked = new boolean[arcs.length], aspected = new boolean[arcs.length];
+        int e = 0;
+        while (e < events.length) {
+            int h = (int) (events[e] >>> HARMONIC_SHIFT);
+            patterns.reset();
+            Arrays.fill(linked, false);
+            Arrays.fill(aspected, false);
+            for (int s = 0; s < steps; s++) {
+                int from = e;
+                boolean rebuild = false;
+                for (; e < events.length && (int) (events[e] >>> HARMONIC_SHIFT) == h
+                        && step(events[e]) == s; e++)
+                    if (kind(events[e]) == DISCONNECT) rebuild = true;
+                if (rebuild) {
+                    for (int x = from; x < e; x++) {
+                        int kind = kind(events[x]), k = pair(events[x]);
+                        if (kind == CONNECT || kind == DISCONNECT) linked[k] = kind == CONNECT;
+                        else aspected[k] = kind == GIVE;
+                    }
+                    patterns.reset();
+                    for (int k = 0; k < arcs.length; k++)
+                        if (linked[k]) patterns.link(first[k], second[k], arcs, h);
+                    for (int k = 0; k < arcs.length; k++)
+                        if (aspected[k]) patterns.aspects[patterns.find(first[k])]++;
+                } else {
+                    // связи идут в шаге раньше аспектов, так что аспект относится уже к объединённому паттерну
+                    for (int x = from; x < e; x++) {
+                        int kind = kind(events[x]), k = pair(events[x]);
+                        if (kind == CONNECT) {
+                            linked[k] = true;
+                            patterns.link(first[k], second[k], arcs, h);
+                        } else {
+                            aspected[k] = kind == GIVE;
+                            patterns.aspects[patterns.find(first[k])] += kind == GIVE ? 1 : -1;
+                        }
+                    }
+                }
+                double orb = CIRCLE / divisors[s];
+                for (int root = 0; root < n; root++) {
+                    int size = patterns.size[root];
+                    if (patterns.parent[root] != root || size < 2 || patterns.aspects[root] == 0) continue;
+                    patternCount[s][h]++;
+                    participation[s][h] += size;
+                    weight[s][h] += size * calculateStrength(orb, patterns.clearance[root] / (size * (size - 1) / 2)) / 100;
+                }
+            }
+        }
+        return new OrbSweep(edge, n, divisors, patternCount, participation, weight, events.length);
+    }
+
+    private static int step(long event) {
+        return (int) (event >>> STEP_SHIFT) & ((1 << STEP_BITS) - 1);
+    }
+
+    private static int kind(long event) {
+        return (int) (event >>> KIND_SHIFT) & 3;
+    }
+
+    private static int pair(long event) {
+        return (int) event & ((1 << PAIR_BITS) - 1);
+    }
+
+    /**
+     * Растущий список событий, упакованных в {@code long}.
+     */
+    private static final class Events {
+        private long[] events = new long[256];
+        private int size;
+
+        private void add(int harmonic, int step, int kind, int pair) {
+            if (size == events.length)
+                events = Arrays.copyOf(events, size * 2);
+            events[size++] = (long) harmonic << HARMONIC_SHIFT | (long) step << STEP_SHIFT
+                    | (long) kind << KIND_SHIFT | pair;
+        }
+
+        private long[] sorted() {
+            long[] result = Arrays.copyOf(events, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * Шаги, на которых биты пары могут измениться: первый шаг и шаги,
+     * на которых орбис впервые проходит один из порогов пары.
+     */
+    private static final class Crossings {
+        private final int[] divisors;
+        private final int edge;
+        private final double widest;
+        private int[] breaks;
+        private int size;
+
+        private Crossings(int[] divisors, int edge) {
+            this.divisors = divisors;
+            this.edge = edge;
+            widest = CIRCLE / divisors[divisors.length - 1];
+            breaks = new int[16];
+        }
+
+        /**
+         * @param arc дуга пары.
+         * @return номера шагов по возрастанию, без повторов, начиная с нулевого.
+         */
+        private int[] of(double arc) {
+            size = 0;
+            add(0);
+            // соединение за пределами наибольшего орбиса не снимает отсечение кратных
+            boolean conjunction = arc < widest;
+            for (int h = 1; h <= edge; h++) {
+                double clearance = getArcForHarmonic(arc, h);
+                if (clearance >= widest) continue;
+                add(firstStep(clearance, orb -> clearance < orb));
+                if (clearance > 0)
+                    for (int m = 2; m * h <= edge && m * clearance <= widest; m++) {
+                        int depth = m;
+                        add(firstStep(m * clearance, orb -> Math.floor(orb / clearance) >= depth));
+                    }
+                if (!conjunction || h < 2) continue;
+                int harmonic = h;
+                add(firstStep(arc * h, orb -> !(arc > orb / harmonic)));
+                if (h >= 4)
+                    add(firstStep(Math.abs(CIRCLE / h - arc) * h,
+                            orb -> Math.abs(CIRCLE / harmonic - arc) < orb / harmonic));
+            }
+            int[] result = Arrays.copyOf(breaks, size);
+            Arrays.sort(result);
+            int unique = 0;
+            for (int s : result)
+                if (unique == 0 || result[unique - 1] != s) result[unique++] = s;
+            return Arrays.copyOf(result, unique);
+        }
+
+        private void add(int step) {
+            if (step >= divisors.length) return;
+            if (size == breaks.length)
+                breaks = Arrays.copyOf(breaks, size * 2);
+            breaks[size++] = step;
+        }
+
+        /**
+         * Первый шаг, на котором выполнено монотонное по орбису условие.
+         * Шаг оценивается по порогу и уточняется проверкой самого условия,
+         * так что совпадает с расчётом при этом орбисе до последнего бита.
+         *
+         * @param threshold орбис, начиная с которого условие примерно выполнено.
+         * @param holds     условие, ложное при малых орбисах и истинное при больших.
+         * @return номер шага, или число шагов, если условие не выполняется ни на одном.
+         */
+        private int firstStep(double threshold, DoublePredicate holds) {
+            int steps = divisors.length;
+            int top = divisors[0];
+            double estimate = threshold <= 0 ? 0 : top - CIRCLE / threshold;
+            int s = estimate <= 0 ? 0 : estimate >= steps ? steps : (int) Math.ceil(estimate);
+            while (s > 0 && holds.test(CIRCLE / divisors[s - 1])) s--;
+            while (s < steps && !holds.test(CIRCLE / divisors[s])) s++;
+            return s;
+        }
+    }
+
+    /**
+     * Паттерны одной гармоники как непересекающиеся множества астр
+     * со списками участников, суммой зазоров всех пар и числом пар с аспектом.
+     */
+    private static final class Patterns {
+        private final int n;
+        private final int[] parent, size, next, last, aspects;
+        private final double[] clearance;
+
+        private Patterns(int n) {
+            this.n = n;
+            parent = new int[n];
+            size = new int[n];
+            next = new int[n];
+            last = new int[n];
+            aspects = new int[n];
+            clearance = new double[n];
+        }
+
+        private void reset() {
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+                next[i] = -1;
+                last[i] = i;
+            }
+            Arrays.fill(aspects, 0);
+            Arrays.fill(clearance, 0);
+        }
+
+        private int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        /**
+         * Объединяет паттерны астр, добавляя к сумме зазоров все пары между ними.
+         */
+        private void link(int i, int j, double[] arcs, int harmonic) {
+            int a = find(i), b = find(j);
+            if (a == b) return;
+            if (size[a] < size[b]) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            double cross = 0;
+            for (int x = a; x != -1; x = next[x])
+                for (int y = b; y != -1; y = next[y])
+                    cross += getArcForHarmonic(arcs[pairIndex(x, y)], harmonic);
+            parent[b] = a;
+            size[a] += size[b];
+            aspects[a] += aspects[b];
+            clearance[a] += clearance[b] + cross;
+            next[last[a]] = b;
+            last[a] = last[b];
+        }
+
+        private int pairIndex(int x, int y) {
+            int i = Math.min(x, y), j = Math.max(x, y);
+            return i * (2 * n - i - 1) / 2 + (j - i - 1);
+        }
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    /**
+     * @return число шагов, т.е. делителей.
+     */
+    public int steps() {
+        return divisors.length;
+    }
+
+    public int divisor(int step) {
+        return divisors[step];
+    }
+
+    public double orb(int step) {
+        return CIRCLE / divisors[step];
+    }
+
+    public int patternCount(int step, int harmonic) {
+        return patternCount[step][harmonic];
+    }
+
+    public int participation(int step, int harmonic) {
+        return participation[step][harmonic];
+    }
+
+    public double weight(int step, int harmonic) {
+        return weight[step][harmonic];
+    }
+
+    /**
+     * @return сколько изменений связанности и аспектов пар проиграно.
+     */
+    public int eventCount() {
+        return events;
+    }
+
+    /**
+     * @return таблицу по делителям: орбис, всего паттернов, астр в них и вес,
+     * затем по гармоникам с паттернами — число паттернов на каждом делителе.
+     */
+    public String getTable() {
+        StringBuilder table = new StringBuilder("делитель\tорбис\tпаттернов\tастр\tвес\n");
+        for (int s = steps() - 1; s >= 0; s--) {
+            int patterns = 0, astras = 0;
+            double total = 0;
+            for (int h = 1; h <= edge; h++) {
+                patterns += patternCount[s][h];
+                astras += participation[s][h];
+                total += weight[s][h];
+            }
+            table.append("%d\t%.2f°\t%d\t%d\t%.2f%n".formatted(divisors[s], orb(s), patterns, astras, total));
+        }
+        table.append("\nгарм.");
+        for (int s = steps() - 1; s >= 0; s--)
+            table.append('\t').append(divisors[s]);
+        table.append('\n');
+        for (int h = 1; h <= edge; h++) {
+            boolean any = false;
+            for (int s = 0; s < steps() && !any; s++)
+                any = patternCount[s][h] > 0;
+            if (!any) continue;
+            table.append(h);
+            for (int s = steps() - 1; s >= 0; s--)
+                table.append('\t').append(patternCount[s][h]);
+            table.append('\n');
+        }
+        return table.append("астр: %d, событий: %d".formatted(count, events)).toString();
+    }
+}
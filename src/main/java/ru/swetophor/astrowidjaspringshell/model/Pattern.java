@@ -2,6 +2,7 @@ package ru.swetophor.astrowidjaspringshell.model;
 
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
 import ru.swetophor.astrowidjaspringshell.config.Settings;
 import ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics;
 
@@ -192,14 +193,13 @@ public class Pattern {
      * Инструментальный метод, определяющий орб, используемый для
      * суждения о силе аспектов-резонансов.
      *
-     * @return стандартный первичный орбис из настроек, ополовиненный,
-     * если содержит астры разных небес
+     * @return первичный орбис из настроек Матрицы (без Матрицы — из текущих настроек),
+     * ополовиненный, если содержит астры разных небес
      * в случае соответствующей настройки для двойных карт.
      */
     private double defineOrb() {
-        return getDimension() > 1 && Settings.isHalfOrbsForDoubles() ?
-                Settings.getPrimalOrb() / 2 :
-                Settings.getPrimalOrb();
+        AnalysisSettings settings = analysis != null ? analysis.getSettings() : Settings.snapshot();
+        return settings.orbFor(getDimension() > 1);
     }
 
     /**
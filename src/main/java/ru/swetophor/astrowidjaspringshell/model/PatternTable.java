@@ -1,10 +1,8 @@
 package ru.swetophor.astrowidjaspringshell.model;
 
-import ru.swetophor.astrowidjaspringshell.config.Settings;
 import ru.swetophor.astrowidjaspringshell.utils.Decorator;
 
 import java.util.*;
-import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.*;
 
@@ -46,7 +44,7 @@ public class PatternTable {
         matrix.heavenCombinations(false).forEach(combination ->
                 tables.put(combination, new PatternAnalysis()));
 
-        IntStream.rangeClosed(1, Settings.getEdgeHarmonic())
+        matrix.harmonics()
                 .forEach(i -> matrix.findPatterns(i).forEach(this::addPattern));
     }
 
@@ -64,6 +62,15 @@ public class PatternTable {
                         () -> { throw new IllegalArgumentException("Добавление паттерна не в ту таблицу"); });
     }
 
+    /**
+     * Отдаёт узор-разборы этой таблицы.
+     * @return неизменяемое сопоставление сочетаний исходных карт их узор-разборам,
+     * в порядке возрастания мерности сочетаний.
+     */
+    public Map<List<Chart>, PatternAnalysis> getAnalyses() {
+        return Collections.unmodifiableMap(tables);
+    }
+
     /**
      * Выдаёт текстовую репрезентацию найденных гармонических паттернов для
      * астр карты или карт, по которым построена Астроматрица.
@@ -2,6 +2,7 @@ package ru.swetophor.astrowidjaspringshell.model;
 
 import lombok.Getter;
 import lombok.Setter;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
 import ru.swetophor.astrowidjaspringshell.config.Settings;
 import ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics;
 import ru.swetophor.astrowidjaspringshell.utils.Interpreter;
@@ -64,13 +65,12 @@ public class ResonanceBatch {
      *
      * @param a                первая астра резонанса.
      * @param b                вторая астра резонанса.
-     * @param primalOrb              первичный орбис резонанса для соединений
-     *                              (должен предоставляться {@link Settings#getPrimalOrb()}),
-     *                              сокращение для синастрий осуществляется внутри метода
-     *                               на основании глобальной настройки {@link Settings#isHalfOrbsForDoubles()}.
+     * @param primalOrb              первичный орбис резонанса для соединений,
+     *                              сокращение для синастрий осуществляется внутри метода.
      * @param ultimateHarmonic до какой гармоники продолжать анализ.
+     * @param halfOrbsForDoubles сокращать ли вдвое орбис для астр разных карт.
      */
-    ResonanceBatch(Astra a, Astra b, double primalOrb, int ultimateHarmonic) {
+    ResonanceBatch(Astra a, Astra b, double primalOrb, int ultimateHarmonic, boolean halfOrbsForDoubles) {
         if (a == b)
             throw new IllegalArgumentException("Одна и та же астра не делает резонанса сама с собой");
         astra_1 = a;
@@ -80,7 +80,7 @@ public class ResonanceBatch {
         arc = CelestialMechanics.getArc(a, b);
         // возможно, для более чем двойных карт брать ещё пропорционально меньше? наверное всё же нет
         this.orb =
-                isSynastric() && Settings.isHalfOrbsForDoubles() ?
+                isSynastric() && halfOrbsForDoubles ?
                 primalOrb / 2 :
                 primalOrb;
         this.ultimateHarmonic = ultimateHarmonic;
@@ -93,13 +93,23 @@ public class ResonanceBatch {
     }
 
     /**
-     * Конструктор резонанса, использующий глобальные значения
+     * Конструктор резонанса по снимку настроек расчёта.
+     * @param a        первая астра резонанса.
+     * @param b        вторая астра резонанса.
+     * @param settings настройки, взятые на весь анализ.
+     */
+    ResonanceBatch(Astra a, Astra b, AnalysisSettings settings) {
+        this(a, b, settings.primalOrb(), settings.edgeHarmonic(), settings.halfOrbsForDoubles());
+    }
+
+    /**
+     * Конструктор резонанса, использующий текущие глобальные значения
      * первичного орба и количества анализируемых гармоник.
      * @param a первая астра резонанса.
      * @param b вторая астра резонанса.
      */
     ResonanceBatch(Astra a, Astra b) {
-        this(a, b, Settings.getPrimalOrb(), Settings.getEdgeHarmonic());
+        this(a, b, Settings.snapshot());
     }
 
     /**
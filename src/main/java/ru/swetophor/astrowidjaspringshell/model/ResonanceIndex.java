@@ -0,0 +1,297 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Предрасчитанный индекс паттернов карт библиотеки для быстрых запросов
+ * ({@link ResonanceQuery}) без построения {@link AstroMatrix} на каждую карту.
+ * <p>Для каждой одиночной карты по всем гармоникам до предельной хранятся
+ * её валидные паттерны, найденные {@link MatrixBuffer} по тем же правилам, что
+ * {@link AstroMatrix#findPatterns(int)}: гармоника, число астр, средняя сила
+ * в процентах ({@link Pattern#getAverageStrength()}) и участники — номерами
+ * {@link AstraCatalogue каталога} (-1 для астр, которых каталог не знает).
+ * Всё лежит в плоских примитивных массивах, паттерны карты — подряд,
+ * плюс на каждую карту битовая маска гармоник, в которых у неё есть паттерны,
+ * чтобы отбрасывать карту без просмотра её паттернов.</p>
+ */
+public final class ResonanceIndex {
+    /**
+     * Карт в блоке параллельного построения.
+     */
+    private static final int BLOCK = 256;
+
+    private final int edge;
+    private final double orb;
+    private final List<String> albums;
+    private final String[] keys;
+    /**
+     * Номер альбома карты в {@link #albums}.
+     */
+    private final int[] albumOf;
+    /**
+     * Начала паттернов карт, последний элемент — общее число паттернов.
+     */
+    private final int[] chartStart;
+    /**
+     * Маски гармоник с паттернами, {@link #words} слов на карту.
+     */
+    private final long[] harmonicMask;
+    private final int words;
+    private final short[] harmonic;
+    private final short[] size;
+    private final float[] strength;
+    /**
+     * Начала участников паттернов в {@link #members}, последний элемент — общая длина.
+     */
+    private final int[] memberStart;
+    private final int[] members;
+
+    /**
+     * Собирает индекс из готовых массивов, как они описаны в полях.
+     * Предназначен для построения и чтения из файла.
+     */
+    ResonanceIndex(int edge, double orb, List<String> albums, String[] keys, int[] albumOf,
+                   int[] chartStart, long[] harmonicMask, short[] harmonic, short[] size,
+                   float[] strength, int[] memberStart, int[] members) {
+        this.edge = edge;
+        this.orb = orb;
+        this.albums = List.copyOf(albums);
+        this.keys = keys;
+        this.albumOf = albumOf;
+        this.chartStart = chartStart;
+        this.words = (edge >> 6) + 1;
+        this.harmonicMask = harmonicMask;
+        this.harmonic = harmonic;
+        this.size = size;
+        this.strength = strength;
+        this.memberStart = memberStart;
+        this.members = members;
+    }
+
+    /**
+     * Паттерны одной карты, пока индекс строится.
+     */
+    private record ChartPatterns(long[] mask, short[] harmonic, short[] size,
+                                 float[] strength, int[] memberCount, int[] members) {
+    }
+
+    /**
+     * Строит индекс по картам, параллельно блоками, по буферу матрицы на блок.
+     *
+     * @param albums  названия альбомов.
+     * @param keys    ключи карт вида {@code альбом/карта}.
+     * @param albumOf номер альбома каждой карты.
+     * @param charts  одиночные карты.
+     * @param orb     первичный орбис.
+     * @param edge    предельная гармоника.
+     * @return индекс паттернов.
+     */
+    public static ResonanceIndex build(List<String> albums, List<String> keys, int[] albumOf,
+                                       List<Chart> charts, double orb, int edge) {
+        return build(albums, keys, albumOf, charts, orb, edge, (buffer, c) -> buffer.load(charts.get(c), orb));
+    }
+
+    /**
+     * Строит индекс по картам, загружая их в буфер данным способом, например
+     * из сохранённых расчётов.
+     *
+     * @param loader загрузка карты с данным номером в буфер с орбисом {@code orb}.
+     * @see #build(List, List, int[], List, double, int)
+     */
+    public static ResonanceIndex build(List<String> albums, List<String> keys, int[] albumOf,
+                                       List<Chart> charts, double orb, int edge, MatrixBuffer.Loader loader) {
+        int n = charts.size();
+        if (keys.size() != n || albumOf.length != n)
+            throw new IllegalArgumentException("Ключей %d, альбомов %d, карт %d"
+                    .formatted(keys.size(), albumOf.length, n));
+        int capacity = charts.stream().mapToInt(c -> c.getAstras().size()).max().orElse(0);
+        ChartPatterns[] found = new ChartPatterns[n];
+        IntStream.range(0, (n + BLOCK - 1) / BLOCK)
+                .parallel()
+                .forEach(block -> {
+                    MatrixBuffer buffer = new MatrixBuffer(capacity, edge);
+                    for (int c = block * BLOCK; c < Math.min(n, (block + 1) * BLOCK); c++) {
+                        loader.load(buffer, c);
+                        found[c] = collect(buffer, charts.get(c));
+                    }
+                });
+
+        int words = (edge >> 6) + 1;
+        int patterns = 0, memberTotal = 0;
+        for (ChartPatterns chart : found) {
+            patterns += chart.harmonic().length;
+            memberTotal += chart.members().length;
+        }
+        int[] chartStart = new int[n + 1];
+        long[] harmonicMask = new long[n * words];
+        short[] harmonic = new short[patterns], size = new short[patterns];
+        float[] strength = new float[patterns];
+        int[] memberStart = new int[patterns + 1];
+        int[] members = new int[memberTotal];
+        int p = 0, m = 0;
+        for (int c = 0; c < n; c++) {
+            ChartPatterns chart = found[c];
+            chartStart[c] = p;
+            System.arraycopy(chart.mask(), 0, harmonicMask, c * words, words);
+            System.arraycopy(chart.members(), 0, members, m, chart.members().length);
+            for (int k = 0; k < chart.harmonic().length; k++, p++) {
+                harmonic[p] = chart.harmonic()[k];
+                size[p] = chart.size()[k];
+                strength[p] = chart.strength()[k];
+                memberStart[p] = m;
+                m += chart.memberCount()[k];
+            }
+        }
+        chartStart[n] = p;
+        memberStart[patterns] = m;
+        return new ResonanceIndex(edge, orb, albums, keys.toArray(String[]::new), albumOf.clone(),
+                chartStart, harmonicMask, harmonic, size, strength, memberStart, members);
+    }
+
+    /**
+     * Собирает паттерны карты, уже загруженной в буфер.
+     */
+    private static ChartPatterns collect(MatrixBuffer buffer, Chart chart) {
+        List<Astra> astras = chart.getAstras();
+        int n = astras.size();
+        int[] ids = new int[n];
+        for (int a = 0; a < n; a++)
+            ids[a] = AstraCatalogue.idOf(astras.get(a).getName());
+        int edge = buffer.getEdge();
+        long[] mask = new long[(edge >> 6) + 1];
+        List<short[]> heads = new ArrayList<>();
+        List<Float> strengths = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        int[] members = new int[0];
+        int length = 0;
+        for (int h = 1; h <= edge; h++) {
+            buffer.analyzeHarmonic(h);
+            for (int root = 0; root < n; root++) {
+                if (buffer.patternOf(root) != root || !buffer.inValidPattern(root)) continue;
+                int patternSize = buffer.patternSize(root);
+                heads.add(new short[]{(short) h, (short) patternSize});
+                strengths.add((float) buffer.patternStrength(root));
+                counts.add(patternSize);
+                if (length + patternSize > members.length)
+                    members = Arrays.copyOf(members, Math.max(2 * members.length, length + patternSize));
+                for (int a = 0; a < n; a++)
+                    if (buffer.patternOf(a) == root)
+                        members[length++] = ids[a];
+                mask[h >> 6] |= 1L << h;
+            }
+        }
+        short[] harmonic = new short[heads.size()], size = new short[heads.size()];
+        float[] strength = new float[heads.size()];
+        int[] memberCount = new int[heads.size()];
+        for (int k = 0; k < heads.size(); k++) {
+            harmonic[k] = heads.get(k)[0];
+            size[k] = heads.get(k)[1];
+            strength[k] = strengths.get(k);
+            memberCount[k] = counts.get(k);
+        }
+        return new ChartPatterns(mask, harmonic, size, strength, memberCount, Arrays.copyOf(members, length));
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    public double getOrb() {
+        return orb;
+    }
+
+    /**
+     * @return число карт в индексе.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return число паттернов всех карт.
+     */
+    public int patternCount() {
+        return chartStart[keys.length];
+    }
+
+    public List<String> getAlbums() {
+        return albums;
+    }
+
+    public String key(int chart) {
+        return keys[chart];
+    }
+
+    public int albumOf(int chart) {
+        return albumOf[chart];
+    }
+
+    /**
+     * @return есть ли у карты паттерны в указанной гармонике.
+     */
+    public boolean hasPatterns(int chart, int harmonic) {
+        return harmonic >= 1 && harmonic <= edge &&
+                (harmonicMask[chart * words + (harmonic >> 6)] & 1L << harmonic) != 0;
+    }
+
+    /**
+     * @return номер первого паттерна карты; паттерны карты идут подряд по росту гармоники.
+     */
+    public int firstPattern(int chart) {
+        return chartStart[chart];
+    }
+
+    /**
+     * @return номер, следующий за последним паттерном карты.
+     */
+    public int endPattern(int chart) {
+        return chartStart[chart + 1];
+    }
+
+    public int harmonic(int pattern) {
+        return harmonic[pattern];
+    }
+
+    public int patternSize(int pattern) {
+        return size[pattern];
+    }
+
+    /**
+     * @return среднюю силу паттерна в процентах.
+     */
+    public double strength(int pattern) {
+        return strength[pattern];
+    }
+
+    /**
+     * @return входит ли точка каталога в паттерн.
+     */
+    public boolean hasMember(int pattern, int catalogueId) {
+        for (int m = memberStart[pattern]; m < memberStart[pattern + 1]; m++)
+            if (members[m] == catalogueId) return true;
+        return false;
+    }
+
+    /**
+     * @return номера участников паттерна в каталоге.
+     */
+    public int[] members(int pattern) {
+        return Arrays.copyOfRange(members, memberStart[pattern], memberStart[pattern + 1]);
+    }
+
+    /**
+     * @return описание паттерна: гармоника, участники и сила.
+     */
+    public String describe(int pattern) {
+        StringBuilder text = new StringBuilder().append(harmonic[pattern]).append(": ");
+        for (int m = memberStart[pattern]; m < memberStart[pattern + 1]; m++) {
+            int id = members[m];
+            text.append(id == -1 ? "?" : AstraCatalogue.get(id).name());
+            if (m + 1 < memberStart[pattern + 1]) text.append('+');
+        }
+        return text.append(" (%.0f%%)".formatted(strength[pattern])).toString();
+    }
+}
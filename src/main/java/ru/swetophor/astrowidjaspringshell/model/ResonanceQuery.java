@@ -0,0 +1,388 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Запрос к {@link ResonanceIndex}: условие на паттерны карты, скомпилированное в предикат.
+ * <p>Язык запроса:</p>
+ * <pre>
+ * запрос  := и ('or' и)*
+ * и       := не ('and' не)*
+ * не      := 'not' не | '(' запрос ')' | 'pattern' '(' условия ')' | 'count' '(' условия ')' оп число
+ * условия := [условие (',' условие)*]
+ * условие := 'h' оп число | 'strength' оп число['%'] | 'size' оп число | 'with' астра ('+' астра)*
+ * оп      := '=' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;='
+ * </pre>
+ * <p>{@code pattern(...)} истинно, если у карты есть паттерн, удовлетворяющий всем условиям;
+ * {@code count(...) оп N} сравнивает с {@code N} число таких паттернов.
+ * Астры называются как в {@link AstraCatalogue} (имя, псевдоним или символ),
+ * имя с пробелами берётся в кавычки. Ключевые слова можно писать и по-русски:
+ * {@code или, и, не, паттерн, число, гармоника, сила, размер, с}. Например:</p>
+ * <pre>pattern(h = 7, with Солнце+Луна, strength &gt; 60)</pre>
+ * <p>Логические связки вычисляются с коротким замыканием, {@code pattern} останавливается
+ * на первом подходящем паттерне, {@code count} — как только исход сравнения известен.
+ * Карта без паттернов в допустимых гармониках отбрасывается по маске гармоник индекса,
+ * без просмотра паттернов.</p>
+ */
+public final class ResonanceQuery {
+
+    /**
+     * Скомпилированное условие на карту индекса.
+     */
+    @FunctionalInterface
+    public interface ChartPredicate {
+        boolean test(ResonanceIndex index, int chart);
+    }
+
+    private static final Set<String> OR = Set.of("or", "или", "|", "||");
+    private static final Set<String> AND = Set.of("and", "и", "&", "&&");
+    private static final Set<String> NOT = Set.of("not", "не", "!");
+    private static final Set<String> PATTERN = Set.of("pattern", "паттерн");
+    private static final Set<String> COUNT = Set.of("count", "число");
+    private static final Set<String> HARMONIC = Set.of("h", "harmonic", "гармоника");
+    private static final Set<String> STRENGTH = Set.of("strength", "сила");
+    private static final Set<String> SIZE = Set.of("size", "размер");
+    private static final Set<String> WITH = Set.of("with", "с");
+    private static final String SYMBOLS = "(),+=!<>&|";
+
+    private final String text;
+    private final ChartPredicate predicate;
+
+    private ResonanceQuery(String text, ChartPredicate predicate) {
+        this.text = text;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Разбирает и компилирует запрос.
+     *
+     * @param text текст запроса.
+     * @return скомпилированный запрос.
+     * @throws IllegalArgumentException если запрос не разобран или астра не найдена в каталоге.
+     */
+    public static ResonanceQuery parse(String text) {
+        Parser parser = new Parser(tokenize(text));
+        ChartPredicate predicate = parser.query();
+        if (!parser.atEnd())
+            throw parser.error("лишнее");
+        return new ResonanceQuery(text, predicate);
+    }
+
+    public boolean test(ResonanceIndex index, int chart) {
+        return predicate.test(index, chart);
+    }
+
+    /**
+     * Отбирает карты индекса, удовлетворяющие запросу, параллельно.
+     *
+     * @param index  индекс.
+     * @param albums номера альбомов индекса, по которым искать, или {@code null} для всех.
+     * @return номера подходящих карт по возрастанию.
+     */
+    public int[] select(ResonanceIndex index, Set<Integer> albums) {
+        return IntStream.range(0, index.size())
+                .parallel()
+                .filter(c -> albums == null || albums.contains(index.albumOf(c)))
+                .filter(c -> predicate.test(index, c))
+                .toArray();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Условия на один паттерн: границы гармоники, размера и силы и обязательные участники.
+     */
+    private static final class PatternFilter {
+        int harmonicLow = 1, harmonicHigh = Short.MAX_VALUE;
+        final List<Integer> excludedHarmonics = new ArrayList<>();
+        int sizeLow = 0, sizeHigh = Integer.MAX_VALUE;
+        final List<Integer> excludedSizes = new ArrayList<>();
+        double strengthLow = Double.NEGATIVE_INFINITY, strengthHigh = Double.POSITIVE_INFINITY;
+        boolean strengthLowStrict, strengthHighStrict;
+        int[] required = new int[0];
+
+        /**
+         * @return может ли у карты быть подходящий паттерн, по маске гармоник.
+         */
+        boolean possible(ResonanceIndex index, int chart) {
+            int high = Math.min(harmonicHigh, index.getEdge());
+            for (int h = harmonicLow; h <= high; h++)
+                if (index.hasPatterns(chart, h)) return true;
+            return false;
+        }
+
+        boolean matches(ResonanceIndex index, int pattern) {
+            int h = index.harmonic(pattern);
+            if (h < harmonicLow || h > harmonicHigh || excludedHarmonics.contains(h)) return false;
+            int size = index.patternSize(pattern);
+            if (size < sizeLow || size > sizeHigh || excludedSizes.contains(size)) return false;
+            double strength = index.strength(pattern);
+            if (strengthLowStrict ? strength <= strengthLow : strength < strengthLow) return false;
+            if (strengthHighStrict ? strength >= strengthHigh : strength > strengthHigh) return false;
+            for (int id : required)
+                if (!index.hasMember(pattern, id)) return false;
+            return true;
+        }
+
+        /**
+         * Считает подходящие паттерны карты, но не дальше предела.
+         */
+        int count(ResonanceIndex index, int chart, int limit) {
+            if (!possible(index, chart)) return 0;
+            int count = 0;
+            for (int p = index.firstPattern(chart), end = index.endPattern(chart); p < end && count < limit; p++) {
+                if (index.harmonic(p) > harmonicHigh) break;
+                if (matches(index, p)) count++;
+            }
+            return count;
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int close = text.indexOf('"', i + 1);
+                if (close == -1)
+                    throw new IllegalArgumentException("Незакрытая кавычка в позиции " + (i + 1));
+                tokens.add(text.substring(i, close + 1));
+                i = close + 1;
+            } else if ((c == '!' || c == '<' || c == '>' || c == '=') && i + 1 < text.length() && text.charAt(i + 1) == '=') {
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if ((c == '&' || c == '|') && i + 1 < text.length() && text.charAt(i + 1) == c) {
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if (SYMBOLS.indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && SYMBOLS.indexOf(text.charAt(i)) < 0 && text.charAt(i) != '"')
+                    i++;
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        boolean atEnd() {
+            return position == tokens.size();
+        }
+
+        private String peek() {
+            return atEnd() ? "" : tokens.get(position).toLowerCase(Locale.ROOT);
+        }
+
+        private String next(String expected) {
+            if (atEnd())
+                throw error("ожидалось " + expected + ", а запрос кончился");
+            return tokens.get(position++);
+        }
+
+        private void expect(String token) {
+            if (!accept(token))
+                throw error("ожидалось '%s'".formatted(token));
+        }
+
+        private boolean accept(String token) {
+            if (!peek().equals(token)) return false;
+            position++;
+            return true;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Запрос: %s у слова %d%s".formatted(message, position + 1,
+                    atEnd() ? "" : " ('%s')".formatted(tokens.get(position))));
+        }
+
+        ChartPredicate query() {
+            ChartPredicate left = conjunction();
+            while (OR.contains(peek())) {
+                position++;
+                ChartPredicate a = left, b = conjunction();
+                left = (index, chart) -> a.test(index, chart) || b.test(index, chart);
+            }
+            return left;
+        }
+
+        private ChartPredicate conjunction() {
+            ChartPredicate left = negation();
+            while (AND.contains(peek())) {
+                position++;
+                ChartPredicate a = left, b = negation();
+                left = (index, chart) -> a.test(index, chart) && b.test(index, chart);
+            }
+            return left;
+        }
+
+        private ChartPredicate negation() {
+            String token = peek();
+            if (NOT.contains(token)) {
+                position++;
+                ChartPredicate inner = negation();
+                return (index, chart) -> !inner.test(index, chart);
+            }
+            if (token.equals("(")) {
+                position++;
+                ChartPredicate inner = query();
+                expect(")");
+                return inner;
+            }
+            if (PATTERN.contains(token)) {
+                position++;
+                PatternFilter filter = conditions();
+                return (index, chart) -> filter.count(index, chart, 1) > 0;
+            }
+            if (COUNT.contains(token)) {
+                position++;
+                PatternFilter filter = conditions();
+                String operator = operator();
+                int bound = integer();
+                return switch (operator) {
+                    case "=", "==" -> (index, chart) -> filter.count(index, chart, bound + 1) == bound;
+                    case "!=" -> (index, chart) -> filter.count(index, chart, bound + 1) != bound;
+                    case "<" -> (index, chart) -> filter.count(index, chart, bound) < bound;
+                    case "<=" -> (index, chart) -> filter.count(index, chart, bound + 1) <= bound;
+                    case ">" -> (index, chart) -> filter.count(index, chart, bound + 1) > bound;
+                    default -> (index, chart) -> filter.count(index, chart, bound) >= bound;
+                };
+            }
+            throw error("ожидалось pattern, count, not или '('");
+        }
+
+        private PatternFilter conditions() {
+            expect("(");
+            PatternFilter filter = new PatternFilter();
+            if (accept(")"))
+                return filter;
+            do {
+                condition(filter);
+            } while (accept(","));
+            expect(")");
+            return filter;
+        }
+
+        private void condition(PatternFilter filter) {
+            String field = peek();
+            position++;
+            if (WITH.contains(field)) {
+                List<Integer> ids = new ArrayList<>();
+                do {
+                    String name = next("имя астры");
+                    if (name.startsWith("\"")) name = name.substring(1, name.length() - 1);
+                    int id = AstraCatalogue.idOf(name);
+                    if (id == -1)
+                        throw error("астра '%s' не найдена в каталоге".formatted(name));
+                    ids.add(id);
+                } while (accept("+"));
+                int[] required = new int[filter.required.length + ids.size()];
+                System.arraycopy(filter.required, 0, required, 0, filter.required.length);
+                for (int k = 0; k < ids.size(); k++)
+                    required[filter.required.length + k] = ids.get(k);
+                filter.required = required;
+            } else if (HARMONIC.contains(field)) {
+                String operator = operator();
+                int value = integer();
+                switch (operator) {
+                    case "=", "==" -> {
+                        filter.harmonicLow = Math.max(filter.harmonicLow, value);
+                        filter.harmonicHigh = Math.min(filter.harmonicHigh, value);
+                    }
+                    case "!=" -> filter.excludedHarmonics.add(value);
+                    case "<" -> filter.harmonicHigh = Math.min(filter.harmonicHigh, value - 1);
+                    case "<=" -> filter.harmonicHigh = Math.min(filter.harmonicHigh, value);
+                    case ">" -> filter.harmonicLow = Math.max(filter.harmonicLow, value + 1);
+                    default -> filter.harmonicLow = Math.max(filter.harmonicLow, value);
+                }
+            } else if (SIZE.contains(field)) {
+                String operator = operator();
+                int value = integer();
+                switch (operator) {
+                    case "=", "==" -> {
+                        filter.sizeLow = Math.max(filter.sizeLow, value);
+                        filter.sizeHigh = Math.min(filter.sizeHigh, value);
+                    }
+                    case "!=" -> filter.excludedSizes.add(value);
+                    case "<" -> filter.sizeHigh = Math.min(filter.sizeHigh, value - 1);
+                    case "<=" -> filter.sizeHigh = Math.min(filter.sizeHigh, value);
+                    case ">" -> filter.sizeLow = Math.max(filter.sizeLow, value + 1);
+                    default -> filter.sizeLow = Math.max(filter.sizeLow, value);
+                }
+            } else if (STRENGTH.contains(field)) {
+                String operator = operator();
+                double value = number();
+                switch (operator) {
+                    case "=", "==" -> {
+                        filter.strengthLow = filter.strengthHigh = value;
+                        filter.strengthLowStrict = filter.strengthHighStrict = false;
+                    }
+                    case "<", "<=" -> {
+                        filter.strengthHigh = value;
+                        filter.strengthHighStrict = operator.equals("<");
+                    }
+                    case ">", ">=" -> {
+                        filter.strengthLow = value;
+                        filter.strengthLowStrict = operator.equals(">");
+                    }
+                    default -> throw error("для силы оператор != не поддерживается");
+                }
+            } else {
+                position--;
+                throw error("ожидалось условие h, strength, size или with");
+            }
+        }
+
+        private String operator() {
+            String token = next("оператор сравнения");
+            return switch (token) {
+                case "=", "==", "!=", "<", "<=", ">", ">=" -> token;
+                default -> {
+                    position--;
+                    throw error("ожидался оператор сравнения");
+                }
+            };
+        }
+
+        private int integer() {
+            String token = next("целое число");
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                position--;
+                throw error("ожидалось целое число");
+            }
+        }
+
+        private double number() {
+            String token = next("число");
+            String digits = token.endsWith("%") ? token.substring(0, token.length() - 1) : token;
+            try {
+                return Double.parseDouble(digits);
+            } catch (NumberFormatException e) {
+                position--;
+                throw error("ожидалось число");
+            }
+        }
+    }
+}
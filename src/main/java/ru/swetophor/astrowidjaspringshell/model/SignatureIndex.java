@@ -0,0 +1,215 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Индекс гармонических подписей карт для поиска похожих.
+ * <p>Подпись карты — вектор длины предельной гармоники: по каждой гармонике
+ * вес её паттернов, как {@link MatrixBuffer#getWeight(int)} (сумма по паттернам
+ * числа астр на среднюю силу в долях, что совпадает с разбором
+ * {@link PatternAnalysis}), нормированный к единичной длине. Сходство двух карт —
+ * косинус между подписями, т.е. скалярное произведение.</p>
+ * <p>Подписи лежат подряд в одном массиве {@code float}. Поиск ближайших —
+ * полный перебор: блоки по {@link #BLOCK} подписей обсчитываются параллельно
+ * по плотному массиву без объектов, каждый блок держит свои лучшие
+ * {@code k}, и они сливаются в конце.</p>
+ */
+public final class SignatureIndex {
+    /**
+     * Подписей в блоке параллельного поиска.
+     */
+    static final int BLOCK = 4096;
+
+    private final List<String> keys;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final int dimension;
+    private final float[] vectors;
+
+    /**
+     * Найденная похожая карта.
+     *
+     * @param index      номер карты в индексе.
+     * @param key        ключ карты.
+     * @param similarity косинус между подписями, от 0 до 1.
+     */
+    public record Neighbour(int index, String key, double similarity) {
+        @Override
+        public String toString() {
+            return "%s\t%.3f".formatted(key, similarity);
+        }
+    }
+
+    private SignatureIndex(List<String> keys, int dimension, float[] vectors) {
+        this.keys = List.copyOf(keys);
+        this.dimension = dimension;
+        this.vectors = vectors;
+        for (int i = 0; i < keys.size(); i++)
+            positions.putIfAbsent(keys.get(i), i);
+    }
+
+    /**
+     * Строит подписи карт, параллельно, по буферу матрицы на поток.
+     *
+     * @param keys   ключи карт, по одному на карту.
+     * @param charts карты.
+     * @param orb    первичный орбис.
+     * @param edge   предельная гармоника, она же длина подписи.
+     * @return индекс подписей в порядке карт.
+     */
+    public static SignatureIndex build(List<String> keys, List<Chart> charts, double orb, int edge) {
+        return build(keys, charts, edge, (buffer, i) -> buffer.load(charts.get(i), orb));
+    }
+
+    /**
+     * Строит подписи карт, загружая их в буфер данным способом, например
+     * из сохранённых расчётов.
+     *
+     * @param loader загрузка карты с данным номером в буфер.
+     * @see #build(List, List, double, int)
+     */
+    public static SignatureIndex build(List<String> keys, List<Chart> charts, int edge, MatrixBuffer.Loader loader) {
+        if (keys.size() != charts.size())
+            throw new IllegalArgumentException("Ключей %d, карт %d".formatted(keys.size(), charts.size()));
+        int n = charts.size();
+        int capacity = charts.stream().mapToInt(c -> c.getAstras().size()).max().orElse(0);
+        float[] vectors = new float[n * edge];
+        IntStream.range(0, (n + BLOCK - 1) / BLOCK)
+                .parallel()
+                .forEach(block -> {
+                    MatrixBuffer buffer = new MatrixBuffer(capacity, edge);
+                    for (int i = block * BLOCK; i < Math.min(n, (block + 1) * BLOCK); i++) {
+                        loader.load(buffer, i);
+                        writeSignature(buffer, vectors, i * edge);
+                    }
+                });
+        return new SignatureIndex(keys, edge, vectors);
+    }
+
+    /**
+     * @return подпись одной карты.
+     */
+    public static float[] signature(Chart chart, double orb, int edge) {
+        float[] vector = new float[edge];
+        MatrixBuffer buffer = new MatrixBuffer(chart.getAstras().size(), edge);
+        buffer.load(chart, orb);
+        writeSignature(buffer, vector, 0);
+        return vector;
+    }
+
+    /**
+     * Записывает подпись карты, уже загруженной в буфер.
+     */
+    private static void writeSignature(MatrixBuffer buffer, float[] target, int offset) {
+        buffer.analyze();
+        int edge = buffer.getEdge();
+        double norm = 0;
+        for (int h = 1; h <= edge; h++)
+            norm += buffer.getWeight(h) * buffer.getWeight(h);
+        if (norm == 0) return;
+        double scale = 1 / Math.sqrt(norm);
+        for (int h = 1; h <= edge; h++)
+            target[offset + h - 1] = (float) (buffer.getWeight(h) * scale);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public String key(int i) {
+        return keys.get(i);
+    }
+
+    /**
+     * @return номер карты по ключу или -1.
+     */
+    public int indexOf(String key) {
+        return positions.getOrDefault(key, -1);
+    }
+
+    /**
+     * @return копию подписи карты.
+     */
+    public float[] vector(int i) {
+        float[] copy = new float[dimension];
+        System.arraycopy(vectors, i * dimension, copy, 0, dimension);
+        return copy;
+    }
+
+    /**
+     * Находит карты с подписями, ближайшими к данной.
+     *
+     * @param query   подпись единичной длины, как {@link #signature}.
+     * @param k       сколько карт выдать.
+     * @param exclude номер карты, которую не выдавать (сама искомая), или -1.
+     * @return до {@code k} карт по убыванию сходства.
+     */
+    public List<Neighbour> nearest(float[] query, int k, int exclude) {
+        if (query.length != dimension)
+            throw new IllegalArgumentException("Длина подписи %d, а не %d".formatted(query.length, dimension));
+        int n = keys.size();
+        if (k <= 0 || n == 0) return List.of();
+        List<Neighbour> merged = new ArrayList<>();
+        IntStream.range(0, (n + BLOCK - 1) / BLOCK)
+                .parallel()
+                .mapToObj(block -> blockBest(query, block * BLOCK, Math.min(n, (block + 1) * BLOCK), k, exclude))
+                .forEachOrdered(merged::addAll);
+        return merged.stream()
+                .sorted(Comparator.comparingDouble(Neighbour::similarity).reversed()
+                        .thenComparingInt(Neighbour::index))
+                .limit(k)
+                .toList();
+    }
+
+    /**
+     * Лучшие {@code k} подписей блока: вставкой в короткий упорядоченный массив.
+     */
+    private List<Neighbour> blockBest(float[] query, int from, int to, int k, int exclude) {
+        int[] best = new int[k];
+        float[] bestScore = new float[k];
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            if (i == exclude) continue;
+            float score = dot(query, i * dimension);
+            if (found == k && score <= bestScore[k - 1]) continue;
+            int place = found < k ? found++ : k - 1;
+            while (place > 0 && bestScore[place - 1] < score) {
+                best[place] = best[place - 1];
+                bestScore[place] = bestScore[place - 1];
+                place--;
+            }
+            best[place] = i;
+            bestScore[place] = score;
+        }
+        List<Neighbour> result = new ArrayList<>(found);
+        for (int r = 0; r < found; r++)
+            result.add(new Neighbour(best[r], keys.get(best[r]), bestScore[r]));
+        return result;
+    }
+
+    /**
+     * Скалярное произведение по четырём независимым суммам, чтобы сложения
+     * не ждали друг друга.
+     */
+    private float dot(float[] query, int offset) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int d = 0;
+        for (; d + 3 < dimension; d += 4) {
+            s0 += query[d] * vectors[offset + d];
+            s1 += query[d + 1] * vectors[offset + d + 1];
+            s2 += query[d + 2] * vectors[offset + d + 2];
+            s3 += query[d + 3] * vectors[offset + d + 3];
+        }
+        for (; d < dimension; d++)
+            s0 += query[d] * vectors[offset + d];
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,165 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.getArc;
+
+/**
+ * Синастрическая сетка: оценки совместимости всех пар карт набора.
+ * <p>Оценка пары — сумма сил (в долях) всех аспектов между астрами одной карты
+ * и астрами другой, найденных по правилам {@link ResonanceBatch} с орбисом
+ * для астр разных карт, — то есть то же, что дают синастрические пучки
+ * {@link AstroMatrix} двух карт, но без построения матрицы и объектов.</p>
+ * <p>Позиции всех карт один раз укладываются в общий массив, аспекты ищутся
+ * через {@link ArcSieve}. Пары карт обсчитываются плитками по {@link #TILE}
+ * карт на плитку, чтобы позиции обеих плиток оставались в кэше процессора,
+ * а плитки распределяются по потокам общего пула.</p>
+ */
+public final class SynastryGrid {
+    /**
+     * Карт в стороне плитки.
+     */
+    public static final int TILE = 32;
+
+    private final List<Chart> charts;
+    private final int n;
+    /**
+     * Начала позиций карт в {@link #positions}, последний элемент — общая длина.
+     */
+    private final int[] offsets;
+    private final double[] positions;
+    /**
+     * Оценки пар, треугольный индекс {@link #pairIndex(int, int)}.
+     */
+    private final double[] scores;
+
+    /**
+     * Пара карт с оценкой совместимости.
+     *
+     * @param first  номер первой карты, меньший.
+     * @param second номер второй карты.
+     * @param score  оценка пары.
+     */
+    public record Match(int first, int second, double score) {
+    }
+
+    /**
+     * Обсчитывает все пары карт.
+     *
+     * @param charts    карты.
+     * @param primalOrb первичный орбис, как {@link Settings#getPrimalOrb()}.
+     * @param halfOrbs  сокращать ли орбис вдвое, как {@link Settings#isHalfOrbsForDoubles()}.
+     * @param edge      предельная гармоника.
+     */
+    public SynastryGrid(List<Chart> charts, double primalOrb, boolean halfOrbs, int edge) {
+        this.charts = List.copyOf(charts);
+        n = charts.size();
+        if ((long) n * (n - 1) / 2 > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Слишком много карт для сетки: " + n);
+        offsets = new int[n + 1];
+        for (int c = 0; c < n; c++)
+            offsets[c + 1] = offsets[c] + charts.get(c).getAstras().size();
+        positions = new double[offsets[n]];
+        for (int c = 0; c < n; c++) {
+            List<Astra> astras = charts.get(c).getAstras();
+            for (int a = 0; a < astras.size(); a++)
+                positions[offsets[c] + a] = astras.get(a).getZodiacPosition();
+        }
+        scores = new double[(int) ((long) n * (n - 1) / 2)];
+
+        ArcSieve sieve = new ArcSieve(halfOrbs ? primalOrb / 2 : primalOrb, edge);
+        int tiles = (n + TILE - 1) / TILE;
+        IntStream.range(0, tiles * (tiles + 1) / 2)
+                .parallel()
+                .forEach(t -> {
+                    int row = 0, rest = t;
+                    while (rest >= tiles - row) rest -= tiles - row++;
+                    computeTile(row, row + rest, sieve);
+                });
+    }
+
+    /**
+     * Обсчитывает все пары карт по настройкам: первичный орбис, его сокращение
+     * для астр разных карт и предельная гармоника.
+     */
+    public static SynastryGrid of(List<Chart> charts) {
+        AnalysisSettings settings = Settings.snapshot();
+        return new SynastryGrid(charts, settings.primalOrb(),
+                settings.halfOrbsForDoubles(), settings.edgeHarmonic());
+    }
+
+    private void computeTile(int rowTile, int columnTile, ArcSieve sieve) {
+        int[] scratch = new int[sieve.getEdge() + 1];
+        int rowEnd = Math.min(n, (rowTile + 1) * TILE);
+        int columnEnd = Math.min(n, (columnTile + 1) * TILE);
+        for (int i = rowTile * TILE; i < rowEnd; i++)
+            for (int j = Math.max(i + 1, columnTile * TILE); j < columnEnd; j++) {
+                double score = 0;
+                for (int a = offsets[i]; a < offsets[i + 1]; a++)
+                    for (int b = offsets[j]; b < offsets[j + 1]; b++)
+                        score += sieve.strength(getArc(positions[a], positions[b]), scratch);
+                scores[pairIndex(i, j)] = score;
+            }
+    }
+
+    private int pairIndex(int i, int j) {
+        if (i > j) return pairIndex(j, i);
+        return (int) ((long) i * (2L * n - i - 1) / 2) + j - i - 1;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public Chart chart(int i) {
+        return charts.get(i);
+    }
+
+    /**
+     * @return оценку пары карт; для карты самой с собой — 0.
+     */
+    public double score(int i, int j) {
+        return i == j ? 0.0 : scores[pairIndex(i, j)];
+    }
+
+    /**
+     * @param limit сколько пар выдать.
+     * @return лучшие пары по убыванию оценки.
+     */
+    public List<Match> ranking(int limit) {
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingDouble(Match::score));
+        for (int i = 0; i < n - 1; i++)
+            for (int j = i + 1; j < n; j++) {
+                double score = scores[pairIndex(i, j)];
+                if (best.size() < limit)
+                    best.add(new Match(i, j, score));
+                else if (limit > 0 && score > best.peek().score()) {
+                    best.poll();
+                    best.add(new Match(i, j, score));
+                }
+            }
+        return best.stream()
+                .sorted(Comparator.comparingDouble(Match::score).reversed())
+                .toList();
+    }
+
+    /**
+     * @param i     номер карты.
+     * @param limit сколько партнёров выдать.
+     * @return лучшие пары карты с остальными по убыванию оценки.
+     */
+    public List<Match> partners(int i, int limit) {
+        return IntStream.range(0, n)
+                .filter(j -> j != i)
+                .mapToObj(j -> new Match(Math.min(i, j), Math.max(i, j), score(i, j)))
+                .sorted(Comparator.comparingDouble(Match::score).reversed())
+                .limit(limit)
+                .toList();
+    }
+}
@@ -0,0 +1,31 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import static ru.swetophor.astrowidjaspringshell.model.EphemerisSeries.toDateTime;
+
+/**
+ * Окно транзитного резонанса: промежуток времени, в течение которого
+ * движущаяся астра находится в аспекте с натальной астрой.
+ *
+ * @param transiting   название движущейся астры.
+ * @param natal        название натальной астры.
+ * @param harmonic     резонансное число аспекта.
+ * @param multiplicity множитель аспекта, как {@link Aspect#getMultiplicity()}.
+ * @param start        начало окна, секунды эпохи.
+ * @param end          конец окна, секунды эпохи.
+ * @param exact        момент точного аспекта или {@code NaN}, если экзакта в окне нет
+ *                     (окно обрезано краем ряда или аспект не доходит до точного).
+ * @param strength     наибольшая сила аспекта в окне, как {@link Aspect#getStrength()}.
+ */
+public record TransitEvent(String transiting, String natal, int harmonic, int multiplicity,
+                           double start, double end, double exact, double strength) {
+
+    @Override
+    public String toString() {
+        return "%s–%s  %s %d%s к %s  %.0f%%%s".formatted(
+                toDateTime(start), toDateTime(end),
+                transiting, harmonic,
+                multiplicity > 1 ? " (x%d)".formatted(multiplicity) : "",
+                natal, strength,
+                Double.isNaN(exact) ? "" : ", точно " + toDateTime(exact));
+    }
+}
@@ -2,22 +2,21 @@ package ru.swetophor.astrowidjaspringshell.provider;
 
 import lombok.RequiredArgsConstructor;
 import org.jline.utils.AttributedString;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.shell.jline.PromptProvider;
 import org.springframework.stereotype.Component;
+import ru.swetophor.astrowidjaspringshell.mainframe.Main;
 
-//@Component
+/**
+ * Приглашение оболочки: название программы и число карт на столе.
+ */
+@Component
 @RequiredArgsConstructor
 public class PromptLineProvider implements PromptProvider {
     private final String programName = "АстроВидья";
-    private ProgramState programState;
+    private final Main application;
 
     @Override
     public AttributedString getPrompt() {
-        return AttributedString.fromAnsi(programName + switch(programState) {
-            case BASES -> ": базы";
-            case CHART -> ": карта";
-            default -> "";
-        });
+        return new AttributedString("%s [%d]> ".formatted(programName, application.DESK.size()));
     }
 }
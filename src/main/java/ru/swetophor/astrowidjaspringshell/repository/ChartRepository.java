@@ -2,10 +2,12 @@ package ru.swetophor.astrowidjaspringshell.repository;
 
 import ru.swetophor.astrowidjaspringshell.model.ChartList;
 import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
 
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 public interface ChartRepository {
 
@@ -23,11 +25,69 @@ public interface ChartRepository {
 
     Collection<? extends ChartList> getAllAlbums();
 
-    String addChartsToAlbum(ChartList table, String target);
+    default String addChartsToAlbum(ChartList table, String target) {
+        return addChartsToAlbum(table, target, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Добавляет карты из картосписка к альбому.
+     *
+     * @param table  список карт, который надо добавить к альбому.
+     * @param target название альбома.
+     * @param policy что делать с картами, чьи имена уже есть в альбоме.
+     * @return строку с описанием результата операции.
+     * @throws ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException
+     *          если правило {@link CollisionPolicy#FAIL} и имя совпало; альбом тогда не меняется.
+     */
+    String addChartsToAlbum(ChartList table, String target, CollisionPolicy policy);
+
+    default boolean addChartsToAlbum(String s, ChartObject... chartObject) {
+        return addChartsToAlbum(s, CollisionPolicy.DEFAULT, chartObject);
+    }
 
-    boolean addChartsToAlbum(String s, ChartObject... chartObject);
+    /**
+     * Добавляет карты к альбому.
+     *
+     * @return {@code ДА}, если альбом изменился.
+     * @see #addChartsToAlbum(ChartList, String, CollisionPolicy)
+     */
+    boolean addChartsToAlbum(String album, CollisionPolicy policy, ChartObject... charts);
 
     void saveChartsAsAlbum(ChartList desk, String s);
 
-    String deleteAlbum(String groupToDelete);
+    /**
+     * Удаляет альбом с точно таким названием, ни о чём не спрашивая:
+     * какие альбомы удалять и согласен ли на это пользователь, решает вызывающий.
+     *
+     * @param albumName точное название альбома.
+     * @return строку с описанием результата операции.
+     */
+    String deleteAlbum(String albumName);
+
+    /**
+     * Переносит карты с указанными именами из одного альбома в другой.
+     * Если в целевом альбоме уже есть карта с тем же именем, коллизия
+     * разрешается по указанному правилу, как при добавлении карт к альбому;
+     * пропущенные правилом карты остаются в исходном альбоме.
+     * Перенесённые карты удаляются из исходного альбома.
+     *
+     * @param sourceAlbum название альбома, откуда переносятся карты.
+     * @param targetAlbum название альбома, куда переносятся карты.
+     * @param chartNames  имена переносимых карт.
+     * @param policy      что делать с картами, чьи имена уже есть в целевом альбоме.
+     * @return строку с описанием результата операции.
+     */
+    String moveChartsBetweenAlbums(String sourceAlbum, String targetAlbum, List<String> chartNames,
+                                   CollisionPolicy policy);
+
+    /**
+     * Дописывает пачку карт в конец альбома без проверки коллизий имён:
+     * вызывающий сам отвечает за уникальность имён в альбоме.
+     * Если альбома нет, он создаётся. Предназначено для пакетного импорта.
+     *
+     * @param album  название альбома.
+     * @param charts дописываемые карты.
+     * @return количество записанных карт.
+     */
+    int insertCharts(String album, List<? extends ChartObject> charts);
 }
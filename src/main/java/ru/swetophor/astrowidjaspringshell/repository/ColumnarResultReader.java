@@ -0,0 +1,121 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ru.swetophor.astrowidjaspringshell.repository.ColumnarResultWriter.*;
+
+/**
+ * Однопроходное чтение колоночного файла результатов,
+ * записанного {@link ColumnarResultWriter}. Пачки отдаются получателю
+ * целыми колонками, словари накапливаются и доступны по ходу чтения.
+ */
+public class ColumnarResultReader {
+
+    /**
+     * Пачка резонансов, колонки одинаковой длины {@link #rows()}.
+     */
+    public record Resonances(int rows, int[] chart1, int[] astra1, int[] chart2, int[] astra2,
+                             short[] harmonic, short[] multiplicity, float[] clearance,
+                             float[] strength, short[] depth) {
+    }
+
+    /**
+     * Пачка членств астр в паттернах, колонки одинаковой длины {@link #rows()}.
+     */
+    public record Memberships(int rows, int[] pattern, short[] harmonic, int[] chart,
+                              int[] astra, short[] size, float[] strength) {
+    }
+
+    /**
+     * Получатель пачек при чтении.
+     */
+    public interface Visitor {
+        default void resonances(Resonances batch) {
+        }
+
+        default void memberships(Memberships batch) {
+        }
+    }
+
+    private final List<String> charts = new ArrayList<>();
+    private final List<String> astras = new ArrayList<>();
+
+    /**
+     * @param id номер карты из колонки.
+     * @return имя карты из прочитанного словаря.
+     */
+    public String chartName(int id) {
+        return charts.get(id);
+    }
+
+    /**
+     * @param id номер астры из колонки.
+     * @return имя астры из прочитанного словаря.
+     */
+    public String astraName(int id) {
+        return astras.get(id);
+    }
+
+    /**
+     * Читает файл целиком, передавая каждую пачку получателю.
+     *
+     * @param stream  поток колоночного файла.
+     * @param visitor получатель пачек.
+     * @throws IOException если файл не читается или повреждён.
+     */
+    public void read(InputStream stream, Visitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != MAGIC)
+            throw new IOException("это не файл результатов Астровидьи");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("неподдерживаемая версия формата " + version);
+        while (true) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case END -> {
+                    return;
+                }
+                case DICTIONARY -> {
+                    List<String> dictionary = in.readInt() == CHARTS ? charts : astras;
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++)
+                        dictionary.add(in.readUTF());
+                }
+                case RESONANCES -> {
+                    int n = in.readInt();
+                    visitor.resonances(new Resonances(n,
+                            ints(in, n), ints(in, n), ints(in, n), ints(in, n),
+                            shorts(in, n), shorts(in, n), floats(in, n), floats(in, n), shorts(in, n)));
+                }
+                case PATTERNS -> {
+                    int n = in.readInt();
+                    visitor.memberships(new Memberships(n,
+                            ints(in, n), shorts(in, n), ints(in, n), ints(in, n),
+                            shorts(in, n), floats(in, n)));
+                }
+                default -> throw new IOException("неизвестная метка блока " + tag);
+            }
+        }
+    }
+
+    private static int[] ints(DataInputStream in, int n) throws IOException {
+        int[] column = new int[n];
+        for (int i = 0; i < n; i++) column[i] = in.readInt();
+        return column;
+    }
+
+    private static short[] shorts(DataInputStream in, int n) throws IOException {
+        short[] column = new short[n];
+        for (int i = 0; i < n; i++) column[i] = in.readShort();
+        return column;
+    }
+
+    private static float[] floats(DataInputStream in, int n) throws IOException {
+        float[] column = new float[n];
+        for (int i = 0; i < n; i++) column[i] = in.readFloat();
+        return column;
+    }
+}
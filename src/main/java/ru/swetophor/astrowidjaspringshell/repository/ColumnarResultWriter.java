@@ -0,0 +1,218 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Потоковая запись результатов анализа в компактный колоночный файл.
+ * <p>Файл начинается сигнатурой {@link #MAGIC} и номером {@link #VERSION} формата,
+ * далее следуют блоки, каждый открывается байтом-меткой:</p>
+ * <ul>
+ * <li>{@link #DICTIONARY} — приращение словаря: номер словаря ({@link #CHARTS}
+ * или {@link #ASTRAS}), количество новых имён и сами имена в modified UTF-8;
+ * номера имён в словаре идут подряд с нуля в порядке записи;</li>
+ * <li>{@link #RESONANCES} — пачка резонансов: число строк, затем колонки целиком:
+ * {@code int} карта 1, {@code int} астра 1, {@code int} карта 2, {@code int} астра 2,
+ * {@code short} гармоника, {@code short} множитель, {@code float} зазор,
+ * {@code float} сила, {@code short} глубина;</li>
+ * <li>{@link #PATTERNS} — пачка членств в паттернах: число строк, затем колонки
+ * {@code int} номер паттерна, {@code short} гармоника, {@code int} карта,
+ * {@code int} астра, {@code short} число астр паттерна, {@code float} средняя сила паттерна;</li>
+ * <li>{@link #END} — конец файла.</li>
+ * </ul>
+ * <p>Приращение словаря всегда пишется перед пачками, которые на него ссылаются,
+ * так что файл читается за один проход без возврата ({@link ColumnarResultReader}).</p>
+ */
+public class ColumnarResultWriter implements Closeable {
+    public static final int MAGIC = 0x41575231;     // "AWR1"
+    public static final int VERSION = 1;
+    public static final byte END = 0;
+    public static final byte DICTIONARY = 1;
+    public static final byte RESONANCES = 2;
+    public static final byte PATTERNS = 3;
+    public static final int CHARTS = 0;
+    public static final int ASTRAS = 1;
+    /**
+     * Наибольшее число строк в одной пачке.
+     */
+    public static final int BATCH_ROWS = 1 << 16;
+
+    private final DataOutputStream out;
+    private final Dictionary charts = new Dictionary();
+    private final Dictionary astras = new Dictionary();
+
+    private int resonanceRows;
+    private final int[] chart1 = new int[BATCH_ROWS];
+    private final int[] astra1 = new int[BATCH_ROWS];
+    private final int[] chart2 = new int[BATCH_ROWS];
+    private final int[] astra2 = new int[BATCH_ROWS];
+    private final short[] harmonic = new short[BATCH_ROWS];
+    private final short[] multiplicity = new short[BATCH_ROWS];
+    private final float[] clearance = new float[BATCH_ROWS];
+    private final float[] strength = new float[BATCH_ROWS];
+    private final short[] depth = new short[BATCH_ROWS];
+
+    private int membershipRows;
+    private int nextPattern;
+    private final int[] pattern = new int[BATCH_ROWS];
+    private final short[] patternHarmonic = new short[BATCH_ROWS];
+    private final int[] memberChart = new int[BATCH_ROWS];
+    private final int[] memberAstra = new int[BATCH_ROWS];
+    private final short[] patternSize = new short[BATCH_ROWS];
+    private final float[] patternStrength = new float[BATCH_ROWS];
+
+    /**
+     * Словарь имён с очередью ещё не записанных в файл имён.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] pending = new String[64];
+        private int pendingCount;
+
+        int idOf(String name) {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+            id = ids.size();
+            ids.put(name, id);
+            if (pendingCount == pending.length)
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            pending[pendingCount++] = name;
+            return id;
+        }
+    }
+
+    public ColumnarResultWriter(OutputStream stream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * @param name уникальное имя карты.
+     * @return номер карты в словаре карт, новый, если карта встречена впервые.
+     */
+    public int chartId(String name) {
+        return charts.idOf(name);
+    }
+
+    /**
+     * @param name имя астры.
+     * @return номер астры в словаре астр, новый, если астра встречена впервые.
+     */
+    public int astraId(String name) {
+        return astras.idOf(name);
+    }
+
+    /**
+     * Добавляет строку резонанса, при заполнении пачки сбрасывает её в файл.
+     */
+    public void addResonance(int chartA, int astraA, int chartB, int astraB,
+                             int harmonic, int multiplicity, double clearance,
+                             double strength, int depth) throws IOException {
+        int row = resonanceRows++;
+        chart1[row] = chartA;
+        astra1[row] = astraA;
+        chart2[row] = chartB;
+        astra2[row] = astraB;
+        this.harmonic[row] = (short) harmonic;
+        this.multiplicity[row] = (short) multiplicity;
+        this.clearance[row] = (float) clearance;
+        this.strength[row] = (float) strength;
+        this.depth[row] = (short) depth;
+        if (resonanceRows == BATCH_ROWS)
+            flush();
+    }
+
+    /**
+     * Открывает новый паттерн для последующих {@link #addMember членств}.
+     * @return номер паттерна, сквозной по файлу.
+     */
+    public int nextPattern() {
+        return nextPattern++;
+    }
+
+    /**
+     * Добавляет строку членства астры в паттерне, при заполнении пачки сбрасывает её в файл.
+     */
+    public void addMember(int patternId, int harmonic, int chart, int astra,
+                          int size, double strength) throws IOException {
+        int row = membershipRows++;
+        pattern[row] = patternId;
+        patternHarmonic[row] = (short) harmonic;
+        memberChart[row] = chart;
+        memberAstra[row] = astra;
+        patternSize[row] = (short) size;
+        patternStrength[row] = (float) strength;
+        if (membershipRows == BATCH_ROWS)
+            flush();
+    }
+
+    /**
+     * Записывает накопленные приращения словарей и неполные пачки.
+     */
+    public void flush() throws IOException {
+        writeDictionary(CHARTS, charts);
+        writeDictionary(ASTRAS, astras);
+        if (resonanceRows > 0) {
+            int n = resonanceRows;
+            out.writeByte(RESONANCES);
+            out.writeInt(n);
+            writeColumn(chart1, n);
+            writeColumn(astra1, n);
+            writeColumn(chart2, n);
+            writeColumn(astra2, n);
+            writeColumn(harmonic, n);
+            writeColumn(multiplicity, n);
+            writeColumn(clearance, n);
+            writeColumn(strength, n);
+            writeColumn(depth, n);
+            resonanceRows = 0;
+        }
+        if (membershipRows > 0) {
+            int n = membershipRows;
+            out.writeByte(PATTERNS);
+            out.writeInt(n);
+            writeColumn(pattern, n);
+            writeColumn(patternHarmonic, n);
+            writeColumn(memberChart, n);
+            writeColumn(memberAstra, n);
+            writeColumn(patternSize, n);
+            writeColumn(patternStrength, n);
+            membershipRows = 0;
+        }
+        out.flush();
+    }
+
+    private void writeDictionary(int kind, Dictionary dictionary) throws IOException {
+        if (dictionary.pendingCount == 0) return;
+        out.writeByte(DICTIONARY);
+        out.writeInt(kind);
+        out.writeInt(dictionary.pendingCount);
+        for (int i = 0; i < dictionary.pendingCount; i++) {
+            out.writeUTF(dictionary.pending[i]);
+            dictionary.pending[i] = null;
+        }
+        dictionary.pendingCount = 0;
+    }
+
+    private void writeColumn(int[] column, int n) throws IOException {
+        for (int i = 0; i < n; i++) out.writeInt(column[i]);
+    }
+
+    private void writeColumn(short[] column, int n) throws IOException {
+        for (int i = 0; i < n; i++) out.writeShort(column[i]);
+    }
+
+    private void writeColumn(float[] column, int n) throws IOException {
+        for (int i = 0; i < n; i++) out.writeFloat(column[i]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.writeByte(END);
+        out.close();
+    }
+}
@@ -0,0 +1,349 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.EphemerisSeries;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.normalizeCoordinate;
+
+/**
+ * Локальная эфемерида в двоичном файле, отображённом в память.
+ * <p>Файл собирается {@link #compile(EphemerisSeries, Path) компиляцией} табличной
+ * эфемериды с равным шагом. Формат: сигнатура {@link #MAGIC}, число астр, их названия
+ * (длина и байты UTF-8), момент первого отсчёта и шаг в секундах, число отсчётов; далее блоки
+ * по {@link #BLOCK} отсчётов, в блоке для каждой астры {@code BLOCK + 1} развёрнутых
+ * долгот и столько же скоростей в градусах за шаг (последний отсчёт блока повторяет
+ * первый отсчёт следующего, так что любой промежуток между отсчётами лежит в одном блоке).</p>
+ * <p>Позиция на произвольный момент — кубический многочлен Эрмита по долготам
+ * и скоростям двух соседних отсчётов. Раскодированные блоки держатся в небольшом
+ * кэше с вытеснением давно не использованных, так что повторные запросы
+ * в пределах месяца обходятся без чтения файла.</p>
+ * <p>Файл отображается в память одним буфером, поэтому его размер ограничен
+ * {@link #MAX_FILE_SIZE}; более крупную эфемериду компиляция отклоняет.</p>
+ */
+@Repository
+public class EphemerisStore {
+    public static final int MAGIC = 0x41574531;     // "AWE1"
+    /**
+     * Отсчётов в блоке.
+     */
+    public static final int BLOCK = 32;
+    /**
+     * Сколько раскодированных блоков держать в кэше.
+     */
+    static final int CACHED_BLOCKS = 64;
+    /**
+     * Наибольший размер файла, который отображается в память одним буфером.
+     */
+    public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer data;
+    private List<String> astraNames;
+    private double start;
+    private double step;
+    private int samples;
+    private long dataOffset;
+
+    /**
+     * Раскодированный блок: {@code [астра][0..BLOCK]} долготы и скорости.
+     */
+    private record Block(double[][] longitudes, double[][] speeds) {
+    }
+
+    private final Map<Integer, Block> cache = new LinkedHashMap<>(CACHED_BLOCKS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    public EphemerisStore(@Value("${astrowidja.ephemeris:base/ephemeris.awe}") String ephemerisFile) {
+        file = Path.of(ephemerisFile);
+    }
+
+    /**
+     * Собирает двоичную эфемериду из табличной.
+     *
+     * @param series табличная эфемерида с равным шагом отсчётов.
+     * @param target путь к создаваемому файлу.
+     * @throws IOException если файл не пишется.
+     * @throws IllegalArgumentException если шаг отсчётов не равный
+     *                                  или файл вышел бы больше {@link #MAX_FILE_SIZE}.
+     */
+    public static void compile(EphemerisSeries series, Path target) throws IOException {
+        double[] times = series.getTimes();
+        if (times.length < 2)
+            throw new IllegalArgumentException("В эфемериде меньше двух отсчётов");
+        double step = times[1] - times[0];
+        for (int i = 2; i < times.length; i++)
+            if (Math.abs(times[i] - times[i - 1] - step) > 1e-6)
+                throw new IllegalArgumentException("Шаг эфемериды неравный: отсчёт %d".formatted(i));
+        int n = times.length;
+        int astras = series.getAstraNames().size();
+        long size = 4 + 4 + 8 + 8 + 4
+                + (long) ((n - 2) / BLOCK + 1) * astras * 2 * (BLOCK + 1) * Double.BYTES;
+        for (String name : series.getAstraNames())
+            size += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        if (size > MAX_FILE_SIZE)
+            throw new IllegalArgumentException(("Эфемерида заняла бы %d МБ, больше предела %d МБ: " +
+                    "возьмите шаг крупнее или промежуток короче").formatted(size >> 20, MAX_FILE_SIZE >> 20));
+        if (target.getParent() != null)
+            Files.createDirectories(target.getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(target), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(astras);
+            for (String name : series.getAstraNames()) {
+                byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(encoded.length);
+                out.write(encoded);
+            }
+            out.writeDouble(times[0]);
+            out.writeDouble(step);
+            out.writeInt(n);
+            for (int first = 0; first < n - 1; first += BLOCK)
+                for (int a = 0; a < astras; a++) {
+                    double[] lon = series.getLongitudes()[a];
+                    for (int k = 0; k <= BLOCK; k++)
+                        out.writeDouble(lon[Math.min(first + k, n - 1)]);
+                    for (int k = 0; k <= BLOCK; k++)
+                        out.writeDouble(speed(lon, Math.min(first + k, n - 1)));
+                }
+        }
+    }
+
+    /**
+     * @return скорость в градусах за шаг: центральная разность, на краях — односторонняя.
+     */
+    private static double speed(double[] lon, int i) {
+        if (i == 0) return lon[1] - lon[0];
+        if (i == lon.length - 1) return lon[i] - lon[i - 1];
+        return (lon[i + 1] - lon[i - 1]) / 2;
+    }
+
+    /**
+     * Открывает файл эфемериды при первом обращении.
+     * @throws UncheckedIOException если файла нет или он повреждён.
+     */
+    private synchronized void open() {
+        if (data != null) return;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (channel.size() > MAX_FILE_SIZE)
+                throw new IOException("файл больше %d МБ".formatted(MAX_FILE_SIZE >> 20));
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt() != MAGIC)
+                throw new IOException("это не файл эфемериды Астровидьи");
+            int astras = data.getInt();
+            List<String> names = new ArrayList<>(astras);
+            for (int a = 0; a < astras; a++) {
+                byte[] name = new byte[data.getShort() & 0xFFFF];
+                data.get(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+            }
+            astraNames = List.copyOf(names);
+            start = data.getDouble();
+            step = data.getDouble();
+            samples = data.getInt();
+            dataOffset = data.position();
+        } catch (IOException e) {
+            data = null;
+            closeChannel();
+            throw new UncheckedIOException("Эфемерида %s недоступна: %s"
+                    .formatted(file, e.getLocalizedMessage()), e);
+        }
+    }
+
+    /**
+     * Заменяет файл эфемериды скомпилированной табличной эфемеридой и сбрасывает кэш.
+     * Эфемерида собирается во временный файл рядом с рабочим и подменяет его
+     * переименованием, так что при сбое сборки рабочий файл остаётся прежним.
+     *
+     * @param source путь к табличной эфемериде.
+     * @return сообщение о результате.
+     */
+    public synchronized String compileFrom(Path source) {
+        Path temporary = null;
+        try {
+            EphemerisSeries series = EphemerisSeries.read(source);
+            Path folder = file.toAbsolutePath().getParent();
+            Files.createDirectories(folder);
+            temporary = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+            compile(series, temporary);
+            close();
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+            open();
+            return "Эфемерида %s собрана: %d астр, %d отсчётов"
+                    .formatted(file, series.getAstraNames().size(), series.size());
+        } catch (IOException | RuntimeException e) {
+            return "Не удалось собрать эфемериду из '%s': %s".formatted(source, e.getLocalizedMessage());
+        } finally {
+            if (temporary != null)
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        cache.clear();
+        data = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Закрывает канал файла, который не удалось открыть, не заслоняя исходной ошибки.
+     */
+    private void closeChannel() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public List<String> getAstraNames() {
+        open();
+        return astraNames;
+    }
+
+    /**
+     * @return момент первого отсчёта, секунды эпохи.
+     */
+    public double getStart() {
+        open();
+        return start;
+    }
+
+    /**
+     * @return момент последнего отсчёта, секунды эпохи.
+     */
+    public double getEnd() {
+        open();
+        return start + step * (samples - 1);
+    }
+
+    /**
+     * @return номера блоков в кэше, от давно использованного к недавнему.
+     */
+    synchronized List<Integer> cachedBlocks() {
+        return List.copyOf(cache.keySet());
+    }
+
+    private synchronized Block block(int index) {
+        Block block = cache.get(index);
+        if (block != null) return block;
+        int astras = astraNames.size();
+        long offset = dataOffset + (long) index * astras * 2 * (BLOCK + 1) * Double.BYTES;
+        double[][] longitudes = new double[astras][BLOCK + 1];
+        double[][] speeds = new double[astras][BLOCK + 1];
+        ByteBuffer view = data.duplicate().position(Math.toIntExact(offset));
+        for (int a = 0; a < astras; a++) {
+            view.asDoubleBuffer().get(longitudes[a]);
+            view.position(view.position() + (BLOCK + 1) * Double.BYTES);
+            view.asDoubleBuffer().get(speeds[a]);
+            view.position(view.position() + (BLOCK + 1) * Double.BYTES);
+        }
+        block = new Block(longitudes, speeds);
+        cache.put(index, block);
+        return block;
+    }
+
+    /**
+     * Выдаёт развёрнутую (непрерывную во времени) долготу астры на момент.
+     *
+     * @param astra номер астры в {@link #getAstraNames()}.
+     * @param time  момент, секунды эпохи, в пределах эфемериды.
+     * @return долготу в градусах, не приведённую к кругу.
+     * @throws IllegalArgumentException если момент вне эфемериды.
+     */
+    public double unwrappedLongitude(int astra, double time) {
+        open();
+        double x = (time - start) / step;
+        if (x < 0 || x > samples - 1)
+            throw new IllegalArgumentException("Момент %s вне эфемериды (%s – %s)".formatted(
+                    EphemerisSeries.toDateTime(time),
+                    EphemerisSeries.toDateTime(start), EphemerisSeries.toDateTime(getEnd())));
+        int i = Math.min((int) x, samples - 2);
+        double f = x - i;
+        Block block = block(i / BLOCK);
+        int k = i % BLOCK;
+        double p0 = block.longitudes()[astra][k], p1 = block.longitudes()[astra][k + 1];
+        double m0 = block.speeds()[astra][k], m1 = block.speeds()[astra][k + 1];
+        double f2 = f * f, f3 = f2 * f;
+        return (2 * f3 - 3 * f2 + 1) * p0 + (f3 - 2 * f2 + f) * m0
+                + (-2 * f3 + 3 * f2) * p1 + (f3 - f2) * m1;
+    }
+
+    /**
+     * @return долготу астры на момент, приведённую к 0°–360°.
+     */
+    public double longitude(int astra, double time) {
+        return normalizeCoordinate(unwrappedLongitude(astra, time));
+    }
+
+    /**
+     * Строит карту на момент по всем астрам эфемериды.
+     *
+     * @param name имя карты.
+     * @param time момент, секунды эпохи.
+     * @return карту с позициями всех астр эфемериды.
+     */
+    public Chart chartAt(String name, double time) {
+        List<String> names = getAstraNames();
+        Chart chart = new Chart(name);
+        for (int a = 0; a < names.size(); a++)
+            chart.addAstra(new Astra(names.get(a), longitude(a, time)));
+        return chart;
+    }
+
+    /**
+     * Выдаёт ряд положений с заданным шагом, интерполированных по эфемериде,
+     * например для поиска транзитов с шагом мельче суточного.
+     *
+     * @param from начало, секунды эпохи.
+     * @param to   конец, секунды эпохи.
+     * @param by   шаг, секунды.
+     * @return ряд положений всех астр эфемериды на отрезке, пересечённом с эфемеридой.
+     */
+    public EphemerisSeries series(double from, double to, double by) {
+        double first = Math.max(from, getStart()), last = Math.min(to, getEnd());
+        int n = (int) Math.floor((last - first) / by) + 1;
+        if (n < 2)
+            throw new IllegalArgumentException("Промежуток короче двух отсчётов");
+        int astras = astraNames.size();
+        double[] times = new double[n];
+        double[][] longitudes = new double[astras][n];
+        for (int i = 0; i < n; i++) {
+            times[i] = first + i * by;
+            for (int a = 0; a < astras; a++)
+                longitudes[a][i] = unwrappedLongitude(a, times[i]);
+        }
+        return new EphemerisSeries(times, astraNames, longitudes);
+    }
+}
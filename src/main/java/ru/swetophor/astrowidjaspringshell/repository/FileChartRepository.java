@@ -1,11 +1,11 @@
 package ru.swetophor.astrowidjaspringshell.repository;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
-import ru.swetophor.astrowidjaspringshell.client.UserController;
 import ru.swetophor.astrowidjaspringshell.model.Chart;
 import ru.swetophor.astrowidjaspringshell.model.ChartList;
 import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
 import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
 
 import java.io.File;
@@ -14,12 +14,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
 
 @Repository
-@RequiredArgsConstructor
+@Profile("!embedded")
 public class FileChartRepository implements ChartRepository {
     private static final String baseDir = "base";
     /**
@@ -27,9 +28,11 @@ public class FileChartRepository implements ChartRepository {
      */
     private static final File base = new File(baseDir);
 
-    private final UserController userController;
-
-    static {
+    /**
+     * Создаёт рабочую папку, если её нет. Делается при создании хранилища,
+     * а не при загрузке класса, чтобы нативный образ не трогал диск при сборке.
+     */
+    public FileChartRepository() {
         Path basePath = Path.of(baseDir);
         if (!Files.exists(basePath)) {
             String msg;
@@ -44,9 +47,20 @@ public class FileChartRepository implements ChartRepository {
     }
 
 
+    /**
+     * Сообщает, есть ли в рабочей папке файл альбома с таким названием.
+     * Если название дано без расширения, проверяются оба варианта:
+     * {@code .awb} и {@code .awc}.
+     * @param albumName название альбома (имя файла в рабочей папке).
+     * @return {@code ДА}, если такой файл существует.
+     */
     @Override
     public boolean albumExists(String albumName) {
-        return false;
+        if (albumName == null || albumName.isBlank())
+            return false;
+        return Files.exists(Path.of(baseDir, albumName)) ||
+                Files.exists(Path.of(baseDir, albumName + ".awb")) ||
+                Files.exists(Path.of(baseDir, albumName + ".awc"));
     }
 
     @Override
@@ -57,7 +71,8 @@ public class FileChartRepository implements ChartRepository {
     /**
      * Прочитывает список карт из формата *.awb
      * Если файл не существует или чтение обламывается,
-     * выводит об этом сообщение.
+     * выводит об этом сообщение. Повторяющиеся в файле имена
+     * получают номера ({@link CollisionPolicy#RENAME}).
      * Ожидается, что имя файла уже содержит расширение,
      * оно не восполняется.
      * @param filename имя файла в папке данных.
@@ -67,8 +82,10 @@ public class FileChartRepository implements ChartRepository {
      */
     private ChartList readChartsFromFile(String filename) {
         ChartList read = new ChartList(filename);
-        if (filename == null || filename.isBlank())
+        if (filename == null || filename.isBlank()) {
             print("Файл не указан");
+            return read;
+        }
         Path filePath = Path.of(baseDir, filename);
         if (!Files.exists(filePath))
             print("Не удалось обнаружить файла '%s'%n".formatted(filename));
@@ -78,7 +95,7 @@ public class FileChartRepository implements ChartRepository {
                                 .split("#"))
                         .filter(s -> !s.isBlank() && !s.startsWith("//"))
                         .map(Chart::readFromString)
-                        .forEach(chart -> read.addResolving(chart, filename));
+                        .forEach(chart -> read.addResolving(chart, filename, CollisionPolicy.RENAME));
             } catch (IOException e) {
                 print("Не удалось прочесть файл '%s': %s%n".formatted(filename, e.getLocalizedMessage()));
             }
@@ -96,13 +113,14 @@ public class FileChartRepository implements ChartRepository {
      *
      * @param table  список карт, который надо добавить к списку в файле.
      * @param target имя файла в папке базы данных, в который нужно дописать карты.
+     * @param policy что делать с картами, чьи имена уже есть в файле.
      * @return  строку с описанием результата операции.
      */
     @Override
-    public String addChartsToAlbum(ChartList table, String target) {
+    public String addChartsToAlbum(ChartList table, String target, CollisionPolicy policy) {
         String result;
         ChartList fileContent = readChartsFromFile(target);
-        if (table.isEmpty() || !fileContent.addAll(table)) {
+        if (table.isEmpty() || !fileContent.addAll(table.getCharts(), policy)) {
             result = "Никаких новых карт в файл не добавлено.";
         } else {
             String drop = fileContent.getString();
@@ -119,71 +137,13 @@ public class FileChartRepository implements ChartRepository {
 
     @Override
     public String deleteAlbum(String fileToDelete) {
-        // TODO: выделить функции идентификации файла/карты по номеру/имени
-        String report = "Файл %s удалён.".formatted(fileToDelete);
         try {
-            List<String> fileList = albumNames();
-            if (fileToDelete.matches("^\\d+")) {
-                int indexToDelete;
-                try {
-                    indexToDelete = Integer.parseInt(fileToDelete) - 1;
-                    if (indexToDelete < 0 || indexToDelete >= fileList.size()) {
-                        report = "в базе всего " + fileList.size() + "файлов";
-                    } else {
-                        String nameToDelete = fileList.get(indexToDelete);
-                        if (confirmDeletion(nameToDelete)) {
-                            if (!Files.deleteIfExists(Path.of(baseDir, nameToDelete))) {
-                                report = "не найдено файла " + nameToDelete;
-                            }
-                        } else {
-                            report ="отмена удаления " + nameToDelete;
-                        }
-                    }
-                } catch (NumberFormatException e) {         // никогда не выбрасывается
-                    report = "не разобрать числа, " + e.getLocalizedMessage();
-                }
-            } else if (fileToDelete.endsWith("***")) {
-                String prefix = fileToDelete.substring(0, fileToDelete.length() - 3);
-                for (String name : fileList) {
-                    if (name.startsWith(prefix)) {
-                        if (confirmDeletion(name)) {
-                            if (!Files.deleteIfExists(Path.of(baseDir, name))) {
-                                report = "не найдено файла " + name;
-                            } else {
-                                report = name + " удалился";
-                            }
-                        } else {
-                            report = "отмена удаления " + name;
-                        }
-                    }
-                }
-            } else if (fileToDelete.matches("^[\\p{L}\\-. !()+=_\\[\\]№\\d]+$")) {
-                // TODO: нормальную маску допустимого имени файла
-                if (!fileToDelete.endsWith(".awb") && !fileToDelete.endsWith(".awc")) {
-                    if (Files.exists(Path.of(baseDir, fileToDelete + ".awc"))) {
-                        fileToDelete = fileToDelete + ".awc";
-                    }
-                    else if (Files.exists(Path.of(baseDir, fileToDelete + ".awb"))) {
-                        fileToDelete = fileToDelete + ".awb";
-                    }
-                }
-                if (!Files.deleteIfExists(Path.of(baseDir, fileToDelete))) {
-                    report = "не найдено файла " + fileToDelete;
-                }
-            } else {
-                report = "скорее всего, недопустимое имя файла";
-            }
+            return Files.deleteIfExists(Path.of(baseDir, fileToDelete)) ?
+                    "Файл %s удалён.".formatted(fileToDelete) :
+                    "не найдено файла " + fileToDelete;
         } catch (IOException e) {
-            report = "ошибка чтения базы, %s".formatted(e.getLocalizedMessage());
-        } catch (Exception e) {
-            report = "ошибка удаления файла %s: %s".formatted(fileToDelete, e.getLocalizedMessage());
+            return "ошибка удаления файла %s: %s".formatted(fileToDelete, e.getLocalizedMessage());
         }
-        return report;
-    }
-
-    private boolean confirmDeletion(String nameToDelete) {
-        return userController
-                .confirmationAnswer("Точно удалить " + nameToDelete + "?");
     }
 
     /**
@@ -243,14 +203,75 @@ public class FileChartRepository implements ChartRepository {
     }
 
     @Override
-    public boolean addChartsToAlbum(String file, ChartObject... charts) {
+    public boolean addChartsToAlbum(String file, CollisionPolicy policy, ChartObject... charts) {
         ChartList fileContent = readChartsFromFile(file);
         boolean changed = false;
         for (ChartObject c : charts)
-            if (fileContent.addResolving(c, file))
+            if (fileContent.addResolving(c, file, policy))
                 changed = true;
         if (changed)
             saveChartsAsAlbum(fileContent, file);
         return changed;
     }
+
+    /**
+     * Переносит карты из файла в файл: карты дописываются в целевой файл,
+     * затем исходный файл переписывается без перенесённых карт.
+     * Файловое хранилище не поддерживает транзакций, поэтому при сбое
+     * записи исходного файла карты могут оказаться в обоих файлах, но не потеряются.
+     *
+     * @param sourceAlbum название файла, откуда переносятся карты.
+     * @param targetAlbum название файла, куда переносятся карты.
+     * @param chartNames  имена переносимых карт.
+     * @param policy      что делать с картами, чьи имена уже есть в целевом файле.
+     * @return строку с описанием результата операции.
+     */
+    @Override
+    public String moveChartsBetweenAlbums(String sourceAlbum, String targetAlbum, List<String> chartNames,
+                                          CollisionPolicy policy) {
+        ChartList source = readChartsFromFile(sourceAlbum);
+        ChartList target = readChartsFromFile(targetAlbum);
+        List<String> moved = new ArrayList<>();
+        for (String name : chartNames) {
+            ChartObject chart = source.get(name);
+            if (chart == null)
+                print("Карты '%s' нет в %s".formatted(name, sourceAlbum));
+            else if (target.addResolving(chart, targetAlbum, policy))
+                moved.add(name);
+        }
+        if (moved.isEmpty())
+            return "Ни одной карты не перенесено.";
+
+        saveChartsAsAlbum(target, targetAlbum);
+        moved.forEach(source::remove);
+        saveChartsAsAlbum(source, sourceAlbum);
+        return "Перенесено из %s в %s карт: %d".formatted(sourceAlbum, targetAlbum, moved.size());
+    }
+
+    /**
+     * Дописывает карты в конец файла, не перечитывая его.
+     * Записываются только одинарные карты, как в {@link ChartList#getString()}.
+     *
+     * @param album  имя файла в рабочей папке.
+     * @param charts дописываемые карты.
+     * @return количество записанных карт, 0 при сбое записи.
+     */
+    @Override
+    public int insertCharts(String album, List<? extends ChartObject> charts) {
+        StringBuilder drop = new StringBuilder();
+        int written = 0;
+        for (ChartObject chart : charts)
+            if (chart instanceof Chart) {
+                drop.append(chart.getString());
+                written++;
+            }
+        try {
+            Files.writeString(Path.of(baseDir, album), drop,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            print("Запись в файл %s обломалась: %s%n".formatted(album, e.getLocalizedMessage()));
+            return 0;
+        }
+        return written;
+    }
 }
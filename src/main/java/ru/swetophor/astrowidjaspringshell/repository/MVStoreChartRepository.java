@@ -0,0 +1,301 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartList;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
+
+/**
+ * Картохранилище во встроенном хранилище ключ-значение (H2 MVStore),
+ * файл которого лежит в рабочей папке.
+ * Каждый альбом представлен двумя таблицами: {@code album:имя} — порядковый
+ * номер карты → текст карты в формате {@link Chart#getString()}, и
+ * {@code index:имя} — имя карты → порядковый номер. Общая таблица {@code albums}
+ * сопоставляет названию альбома время его последнего изменения.
+ * Хранилище открыто без автофиксации: каждая модифицирующая операция
+ * фиксируется целиком одним {@link MVStore#commit()} или откатывается при сбое.
+ * Включается профилем {@code embedded}.
+ */
+@Repository
+@Profile("embedded")
+public class MVStoreChartRepository implements ChartRepository {
+    private static final String ALBUMS = "albums";
+    private static final String ALBUM_PREFIX = "album:";
+    private static final String INDEX_PREFIX = "index:";
+
+    private final MVStore store;
+    /**
+     * Таблица альбомов: название → время последнего изменения.
+     */
+    private final MVMap<String, Long> albums;
+
+    public MVStoreChartRepository(@Value("${astrowidja.store:base/astrowidja.mv}") String storeFile) {
+        Path storePath = Path.of(storeFile);
+        try {
+            if (storePath.getParent() != null)
+                Files.createDirectories(storePath.getParent());
+        } catch (IOException e) {
+            print("Не удалось создать папку для хранилища %s: %s%n"
+                    .formatted(storeFile, e.getLocalizedMessage()));
+        }
+        store = new MVStore.Builder()
+                .fileName(storeFile)
+                .autoCommitDisabled()
+                .open();
+        albums = store.openMap(ALBUMS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!store.isClosed())
+            store.close();
+    }
+
+    private MVMap<Long, String> albumTable(String albumName) {
+        return store.openMap(ALBUM_PREFIX + albumName);
+    }
+
+    private MVMap<String, Long> indexTable(String albumName) {
+        return store.openMap(INDEX_PREFIX + albumName);
+    }
+
+    /**
+     * Восстанавливает карту из текста, сохранённого в таблице альбома.
+     * @param stored текст карты, как его даёт {@link Chart#getString()}.
+     * @return прочитанную карту.
+     */
+    private static Chart decode(String stored) {
+        return Chart.readFromString(stored.startsWith("#") ?
+                stored.substring(1) :
+                stored);
+    }
+
+    /**
+     * Текст, под которым карта хранится в таблице альбома.
+     * @param chart одинарная карта.
+     * @return текст карты в формате {@link Chart#getString()}.
+     */
+    String encode(ChartObject chart) {
+        return chart.getString();
+    }
+
+    /**
+     * Выполняет модифицирующую операцию как одну транзакцию:
+     * при успехе фиксирует все изменения разом, при сбое откатывает их.
+     * @param operation операция над таблицами хранилища.
+     * @param <T>       тип результата операции.
+     * @return результат операции.
+     */
+    private <T> T inTransaction(Supplier<T> operation) {
+        try {
+            T result = operation.get();
+            store.commit();
+            return result;
+        } catch (RuntimeException e) {
+            store.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Дописывает карты в конец альбома без проверки коллизий имён
+     * (вызывающий должен обеспечить их уникальность) и отмечает изменение альбома.
+     * Транзакцию не фиксирует.
+     * @param albumName название альбома.
+     * @param charts    добавляемые карты, из них записываются только одинарные.
+     * @return количество записанных карт.
+     */
+    private int appendCharts(String albumName, Collection<? extends ChartObject> charts) {
+        MVMap<Long, String> table = albumTable(albumName);
+        MVMap<String, Long> index = indexTable(albumName);
+        Long last = table.lastKey();
+        long position = last == null ? 0 : last + 1;
+        int written = 0;
+        for (ChartObject chart : charts) {
+            if (!(chart instanceof Chart)) continue;
+            table.put(position, encode(chart));
+            index.put(chart.getName(), position);
+            position++;
+            written++;
+        }
+        albums.put(albumName, System.currentTimeMillis());
+        return written;
+    }
+
+    /**
+     * Заменяет содержимое альбома содержимым картосписка. Транзакцию не фиксирует.
+     * @param albumName название альбома.
+     * @param content   новое содержимое альбома.
+     * @return количество записанных карт.
+     */
+    private int rewriteAlbum(String albumName, ChartList content) {
+        albumTable(albumName).clear();
+        indexTable(albumName).clear();
+        return appendCharts(albumName, content.getCharts());
+    }
+
+    @Override
+    public boolean albumExists(String albumName) {
+        return albumName != null && albums.containsKey(albumName);
+    }
+
+    @Override
+    public ChartList getAlbumContent(String albumName) {
+        ChartList content = new ChartList(albumName);
+        if (!albumExists(albumName)) {
+            print("Не удалось обнаружить альбома '%s'%n".formatted(albumName));
+            return content;
+        }
+        albumTable(albumName).values().stream()
+                .map(MVStoreChartRepository::decode)
+                .forEach(content::addItem);
+        return content;
+    }
+
+    /**
+     * Выдаёт список альбомов в хранилище.
+     * @return названия альбомов, сортированные по времени последнего изменения.
+     */
+    @Override
+    public List<String> albumNames() {
+        return albums.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    @Override
+    public List<ChartList> getAllAlbums() {
+        return albumNames().stream()
+                .map(this::getAlbumContent)
+                .toList();
+    }
+
+    /**
+     * Добавляет карты из картосписка к альбому. Если ни одно имя не входит
+     * в коллизию с картами альбома, карты дописываются одной пачкой по индексу имён,
+     * без чтения альбома. Иначе альбом читается, коллизии разрешаются по правилу,
+     * как в {@link ChartList#addAll(Collection, CollisionPolicy)}, и альбом переписывается целиком.
+     *
+     * @param table  список карт, который надо добавить к альбому.
+     * @param target название альбома.
+     * @param policy что делать с картами, чьи имена уже есть в альбоме.
+     * @return количество карт, записанных в альбом, или 0, если альбом не изменился.
+     */
+    private int mergeIntoAlbum(ChartList table, String target, CollisionPolicy policy) {
+        if (table.isEmpty())
+            return 0;
+        MVMap<String, Long> index = indexTable(target);
+        if (table.getNames().stream().noneMatch(index::containsKey))
+            return inTransaction(() -> appendCharts(target, table.getCharts()));
+
+        ChartList content = getAlbumContent(target);
+        if (!content.addAll(table.getCharts(), policy))
+            return 0;
+        return inTransaction(() -> rewriteAlbum(target, content));
+    }
+
+    @Override
+    public String addChartsToAlbum(ChartList table, String target, CollisionPolicy policy) {
+        int written = mergeIntoAlbum(table, target, policy);
+        return written == 0 ?
+                "Никаких новых карт в альбом не добавлено." :
+                "Альбом %s обновлён, записано карт: %d%n".formatted(target, written);
+    }
+
+    @Override
+    public boolean addChartsToAlbum(String album, CollisionPolicy policy, ChartObject... charts) {
+        ChartList adding = new ChartList(album);
+        for (ChartObject chart : charts)
+            adding.addResolving(chart, album, policy);
+        return mergeIntoAlbum(adding, album, policy) > 0;
+    }
+
+    /**
+     * Записывает содержимое картосписка в альбом, заменяя прежнее содержимое.
+     * Название альбома дополняется расширением так же, как в файловом хранилище,
+     * чтобы альбомы были взаимозаменяемы.
+     * @param content  список карт, чьё содержимое записывается.
+     * @param albumName название альбома.
+     */
+    @Override
+    public void saveChartsAsAlbum(ChartList content, String albumName) {
+        String album = Mechanics.extendFileName(albumName, content.size() == 1);
+        inTransaction(() -> rewriteAlbum(album, content));
+        print("Карты {%s} записаны в альбом %s.%n"
+                .formatted(String.join(", ", content.getNames()), album));
+    }
+
+    @Override
+    public String deleteAlbum(String albumName) {
+        if (!albumExists(albumName))
+            return "не найдено альбома " + albumName;
+        inTransaction(() -> {
+            store.removeMap(ALBUM_PREFIX + albumName);
+            store.removeMap(INDEX_PREFIX + albumName);
+            return albums.remove(albumName);
+        });
+        return "Альбом %s удалён.".formatted(albumName);
+    }
+
+    /**
+     * Переносит карты между альбомами в одной транзакции: запись в целевой альбом
+     * и удаление из исходного фиксируются вместе либо не фиксируются вовсе.
+     *
+     * @param sourceAlbum название альбома, откуда переносятся карты.
+     * @param targetAlbum название альбома, куда переносятся карты.
+     * @param chartNames  имена переносимых карт.
+     * @param policy      что делать с картами, чьи имена уже есть в целевом альбоме.
+     * @return строку с описанием результата операции.
+     */
+    @Override
+    public String moveChartsBetweenAlbums(String sourceAlbum, String targetAlbum, List<String> chartNames,
+                                          CollisionPolicy policy) {
+        if (!albumExists(sourceAlbum))
+            return "Не найдено альбома " + sourceAlbum;
+        MVMap<Long, String> sourceTable = albumTable(sourceAlbum);
+        MVMap<String, Long> sourceIndex = indexTable(sourceAlbum);
+        ChartList target = getAlbumContent(targetAlbum);
+
+        Map<String, Long> moved = new LinkedHashMap<>();
+        for (String name : chartNames) {
+            Long position = sourceIndex.get(name);
+            if (position == null)
+                print("Карты '%s' нет в %s".formatted(name, sourceAlbum));
+            else if (target.addResolving(decode(sourceTable.get(position)), targetAlbum, policy))
+                moved.put(name, position);
+        }
+        if (moved.isEmpty())
+            return "Ни одной карты не перенесено.";
+
+        inTransaction(() -> {
+            rewriteAlbum(targetAlbum, target);
+            moved.forEach((name, position) -> {
+                sourceTable.remove(position);
+                sourceIndex.remove(name);
+            });
+            return albums.put(sourceAlbum, System.currentTimeMillis());
+        });
+        return "Перенесено из %s в %s карт: %d".formatted(sourceAlbum, targetAlbum, moved.size());
+    }
+
+    @Override
+    public int insertCharts(String album, List<? extends ChartObject> charts) {
+        return inTransaction(() -> appendCharts(album, charts));
+    }
+}
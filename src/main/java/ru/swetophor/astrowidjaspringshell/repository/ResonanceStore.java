@@ -0,0 +1,231 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartResonances;
+import ru.swetophor.astrowidjaspringshell.model.MatrixBuffer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранённые на диске расчёты резонансов одиночных карт ({@link ChartResonances}),
+ * по файлу на альбом в папке {@code astrowidja.resonances}.
+ * <p>Файл альбома читается при первом обращении к альбому. Расчёт карты берётся
+ * из него, только если совпадают отпечаток содержимого карты
+ * ({@link ChartResonances#contentHash(Chart)}), орбис и предельная гармоника;
+ * иначе карта рассчитывается заново и расчёт заменяет прежний. Смена орбиса
+ * или предельной гармоники сбрасывает весь альбом. Изменённые альбомы
+ * записываются {@link #flush()} и при закрытии приложения.</p>
+ * <p>Формат файла: сигнатура {@link #MAGIC}, орбис, предельная гармоника, число карт;
+ * далее для каждой карты имя (длина и байты UTF-8), отпечаток, число астр, дуги пар
+ * и слова гармоник пар.</p>
+ */
+@Repository
+public class ResonanceStore {
+    public static final int MAGIC = 0x41575831;     // "AWX1"
+    public static final String EXTENSION = ".awx";
+    /**
+     * Имя хранилища в измерениях обращений.
+     */
+    private static final String STORE = "ResonanceStore";
+
+    private final Path folder;
+    private final Map<String, Album> albums = new ConcurrentHashMap<>();
+
+    /**
+     * Расчёты карт одного альбома при одних настройках.
+     */
+    private static final class Album {
+        private volatile double orb;
+        private volatile int edge;
+        private final Map<String, ChartResonances> charts = new ConcurrentHashMap<>();
+        private volatile boolean dirty;
+
+        private Album(double orb, int edge) {
+            this.orb = orb;
+            this.edge = edge;
+        }
+    }
+
+    public ResonanceStore(@Value("${astrowidja.resonances:base/resonances}") String resonancesFolder) {
+        folder = Path.of(resonancesFolder);
+    }
+
+    /**
+     * Загружает в буфер расчёт карты альбома: сохранённый, если он годится,
+     * иначе рассчитанный заново по позициям, который и запоминается.
+     *
+     * @param buffer буфер с предельной гармоникой расчёта.
+     * @param album  название альбома.
+     * @param chart  одиночная карта.
+     * @param orb    первичный орбис.
+     */
+    public void loadInto(MatrixBuffer buffer, String album, Chart chart, double orb) {
+        int edge = buffer.getEdge();
+        Album stored = album(album, orb, edge);
+        long hash = ChartResonances.contentHash(chart);
+        ChartResonances resonances = stored.charts.get(chart.getName());
+        if (resonances != null && resonances.matches(hash, orb, edge)) {
+            buffer.load(resonances);
+            return;
+        }
+        buffer.load(chart, orb);
+        stored.charts.put(chart.getName(), buffer.snapshot(hash));
+        stored.dirty = true;
+    }
+
+    /**
+     * @return расчёты альбома при данных настройках; прочитанные с диска при первом
+     * обращении, сброшенные, если настройки с тех пор поменялись.
+     * Файл читается вне отображения альбомов, чтобы чтение не держало его запись;
+     * если альбом тем временем прочитал другой поток, берётся его альбом.
+     */
+    private Album album(String name, double orb, int edge) {
+        Album album = albums.get(name);
+        if (album == null) {
+            Album read = EngineMetrics.repository(STORE, "read").record(() -> read(name, orb, edge));
+            album = albums.putIfAbsent(name, read);
+            if (album == null) album = read;
+        }
+        if (album.orb != orb || album.edge != edge)
+            synchronized (album) {
+                if (album.orb != orb || album.edge != edge) {
+                    album.charts.clear();
+                    album.orb = orb;
+                    album.edge = edge;
+                    album.dirty = true;
+                }
+            }
+        return album;
+    }
+
+    private Path fileOf(String album) {
+        return folder.resolve(album + EXTENSION);
+    }
+
+    /**
+     * Читает файл расчётов альбома. Файла нет, он повреждён или рассчитан
+     * при других настройках — альбом начинается пустым.
+     */
+    private Album read(String name, double orb, int edge) {
+        Album album = new Album(orb, edge);
+        Path file = fileOf(name);
+        if (!Files.exists(file)) return album;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readDouble() != orb || in.readInt() != edge)
+                return album;
+            int words = ChartResonances.words(edge);
+            int charts = in.readInt();
+            for (int c = 0; c < charts; c++) {
+                byte[] chartName = new byte[in.readShort() & 0xFFFF];
+                in.readFully(chartName);
+                long hash = in.readLong();
+                int count = in.readInt();
+                int pairs = count * (count - 1) / 2;
+                double[] arcs = new double[pairs];
+                for (int p = 0; p < pairs; p++)
+                    arcs[p] = in.readDouble();
+                long[] given = new long[pairs * words];
+                for (int w = 0; w < given.length; w++)
+                    given[w] = in.readLong();
+                album.charts.put(new String(chartName, StandardCharsets.UTF_8),
+                        new ChartResonances(hash, orb, edge, count, arcs, given));
+            }
+        } catch (IOException | RuntimeException e) {
+            album.charts.clear();
+        }
+        return album;
+    }
+
+    private void write(String name, Album album) throws IOException {
+        Files.createDirectories(folder);
+        Path file = fileOf(name);
+        Path temporary = folder.resolve(name + EXTENSION + ".tmp");
+        List<Map.Entry<String, ChartResonances>> entries = new ArrayList<>(album.charts.entrySet());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeDouble(album.orb);
+            out.writeInt(album.edge);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, ChartResonances> entry : entries) {
+                byte[] chartName = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                ChartResonances resonances = entry.getValue();
+                out.writeShort(chartName.length);
+                out.write(chartName);
+                out.writeLong(resonances.contentHash());
+                out.writeInt(resonances.count());
+                for (double arc : resonances.arcs())
+                    out.writeDouble(arc);
+                for (long word : resonances.given())
+                    out.writeLong(word);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Записывает на диск расчёты альбомов, изменившиеся с прошлой записи.
+     *
+     * @return сообщение о числе записанных альбомов или об ошибке.
+     */
+    public synchronized String flush() {
+        int written = 0;
+        for (Map.Entry<String, Album> entry : albums.entrySet()) {
+            Album album = entry.getValue();
+            if (!album.dirty) continue;
+            synchronized (album) {
+                album.dirty = false;
+                long start = System.nanoTime();
+                try {
+                    write(entry.getKey(), album);
+                    EngineMetrics.repository(STORE, "write").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    written++;
+                } catch (IOException e) {
+                    album.dirty = true;
+                    return "Не удалось записать расчёты альбома '%s': %s"
+                            .formatted(entry.getKey(), e.getLocalizedMessage());
+                }
+            }
+        }
+        return "Записано расчётов альбомов: %d".formatted(written);
+    }
+
+    /**
+     * Забывает прочитанные расчёты, не записывая их, и удаляет файлы расчётов.
+     *
+     * @return сообщение о числе удалённых файлов или об ошибке.
+     */
+    public synchronized String clear() {
+        albums.clear();
+        if (!Files.isDirectory(folder)) return "Сохранённых расчётов нет";
+        int deleted = 0;
+        try (var files = Files.list(folder)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).toList()) {
+                Files.delete(file);
+                deleted++;
+            }
+        } catch (IOException e) {
+            return "Не удалось удалить расчёты: " + e.getLocalizedMessage();
+        }
+        return "Удалено файлов расчётов: %d".formatted(deleted);
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,521 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.*;
+import ru.swetophor.astrowidjaspringshell.utils.Decorator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Неинтерактивный пакетный гармонический анализ альбомов.
+ * Для каждой карты указанных альбомов (или для каждой пары карт, если
+ * анализ синастрический) строится {@link AstroMatrix} и по ней {@link PatternTable} —
+ * ровно так же, как при интерактивном анализе в {@link HarmonicService}, поэтому
+ * результаты по карте совпадают с интерактивными.
+ * <p>Задания не собираются заранее: {@link AnalysisPlan} выдаёт задание по его
+ * порядковому номеру, так что и N(N-1)/2 пар большой библиотеки не скапливаются в памяти.
+ * Задания исполняются в пуле с перехватом работы ({@link ForkJoinPool}),
+ * в полёте одновременно держится не больше {@link #WINDOW_PER_THREAD} заданий на поток.
+ * Результаты пишет в файл один поток в порядке номеров заданий, по строке на паттерн:</p>
+ * <pre>ключ задания ⇥ сочетание карт ⇥ гармоника ⇥ астры паттерна ⇥ число астр ⇥ средняя сила</pre>
+ * <p>Каждые {@link #CHECKPOINT_EVERY} заданий и по окончании прогона в контрольный файл
+ * (имя выходного файла + {@link #CHECKPOINT_SUFFIX}) записывается, сколько заданий
+ * пройдено подряд, длина выходного файла на этот момент и номера заданий,
+ * завершившихся ошибкой. При возобновлении выходной файл обрезается до отмеченной
+ * длины, задания с ошибкой повторяются, и прогон продолжается с первого непройденного
+ * задания — так что результаты не теряются и не повторяются, даже если прогон оборвался
+ * между записями контрольного файла.</p>
+ * <p>Первая строка контрольного файла описывает прогон: версию формата вывода,
+ * число заданий, отпечаток плана (ключи и содержимое карт) и настройки расчёта.
+ * Если библиотека или настройки с тех пор изменились, возобновление отказывается,
+ * не трогая выходной файл, — иначе в нём смешались бы результаты двух разных прогонов.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class BatchAnalysisService {
+    /**
+     * Расширение контрольного файла, дописываемое к имени выходного.
+     */
+    public static final String CHECKPOINT_SUFFIX = ".done";
+    /**
+     * Сколько заданий на один поток пула может одновременно ожидать записи.
+     */
+    static final int WINDOW_PER_THREAD = 4;
+    /**
+     * Через сколько записанных заданий сообщать о ходе анализа.
+     */
+    static final int REPORT_EVERY = 1000;
+    /**
+     * Через сколько пройденных заданий обновлять контрольный файл.
+     */
+    static final int CHECKPOINT_EVERY = 100;
+    /**
+     * Версия формата строк выходного файла; меняется при любом изменении их состава.
+     */
+    static final int OUTPUT_FORMAT = 1;
+
+    private final LibraryService libraryService;
+
+    /**
+     * Задание пакетного анализа: одна карта или сочетание карт.
+     * @param keys    уникальные ключи карт вида {@code альбом/карта}, по одному на карту.
+     * @param heavens карты, по которым строится АстроМатрица.
+     */
+    public record AnalysisTask(String[] keys, Chart[] heavens) {
+        /**
+         * @return ключ задания в выходном файле: ключи карт через "|".
+         */
+        public String key() {
+            return String.join("|", keys);
+        }
+
+        /**
+         * @param chart одна из карт задания.
+         * @return ключ этой карты.
+         */
+        public String keyOf(Chart chart) {
+            for (int i = 0; i < heavens.length; i++)
+                if (heavens[i] == chart) return keys[i];
+            throw new IllegalArgumentException("Карта %s не входит в задание".formatted(chart.getName()));
+        }
+    }
+
+    /**
+     * Итог пакетного анализа.
+     * @param total    всего заданий.
+     * @param skipped  пропущено уже выполненных при возобновлении.
+     * @param analyzed выполнено и записано заданий.
+     * @param failed   заданий, завершившихся ошибкой (повторяются при возобновлении).
+     * @param patterns записано паттернов.
+     * @param millis   затрачено миллисекунд.
+     */
+    public record BatchReport(long total, long skipped, long analyzed, long failed, long patterns, long millis) {
+        @Override
+        public String toString() {
+            return "заданий %d, пропущено %d, выполнено %d, с ошибкой %d, паттернов %d — %.1f с, %.1f заданий/с"
+                    .formatted(total, skipped, analyzed, failed, patterns, millis / 1000.0,
+                            millis == 0 ? analyzed : analyzed * 1000.0 / millis);
+        }
+    }
+
+    /**
+     * Задания прогона по порядковым номерам: по одному на карту или, для синастрии,
+     * по одному на каждую неупорядоченную пару карт {@code i < j}, пары по строкам:
+     * (0,1), (0,2) … (1,2) … Задание строится по номеру, когда оно нужно.
+     *
+     * @param keys      ключи карт вида {@code альбом/карта}.
+     * @param charts    карты в том же порядке.
+     * @param synastric по парам ли карт задания.
+     */
+    public record AnalysisPlan(List<String> keys, List<Chart> charts, boolean synastric) {
+
+        /**
+         * @return число заданий.
+         */
+        public long size() {
+            long n = charts.size();
+            return synastric ? n * (n - 1) / 2 : n;
+        }
+
+        /**
+         * @param ordinal порядковый номер задания, от 0.
+         * @return задание с этим номером.
+         */
+        public AnalysisTask task(long ordinal) {
+            if (ordinal < 0 || ordinal >= size())
+                throw new IndexOutOfBoundsException("Задания %d нет, всего %d".formatted(ordinal, size()));
+            if (!synastric) {
+                int i = (int) ordinal;
+                return new AnalysisTask(new String[]{keys.get(i)}, new Chart[]{charts.get(i)});
+            }
+            int low = 0, high = charts.size() - 2;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (rowStart(middle) <= ordinal) low = middle;
+                else high = middle - 1;
+            }
+            int j = (int) (low + 1 + ordinal - rowStart(low));
+            return new AnalysisTask(new String[]{keys.get(low), keys.get(j)},
+                    new Chart[]{charts.get(low), charts.get(j)});
+        }
+
+        /**
+         * @return номер первой пары, открываемой картой {@code i}.
+         */
+        private long rowStart(int i) {
+            return (long) i * (2L * charts.size() - i - 1) / 2;
+        }
+
+        /**
+         * Отпечаток плана: ключи и содержимое карт по порядку и вид заданий.
+         * Меняется, если карта добавлена, удалена, переставлена или изменена.
+         */
+        public long fingerprint() {
+            long hash = synastric ? 0x84222325cbf29ce4L : 0xcbf29ce484222325L;
+            for (int i = 0; i < keys.size(); i++) {
+                for (byte b : keys.get(i).getBytes(StandardCharsets.UTF_8))
+                    hash = (hash ^ b) * 0x100000001b3L;
+                hash = (hash ^ ChartResonances.contentHash(charts.get(i))) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        /**
+         * @return поток всех заданий по порядку; параллельный поток делится по номерам.
+         */
+        public Stream<AnalysisTask> stream() {
+            return LongStream.range(0, size()).mapToObj(this::task);
+        }
+    }
+
+    /**
+     * Составляет задания по альбомам: по одному на карту или, для синастрии,
+     * по одному на каждую неупорядоченную пару карт из всех указанных альбомов вместе.
+     * В задания идут только одиночные карты, многокарты альбомов пропускаются.
+     *
+     * @param albums    названия альбомов, как их понимает {@link LibraryService#findAlbumName(String)}.
+     * @param synastric строить ли задания по парам карт.
+     * @return задания в порядке следования карт в альбомах.
+     */
+    public AnalysisPlan collectTasks(List<String> albums, boolean synastric) {
+        Map<String, Chart> collected = libraryService.collectCharts(albums);
+        return new AnalysisPlan(List.copyOf(collected.keySet()), List.copyOf(collected.values()), synastric);
+    }
+
+    /**
+     * @param albums перечень альбомов через запятую.
+     * @return список непустых обозначений альбомов.
+     */
+    public static List<String> splitAlbums(String albums) {
+        return Arrays.stream(albums.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Обсчитывает задание тем же путём, что и интерактивный анализ,
+     * и выдаёт узор-разбор полного сочетания карт задания: для одиночной
+     * карты — паттерны этой карты, для пары — только синастрические паттерны.
+     *
+     * @param task     задание анализа.
+     * @param settings настройки расчёта, взятые на весь прогон.
+     * @return узор-разбор сочетания всех карт задания.
+     */
+    public static PatternAnalysis fullAnalysis(AnalysisTask task, AnalysisSettings settings) {
+        List<Chart> all = Arrays.asList(task.heavens());
+        return new AstroMatrix(settings, task.heavens()).buildPatternTable()
+                .getAnalyses().entrySet().stream()
+                .filter(e -> e.getKey().equals(all))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElseGet(PatternAnalysis::new);
+    }
+
+    /**
+     * Анализирует одно задание и представляет найденные паттерны
+     * {@link #fullAnalysis полного сочетания} его карт строками вывода.
+     *
+     * @param task     задание анализа.
+     * @param settings настройки расчёта, взятые на весь прогон.
+     * @return строки результатов без перевода строки, возможно пустой список.
+     */
+    public static List<String> analyze(AnalysisTask task, AnalysisSettings settings) {
+        String heavens = Arrays.stream(task.heavens())
+                .map(Chart::getName)
+                .collect(Collectors.joining("+"));
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, List<Pattern>> entry : fullAnalysis(task, settings))
+            for (Pattern pattern : entry.getValue())
+                lines.add(String.join("\t",
+                        task.key(),
+                        heavens,
+                        String.valueOf(entry.getKey()),
+                        patternMembers(pattern),
+                        String.valueOf(pattern.size()),
+                        String.format(Locale.ROOT, "%.2f", pattern.getAverageStrength())));
+        return lines;
+    }
+
+    /**
+     * @return имена астр паттерна по убыванию связанности, для многокартных
+     * паттернов с именем карты-владельца в угловых скобках.
+     */
+    private static String patternMembers(Pattern pattern) {
+        return pattern.getAstrasByConnectivity().stream()
+                .map(astra -> pattern.getDimension() > 1 ?
+                        "%s<%s>".formatted(astra.getName(), astra.getHeaven().getName()) :
+                        astra.getName())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Описание прогона, к которому относится контрольный файл.
+     *
+     * @param format      версия формата вывода.
+     * @param size        число заданий плана.
+     * @param fingerprint отпечаток плана, {@link AnalysisPlan#fingerprint()}.
+     * @param edge        предельная гармоника.
+     * @param divisor     делитель орбиса.
+     * @param halfOrbs    сокращался ли орбис для астр разных карт.
+     */
+    private record RunIdentity(int format, long size, long fingerprint, int edge, int divisor, boolean halfOrbs) {
+
+        private static RunIdentity of(AnalysisPlan plan, AnalysisSettings settings) {
+            return new RunIdentity(OUTPUT_FORMAT, plan.size(), plan.fingerprint(),
+                    settings.edgeHarmonic(), settings.orbDivisor(), settings.halfOrbsForDoubles());
+        }
+
+        private static RunIdentity parse(String line) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length != 6)
+                throw new IllegalArgumentException("в описании прогона %d полей вместо 6".formatted(fields.length));
+            return new RunIdentity(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                    Long.parseUnsignedLong(fields[2], 16), Integer.parseInt(fields[3]),
+                    Integer.parseInt(fields[4]), Boolean.parseBoolean(fields[5]));
+        }
+
+        private String line() {
+            return "%d %d %016x %d %d %b".formatted(format, size, fingerprint, edge, divisor, halfOrbs);
+        }
+
+        /**
+         * @return перечень расхождений с другим прогоном, пустой, если прогоны совпадают.
+         */
+        private List<String> differences(RunIdentity other) {
+            List<String> differences = new ArrayList<>();
+            if (format != other.format)
+                differences.add("формат вывода %d, а не %d".formatted(other.format, format));
+            if (size != other.size)
+                differences.add("заданий %d, а не %d".formatted(other.size, size));
+            else if (fingerprint != other.fingerprint)
+                differences.add("карты альбомов изменились");
+            if (edge != other.edge)
+                differences.add("предельная гармоника %d, а не %d".formatted(other.edge, edge));
+            if (divisor != other.divisor)
+                differences.add("делитель орбиса %d, а не %d".formatted(other.divisor, divisor));
+            if (halfOrbs != other.halfOrbs)
+                differences.add("половинный орбис для разных карт " + (other.halfOrbs ? "включён" : "выключен"));
+            return differences;
+        }
+    }
+
+    /**
+     * Состояние прогона в контрольном файле.
+     *
+     * @param run    прогон, к которому относится состояние.
+     * @param next   сколько заданий по порядку пройдено.
+     * @param bytes  длина выходного файла после их результатов.
+     * @param failed номера пройденных заданий, завершившихся ошибкой.
+     */
+    private record Checkpoint(RunIdentity run, long next, long bytes, List<Long> failed) {
+
+        private static Checkpoint start(RunIdentity run) {
+            return new Checkpoint(run, 0, 0, List.of());
+        }
+
+        /**
+         * Читает контрольный файл: первая строка — описание прогона, вторая — пройдено
+         * заданий и длина выходного файла через пробел, далее по строке на номер задания с ошибкой.
+         */
+        private static Checkpoint read(Path file) throws IOException {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            try {
+                RunIdentity run = RunIdentity.parse(lines.get(0));
+                String[] head = lines.get(1).trim().split("\\s+");
+                List<Long> failed = lines.stream().skip(2)
+                        .filter(line -> !line.isBlank())
+                        .map(line -> Long.valueOf(line.trim()))
+                        .toList();
+                return new Checkpoint(run, Long.parseLong(head[0]), Long.parseLong(head[1]), failed);
+            } catch (RuntimeException e) {
+                throw new IOException("контрольный файл %s не распознан".formatted(file), e);
+            }
+        }
+
+        private void write(Path file) throws IOException {
+            StringBuilder text = new StringBuilder(run.line()).append('\n')
+                    .append("%d %d%n".formatted(next, bytes));
+            failed.forEach(ordinal -> text.append(ordinal).append('\n'));
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temporary, text, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Итог задания, ожидающий записи.
+     *
+     * @param sequence место задания в очереди прогона.
+     * @param ordinal  номер задания.
+     * @param lines    строки результатов.
+     * @param error    сообщение об ошибке или {@code null}.
+     */
+    private record Outcome(long sequence, long ordinal, List<String> lines, String error) {
+    }
+
+    /**
+     * Выполняет пакетный анализ и пишет результаты в файл.
+     * При возобновлении сначала повторяются задания, завершившиеся ошибкой,
+     * затем идут непройденные по порядку.
+     *
+     * @param plan        задания анализа.
+     * @param output      выходной файл; контрольный файл лежит рядом.
+     * @param resume      продолжить прерванный прогон по контрольному файлу.
+     *                    Иначе оба файла начинаются заново.
+     * @param parallelism число потоков пула.
+     * @param progress    получатель сообщений о ходе анализа.
+     * @return итог анализа.
+     * @throws IOException если выходной или контрольный файл не пишется или не читается,
+     *                     или если контрольный файл относится к другому плану или настройкам.
+     */
+    public BatchReport run(AnalysisPlan plan, Path output, boolean resume,
+                           int parallelism, Consumer<String> progress) throws IOException {
+        Path checkpointFile = output.resolveSibling(output.getFileName() + CHECKPOINT_SUFFIX);
+        AnalysisSettings settings = Settings.snapshot();
+        RunIdentity run = RunIdentity.of(plan, settings);
+        Checkpoint checkpoint = resume && Files.exists(checkpointFile) ?
+                Checkpoint.read(checkpointFile) :
+                Checkpoint.start(run);
+        List<String> differences = checkpoint.run().differences(run);
+        if (!differences.isEmpty())
+            throw new IOException("прогон в %s нельзя продолжить: %s. Начните анализ заново без возобновления."
+                    .formatted(checkpointFile, String.join(", ", differences)));
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() < checkpoint.bytes())
+                throw new IOException("выходной файл %s короче отмеченного в контрольном".formatted(output));
+            channel.truncate(checkpoint.bytes());
+        }
+
+        List<Long> retry = checkpoint.failed();
+        long queued = retry.size() + plan.size() - checkpoint.next();
+        LongUnaryOperator ordinalAt = sequence -> sequence < retry.size() ?
+                retry.get((int) sequence) :
+                checkpoint.next() + sequence - retry.size();
+        List<Long> failedNow = new ArrayList<>();
+
+        long start = System.currentTimeMillis();
+        long skipped = checkpoint.next() - retry.size(), analyzed = 0, patterns = 0;
+        long submitted = 0, written = 0;
+        boolean interrupted = false;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        CompletionService<Outcome> completion = new ExecutorCompletionService<>(pool);
+        Map<Long, Outcome> ready = new HashMap<>();
+        int window = parallelism * WINDOW_PER_THREAD;
+
+        try (BufferedWriter results = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            try {
+                while (written < queued) {
+                    while (submitted < queued && submitted - written < window) {
+                        long sequence = submitted++, ordinal = ordinalAt.applyAsLong(sequence);
+                        completion.submit(() -> {
+                            try {
+                                return new Outcome(sequence, ordinal, analyze(plan.task(ordinal), settings), null);
+                            } catch (RuntimeException e) {
+                                return new Outcome(sequence, ordinal, List.of(), String.valueOf(e.getLocalizedMessage()));
+                            }
+                        });
+                    }
+                    Outcome outcome = completion.take().get();
+                    ready.put(outcome.sequence(), outcome);
+                    while ((outcome = ready.remove(written)) != null) {
+                        written++;
+                        if (outcome.error() != null) {
+                            failedNow.add(outcome.ordinal());
+                            progress.accept("Сбой анализа %s: %s"
+                                    .formatted(plan.task(outcome.ordinal()).key(), outcome.error()));
+                        } else {
+                            for (String line : outcome.lines()) {
+                                results.write(line);
+                                results.newLine();
+                            }
+                            patterns += outcome.lines().size();
+                            if (++analyzed % REPORT_EVERY == 0) {
+                                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                                progress.accept("выполнено %d из %d — %.1f заданий/с"
+                                        .formatted(analyzed + skipped, plan.size(), analyzed * 1000.0 / elapsed));
+                            }
+                        }
+                        if (written % CHECKPOINT_EVERY == 0)
+                            saveCheckpoint(checkpointFile, checkpoint, written, failedNow, results, output);
+                    }
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                progress.accept("Анализ прерван, его можно возобновить.");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+                saveCheckpoint(checkpointFile, checkpoint, written, failedNow, results, output);
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return new BatchReport(plan.size(), skipped, analyzed, failedNow.size(), patterns,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Сбрасывает результаты на диск и отмечает в контрольном файле,
+     * сколько заданий очереди прогона записано.
+     *
+     * @param file     контрольный файл.
+     * @param previous состояние, с которого начат прогон.
+     * @param written  сколько заданий очереди прогона пройдено.
+     * @param failed   номера заданий, завершившихся ошибкой в этом прогоне.
+     */
+    private static void saveCheckpoint(Path file, Checkpoint previous, long written, List<Long> failed,
+                                       BufferedWriter results, Path output) throws IOException {
+        results.flush();
+        List<Long> retry = previous.failed();
+        List<Long> stillFailed = new ArrayList<>(retry.subList((int) Math.min(written, retry.size()), retry.size()));
+        stillFailed.addAll(failed);
+        long next = previous.next() + Math.max(0, written - retry.size());
+        new Checkpoint(previous.run(), next, Files.size(output), stillFailed).write(file);
+    }
+
+    /**
+     * Выполняет пакетный анализ альбомов с выводом хода анализа на экран.
+     *
+     * @param albums    альбомы через запятую.
+     * @param output    путь к выходному файлу.
+     * @param synastric анализировать ли пары карт вместо одиночных карт.
+     * @param resume    продолжить ли прерванный прогон.
+     * @return строку с итогом анализа или сообщение об ошибке.
+     */
+    public String analyzeAlbums(String albums, Path output, boolean synastric, boolean resume) {
+        AnalysisPlan plan;
+        try {
+            plan = collectTasks(splitAlbums(albums), synastric);
+        } catch (IllegalArgumentException e) {
+            return "Альбом не найден: " + e.getLocalizedMessage();
+        }
+        try {
+            return "Анализ завершён: " + run(plan, output, resume,
+                    Runtime.getRuntime().availableProcessors(), Decorator::print);
+        } catch (IOException e) {
+            return "Анализ в '%s' не выполнен: %s".formatted(output, e.getLocalizedMessage());
+        }
+    }
+}
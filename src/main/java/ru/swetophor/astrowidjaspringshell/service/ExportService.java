@@ -0,0 +1,165 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.*;
+import ru.swetophor.astrowidjaspringshell.repository.ColumnarResultWriter;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisPlan;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisTask;
+import ru.swetophor.astrowidjaspringshell.utils.Decorator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+/**
+ * Выгрузка результатов гармонического анализа альбомов в колоночный файл
+ * ({@link ColumnarResultWriter}) для последующей статистической обработки.
+ * Выгружаются все аспекты всех пучков резонансов АстроМатрицы (для пар карт —
+ * только межкартные) и членства астр в паттернах полного сочетания карт задания,
+ * т.е. то же, что показывает интерактивный анализ.
+ * Задания обсчитываются параллельно порциями по {@link #CHUNK_SIZE},
+ * каждая порция записывается последовательно, так что в памяти держится
+ * не больше одной порции матриц.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+    /**
+     * Сколько заданий обсчитывается параллельно перед записью.
+     */
+    static final int CHUNK_SIZE = 512;
+
+    private final BatchAnalysisService batchAnalysisService;
+
+    /**
+     * Итог выгрузки.
+     * @param tasks       выгружено заданий.
+     * @param resonances  записано строк резонансов.
+     * @param memberships записано строк членства в паттернах.
+     * @param bytes       размер файла.
+     * @param millis      затрачено миллисекунд.
+     */
+    public record ExportReport(long tasks, long resonances, long memberships, long bytes, long millis) {
+        @Override
+        public String toString() {
+            return "заданий %d, резонансов %d, членств в паттернах %d, %d КиБ — %.1f с"
+                    .formatted(tasks, resonances, memberships, bytes / 1024, millis / 1000.0);
+        }
+    }
+
+    /**
+     * Обсчитанное задание, ожидающее записи.
+     */
+    private record Computed(AnalysisTask task, AstroMatrix matrix, PatternTable patterns) {
+    }
+
+    /**
+     * Обсчитывает задания и выгружает результаты в файл.
+     *
+     * @param plan     задания анализа, как их составляет {@link BatchAnalysisService#collectTasks}.
+     * @param output   выходной файл, перезаписывается.
+     * @param progress получатель сообщений о ходе выгрузки (по одному на порцию).
+     * @return итог выгрузки.
+     * @throws IOException если файл не пишется.
+     */
+    public ExportReport export(AnalysisPlan plan, Path output, Consumer<String> progress) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] rows = new long[2];      // резонансов, членств
+        AnalysisSettings settings = Settings.snapshot();
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+
+        try (ColumnarResultWriter writer = new ColumnarResultWriter(Files.newOutputStream(output))) {
+            for (long from = 0; from < plan.size(); from += CHUNK_SIZE) {
+                long to = Math.min(from + CHUNK_SIZE, plan.size());
+                List<Computed> chunk = LongStream.range(from, to)
+                        .parallel()
+                        .mapToObj(plan::task)
+                        .map(task -> {
+                            AstroMatrix matrix = new AstroMatrix(settings, task.heavens());
+                            return new Computed(task, matrix, matrix.buildPatternTable());
+                        })
+                        .toList();
+                for (Computed computed : chunk) {
+                    rows[0] += writeResonances(writer, computed);
+                    rows[1] += writeMemberships(writer, computed);
+                }
+                progress.accept("выгружено %d из %d заданий, резонансов %d, членств %d"
+                        .formatted(to, plan.size(), rows[0], rows[1]));
+            }
+        }
+        return new ExportReport(plan.size(), rows[0], rows[1], Files.size(output),
+                System.currentTimeMillis() - start);
+    }
+
+    private static int writeResonances(ColumnarResultWriter writer, Computed computed) throws IOException {
+        AnalysisTask task = computed.task();
+        boolean synastric = task.heavens().length > 1;
+        int written = 0;
+        for (ResonanceBatch batch : computed.matrix().getAllResonances()) {
+            if (synastric && !batch.isSynastric()) continue;
+            Astra a = batch.getAstra_1(), b = batch.getAstra_2();
+            int chartA = writer.chartId(task.keyOf(a.getHeaven()));
+            int chartB = writer.chartId(task.keyOf(b.getHeaven()));
+            int astraA = writer.astraId(a.getName());
+            int astraB = writer.astraId(b.getName());
+            for (Aspect aspect : batch.getAspects()) {
+                writer.addResonance(chartA, astraA, chartB, astraB,
+                        aspect.getNumeric(), aspect.getMultiplicity(),
+                        aspect.getClearance(), aspect.getStrength(), aspect.getDepth());
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static int writeMemberships(ColumnarResultWriter writer, Computed computed) throws IOException {
+        AnalysisTask task = computed.task();
+        int written = 0;
+        for (Map.Entry<List<Chart>, PatternAnalysis> table : computed.patterns().getAnalyses().entrySet()) {
+            if (table.getKey().size() != task.heavens().length) continue;
+            for (Map.Entry<Integer, List<Pattern>> entry : table.getValue())
+                for (Pattern pattern : entry.getValue()) {
+                    int id = writer.nextPattern();
+                    double strength = pattern.getAverageStrength();
+                    for (Astra astra : pattern.getAstrasByConnectivity()) {
+                        writer.addMember(id, entry.getKey(),
+                                writer.chartId(task.keyOf(astra.getHeaven())),
+                                writer.astraId(astra.getName()),
+                                pattern.size(), strength);
+                        written++;
+                    }
+                }
+        }
+        return written;
+    }
+
+    /**
+     * Выгружает результаты анализа альбомов с выводом хода на экран.
+     *
+     * @param albums    альбомы через запятую.
+     * @param output    путь к выходному файлу.
+     * @param synastric выгружать ли пары карт вместо одиночных карт.
+     * @return строку с итогом выгрузки или сообщение об ошибке.
+     */
+    public String exportAlbums(String albums, Path output, boolean synastric) {
+        AnalysisPlan plan;
+        try {
+            plan = batchAnalysisService.collectTasks(BatchAnalysisService.splitAlbums(albums), synastric);
+        } catch (IllegalArgumentException e) {
+            return "Альбом не найден: " + e.getLocalizedMessage();
+        }
+        try {
+            return "Выгрузка завершена: " + export(plan, output, Decorator::print);
+        } catch (IOException e) {
+            return "Не удалось записать выгрузку в '%s': %s".formatted(output, e.getLocalizedMessage());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.swetophor.astrowidjaspringshell.service;
 
 import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
 import ru.swetophor.astrowidjaspringshell.model.AspectTable;
 import ru.swetophor.astrowidjaspringshell.model.AstroMatrix;
 import ru.swetophor.astrowidjaspringshell.model.ChartObject;
@@ -13,9 +14,19 @@ import java.util.Map;
 public class HarmonicService {
     private final Map<ChartObject, AstroMatrix> matrices = new HashMap<>();
 
+    /**
+     * @return Матрицу карты, построенную при первом обращении к ней.
+     */
     private AstroMatrix getMatrix(ChartObject chartObject) {
-        matrices.putIfAbsent(chartObject, new AstroMatrix(chartObject.getData()));
-        return matrices.get(chartObject);
+        AstroMatrix matrix = matrices.get(chartObject);
+        if (matrix != null) {
+            EngineMetrics.MATRIX_CACHE_HITS.increment();
+            return matrix;
+        }
+        EngineMetrics.MATRIX_CACHE_MISSES.increment();
+        matrix = new AstroMatrix(chartObject.getData());
+        matrices.put(chartObject, matrix);
+        return matrix;
     }
 
     public PatternTable calculatePatternTable(ChartObject chartObject) {
@@ -0,0 +1,266 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.AstraCatalogue;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.repository.ChartRepository;
+import ru.swetophor.astrowidjaspringshell.utils.Decorator;
+import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Пакетный импорт больших собраний карт в альбом.
+ * Источник читается потоком, записи собираются в пачки по {@link #BATCH_SIZE};
+ * каждая пачка разбирается и проверяется параллельно, затем последовательно
+ * отсеиваются дубли по имени карты (как среди уже лежащих в альбоме карт,
+ * так и среди импортированных ранее), и пачка целиком дописывается в альбом
+ * через {@link ChartRepository#insertCharts(String, List)}.
+ * <p>Поддерживаются форматы:</p>
+ * <ul>
+ * <li>{@code .awb}, {@code .awc} — родной формат Астровидьи, карты начинаются с "#";</li>
+ * <li>{@code .csv}, {@code .tsv} — таблица с заголовком, первая колонка — имя карты,
+ * остальные озаглавлены названиями астр; в ячейке координата в градусах
+ * либо "градусы минуты секунды" через пробел; пустая ячейка — астры нет.
+ * Разделитель для {@code .tsv} — табуляция, для {@code .csv} — ';', если он есть
+ * в заголовке, иначе ','. Опознанные по {@link AstraCatalogue каталогу} точки получают
+ * основное имя, так что "Sun" и "Солнце" дают одну и ту же астру.</li>
+ * </ul>
+ */
+@Service
+@RequiredArgsConstructor
+public class ImportService {
+    /**
+     * Сколько записей разбирается и записывается за один раз.
+     */
+    static final int BATCH_SIZE = 5000;
+
+    private final ChartRepository chartRepository;
+
+    /**
+     * Итог импорта.
+     * @param read     прочитано записей.
+     * @param accepted записано карт.
+     * @param invalid  отброшено нераспознанных записей.
+     * @param doubles  отброшено дублей по имени.
+     * @param millis   затрачено миллисекунд.
+     */
+    public record ImportReport(long read, long accepted, long invalid, long doubles, long millis) {
+        /**
+         * @return скорость импорта в записях в секунду.
+         */
+        public double throughput() {
+            return millis == 0 ? read : read * 1000.0 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return "прочитано %d, записано %d, нераспознано %d, дублей %d — %.1f с, %.0f записей/с"
+                    .formatted(read, accepted, invalid, doubles, millis / 1000.0, throughput());
+        }
+    }
+
+    /**
+     * Результат разбора одной записи: карта или сообщение об ошибке.
+     */
+    private record Parsed(Chart chart, String error) {
+    }
+
+    /**
+     * Импортирует карты из файла в альбом.
+     *
+     * @param source   путь к файлу-источнику.
+     * @param album    название альбома, дополняется расширением при необходимости.
+     * @param progress получатель сообщений о ходе импорта (по одному на пачку).
+     * @return итог импорта.
+     * @throws IOException если источник не читается.
+     */
+    public ImportReport importCharts(Path source, String album, Consumer<String> progress) throws IOException {
+        String target = Mechanics.extendFileName(album, false);
+        String filename = source.getFileName().toString().toLowerCase();
+        boolean tabular = filename.endsWith(".csv") || filename.endsWith(".tsv");
+
+        Set<String> names = new HashSet<>();
+        if (chartRepository.albumExists(target))
+            names.addAll(chartRepository.getAlbumContent(target).getNames());
+
+        long start = System.currentTimeMillis();
+        long[] counters = new long[4];      // прочитано, записано, нераспознано, дублей
+
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            Consumer<List<String>> batchHandler = tabular ?
+                    tableBatchHandler(reader.readLine(), filename.endsWith(".tsv"),
+                            target, names, counters, start, progress) :
+                    batchHandler(ImportService::parseAwbRecord, target, names, counters, start, progress);
+            if (tabular)
+                readLines(reader, batchHandler);
+            else
+                readAwbRecords(reader, batchHandler);
+        }
+        return new ImportReport(counters[0], counters[1], counters[2], counters[3],
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Читает строки таблицы и отдаёт их пачками.
+     */
+    private static void readLines(BufferedReader reader, Consumer<List<String>> handler) throws IOException {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            batch.add(line);
+            if (batch.size() == BATCH_SIZE) {
+                handler.accept(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty())
+            handler.accept(batch);
+    }
+
+    /**
+     * Читает записи формата *.awb (каждая начинается строкой "#имя")
+     * и отдаёт их пачками. Строки до первой карты и комментарии пропускаются.
+     */
+    private static void readAwbRecords(BufferedReader reader, Consumer<List<String>> handler) throws IOException {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder record = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                if (record != null) {
+                    batch.add(record.toString());
+                    if (batch.size() == BATCH_SIZE) {
+                        handler.accept(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                record = new StringBuilder(line.substring(1)).append('\n');
+            } else if (record != null && !line.startsWith("//")) {
+                record.append(line).append('\n');
+            }
+        }
+        if (record != null)
+            batch.add(record.toString());
+        if (!batch.isEmpty())
+            handler.accept(batch);
+    }
+
+    private static Parsed parseAwbRecord(String record) {
+        try {
+            return validate(Chart.readFromString(record));
+        } catch (RuntimeException e) {
+            return new Parsed(null, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Строит обработчик пачек строк таблицы по её заголовку.
+     */
+    private Consumer<List<String>> tableBatchHandler(String header, boolean tsv, String target,
+                                                     Set<String> names, long[] counters, long start,
+                                                     Consumer<String> progress) {
+        if (header == null)
+            return batch -> { };
+        String delimiter = tsv ? "\t" :
+                header.contains(";") ? ";" : ",";
+        String[] columns = header.split(delimiter, -1);
+        String[] astraNames = Arrays.stream(columns)
+                .map(AstraCatalogue::canonicalName)
+                .toArray(String[]::new);
+
+        return batchHandler(row -> parseRow(row, delimiter, astraNames),
+                target, names, counters, start, progress);
+    }
+
+    private static Parsed parseRow(String row, String delimiter, String[] astraNames) {
+        String[] cells = row.split(delimiter, -1);
+        try {
+            Chart chart = new Chart(cells[0].trim());
+            for (int i = 1; i < cells.length && i < astraNames.length; i++) {
+                String cell = cells[i].trim();
+                if (cell.isEmpty()) continue;
+                Double[] coors = Arrays.stream(cell.split("\\s+"))
+                        .map(Double::valueOf)
+                        .toArray(Double[]::new);
+                chart.addAstra(Astra.fromData(astraNames[i], coors));
+            }
+            return validate(chart);
+        } catch (RuntimeException e) {
+            return new Parsed(null, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Проверяет разобранную карту: имя не пусто, есть хотя бы одна астра,
+     * все координаты конечны.
+     */
+    private static Parsed validate(Chart chart) {
+        if (chart.getName() == null || chart.getName().isBlank())
+            return new Parsed(null, "пустое имя карты");
+        if (chart.getAstras().isEmpty())
+            return new Parsed(null, "нет ни одной астры в карте " + chart.getName());
+        for (Astra astra : chart.getAstras())
+            if (!Double.isFinite(astra.getZodiacPosition()))
+                return new Parsed(null, "некорректная координата %s в карте %s"
+                        .formatted(astra.getName(), chart.getName()));
+        return new Parsed(chart, null);
+    }
+
+    /**
+     * Строит обработчик пачки записей: параллельный разбор с проверкой,
+     * последовательное отсеивание дублей, запись пачки в альбом и отчёт о ходе.
+     */
+    private Consumer<List<String>> batchHandler(Function<String, Parsed> parser,
+                                                String target, Set<String> names, long[] counters,
+                                                long start, Consumer<String> progress) {
+        return batch -> {
+            List<Parsed> parsed = batch.parallelStream()
+                    .map(parser)
+                    .toList();
+            List<ChartObject> accepted = new ArrayList<>(parsed.size());
+            for (Parsed p : parsed) {
+                if (p.chart() == null)
+                    counters[2]++;
+                else if (!names.add(p.chart().getName()))
+                    counters[3]++;
+                else
+                    accepted.add(p.chart());
+            }
+            counters[0] += batch.size();
+            if (!accepted.isEmpty())
+                counters[1] += chartRepository.insertCharts(target, accepted);
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            progress.accept("%s: прочитано %d, записано %d, отброшено %d — %.0f записей/с"
+                    .formatted(target, counters[0], counters[1], counters[2] + counters[3],
+                            counters[0] * 1000.0 / elapsed));
+        };
+    }
+
+    /**
+     * Импортирует карты с выводом хода импорта на экран.
+     *
+     * @param source путь к файлу-источнику.
+     * @param album  название альбома.
+     * @return строку с итогом импорта или сообщение об ошибке чтения.
+     */
+    public String importCharts(Path source, String album) {
+        try {
+            return "Импорт завершён: " + importCharts(source, album, Decorator::print);
+        } catch (IOException e) {
+            return "Не удалось прочесть файл '%s': %s".formatted(source, e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновые задания оболочки: долгие анализы выполняются вне потока ввода,
+ * так что приглашение остаётся отзывчивым, а их итоги забираются позже.
+ * <p>Задания идут в небольшом пуле потоков; сами анализы внутри распараллелены,
+ * поэтому одновременно выполняется не больше {@link #WORKERS} заданий,
+ * остальные ждут очереди.</p>
+ */
+@Service
+public class JobService {
+    /**
+     * Сколько заданий выполняется одновременно.
+     */
+    static final int WORKERS = 2;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(WORKERS, runnable -> {
+        Thread thread = new Thread(runnable, "astrowidja-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger counter = new AtomicInteger();
+    private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+
+    /**
+     * Фоновое задание.
+     *
+     * @param id          номер задания.
+     * @param description команда, запустившая задание.
+     * @param started     момент запуска, мс.
+     * @param result      итог задания.
+     */
+    private record Job(int id, String description, long started, Future<String> result) {
+        String status() {
+            if (!result.isDone()) return "выполняется %.0f с".formatted((System.currentTimeMillis() - started) / 1000.0);
+            if (result.isCancelled()) return "отменено";
+            try {
+                result.get();
+                return "готово";
+            } catch (ExecutionException e) {
+                return "сбой: " + e.getCause().getLocalizedMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "прервано";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "#%d\t%s\t%s".formatted(id, status(), description);
+        }
+    }
+
+    /**
+     * Выполняет работу сразу или, если попросили, запускает фоновым заданием.
+     *
+     * @param background  запустить ли в фоне.
+     * @param description команда для списка заданий.
+     * @param work        работа, выдающая итог строкой.
+     * @return итог работы или сообщение о запуске задания.
+     */
+    public String run(boolean background, String description, Supplier<String> work) {
+        return background ? submit(description, work) : work.get();
+    }
+
+    /**
+     * Запускает фоновое задание.
+     *
+     * @return сообщение с номером задания.
+     */
+    public String submit(String description, Supplier<String> work) {
+        int id = counter.incrementAndGet();
+        jobs.put(id, new Job(id, description, System.currentTimeMillis(), executor.submit(work::get)));
+        return "Задание #%d запущено: %s".formatted(id, description);
+    }
+
+    /**
+     * @return строки заданий: номер, состояние, команда.
+     */
+    public String list() {
+        return jobs.isEmpty() ?
+                "Заданий нет." :
+                jobs.values().stream().map(Job::toString).collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Выдаёт итог завершённого задания и забывает его.
+     *
+     * @param id номер задания.
+     * @return итог, состояние незавершённого задания или сообщение об ошибке.
+     */
+    public String result(int id) {
+        Job job = jobs.get(id);
+        if (job == null) return "Задания #%d нет.".formatted(id);
+        if (!job.result().isDone()) return job.toString();
+        jobs.remove(id);
+        return outcome(job);
+    }
+
+    /**
+     * Отменяет задание, прерывая его, если оно уже выполняется.
+     */
+    public String cancel(int id) {
+        Job job = jobs.get(id);
+        if (job == null) return "Задания #%d нет.".formatted(id);
+        return job.result().cancel(true) ?
+                "Задание #%d отменено.".formatted(id) :
+                "Задание #%d уже завершено.".formatted(id);
+    }
+
+    /**
+     * Дожидается всех заданий и выдаёт их итоги, забывая их.
+     * Нужно сценариям, которые запускают задания в фоне и должны
+     * дождаться их до выхода.
+     */
+    public String awaitAll() {
+        StringBuilder report = new StringBuilder();
+        for (Job job : jobs.values()) {
+            try {
+                job.result().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return report.append("Ожидание прервано.").toString();
+            } catch (ExecutionException | CancellationException ignored) {
+                // состояние будет в итоге
+            }
+            jobs.remove(job.id());
+            report.append("#%d %s%n%s%n".formatted(job.id(), job.description(), outcome(job)));
+        }
+        return report.isEmpty() ? "Заданий нет." : report.toString().stripTrailing();
+    }
+
+    private static String outcome(Job job) {
+        try {
+            return job.result().get();
+        } catch (CancellationException e) {
+            return "отменено";
+        } catch (ExecutionException e) {
+            return "сбой: " + e.getCause().getLocalizedMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "прервано";
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.function.Function;
+
+/**
+ * Индекс по картам всей библиотеки, построенный при первом обращении
+ * и перестраиваемый, когда библиотека перечитана или изменились настройки
+ * орбиса и предельной гармоники.
+ *
+ * @param <T> тип индекса.
+ */
+final class LibraryIndexCache<T> {
+    /**
+     * Построенный индекс вместе с редакцией библиотеки и настройками, по которым он построен.
+     */
+    record Built<T>(T index, long revision, AnalysisSettings settings) {
+    }
+
+    private final LibraryService libraryService;
+    private final Function<AnalysisSettings, T> builder;
+    private Built<T> built;
+
+    /**
+     * @param libraryService библиотека, по редакции которой судится о свежести индекса.
+     * @param builder        построение индекса по всей библиотеке с данными настройками.
+     */
+    LibraryIndexCache(LibraryService libraryService, Function<AnalysisSettings, T> builder) {
+        this.libraryService = libraryService;
+        this.builder = builder;
+    }
+
+    /**
+     * @return индекс по текущей библиотеке и настройкам, при необходимости перестроенный.
+     */
+    synchronized Built<T> get() {
+        AnalysisSettings settings = Settings.snapshot();
+        if (built == null || built.revision() != libraryService.getRevision()
+                || built.settings().primalOrb() != settings.primalOrb()
+                || built.settings().edgeHarmonic() != settings.edgeHarmonic())
+            return rebuild();
+        return built;
+    }
+
+    /**
+     * Строит индекс заново.
+     *
+     * @return построенный индекс.
+     */
+    synchronized Built<T> rebuild() {
+        long revision = libraryService.getRevision();
+        AnalysisSettings settings = Settings.snapshot();
+        built = new Built<>(builder.apply(settings), revision, settings);
+        return built;
+    }
+}
@@ -1,14 +1,21 @@
 package ru.swetophor.astrowidjaspringshell.service;
 
-import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.client.UserController;
+import ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException;
+import ru.swetophor.astrowidjaspringshell.exception.ChartNotFoundException;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
 import ru.swetophor.astrowidjaspringshell.model.ChartList;
 import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
 import ru.swetophor.astrowidjaspringshell.repository.ChartRepository;
+import ru.swetophor.astrowidjaspringshell.utils.Mechanics;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -21,30 +28,74 @@ public class LibraryService {
      */
     private final ChartRepository chartRepository;
     /**
-     * Имена актуальных списков (групп) карт.
+     * Собеседник, у которого спрашивается согласие на удаление альбомов.
      */
-    private final List<String> groupNames = new ArrayList<>();
+    private final UserController userController;
     /**
-     * Отображение в памяти базы данных карт, группированных по спискам.
+     * Отображение библиотеки в памяти, {@code null}, пока она не прочитана.
+     * Библиотека читается при первом обращении, а не при запуске:
+     * команде, которой библиотека не нужна, не приходится ждать чтения всех альбомов.
      */
-    private final List<ChartList> chartCatalogue = new ArrayList<>();
+    private volatile Library library;
 
     /**
-     * Очищает отображение структуры библиотеки в памяти (имена групп
-     * и списки карт) и заново записывает его на основании данных от {@link #chartRepository картохранилища}.
-     * Процедура должна выполняться при инициализации сервиса и
-     * в конце всякого модифицирующего обращения к картохранилщу.
+     * Неизменяемый снимок библиотеки. Перечитывание подменяет снимок целиком,
+     * так что задание, перебирающее альбомы прежнего снимка, дорабатывает с ним.
+     *
+     * @param revision   номер перечитывания.
+     * @param groupNames имена списков (групп) карт.
+     * @param catalogue  карты, группированные по спискам, в порядке имён.
      */
-    public void rereadLibrary() {
-        groupNames.clear();
-        groupNames.addAll(chartRepository.albumNames());
-        chartCatalogue.clear();
-        chartCatalogue.addAll(chartRepository.getAllAlbums());
+    private record Library(long revision, List<String> groupNames, List<ChartList> catalogue) {
     }
 
-    @PostConstruct
-    public void buildChartIndex() {
-        rereadLibrary();
+    /**
+     * Заново строит отображение структуры библиотеки в памяти (имена групп
+     * и списки карт) на основании данных от {@link #chartRepository картохранилища}.
+     * Процедура выполняется при первом обращении к библиотеке и
+     * в конце всякого модифицирующего обращения к картохранилищу.
+     */
+    public synchronized void rereadLibrary() {
+        long revision = library == null ? 1 : library.revision() + 1;
+        library = new Library(revision,
+                List.copyOf(chartRepository.albumNames()),
+                List.copyOf(chartRepository.getAllAlbums()));
+    }
+
+    /**
+     * Перечитывает библиотеку после записи в картохранилище,
+     * если она уже прочитана; иначе её прочтёт первое обращение.
+     */
+    private synchronized void libraryChanged() {
+        if (library != null) rereadLibrary();
+    }
+
+    /**
+     * @return текущий снимок библиотеки, прочитав её, если она ещё не прочитана.
+     */
+    private Library library() {
+        Library current = library;
+        if (current == null)
+            synchronized (this) {
+                if (library == null) rereadLibrary();
+                current = library;
+            }
+        return current;
+    }
+
+    /**
+     * Номер перечитывания библиотеки: растёт при каждом {@link #rereadLibrary()},
+     * так что построенные по библиотеке индексы могут узнать, что устарели.
+     */
+    public long getRevision() {
+        return library().revision();
+    }
+
+    /**
+     * @return названия всех альбомов библиотеки.
+     */
+    public List<String> albumNames() {
+        return library().groupNames();
     }
 
     /**
@@ -53,6 +104,7 @@ public class LibraryService {
      * @return нумерованный (с 1) список групп.
      */
     public String listLibrary() {
+        List<String> groupNames = library().groupNames();
         return IntStream.range(0, groupNames.size())
                 .mapToObj(i -> "%d. %s%n"
                         .formatted(i + 1, groupNames.get(i)))
@@ -67,12 +119,14 @@ public class LibraryService {
      * нумерованный (с 1) список карт в ней.
      */
     public String libraryListing() {
+        Library current = library();
+        List<String> groupNames = current.groupNames();
         StringBuilder output = new StringBuilder();
         IntStream.range(0, groupNames.size())
                 .forEach(g -> {
                     output.append("%d. %s:%n"
                             .formatted(g + 1, groupNames.get(g)));
-                    output.append(chartCatalogue.get(g).toString()
+                    output.append(current.catalogue().get(g).toString()
                             .lines().map(l -> "\t" + l)
                             .collect(Collectors.joining("\n")));
                 });
@@ -90,13 +144,70 @@ public class LibraryService {
      * @throws IllegalArgumentException если по вводу не опознан список.
      */
     public ChartList findList(String chartListOrder) {
+        Library current = library();
         int groupIndex;
         try {
-            groupIndex = defineIndexFromInput(chartListOrder, groupNames);
+            groupIndex = defineIndexFromInput(chartListOrder, current.groupNames());
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Списка не найдено: " + e);
         }
-        return chartCatalogue.get(groupIndex);
+        return current.catalogue().get(groupIndex);
+    }
+
+    /**
+     * Находит название альбома по его названию, номеру в списке
+     * или первым символам названия.
+     *
+     * @param albumOrder строка ввода, как номер, название
+     *                   или первые символы названия.
+     * @return название найденного альбома.
+     * @throws IllegalArgumentException если по вводу не опознан альбом.
+     */
+    public String findAlbumName(String albumOrder) {
+        List<String> groupNames = library().groupNames();
+        return groupNames.get(defineIndexFromInput(albumOrder, groupNames));
+    }
+
+    /**
+     * Отдаёт содержимое альбома, как оно отображено в памяти.
+     *
+     * @param albumName точное название альбома.
+     * @return список карт альбома.
+     * @throws IllegalArgumentException если такого альбома нет.
+     */
+    public ChartList getAlbum(String albumName) {
+        Library current = library();
+        int index = current.groupNames().indexOf(albumName);
+        if (index == -1)
+            throw new IllegalArgumentException("Альбома %s нет в библиотеке".formatted(albumName));
+        return current.catalogue().get(index);
+    }
+
+    /**
+     * Собирает одиночные карты альбомов, многокарты пропускаются.
+     *
+     * @param albumOrders альбомы, как их понимает {@link #findAlbumName(String)}.
+     * @return карты по ключам вида {@code альбом/карта} в порядке следования в альбомах.
+     * @throws IllegalArgumentException если по вводу не опознан альбом.
+     */
+    public Map<String, Chart> collectCharts(List<String> albumOrders) {
+        Map<String, Chart> charts = new LinkedHashMap<>();
+        for (String order : albumOrders) {
+            String album = findAlbumName(order);
+            getAlbum(album).forEach(c -> {
+                if (c instanceof Chart chart)
+                    charts.put(album + "/" + chart.getName(), chart);
+            });
+        }
+        return charts;
+    }
+
+    /**
+     * @param key ключ карты вида {@code альбом/карта}, как в {@link #collectCharts(List)}.
+     * @return название альбома карты.
+     */
+    public static String albumOf(String key) {
+        return key.substring(0, key.indexOf('/'));
     }
 
     /**
@@ -153,9 +264,26 @@ public class LibraryService {
      * @return  сообщение, что карты из альбома загружены.
      */
     public String loadAlbum(String loadFile, ChartList desk) {
-        chartRepository.getAlbumContent(loadFile)
-                .forEach(c -> desk.addResolving(c, "на столе"));
-        return "Загружены карты из " + loadFile;
+        return loadAlbum(loadFile, desk, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Добавляет карты из указанного альбома к указанному картосписку,
+     * разрешая коллизии имён по указанному правилу.
+     * @param loadFile  имя файла или группы, карты откуда добавляются.
+     * @param desk  картосписок, к которому добавляются карты.
+     * @param policy что делать с картами, чьи имена уже есть в картосписке.
+     * @return  сообщение, сколько карт из альбома загружено.
+     */
+    public String loadAlbum(String loadFile, ChartList desk, CollisionPolicy policy) {
+        ChartList content = chartRepository.getAlbumContent(loadFile);
+        int before = desk.size();
+        try {
+            content.forEach(c -> desk.addResolving(c, "на столе", policy));
+        } catch (ChartCollisionException e) {
+            return "Загрузка из %s прервана: %s".formatted(loadFile, e.getLocalizedMessage());
+        }
+        return "Загружены карты из %s: %d из %d".formatted(loadFile, desk.size() - before, content.size());
     }
 
     /**
@@ -166,22 +294,150 @@ public class LibraryService {
      * @return
      */
     public String autosave(ChartList desk) {
-        return chartRepository.addChartsToAlbum(desk, ChartRepository.newAutosaveName());
+        String report = chartRepository.addChartsToAlbum(desk, ChartRepository.newAutosaveName());
+        libraryChanged();
+        return report;
     }
 
-    public String deleteAlbum(String filename) {
-        return chartRepository.deleteAlbum(filename);
+    /**
+     * Удаляет альбомы, спросив согласия на удаление каждого.
+     * Альбом указывается номером в списке библиотеки, названием с расширением
+     * или без него; запрос, оканчивающийся на {@code ***}, указывает все альбомы,
+     * названия которых начинаются с предшествующих символов.
+     *
+     * @param albumOrder ввод, определяющий удаляемые альбомы.
+     * @return сообщение о результате по каждому указанному альбому.
+     */
+    public String deleteAlbum(String albumOrder) {
+        List<String> targets = albumsToDelete(albumOrder);
+        if (targets.isEmpty())
+            return "не найдено альбома " + albumOrder;
+        StringBuilder report = new StringBuilder();
+        for (String album : targets)
+            report.append(userController.confirmationAnswer("Точно удалить " + album + "?") ?
+                            chartRepository.deleteAlbum(album) :
+                            "отмена удаления " + album)
+                    .append("\n");
+        rereadLibrary();
+        return report.toString().stripTrailing();
+    }
+
+    /**
+     * @return точные названия альбомов, указанных вводом, как в {@link #deleteAlbum(String)}.
+     */
+    private List<String> albumsToDelete(String albumOrder) {
+        List<String> names = albumNames();
+        if (albumOrder.matches("^\\d{1,9}")) {
+            int index = Integer.parseInt(albumOrder) - 1;
+            return index >= 0 && index < names.size() ? List.of(names.get(index)) : List.of();
+        }
+        if (albumOrder.endsWith("***")) {
+            String prefix = albumOrder.substring(0, albumOrder.length() - 3);
+            return names.stream().filter(name -> name.startsWith(prefix)).toList();
+        }
+        for (String name : List.of(albumOrder, albumOrder + ".awc", albumOrder + ".awb"))
+            if (names.contains(name)) return List.of(name);
+        return List.of();
     }
 
     public void saveChartsAsAlbum(ChartList charts, String filename) {
         chartRepository.saveChartsAsAlbum(charts, filename);
+        libraryChanged();
     }
 
     public String addChartListToAlbum(ChartList content, String filename) {
-        return chartRepository.addChartsToAlbum(content, filename);
+        return addChartListToAlbum(content, filename, CollisionPolicy.DEFAULT);
+    }
+
+    public String addChartListToAlbum(ChartList content, String filename, CollisionPolicy policy) {
+        try {
+            String report = chartRepository.addChartsToAlbum(content, filename, policy);
+            libraryChanged();
+            return report;
+        } catch (ChartCollisionException e) {
+            return "Альбом %s не изменён: %s".formatted(filename, e.getLocalizedMessage());
+        }
     }
 
     public void addChartsToAlbum(String filename, ChartObject... charts) {
-        chartRepository.addChartsToAlbum(filename, charts);
+        if (chartRepository.addChartsToAlbum(filename, charts))
+            libraryChanged();
+    }
+
+    /**
+     * Добавляет карты к альбому, разрешая коллизии имён по указанному правилу.
+     * @return сообщение о результате операции.
+     */
+    public String addChartsToAlbum(String filename, CollisionPolicy policy, ChartObject... charts) {
+        try {
+            if (!chartRepository.addChartsToAlbum(filename, policy, charts))
+                return "Альбом %s не изменился".formatted(filename);
+            libraryChanged();
+            return "Альбом %s обновлён".formatted(filename);
+        } catch (ChartCollisionException e) {
+            return "Альбом %s не изменён: %s".formatted(filename, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Переносит или копирует карты из одного альбома в другой.
+     * Исходный альбом указывается номером, названием или началом названия;
+     * целевой — так же, а если такого нет, то создаётся альбом с указанным названием.
+     * Карты указываются через пробел по номеру в исходном альбоме или по имени.
+     *
+     * @param sourceOrder ввод, определяющий исходный альбом.
+     * @param chartOrders ввод, перечисляющий переносимые карты.
+     * @param targetOrder ввод, определяющий целевой альбом.
+     * @param move        переносить ли карты (иначе копировать).
+     * @return сообщение о результате операции.
+     */
+    public String transferCharts(String sourceOrder, String chartOrders, String targetOrder, boolean move) {
+        return transferCharts(sourceOrder, chartOrders, targetOrder, move, CollisionPolicy.DEFAULT);
+    }
+
+    /**
+     * Переносит или копирует карты из одного альбома в другой,
+     * разрешая коллизии имён в целевом альбоме по указанному правилу.
+     *
+     * @param policy что делать с картами, чьи имена уже есть в целевом альбоме.
+     * @see #transferCharts(String, String, String, boolean)
+     */
+    public String transferCharts(String sourceOrder, String chartOrders, String targetOrder, boolean move,
+                                 CollisionPolicy policy) {
+        String source;
+        try {
+            source = findAlbumName(sourceOrder);
+        } catch (IllegalArgumentException e) {
+            return "Исходный альбом не найден: " + e.getLocalizedMessage();
+        }
+        String target;
+        try {
+            target = findAlbumName(targetOrder);
+        } catch (IllegalArgumentException e) {
+            target = Mechanics.extendFileName(targetOrder, false);
+        }
+        ChartList sourceContent = getAlbum(source);
+        List<ChartObject> charts = new ArrayList<>();
+        for (String order : chartOrders.trim().split("\\s+"))
+            try {
+                charts.add(sourceContent.findChart(order, source));
+            } catch (ChartNotFoundException e) {
+                return e.getLocalizedMessage();
+            }
+
+        String report;
+        try {
+            if (move)
+                report = chartRepository.moveChartsBetweenAlbums(source, target,
+                        charts.stream().map(ChartObject::getName).toList(), policy);
+            else
+                report = chartRepository.addChartsToAlbum(target, policy, charts.toArray(ChartObject[]::new)) ?
+                        "Скопировано в %s карт: %d".formatted(target, charts.size()) :
+                        "Ни одной карты не скопировано.";
+        } catch (ChartCollisionException e) {
+            report = "Карты не перенесены: " + e.getLocalizedMessage();
+        }
+        rereadLibrary();
+        return report;
     }
 }
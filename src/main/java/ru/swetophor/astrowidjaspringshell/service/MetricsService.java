@@ -0,0 +1,135 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ru.swetophor.astrowidjaspringshell.utils.Decorator.print;
+
+/**
+ * Сводка измерений сеанса: где уходит время расчётов и обращений к хранилищам.
+ * <p>Измерения копятся в реестре Spring Boot, который подключается к общему реестру
+ * ({@link EngineMetrics}) при своём создании. Служба создаётся сразу и при ленивом
+ * создании бинов: с ней создаётся реестр, так что измерения идут с начала сеанса.
+ * Если задан {@code astrowidja.metrics.file}, при закрытии приложения измерения
+ * записываются в этот файл в текстовом формате Prometheus.</p>
+ */
+@Service
+@Lazy(false)
+public class MetricsService {
+    private final MeterRegistry registry;
+    private final ObjectProvider<PrometheusMeterRegistry> prometheus;
+    private final String exportFile;
+
+    public MetricsService(MeterRegistry registry,
+                          ObjectProvider<PrometheusMeterRegistry> prometheus,
+                          @Value("${astrowidja.metrics.file:}") String exportFile) {
+        this.registry = registry;
+        this.prometheus = prometheus;
+        this.exportFile = exportFile;
+    }
+
+    /**
+     * Выдаёт измерения, имена которых начинаются с данной приставки: замеры времени
+     * по убыванию общего времени, затем счётчики, затем прочее.
+     *
+     * @param prefix приставка имён; пустая — все измерения, включая JVM.
+     * @return таблицу измерений.
+     */
+    public String report(String prefix) {
+        List<Meter> meters = registry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().startsWith(prefix))
+                .toList();
+        if (meters.isEmpty()) return "Измерений с именами на '%s' нет.".formatted(prefix);
+
+        StringBuilder report = new StringBuilder();
+        List<Timer> timers = meters.stream()
+                .filter(Timer.class::isInstance).map(Timer.class::cast)
+                .filter(timer -> timer.count() > 0)
+                .sorted(Comparator.comparingDouble((Timer timer) -> timer.totalTime(TimeUnit.MILLISECONDS)).reversed())
+                .toList();
+        if (!timers.isEmpty()) {
+            report.append("всего, мс\tвызовов\tсреднее, мс\tнаиб., мс\tизмерение\n");
+            for (Timer timer : timers)
+                report.append("%.1f\t%d\t%.3f\t%.3f\t%s%n".formatted(
+                        timer.totalTime(TimeUnit.MILLISECONDS), timer.count(),
+                        timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS),
+                        describe(timer)));
+        }
+        List<Counter> counters = meters.stream()
+                .filter(Counter.class::isInstance).map(Counter.class::cast)
+                .filter(counter -> counter.count() > 0)
+                .sorted(Comparator.comparing(MetricsService::describe))
+                .toList();
+        if (!counters.isEmpty()) {
+            report.append("\nсчёт\tизмерение\n");
+            for (Counter counter : counters)
+                report.append("%.0f\t%s%n".formatted(counter.count(), describe(counter)));
+        }
+        double hits = EngineMetrics.MATRIX_CACHE_HITS.count(), misses = EngineMetrics.MATRIX_CACHE_MISSES.count();
+        if (hits + misses > 0 && EngineMetrics.MATRIX_CACHE_HITS.getId().getName().startsWith(prefix))
+            report.append("\nМатрицы стола взяты готовыми в %.0f%% обращений%n"
+                    .formatted(100 * hits / (hits + misses)));
+        String others = meters.stream()
+                .filter(meter -> !(meter instanceof Timer) && !(meter instanceof Counter))
+                .sorted(Comparator.comparing(MetricsService::describe))
+                .map(meter -> "%s\t%s".formatted(describe(meter), meter.measure()))
+                .collect(Collectors.joining("\n"));
+        if (!others.isEmpty())
+            report.append('\n').append(others).append('\n');
+        return report.isEmpty() ?
+                "Измерения '%s' есть, но ещё ни разу не срабатывали.".formatted(prefix) :
+                report.toString().stripTrailing();
+    }
+
+    private static String describe(Meter meter) {
+        List<Tag> tags = meter.getId().getTags();
+        return tags.isEmpty() ?
+                meter.getId().getName() :
+                meter.getId().getName() + tags.stream()
+                        .map(tag -> tag.getKey() + "=" + tag.getValue())
+                        .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    /**
+     * Записывает все измерения в файл в текстовом формате Prometheus.
+     *
+     * @param file имя файла.
+     * @return сообщение о записи или об ошибке.
+     */
+    public String export(String file) {
+        PrometheusMeterRegistry exporter = prometheus.getIfAvailable();
+        if (exporter == null)
+            return "Выгрузка в формате Prometheus отключена (management.prometheus.metrics.export.enabled).";
+        try {
+            Files.writeString(Path.of(file), exporter.scrape(), StandardCharsets.UTF_8);
+            return "Измерения записаны в %s".formatted(file);
+        } catch (IOException e) {
+            return "Не удалось записать измерения в %s: %s".formatted(file, e.getLocalizedMessage());
+        }
+    }
+
+    @PreDestroy
+    public void exportOnExit() {
+        if (!exportFile.isBlank())
+            print(export(exportFile));
+    }
+}
@@ -0,0 +1,77 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.HarmonicProfile;
+import ru.swetophor.astrowidjaspringshell.model.MatrixBuffer;
+import ru.swetophor.astrowidjaspringshell.repository.ResonanceStore;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisPlan;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisTask;
+
+/**
+ * Построение {@link HarmonicProfile гармонических профилей} целых альбомов
+ * и их сравнение с базовым альбомом.
+ * <p>Одиночные карты берутся из сохранённых расчётов {@link ResonanceStore},
+ * сочетания карт рассчитываются полной матрицей.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ProfileService {
+    private final BatchAnalysisService batchAnalysisService;
+    private final ResonanceStore resonanceStore;
+
+    /**
+     * Строит профиль по заданиям, параллельно обсчитывая каждое.
+     * В профиль идёт узор-разбор полного сочетания карт задания.
+     *
+     * @param plan задания анализа.
+     * @return гармонический профиль до предельной гармоники из настроек.
+     */
+    public HarmonicProfile buildProfile(AnalysisPlan plan) {
+        AnalysisSettings settings = Settings.snapshot();
+        HarmonicProfile profile = plan.stream().parallel()
+                .collect(() -> new HarmonicProfile(settings.edgeHarmonic()),
+                        (accumulated, task) -> accept(accumulated, task, settings),
+                        HarmonicProfile::combine);
+        resonanceStore.flush();
+        return profile;
+    }
+
+    private void accept(HarmonicProfile profile, AnalysisTask task, AnalysisSettings settings) {
+        if (task.heavens().length != 1) {
+            profile.accept(BatchAnalysisService.fullAnalysis(task, settings));
+            return;
+        }
+        Chart chart = task.heavens()[0];
+        String key = task.keys()[0];
+        MatrixBuffer buffer = new MatrixBuffer(chart.getAstras().size(), profile.getEdge());
+        resonanceStore.loadInto(buffer, LibraryService.albumOf(key), chart, settings.primalOrb());
+        profile.accept(buffer, chart.getAstras().stream().map(Astra::getName).toList());
+    }
+
+    /**
+     * Строит профиль альбомов и, если указан базовый альбом, сравнивает с ним.
+     *
+     * @param albums    альбомы через запятую.
+     * @param baseline  базовые альбомы через запятую или пустая строка.
+     * @param synastric профилировать ли пары карт.
+     * @return таблицу профиля и, при наличии базы, таблицу сравнения.
+     */
+    public String profileAlbums(String albums, String baseline, boolean synastric) {
+        try {
+            HarmonicProfile profile = buildProfile(batchAnalysisService
+                    .collectTasks(BatchAnalysisService.splitAlbums(albums), synastric));
+            if (baseline == null || baseline.isBlank())
+                return profile.getTable();
+            HarmonicProfile base = buildProfile(batchAnalysisService
+                    .collectTasks(BatchAnalysisService.splitAlbums(baseline), synastric));
+            return profile.getTable() + "\n" + profile.compareWith(base);
+        } catch (IllegalArgumentException e) {
+            return "Альбом не найден: " + e.getLocalizedMessage();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ResonanceIndex;
+import ru.swetophor.astrowidjaspringshell.model.ResonanceQuery;
+import ru.swetophor.astrowidjaspringshell.repository.ResonanceStore;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Запросы к паттернам карт всей библиотеки через {@link ResonanceIndex}.
+ */
+@Service
+public class ResonanceIndexService {
+    private final LibraryService libraryService;
+    private final ResonanceStore resonanceStore;
+    private final LibraryIndexCache<ResonanceIndex> cache;
+
+    public ResonanceIndexService(LibraryService libraryService, ResonanceStore resonanceStore) {
+        this.libraryService = libraryService;
+        this.resonanceStore = resonanceStore;
+        cache = new LibraryIndexCache<>(libraryService, this::build);
+    }
+
+    /**
+     * @return индекс паттернов по текущей библиотеке, при необходимости перестроенный.
+     */
+    public ResonanceIndex getIndex() {
+        return cache.get().index();
+    }
+
+    /**
+     * Строит индекс паттернов по всем картам библиотеки заново.
+     *
+     * @return сообщение с размером индекса и временем построения.
+     */
+    public String rebuild() {
+        long started = System.currentTimeMillis();
+        ResonanceIndex index = cache.rebuild().index();
+        return "Карт в индексе: %d, паттернов: %d, построен за %.1f с"
+                .formatted(index.size(), index.patternCount(), (System.currentTimeMillis() - started) / 1000.0);
+    }
+
+    private ResonanceIndex build(AnalysisSettings settings) {
+        List<String> albums = libraryService.albumNames();
+        Map<String, Chart> collected = libraryService.collectCharts(albums);
+        List<String> keys = List.copyOf(collected.keySet());
+        List<Chart> charts = List.copyOf(collected.values());
+        int[] chartAlbums = keys.stream()
+                .mapToInt(key -> albums.indexOf(LibraryService.albumOf(key)))
+                .toArray();
+        double orb = settings.primalOrb();
+        ResonanceIndex index = ResonanceIndex.build(albums, keys, chartAlbums, charts, orb, settings.edgeHarmonic(),
+                (buffer, c) -> resonanceStore.loadInto(buffer, albums.get(chartAlbums[c]), charts.get(c), orb));
+        resonanceStore.flush();
+        return index;
+    }
+
+    /**
+     * Отбирает карты библиотеки по запросу {@link ResonanceQuery}.
+     *
+     * @param query  текст запроса.
+     * @param albums альбомы через запятую или пустая строка для всей библиотеки.
+     * @param limit  сколько карт показать.
+     * @return ключи подходящих карт и итог отбора или сообщение об ошибке.
+     */
+    public String query(String query, String albums, int limit) {
+        ResonanceQuery compiled;
+        try {
+            compiled = ResonanceQuery.parse(query);
+        } catch (IllegalArgumentException e) {
+            return e.getLocalizedMessage();
+        }
+        ResonanceIndex current = getIndex();
+        Set<Integer> scope = null;
+        if (!albums.isBlank()) {
+            scope = new HashSet<>();
+            try {
+                for (String order : BatchAnalysisService.splitAlbums(albums))
+                    scope.add(current.getAlbums().indexOf(libraryService.findAlbumName(order)));
+            } catch (IllegalArgumentException e) {
+                return "Альбом не найден: " + e.getLocalizedMessage();
+            }
+        }
+        long started = System.nanoTime();
+        int[] found = compiled.select(current, scope);
+        double millis = (System.nanoTime() - started) / 1e6;
+
+        StringBuilder report = new StringBuilder();
+        for (int k = 0; k < Math.min(limit, found.length); k++)
+            report.append(current.key(found[k])).append('\n');
+        return report.append("подходит карт: %d из %d — %.1f мс".formatted(found.length, current.size(), millis))
+                .toString();
+    }
+}
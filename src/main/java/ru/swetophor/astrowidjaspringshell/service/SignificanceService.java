@@ -0,0 +1,173 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.MatrixBuffer;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Оценка значимости гармонических паттернов карты методом Монте-Карло.
+ * Нулевая модель — карты с тем же набором астр (для обычной карты это
+ * {@link ru.swetophor.astrowidjaspringshell.mainframe.Main#DEFAULT_ASTRO_SET DEFAULT_ASTRO_SET}),
+ * расставленных по Кругу равномерно и независимо. По каждой гармонике сравниваются
+ * две величины: сколько астр входит в паттерны и вес паттернов (сумма числа астр
+ * на среднюю силу в долях). p-значение — доля случайных карт, у которых величина
+ * не меньше, чем у исследуемой: {@code (1 + число таких) / (N + 1)}.
+ * <p>Паттерны случайных карт ищутся на примитивном {@link MatrixBuffer}, по одному
+ * на рабочий поток; прогоны делятся пополам {@link RecursiveTask} в общем пуле,
+ * каждая половина получает свой {@link SplittableRandom}, отщеплённый от родительского,
+ * так что при одном и том же зерне результат воспроизводим.</p>
+ */
+@Service
+public class SignificanceService {
+    /**
+     * Сколько прогонов выполняется одной задачей без дальнейшего деления.
+     */
+    static final int LEAF_RUNS = 2048;
+
+    /**
+     * Итог оценки значимости.
+     * @param chart         имя карты.
+     * @param runs          число случайных карт.
+     * @param participation наблюдаемое число астр в паттернах по гармоникам.
+     * @param weight        наблюдаемый вес паттернов по гармоникам.
+     * @param pParticipation p-значения числа астр в паттернах по гармоникам.
+     * @param pWeight       p-значения веса паттернов по гармоникам.
+     * @param millis        затрачено миллисекунд.
+     */
+    public record SignificanceReport(String chart, int runs, int[] participation, double[] weight,
+                                     double[] pParticipation, double[] pWeight, long millis) {
+        /**
+         * Выдаёт таблицу по гармоникам, где хоть что-то найдено,
+         * отмечая звёздочкой p-значения меньше 0,05.
+         */
+        @Override
+        public String toString() {
+            StringBuilder table = new StringBuilder(
+                    "Значимость паттернов карты %s по %d случайным картам (%.1f с)%n"
+                            .formatted(chart, runs, millis / 1000.0))
+                    .append("  h  астр  p          вес    p%n".formatted());
+            for (int h = 1; h < participation.length; h++) {
+                if (participation[h] == 0) continue;
+                table.append("%3d  %4d  %.4f%s  %6.2f  %.4f%s%n".formatted(h,
+                        participation[h], pParticipation[h], pParticipation[h] < 0.05 ? "*" : " ",
+                        weight[h], pWeight[h], pWeight[h] < 0.05 ? "*" : " "));
+            }
+            return table.toString();
+        }
+    }
+
+    /**
+     * Задача прогона части случайных карт. Результат — число прогонов,
+     * где величина не меньше наблюдаемой: {@code [0..edge]} по числу астр,
+     * {@code [edge+1..2*edge+1]} по весу.
+     */
+    private static class Simulation extends RecursiveTask<long[]> {
+        private final int runs;
+        private final SplittableRandom random;
+        private final int astras;
+        private final int edge;
+        private final double orb;
+        private final int[] observedParticipation;
+        private final double[] observedWeight;
+        /**
+         * Буферы матрицы этой оценки, по одному на поток, который выполняет её задачи.
+         */
+        private final ThreadLocal<MatrixBuffer> buffers;
+
+        Simulation(int runs, SplittableRandom random, int astras, int edge, double orb,
+                   int[] observedParticipation, double[] observedWeight, ThreadLocal<MatrixBuffer> buffers) {
+            this.runs = runs;
+            this.random = random;
+            this.astras = astras;
+            this.edge = edge;
+            this.orb = orb;
+            this.observedParticipation = observedParticipation;
+            this.observedWeight = observedWeight;
+            this.buffers = buffers;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (runs > LEAF_RUNS) {
+                int half = runs / 2;
+                Simulation left = new Simulation(half, random.split(), astras, edge, orb,
+                        observedParticipation, observedWeight, buffers);
+                Simulation right = new Simulation(runs - half, random.split(), astras, edge, orb,
+                        observedParticipation, observedWeight, buffers);
+                left.fork();
+                long[] counts = right.compute();
+                long[] other = left.join();
+                for (int i = 0; i < counts.length; i++)
+                    counts[i] += other[i];
+                return counts;
+            }
+            long[] counts = new long[2 * (edge + 1)];
+            MatrixBuffer buffer = buffers.get();
+            double[] positions = new double[astras];
+            for (int run = 0; run < runs; run++) {
+                for (int i = 0; i < astras; i++)
+                    positions[i] = random.nextDouble(360.0);
+                buffer.load(positions, astras, orb);
+                buffer.analyze();
+                for (int h = 1; h <= edge; h++) {
+                    if (buffer.getParticipation(h) >= observedParticipation[h])
+                        counts[h]++;
+                    if (buffer.getWeight(h) >= observedWeight[h])
+                        counts[edge + 1 + h]++;
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Оценивает значимость паттернов одиночной карты.
+     *
+     * @param chart исследуемая карта.
+     * @param runs  число случайных карт.
+     * @param seed  зерно генератора.
+     * @return итог оценки по гармоникам от 1 до предельной из настроек.
+     */
+    public SignificanceReport assess(Chart chart, int runs, long seed) {
+        long start = System.currentTimeMillis();
+        AnalysisSettings settings = Settings.snapshot();
+        int edge = settings.edgeHarmonic();
+        double orb = settings.primalOrb();
+        List<Astra> astras = chart.getAstras();
+        int n = astras.size();
+
+        double[] positions = new double[n];
+        for (int i = 0; i < n; i++)
+            positions[i] = astras.get(i).getZodiacPosition();
+        MatrixBuffer observed = new MatrixBuffer(n, edge);
+        observed.load(positions, n, orb);
+        observed.analyze();
+        int[] participation = new int[edge + 1];
+        double[] weight = new double[edge + 1];
+        for (int h = 1; h <= edge; h++) {
+            participation[h] = observed.getParticipation(h);
+            weight[h] = observed.getWeight(h);
+        }
+
+        long[] counts = ForkJoinPool.commonPool().invoke(
+                new Simulation(runs, new SplittableRandom(seed), n, edge, orb, participation, weight,
+                        ThreadLocal.withInitial(() -> new MatrixBuffer(n, edge))));
+
+        double[] pParticipation = new double[edge + 1];
+        double[] pWeight = new double[edge + 1];
+        for (int h = 1; h <= edge; h++) {
+            pParticipation[h] = (1.0 + counts[h]) / (runs + 1);
+            pWeight[h] = (1.0 + counts[edge + 1 + h]) / (runs + 1);
+        }
+        return new SignificanceReport(chart.getName(), runs, participation, weight,
+                pParticipation, pWeight, System.currentTimeMillis() - start);
+    }
+}
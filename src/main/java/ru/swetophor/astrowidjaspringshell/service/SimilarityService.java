@@ -0,0 +1,97 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartResonances;
+import ru.swetophor.astrowidjaspringshell.model.SignatureIndex;
+import ru.swetophor.astrowidjaspringshell.repository.ResonanceStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск карт библиотеки, резонирующих похоже на данную, по {@link SignatureIndex}.
+ */
+@Service
+public class SimilarityService {
+    private final LibraryService libraryService;
+    private final ResonanceStore resonanceStore;
+    private final LibraryIndexCache<SignatureIndex> cache;
+
+    public SimilarityService(LibraryService libraryService, ResonanceStore resonanceStore) {
+        this.libraryService = libraryService;
+        this.resonanceStore = resonanceStore;
+        cache = new LibraryIndexCache<>(libraryService, this::build);
+    }
+
+    /**
+     * @return индекс подписей по текущей библиотеке, при необходимости перестроенный.
+     */
+    public SignatureIndex getIndex() {
+        return cache.get().index();
+    }
+
+    /**
+     * Строит индекс подписей по всем картам библиотеки заново.
+     *
+     * @return сообщение с размером индекса и временем построения.
+     */
+    public String rebuild() {
+        long started = System.currentTimeMillis();
+        SignatureIndex index = cache.rebuild().index();
+        return "Подписей в индексе: %d, построен за %.1f с"
+                .formatted(index.size(), (System.currentTimeMillis() - started) / 1000.0);
+    }
+
+    private SignatureIndex build(AnalysisSettings settings) {
+        Map<String, Chart> collected = libraryService.collectCharts(libraryService.albumNames());
+        List<String> keys = List.copyOf(collected.keySet());
+        List<Chart> charts = List.copyOf(collected.values());
+        double orb = settings.primalOrb();
+        SignatureIndex index = SignatureIndex.build(keys, charts, settings.edgeHarmonic(),
+                (buffer, i) -> resonanceStore.loadInto(buffer, LibraryService.albumOf(keys.get(i)), charts.get(i), orb));
+        resonanceStore.flush();
+        return index;
+    }
+
+    /**
+     * Находит карты библиотеки с самыми похожими на карту гармоническими подписями.
+     * Если сама карта есть в библиотеке, в выдачу она не попадает.
+     *
+     * @param chart карта.
+     * @param k     сколько карт выдать.
+     * @return строки "ключ карты ⇥ сходство" по убыванию сходства.
+     */
+    public String findSimilar(Chart chart, int k) {
+        LibraryIndexCache.Built<SignatureIndex> current = cache.get();
+        SignatureIndex index = current.index();
+        int exclude = positionOf(index, chart);
+        long started = System.nanoTime();
+        List<SignatureIndex.Neighbour> found = index.nearest(
+                SignatureIndex.signature(chart, current.settings().primalOrb(), index.getDimension()),
+                k, exclude);
+        return found.stream()
+                .map(SignatureIndex.Neighbour::toString)
+                .collect(Collectors.joining("\n", "",
+                        "%nпросмотрено подписей: %d за %.1f мс"
+                                .formatted(index.size(), (System.nanoTime() - started) / 1e6)));
+    }
+
+    /**
+     * @return номер карты в индексе, если в библиотеке есть карта с тем же
+     * именем и теми же положениями астр (с точностью хранения), иначе -1.
+     */
+    private int positionOf(SignatureIndex index, Chart chart) {
+        long stored = ChartResonances.contentHash(Chart.readFromString(chart.getString()));
+        for (String album : libraryService.albumNames()) {
+            int position = index.indexOf(album + "/" + chart.getName());
+            if (position != -1
+                    && libraryService.getAlbum(album).get(chart.getName()) instanceof Chart candidate
+                    && ChartResonances.contentHash(candidate) == stored)
+                return position;
+        }
+        return -1;
+    }
+}
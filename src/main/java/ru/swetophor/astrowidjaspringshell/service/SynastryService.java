@@ -0,0 +1,72 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.SynastryGrid;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Синастрическая совместимость всех пар карт альбомов через {@link SynastryGrid}.
+ */
+@Service
+@RequiredArgsConstructor
+public class SynastryService {
+    private final LibraryService libraryService;
+
+    /**
+     * Обсчитывает все пары одиночных карт альбомов и выдаёт лучшие пары
+     * на экран, а если указан файл — пишет в него все пары по убыванию оценки, по строке на пару:
+     * <pre>ключ карты ⇥ ключ карты ⇥ оценка</pre>
+     *
+     * @param albums альбомы через запятую.
+     * @param output файл для всех пар или пустая строка.
+     * @param limit  сколько лучших пар показать.
+     * @return таблицу лучших пар с итогом или сообщение об ошибке.
+     */
+    public String gridForAlbums(String albums, String output, int limit) {
+        Map<String, Chart> collected;
+        try {
+            collected = libraryService.collectCharts(BatchAnalysisService.splitAlbums(albums));
+        } catch (IllegalArgumentException e) {
+            return "Альбом не найден: " + e.getLocalizedMessage();
+        }
+        if (collected.size() < 2)
+            return "Для синастрической сетки нужно хотя бы две карты.";
+        List<String> keys = new ArrayList<>(collected.keySet());
+        long started = System.currentTimeMillis();
+        SynastryGrid grid = SynastryGrid.of(new ArrayList<>(collected.values()));
+        long pairs = (long) grid.size() * (grid.size() - 1) / 2;
+
+        StringBuilder report = new StringBuilder();
+        for (SynastryGrid.Match match : grid.ranking(limit))
+            report.append(line(keys, match)).append('\n');
+        if (!output.isBlank())
+            try (BufferedWriter writer = Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8)) {
+                for (SynastryGrid.Match match : grid.ranking((int) pairs)) {
+                    writer.write(line(keys, match));
+                    writer.newLine();
+                }
+                report.append("Все пары записаны в ").append(output).append('\n');
+            } catch (IOException e) {
+                return "Не удалось записать '%s': %s".formatted(output, e.getLocalizedMessage());
+            }
+        return report.append("карт %d, пар %d — %.1f с"
+                        .formatted(grid.size(), pairs, (System.currentTimeMillis() - started) / 1000.0))
+                .toString();
+    }
+
+    private static String line(List<String> keys, SynastryGrid.Match match) {
+        return String.join("\t", keys.get(match.first()), keys.get(match.second()),
+                String.format(Locale.ROOT, "%.2f", match.score()));
+    }
+}
@@ -0,0 +1,305 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.springframework.stereotype.Service;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.EphemerisSeries;
+import ru.swetophor.astrowidjaspringshell.model.TransitEvent;
+import ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Поиск транзитных резонансов движущихся астр к астрам натальной карты
+ * на промежутке времени.
+ * <p>Между отсчётами эфемериды долгота движущейся астры считается линейной,
+ * поэтому фаза {@code u(t) = h·(λ(t) − λнат)} на каждом отрезке тоже линейна,
+ * а зазор в гармонике {@code h} (как {@link CelestialMechanics#getArcForHarmonic}) —
+ * это расстояние от {@code u} до ближайшего кратного 360°. Окно резонанса
+ * {@code |u − 360j| < орбис} на отрезке находится решением линейного уравнения
+ * для каждого {@code j}, через которое проходит {@code u}, без перебора моментов.
+ * Окна, продолжающиеся через границу отрезков, склеиваются.</p>
+ * <p>Пары астр проходятся лениво и сливаются по времени начала окон,
+ * так что окна выдаются по порядку без сортировки всего результата.</p>
+ * <p>Как и в {@link ru.swetophor.astrowidjaspringshell.model.ResonanceBatch},
+ * аспект учитывается в гармонике {@code h}, только если его кратность
+ * {@code j mod h} взаимно проста с {@code h}; иначе это тот же аспект младшей гармоники.
+ * Орбис для транзита к натальной астре — как для астр разных карт.</p>
+ */
+@Service
+public class TransitService {
+
+    /**
+     * Ищет транзитные окна всех астр эфемериды ко всем астрам карты.
+     *
+     * @param natal  натальная карта.
+     * @param series эфемерида движущихся астр.
+     * @param from   начало промежутка, секунды эпохи.
+     * @param to     конец промежутка, секунды эпохи.
+     * @param edge   предельная гармоника.
+     * @param orb    первичный орбис для соединения.
+     * @return поток окон по времени начала (при равном начале — по порядку пар астр).
+     * Поток ленивый: каждая пара астр продвигается по эфемериде, лишь пока
+     * не станет известно её ближайшее окно, а пары сливаются очередью с приоритетом.
+     */
+    public Stream<TransitEvent> scan(Chart natal, EphemerisSeries series,
+                                     double from, double to, int edge, double orb) {
+        List<Astra> natalAstras = natal.getAstras();
+        int pairs = series.getAstraNames().size() * natalAstras.size();
+        Iterator<TransitEvent> merged = new Iterator<>() {
+            private PriorityQueue<PairScan> queue;
+
+            private PriorityQueue<PairScan> queue() {
+                if (queue == null) {
+                    queue = new PriorityQueue<>(Math.max(1, pairs), Comparator
+                            .comparingDouble((PairScan scan) -> scan.peek().start())
+                            .thenComparingInt(scan -> scan.order));
+                    for (int p = 0; p < pairs; p++) {
+                        PairScan scan = new PairScan(p, series, p / natalAstras.size(),
+                                natalAstras.get(p % natalAstras.size()), from, to, edge, orb);
+                        if (scan.peek() != null)
+                            queue.add(scan);
+                    }
+                }
+                return queue;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !queue().isEmpty();
+            }
+
+            @Override
+            public TransitEvent next() {
+                PairScan scan = queue().poll();
+                if (scan == null)
+                    throw new NoSuchElementException();
+                TransitEvent event = scan.poll();
+                if (scan.peek() != null)
+                    queue.add(scan);
+                return event;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Ищет транзитные окна по настройкам: до предельной гармоники,
+     * с орбисом для астр разных карт.
+     */
+    public Stream<TransitEvent> scan(Chart natal, EphemerisSeries series, double from, double to) {
+        AnalysisSettings settings = Settings.snapshot();
+        return scan(natal, series, from, to, settings.edgeHarmonic(), settings.orbFor(true));
+    }
+
+    /**
+     * Открытое (ещё не завершённое) окно одной гармоники.
+     */
+    private static final class Window {
+        long j;
+        double start, end, exact, clearance;
+    }
+
+    /**
+     * Поотрезочный проход эфемериды для одной пары астр. Закрытые окна
+     * копятся, пока не станет ясно, что раньше них у пары окон уже не начнётся:
+     * новое окно не начинается раньше текущего отрезка, а незакрытое — уже начато.
+     */
+    private static final class PairScan {
+        private final int order;
+        private final double[] times;
+        private final double[] longitudes;
+        private final String transiting;
+        private final Astra natal;
+        private final double from, to, orb;
+        private final int edge;
+        private final Window[] open;
+        private final PriorityQueue<TransitEvent> closed = new PriorityQueue<>(Comparator
+                .comparingDouble(TransitEvent::start)
+                .thenComparingInt(TransitEvent::harmonic));
+        private int segment;
+        private boolean finished;
+
+        private PairScan(int order, EphemerisSeries series, int moving, Astra natal,
+                         double from, double to, int edge, double orb) {
+            this.order = order;
+            this.times = series.getTimes();
+            this.longitudes = series.getLongitudes()[moving];
+            this.transiting = series.getAstraNames().get(moving);
+            this.natal = natal;
+            this.from = from;
+            this.to = to;
+            this.edge = edge;
+            this.orb = orb;
+            this.open = new Window[edge + 1];
+        }
+
+        /**
+         * @return ближайшее по началу окно пары или {@code null}, если окон больше нет.
+         */
+        TransitEvent peek() {
+            while (!finished && (closed.isEmpty() || closed.peek().start() > watermark()))
+                advance();
+            return closed.peek();
+        }
+
+        TransitEvent poll() {
+            peek();
+            return closed.poll();
+        }
+
+        /**
+         * @return раньше какого момента у пары больше не начнётся окон.
+         */
+        private double watermark() {
+            double earliest = Math.max(times[segment], from);
+            for (int h = 1; h <= edge; h++)
+                if (open[h] != null)
+                    earliest = Math.min(earliest, open[h].start);
+            return earliest;
+        }
+
+        /**
+         * Проходит следующий отрезок эфемериды, а за последним закрывает все окна.
+         */
+        private void advance() {
+            if (segment >= times.length - 1 || times[segment] >= to) {
+                for (int h = 1; h <= edge; h++)
+                    if (open[h] != null)
+                        emit(closed, open[h], transiting, natal.getName(), h, orb);
+                finished = true;
+                return;
+            }
+            int s = segment++;
+            double t0 = times[s], t1 = times[s + 1];
+            if (t1 <= from) return;
+            double natalPosition = natal.getZodiacPosition();
+            double d0 = longitudes[s] - natalPosition;
+            double d1 = longitudes[s + 1] - natalPosition;
+            double a = Math.max(t0, from), b = Math.min(t1, to);
+
+            for (int h = 1; h <= edge; h++) {
+                double u0 = h * d0, rate = h * (d1 - d0) / (t1 - t0);
+                double ua = u0 + rate * (a - t0), ub = u0 + rate * (b - t0);
+                double low = Math.min(ua, ub), high = Math.max(ua, ub);
+                long jFirst = (long) Math.ceil((low - orb) / 360.0);
+                long jLast = (long) Math.floor((high + orb) / 360.0);
+                // j обходятся в направлении движения, чтобы куски шли по времени
+                boolean forward = rate >= 0;
+                for (long k = 0; k <= jLast - jFirst; k++) {
+                    long j = forward ? jFirst + k : jLast - k;
+                    double target = 360.0 * j;
+                    double pieceStart, pieceEnd;
+                    if (rate == 0) {
+                        if (Math.abs(ua - target) >= orb) continue;
+                        pieceStart = a;
+                        pieceEnd = b;
+                    } else {
+                        double enter = t0 + (target - (forward ? orb : -orb) - u0) / rate;
+                        double leave = t0 + (target + (forward ? orb : -orb) - u0) / rate;
+                        pieceStart = Math.max(a, enter);
+                        pieceEnd = Math.min(b, leave);
+                        if (pieceEnd <= pieceStart) continue;
+                    }
+                    double exact = Double.NaN, clearance;
+                    if (rate != 0) {
+                        double crossing = t0 + (target - u0) / rate;
+                        if (crossing >= pieceStart && crossing <= pieceEnd) exact = crossing;
+                    }
+                    clearance = Double.isNaN(exact) ?
+                            Math.min(Math.abs(u0 + rate * (pieceStart - t0) - target),
+                                    Math.abs(u0 + rate * (pieceEnd - t0) - target)) :
+                            0.0;
+
+                    Window window = open[h];
+                    if (window != null && window.j == j && window.end == pieceStart) {
+                        window.end = pieceEnd;
+                        if (clearance < window.clearance) {
+                            window.clearance = clearance;
+                            if (!Double.isNaN(exact)) window.exact = exact;
+                        }
+                        continue;
+                    }
+                    if (window != null)
+                        emit(closed, window, transiting, natal.getName(), h, orb);
+                    window = new Window();
+                    window.j = j;
+                    window.start = pieceStart;
+                    window.end = pieceEnd;
+                    window.exact = exact;
+                    window.clearance = clearance;
+                    open[h] = window;
+                }
+            }
+        }
+    }
+
+    /**
+     * Выпускает окно как событие, если его кратность взаимно проста с гармоникой.
+     */
+    private static void emit(Collection<TransitEvent> events, Window window, String transiting,
+                             String natal, int h, double orb) {
+        int remainder = (int) Math.floorMod(window.j, (long) h);
+        if (gcd(remainder, h) != 1) return;
+        int multiplicity = Math.max(1, Math.min(remainder, h - remainder));
+        events.add(new TransitEvent(transiting, natal, h, multiplicity,
+                window.start, window.end, window.exact,
+                CelestialMechanics.calculateStrength(orb, window.clearance)));
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Ищет транзиты и выдаёт их по времени начала: в файл, если он указан,
+     * иначе на экран не больше указанного числа.
+     *
+     * @param natal  натальная карта.
+     * @param series ряд положений движущихся астр.
+     * @param from   начало промежутка, секунды эпохи.
+     * @param to     конец промежутка, секунды эпохи.
+     * @param output файл для всех окон или пустая строка.
+     * @param limit  сколько окон показать на экране, если файл не указан.
+     * @return текст с окнами или итогом записи, либо сообщение об ошибке.
+     */
+    public String scanToText(Chart natal, EphemerisSeries series, double from, double to,
+                             String output, int limit) {
+        long started = System.currentTimeMillis();
+        Stream<TransitEvent> events = scan(natal, series, from, to);
+
+        if (output.isBlank()) {
+            List<TransitEvent> shown = events.limit(limit).toList();
+            StringBuilder text = new StringBuilder();
+            shown.forEach(e -> text.append(e).append('\n'));
+            return text.append("показано окон: %d%n".formatted(shown.size())).toString();
+        }
+        long count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8)) {
+            for (TransitEvent event : (Iterable<TransitEvent>) events::iterator) {
+                writer.write(event.toString());
+                writer.newLine();
+                count++;
+            }
+        } catch (IOException e) {
+            return "Не удалось записать '%s': %s".formatted(output, e.getLocalizedMessage());
+        }
+        return "Записано окон: %d в %s за %.1f с"
+                .formatted(count, output, (System.currentTimeMillis() - started) / 1000.0);
+    }
+}
@@ -20,6 +20,7 @@ public final class CelestialMechanics {
      * Полкруга в градусах, т.е. 180.
      */
     public static final double HALF_CIRCLE = 180.0;
+    private static final double INVERSE_CIRCLE = 1 / CIRCLE;
 
     /**
      * Вычисляет эклиптическую дугу между двумя точками на большом круге
@@ -76,12 +77,10 @@ public final class CelestialMechanics {
      * следующая через четверть после точки, переданной первой.
      */
     public static double findMedian(double positionA, double positionB) {
-        double arc = getArc(positionA, positionB);
-        double minorPosition =
-                normalizeCoordinate(positionA + arc) == positionB ?
-                        positionA : positionB;
-
-        return normalizeCoordinate(minorPosition + arc / 2);
+        double forward = normalizeCoordinate(positionB - positionA);
+        return forward <= HALF_CIRCLE ?
+                normalizeCoordinate(positionA + forward / 2) :
+                normalizeCoordinate(positionB + (CIRCLE - forward) / 2);
     }
 
     /**
@@ -159,6 +158,23 @@ public final class CelestialMechanics {
         return normalizeArc(getArc(a, b) * harmonic);
     }
 
+    /**
+     * Приводит дугу, умноженную на номер гармоники, к расстоянию между концами,
+     * как {@code normalizeArc(arc * harmonic)}, но быстрее — почему это точно,
+     * см. {@link ru.swetophor.astrowidjaspringshell.model.MatrixBuffer}.
+     * @param arc   дуга между астрами, от 0° до 180°.
+     * @param harmonic  номер гармоники.
+     * @return  угловое расстояние между астрами в карте указанной гармоники.
+     */
+    public static double getArcForHarmonic(double arc, int harmonic) {
+        double x = arc * harmonic;
+        double k = Math.floor(x * INVERSE_CIRCLE);
+        double p = x - k * CIRCLE;
+        if (p < 0) p = x - (k - 1) * CIRCLE;
+        else if (p >= CIRCLE) p = x - (k + 1) * CIRCLE;
+        return p > HALF_CIRCLE ? CIRCLE - p : p;
+    }
+
     /**
      * Рассчитывает условную силу в процентах: насколько точность аспекта близка к экзакту,
      * а именно: насколько разность дуги с чистым аспектом (зазор) близка к нулю.
@@ -3,7 +3,34 @@ package ru.swetophor.astrowidjaspringshell.utils;
 import ru.swetophor.astrowidjaspringshell.model.Harmonics;
 
 public class Interpreter {
+    /**
+     * До какой гармоники описания резонансов хранятся готовыми:
+     * с запасом покрывает предельную гармонику по умолчанию (108).
+     */
+    static final int DESCRIPTION_TABLE_EDGE = 144;
+    /**
+     * Готовые описания: для гармоники {@code h} — кратности от 1 до {@code max(1, h / 2)},
+     * как их выдаёт {@link ru.swetophor.astrowidjaspringshell.model.Harmonics#findMultiplier(int, double, double)}.
+     * Как и таблица множителей в {@link Harmonics}, строится при сборке нативного образа.
+     */
+    private static final String[][] DESCRIPTIONS = new String[DESCRIPTION_TABLE_EDGE + 1][];
+
+    static {
+        for (int h = 1; h <= DESCRIPTION_TABLE_EDGE; h++) {
+            DESCRIPTIONS[h] = new String[Math.max(1, h / 2) + 1];
+            for (int m = 1; m < DESCRIPTIONS[h].length; m++)
+                DESCRIPTIONS[h][m] = describe(h, m);
+        }
+    }
+
     public static String ResonanceDescription(int harmonic, int multiplier) {
+        return harmonic >= 1 && harmonic <= DESCRIPTION_TABLE_EDGE
+                && multiplier >= 1 && multiplier < DESCRIPTIONS[harmonic].length ?
+                DESCRIPTIONS[harmonic][multiplier] :
+                describe(harmonic, multiplier);
+    }
+
+    private static String describe(int harmonic, int multiplier) {
         switch (harmonic) {
             case 1 : return "<1> Соединение: ";
             case 2 : return "<2> Противоположение: ";
@@ -1,8 +1,12 @@
 package ru.swetophor.astrowidjaspringshell.utils;
 
-import ru.swetophor.astrowidjaspringshell.client.CommandLineController;
 import ru.swetophor.astrowidjaspringshell.model.*;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static java.lang.Math.abs;
@@ -159,48 +163,88 @@ public class Mechanics {
 
 
     /**
-     * Создаёт композитную карту из двух данных карт. В композите каждая астра
-     * получает среднюю координату между координатами этой астры в двух картах.
-     * В композит попадают только те астры, которые есть в обеих картах.
-     * Меркурий и Венера гарантированно помещаются в той же части Неба, что Солнце.
+     * Создаёт композитную карту из двух данных карт, как {@link #composite(ChartObject...)}.
      * @param chart_a   первая карта для композита.
      * @param chart_b   вторая карта для композита.
      * @return  композитную карту, среднюю между двух данных карт.
      */
     public static Chart composite(Chart chart_a, Chart chart_b) {
-        if (chart_a == null || chart_b == null)
+        return composite(new ChartObject[]{chart_a, chart_b});
+    }
+
+    /**
+     * Создаёт композитную карту группы: каждая астра получает среднюю по кругу
+     * координату (направление суммы единичных векторов) этой астры во всех картах группы.
+     * Многокарты входят в группу всеми своими картами.
+     * В композит попадают только те астры, которые есть во всех картах, в порядке первой карты.
+     * Меркурий и Венера гарантированно помещаются в той же части Неба, что Солнце.
+     * <p>Астры сопоставляются по номеру в {@link AstraCatalogue каталоге}
+     * (а нераспознанные — по имени) один раз на астру, после чего средние
+     * набираются одним проходом по картам в массивы сумм, выровненные по астрам первой карты.
+     * Для двух карт результат — середина меньшей дуги, как {@link CelestialMechanics#findMedian}.</p>
+     * @param group карты для композита.
+     * @return  композитную карту, среднюю для всех карт группы.
+     * @throws IllegalArgumentException если карт нет или какая-то из них не найдена.
+     */
+    public static Chart composite(ChartObject... group) {
+        if (group.length == 0 || Arrays.stream(group).anyMatch(Objects::isNull))
             throw new IllegalArgumentException("карта для композита не найдена");
-        Chart composite = new Chart("Средняя карта %s и %s"
-                .formatted(chart_a.getName(), chart_b.getName()));
+        Chart[] charts = Arrays.stream(group)
+                .map(ChartObject::getData)
+                .flatMap(Arrays::stream)
+                .toArray(Chart[]::new);
+        List<Astra> base = charts[0].getAstras();
+        int slots = base.size();
+        int[] slotById = new int[AstraCatalogue.size()];
+        Arrays.fill(slotById, -1);
+        Map<String, Integer> slotByName = new HashMap<>();
+        int[] ids = new int[slots];
+        for (int s = 0; s < slots; s++) {
+            ids[s] = AstraCatalogue.idOf(base.get(s).getName());
+            if (ids[s] >= 0) slotById[ids[s]] = s;
+            else slotByName.put(base.get(s).getName(), s);
+        }
 
-        Astra sun = null, mercury = null, venus = null;
-        for (Astra astra : chart_a.getAstras()) {
-            Astra counterpart = chart_b.getAstra(astra.getName());
-            if (counterpart == null) continue;
+        double[] sumCos = new double[slots], sumSin = new double[slots];
+        int[] seen = new int[slots];
+        for (Chart chart : charts)
+            for (Astra astra : chart.getAstras()) {
+                int id = AstraCatalogue.idOf(astra.getName());
+                Integer slot = id >= 0 ?
+                        (id < slotById.length && slotById[id] >= 0 ? slotById[id] : null) :
+                        slotByName.get(astra.getName());
+                if (slot == null) continue;
+                double angle = Math.toRadians(astra.getZodiacPosition());
+                sumCos[slot] += Math.cos(angle);
+                sumSin[slot] += Math.sin(angle);
+                seen[slot]++;
+            }
 
-            Astra compositeAstra = new Astra(astra.getName(),
-                    findMedian(astra.getZodiacPosition(),
-                            counterpart.getZodiacPosition()));
+        List<String> names = Arrays.stream(charts).map(Chart::getName).toList();
+        Chart composite = new Chart(names.size() == 1 ?
+                "Средняя карта " + names.get(0) :
+                "Средняя карта %s и %s".formatted(
+                        String.join(", ", names.subList(0, names.size() - 1)),
+                        names.get(names.size() - 1)));
+        Astra sun = null, mercury = null, venus = null;
+        for (int s = 0; s < slots; s++) {
+            if (seen[s] != charts.length) continue;
+            Astra compositeAstra = new Astra(base.get(s).getName(),
+                    normalizeCoordinate(Math.toDegrees(Math.atan2(sumSin[s], sumCos[s]))));
             composite.addAstra(compositeAstra);
-
-            AstraEntity innerBody = AstraEntity.getEntityByName(compositeAstra.getName());
-            if (innerBody != null)
-                switch (innerBody) {
-                    case SOL -> sun = compositeAstra;
-                    case MER -> mercury = compositeAstra;
-                    case VEN -> venus = compositeAstra;
-                }
-
+            if (ids[s] == AstraEntity.SOL.ordinal()) sun = compositeAstra;
+            else if (ids[s] == AstraEntity.MER.ordinal()) mercury = compositeAstra;
+            else if (ids[s] == AstraEntity.VEN.ordinal()) venus = compositeAstra;
         }
 
         if (sun != null) {
             if (mercury != null &&
                     getArc(sun, mercury) > 30.0)
-                composite.addAstra(mercury.advanceCoordinateBy(HALF_CIRCLE));
+                mercury.advanceCoordinateBy(HALF_CIRCLE);
 
             if (venus != null &&
                     getArc(sun, venus) > 60.0)
-                composite.addAstra(venus.advanceCoordinateBy(HALF_CIRCLE));
+                venus.advanceCoordinateBy(HALF_CIRCLE);
         }
 
         return composite;
@@ -219,60 +263,4 @@ public class Mechanics {
             filename += asAwc ? ".awc" : ".awb";
         return filename;
     }
-
-    /**
-     * Разрешает коллизию, возникающую, если имя добавляемой карты уже содержится
-     * в списке. Запрашивает решение у астролога, требуя выбора одного из трёх вариантов:
-     * <li>переименовать – запрашивает новое имя для добавляемой карты и добавляет обновлённую;</li>
-     * <li>обновить – ставит новую карту на место старой карты с этим именем;</li>
-     * <li>заменить – удаляет из списка карту с конфликтным именем, добавляет новую;</li>
-     * <li>отмена – карта не добавляется.</li>
-     *
-     * @param controversial добавляемая карта, имя которой, как предварительно уже определено,
-     *                      уже присутствует в этом списке.
-     * @param listName      название файла или иного списка, в который добавляется карта, в предложном падеже.
-     * @return {@code да}, если добавление карты (с переименованием либо с заменой) состоялось,
-     *          {@code нет}, если была выбрана отмена.
-     */
-    public static boolean resolveCollision(ChartList list, ChartObject controversial, String listName) {
-        while (true) {
-            print("""
-                                                   \s
-                            Карта с именем '%s' уже есть %s:
-                            1. добавить под новым именем
-                            2. заменить присутствующую в списке
-                            3. удалить старую, добавить новую в конец списка
-                            0. отмена
-                           \s"""
-                    .formatted(controversial.getName(),
-                    listName.startsWith("на ") ?
-                            listName :
-                            "в " + listName));
-
-            switch (CommandLineController.KEYBOARD.nextLine()) {
-                case "1", "name" -> {
-                    String rename;
-                    do {
-                        System.out.print("Новое имя: ");
-                        rename = CommandLineController.KEYBOARD.nextLine();         // TODO: допустимое имя
-                        System.out.println();
-                    } while (list.contains(rename));
-                    controversial.setName(rename);
-                    return list.addItem(controversial);
-                }
-                case "2", "replace" -> {
-                    list.setItem(list.indexOf(controversial.getName()), controversial);
-                    return true;
-                }
-                case "3", "add" -> {
-                    list.remove(controversial.getName());
-                    return list.addItem(controversial);
-                }
-                case "0", "cancel" -> {
-                    System.out.println("Отмена добавления карты: " + controversial.getName());
-                    return false;
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,51 @@
+package ru.swetophor.astrowidjaspringshell.commands;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandKeysTest {
+
+    @Test
+    void everyCommandKeyIsUnique() throws IOException, URISyntaxException, ClassNotFoundException {
+        String packageName = CommandKeysTest.class.getPackageName();
+        List<File> classes = new ArrayList<>();
+        // классы команд и этого теста могут лежать в разных папках
+        for (URL folder : Collections.list(CommandKeysTest.class.getClassLoader()
+                .getResources(packageName.replace('.', '/'))))
+            if (folder.getProtocol().equals("file"))
+                classes.addAll(List.of(new File(folder.toURI()).listFiles()));
+
+        Map<String, String> owners = new HashMap<>();
+        int components = 0;
+        for (File file : classes) {
+            String name = file.getName();
+            if (!name.endsWith(".class") || name.contains("$")) continue;
+            Class<?> type = Class.forName(packageName + "." + name.substring(0, name.length() - ".class".length()));
+            if (!type.isAnnotationPresent(ShellComponent.class)) continue;
+            components++;
+            for (Method method : type.getDeclaredMethods()) {
+                ShellMethod command = method.getAnnotation(ShellMethod.class);
+                if (command == null) continue;
+                String[] keys = command.key().length > 0 ? command.key() :
+                        new String[]{method.getName().replaceAll("([a-z0-9])([A-Z])", "$1-$2").toLowerCase()};
+                String owner = type.getSimpleName() + "." + method.getName();
+                for (String key : keys) {
+                    String previous = owners.put(key, owner);
+                    assertNull(previous, "команда '%s' объявлена в %s и в %s".formatted(key, previous, owner));
+                }
+            }
+        }
+        assertTrue(components > 1, "не найдены классы команд");
+        assertTrue(owners.containsKey("composite"));
+    }
+}
@@ -0,0 +1,64 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.repository.ChartRepository;
+import ru.swetophor.astrowidjaspringshell.repository.MVStoreChartRepository;
+import ru.swetophor.astrowidjaspringshell.service.LibraryService;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class RepositoryMetricsTest {
+
+    @TempDir
+    Path folder;
+
+    private static Timer timer(SimpleMeterRegistry registry, String operation) {
+        return registry.get(EngineMetrics.PREFIX + "repository")
+                .tag("store", MVStoreChartRepository.class.getSimpleName())
+                .tag("operation", operation)
+                .timer();
+    }
+
+    @Test
+    void measuredRepositoryIsStillChartRepository() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        try {
+            Object bean = new RepositoryMetrics().postProcessAfterInitialization(repository, "chartRepository");
+            assertTrue(bean instanceof ChartRepository, "посредник не внедряется как картохранилище");
+            ChartRepository measured = (ChartRepository) bean;
+
+            Chart chart = randomChart(new Random(50), "карта");
+            measured.insertCharts("альбом.awb", List.of(chart));
+            LibraryService library = new LibraryService(measured, null);
+            assertEquals(List.of("альбом.awb"), library.albumNames());
+            assertEquals(1, timer(registry, "insertCharts").count());
+            assertEquals(1, timer(registry, "albumNames").count());
+
+            // исключение хранилища доходит до вызывающего как есть, а вызов всё равно замерен
+            assertThrows(ChartCollisionException.class,
+                    () -> measured.addChartsToAlbum("альбом.awb", CollisionPolicy.FAIL, chart));
+            assertEquals(1, timer(registry, "addChartsToAlbum").count());
+
+            Object other = new Object();
+            assertTrue(new RepositoryMetrics().postProcessAfterInitialization(other, "other") == other,
+                    "подменён бин, не являющийся картохранилищем");
+        } finally {
+            Metrics.removeRegistry(registry);
+            repository.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.swetophor.astrowidjaspringshell.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettingsTest {
+
+    @Test
+    void concurrentSettersLeaveSnapshotCurrent() throws InterruptedException {
+        int edge = Settings.getEdgeHarmonic(), divisor = Settings.getOrbDivisor();
+        try {
+            for (int round = 0; round < 50; round++) {
+                CountDownLatch start = new CountDownLatch(1);
+                int shift = round;
+                Thread edges = new Thread(() -> {
+                    await(start);
+                    for (int i = 0; i < 200; i++) Settings.setEdgeHarmonic(20 + (i + shift) % 80);
+                });
+                Thread divisors = new Thread(() -> {
+                    await(start);
+                    for (int i = 0; i < 200; i++) Settings.setOrbDivider(10 + (i + shift) % 30);
+                });
+                edges.start();
+                divisors.start();
+                start.countDown();
+                edges.join();
+                divisors.join();
+
+                AnalysisSettings snapshot = Settings.snapshot();
+                assertEquals(20 + (199 + shift) % 80, snapshot.edgeHarmonic(), "раунд " + round);
+                assertEquals(10 + (199 + shift) % 30, snapshot.orbDivisor(), "раунд " + round);
+            }
+        } finally {
+            Settings.setEdgeHarmonic(edge);
+            Settings.setOrbDivider(divisor);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
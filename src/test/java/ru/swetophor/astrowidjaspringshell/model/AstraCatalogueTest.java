@@ -0,0 +1,87 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstraCatalogueTest {
+
+    @Test
+    void entitiesKeepTheirOrdinals() {
+        for (AstraEntity entity : AstraEntity.values()) {
+            assertEquals(entity.ordinal(), AstraCatalogue.idOf(entity.name));
+            assertEquals(entity.ordinal(), AstraCatalogue.idOf(String.valueOf(entity.symbol)));
+        }
+        assertEquals(AstraEntity.SOL.ordinal(), AstraCatalogue.idOf(" sun "));
+        assertEquals(-1, AstraCatalogue.idOf("Нибиру"));
+    }
+
+    @Test
+    void loadsPointsAndBuildsSets() throws Exception {
+        Path file = Files.createTempFile("catalogue", ".tsv");
+        Files.writeString(file, """
+                // тестовый каталог
+                Паллада\t⚴\tasteroid\tPallas, 2 Pallas
+                Регул\t\tstar\tRegulus, α Leo
+                Альдебаран\t\tSTAR\tAldebaran
+
+                Веста\t⚶\tasteroid
+                """, StandardCharsets.UTF_8);
+        int before = AstraCatalogue.size();
+        assertEquals(4, AstraCatalogue.load(file));
+        assertEquals(before + 4, AstraCatalogue.size());
+
+        int pallas = AstraCatalogue.idOf("2 pallas");
+        assertEquals("Паллада", AstraCatalogue.get(pallas).name());
+        assertEquals(pallas, AstraCatalogue.idOf("⚴"));
+        assertEquals('⚴', AstraEntity.findSymbolFor("Pallas"));
+        assertEquals(AstraCatalogue.NO_SYMBOL, AstraEntity.findSymbolFor("Regulus"));
+        assertEquals("Регул", AstraCatalogue.canonicalName("α Leo"));
+
+        // повторная загрузка не плодит точек
+        AstraCatalogue.load(file);
+        assertEquals(before + 4, AstraCatalogue.size());
+
+        AstroSet stars = AstroSet.ofKind(AstraCatalogue.Kind.STAR);
+        assertEquals(2, stars.size());
+        assertTrue(stars.contains(new Astra("Aldebaran", 69.8)));
+        AstroSet mixed = new AstroSet(new AstraEntity[]{AstraEntity.SOL, AstraEntity.LUN}).add("Веста");
+        assertArrayEquals(new AstraEntity[]{AstraEntity.SOL, AstraEntity.LUN}, mixed.values());
+        assertEquals(3, mixed.entries().count());
+        assertEquals(5, mixed.union(stars).size());
+        assertTrue(mixed.intersection(stars).isEmpty());
+        Files.delete(file);
+    }
+
+    @Test
+    void nameTakenByAliasIsRejected() throws Exception {
+        int ceres = AstraCatalogue.register("Церера", AstraCatalogue.NO_SYMBOL,
+                AstraCatalogue.Kind.ASTEROID, List.of("Ceres", "1 Ceres"));
+        int before = AstraCatalogue.size();
+        try {
+            AstraCatalogue.register("ceres", AstraCatalogue.NO_SYMBOL, AstraCatalogue.Kind.POINT, List.of());
+            fail("имя, занятое псевдонимом, принято");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Имя 'ceres' уже служит псевдонимом точки 'Церера'", e.getMessage());
+        }
+        assertEquals(before, AstraCatalogue.size());
+        assertEquals(ceres, AstraCatalogue.idOf("Ceres"));
+
+        Path file = Files.createTempFile("catalogue", ".tsv");
+        Files.writeString(file, "Эрида\t\tasteroid\n1 Ceres\t\tpoint\n", StandardCharsets.UTF_8);
+        try {
+            AstraCatalogue.load(file);
+            fail("каталог с занятым именем загружен");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Строка 2: Имя '1 Ceres' уже служит псевдонимом точки 'Церера'", e.getMessage());
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(ceres, AstraCatalogue.idOf("1 ceres"));
+    }
+}
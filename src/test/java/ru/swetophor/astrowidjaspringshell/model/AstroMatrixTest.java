@@ -0,0 +1,133 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.AnalysisSettings;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class AstroMatrixTest {
+
+    private static Chart copyOf(Chart chart) {
+        Chart copy = new Chart(chart.getName());
+        for (Astra astra : chart.getAstras())
+            copy.addAstra(Astra.fromData(astra.getName(), new Double[]{astra.getZodiacPosition()}));
+        return copy;
+    }
+
+    private static void assertSamePatterns(AstroMatrix expected, AstroMatrix actual, int harmonic) {
+        List<Pattern> fresh = expected.findPatterns(harmonic);
+        List<Pattern> updated = actual.findPatterns(harmonic);
+        assertEquals(fresh.size(), updated.size(), "гармоника " + harmonic);
+        for (int p = 0; p < fresh.size(); p++) {
+            assertEquals(fresh.get(p).size(), updated.get(p).size());
+            assertEquals(fresh.get(p).getAverageStrength(), updated.get(p).getAverageStrength(), 1e-9);
+        }
+    }
+
+    @Test
+    void movedAstraMatchesRebuiltMatrix() {
+        Random random = new Random(34);
+        Chart chart = randomChart(random, "ход");
+        int edge = Settings.getEdgeHarmonic();
+        AstroMatrix matrix = new AstroMatrix(chart);
+        for (int h = 1; h <= edge; h++)
+            matrix.findPatterns(h);
+
+        List<Astra> astras = chart.getAstras();
+        for (int step = 0; step < 30; step++) {
+            Astra astra = astras.get(random.nextInt(astras.size()));
+            BitSet affected = matrix.moveAstra(astra, astra.getZodiacPosition() + random.nextDouble() * 3);
+            AstroMatrix rebuilt = new AstroMatrix(copyOf(chart));
+
+            for (int i = 0; i < astras.size() - 1; i++)
+                for (int j = i + 1; j < astras.size(); j++)
+                    assertEquals(rebuilt.getMatrix()[i][j].getAspects().size(),
+                            matrix.getMatrix()[i][j].getAspects().size());
+            for (int h = 1; h <= edge; h++) {
+                if (!affected.get(h))
+                    for (Pattern pattern : matrix.findPatterns(h))
+                        assertFalse(pattern.getElements().containsKey(astra));
+                assertSamePatterns(rebuilt, matrix, h);
+            }
+        }
+    }
+
+    @Test
+    void movedPastFullCircleIsNormalized() {
+        Random random = new Random(35);
+        Chart chart = randomChart(random, "круг");
+        AstroMatrix matrix = new AstroMatrix(chart);
+        Astra astra = chart.getAstras().get(0);
+
+        matrix.moveAstra(astra, 358.5 + 3);
+        assertEquals(1.5, astra.getZodiacPosition(), 1e-9);
+        AstroMatrix rebuilt = new AstroMatrix(copyOf(chart));
+        for (int h = 1; h <= Settings.getEdgeHarmonic(); h++)
+            assertSamePatterns(rebuilt, matrix, h);
+
+        matrix.moveAstra(astra, -2);
+        assertEquals(358, astra.getZodiacPosition(), 1e-9);
+    }
+
+    @Test
+    void sparseMatrixFindsSamePatterns() {
+        Random random = new Random(36);
+        List<Integer> harmonics = List.of(1, 5, 7, 12, 29, 64, 108);
+        for (int c = 0; c < 10; c++) {
+            Chart a = randomChart(random, "А" + c), b = randomChart(random, "Б" + c);
+            AstroMatrix full = new AstroMatrix(a, b);
+            AstroMatrix sparse = AstroMatrix.forHarmonics(harmonics, a, b);
+            assertTrue(sparse.isSparse());
+            assertTrue(sparse.stream().count() < full.stream().count());
+            for (int h : harmonics)
+                assertSamePatterns(full, sparse, h);
+
+            Astra moved = a.getAstras().get(random.nextInt(a.getAstras().size()));
+            double position = moved.getZodiacPosition() + random.nextDouble() * 10;
+            full.moveAstra(moved, position);
+            sparse.moveAstra(moved, position);
+            for (int h : harmonics)
+                assertSamePatterns(full, sparse, h);
+        }
+    }
+
+    @Test
+    void keepsSettingsSnapshotOfItsBuild() {
+        Random random = new Random(38);
+        Chart a = randomChart(random, "А"), b = randomChart(random, "Б");
+        AnalysisSettings settings = new AnalysisSettings(36, 20, true);
+        AstroMatrix matrix = new AstroMatrix(settings, a, b);
+        assertEquals(36, matrix.harmonics().max().orElseThrow());
+
+        List<Astra> astras = matrix.getAllAstras();
+        int n = astras.size();
+        double[] positions = new double[n];
+        int[] heavens = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = astras.get(i).getZodiacPosition();
+            heavens[i] = astras.get(i).getHeaven() == a ? 0 : 1;
+        }
+        MatrixBuffer buffer = new MatrixBuffer(n, 36);
+        buffer.load(positions, heavens, n, settings.primalOrb(), true);
+        buffer.analyze();
+
+        int divisor = Settings.getOrbDivisor();
+        Settings.setOrbDivider(divisor + 7);
+        try {
+            for (int h = 1; h <= 36; h++) {
+                List<Pattern> patterns = matrix.findPatterns(h);
+                assertEquals(buffer.getPatternCount(h), patterns.size(), "гармоника " + h);
+                assertEquals(buffer.getWeight(h), patterns.stream()
+                        .mapToDouble(p -> p.size() * p.getAverageStrength() / 100).sum(), 1e-9);
+            }
+        } finally {
+            Settings.setOrbDivider(divisor);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import java.util.Random;
+
+/**
+ * Карты для тестов.
+ */
+public final class ChartFixtures {
+
+    private ChartFixtures() {
+    }
+
+    /**
+     * @return карту со всеми астрами {@link AstraEntity}, расставленными по Кругу случайно.
+     */
+    public static Chart randomChart(Random random, String name) {
+        Chart chart = new Chart(name);
+        for (AstraEntity entity : AstraEntity.values())
+            chart.addAstra(new Astra(entity.name, random.nextDouble() * 360));
+        return chart;
+    }
+
+    /**
+     * @return карту с астрами {@link AstraEntity} по порядку на данных позициях.
+     */
+    public static Chart chart(String name, double... positions) {
+        Chart chart = new Chart(name);
+        AstraEntity[] entities = AstraEntity.values();
+        for (int i = 0; i < positions.length; i++)
+            chart.addAstra(new Astra(entities[i].name, positions[i]));
+        return chart;
+    }
+}
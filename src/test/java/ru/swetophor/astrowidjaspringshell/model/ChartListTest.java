@@ -0,0 +1,62 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.exception.ChartCollisionException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChartListTest {
+
+    private static ChartList listOf(String... names) {
+        ChartList list = new ChartList("список");
+        for (String name : names)
+            list.addItem(new Chart(name));
+        return list;
+    }
+
+    @Test
+    void resolvesCollisionsByPolicy() {
+        ChartList renamed = listOf("А", "Б");
+        assertTrue(renamed.addAll(List.of(new Chart("А"), new Chart("А"), new Chart("В")), CollisionPolicy.RENAME));
+        assertEquals(List.of("А", "Б", "А (2)", "А (3)", "В"), renamed.getNames());
+        Chart kept = new Chart("Б", List.of(new Astra("Солнце", 12.5)));
+        assertTrue(renamed.add(kept, CollisionPolicy.RENAME));
+        assertEquals("Б", kept.getName());
+        Chart copy = (Chart) renamed.get("Б (2)");
+        assertEquals(12.5, copy.getAstra("Солнце").getZodiacPosition(), 1e-9);
+        assertTrue(copy.getAstra("Солнце").getHeaven() == copy);
+
+        ChartList replaced = listOf("А", "Б");
+        Chart newer = new Chart("А");
+        assertTrue(replaced.add(newer, CollisionPolicy.REPLACE));
+        assertTrue(newer == replaced.get(0));
+        assertEquals(2, replaced.size());
+
+        ChartList skipped = listOf("А", "Б");
+        assertFalse(skipped.add(new Chart("Б"), CollisionPolicy.SKIP));
+        assertEquals(2, skipped.size());
+
+        ChartList failed = listOf("А");
+        assertThrows(ChartCollisionException.class,
+                () -> failed.addResolving(new Chart("А"), "списке", CollisionPolicy.FAIL));
+        assertEquals(1, failed.size());
+    }
+
+    @Test
+    void keepsNameIndexThroughRemovals() {
+        ChartList list = listOf("А", "Б", "В");
+        list.remove("Б");
+        assertFalse(list.contains("Б"));
+        list.remove(0);
+        assertFalse(list.contains("А"));
+        list.setItem(0, new Chart("Г"));
+        assertFalse(list.contains("В"));
+        assertTrue(list.contains("Г"));
+        assertTrue(list.add(new Chart("Б")));
+        assertEquals(List.of("Г", "Б"), list.getNames());
+        list.clear();
+        assertFalse(list.contains("Г"));
+    }
+}
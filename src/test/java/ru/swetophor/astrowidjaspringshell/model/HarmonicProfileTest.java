@@ -0,0 +1,77 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class HarmonicProfileTest {
+    private static final int EDGE = 36;
+
+    private static List<PatternAnalysis> randomAnalyses(int count) {
+        Random random = new Random(30);
+        List<PatternAnalysis> analyses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Chart chart = randomChart(random, "карта " + i);
+            PatternAnalysis analysis = new AstroMatrix(chart).buildPatternTable().getAnalyses().get(List.of(chart));
+            analyses.add(analysis == null ? new PatternAnalysis() : analysis);
+        }
+        return analyses;
+    }
+
+    private static HarmonicProfile profileOf(List<PatternAnalysis> analyses) {
+        HarmonicProfile profile = new HarmonicProfile(EDGE);
+        analyses.forEach(profile::accept);
+        return profile;
+    }
+
+    @Test
+    void mergedPartialsEqualSinglePass() {
+        List<PatternAnalysis> analyses = randomAnalyses(30);
+        HarmonicProfile single = profileOf(analyses);
+        HarmonicProfile merged = profileOf(analyses.subList(0, 7))
+                .combine(profileOf(List.of()))
+                .combine(profileOf(analyses.subList(7, 19)))
+                .combine(profileOf(analyses.subList(19, 30)));
+
+        assertEquals(single.getCharts(), merged.getCharts());
+        for (int h = 1; h <= EDGE; h++) {
+            assertEquals(single.getPatternCount(h), merged.getPatternCount(h), "гармоника " + h);
+            assertEquals(single.getPatternRate(h), merged.getPatternRate(h), 1e-12);
+            assertEquals(single.getStrengthMean(h), merged.getStrengthMean(h), 1e-9);
+            assertEquals(single.getStrengthVariance(h), merged.getStrengthVariance(h), 1e-9);
+            assertEquals(single.getParticipationMean(h), merged.getParticipationMean(h), 1e-9);
+            assertEquals(single.getParticipationVariance(h), merged.getParticipationVariance(h), 1e-9);
+        }
+    }
+
+    @Test
+    void singlePassMatchesTwoPassMoments() {
+        List<PatternAnalysis> analyses = randomAnalyses(30);
+        HarmonicProfile profile = profileOf(analyses);
+        boolean checked = false;
+        for (int h = 1; h <= EDGE; h++) {
+            List<Double> strengths = new ArrayList<>();
+            for (PatternAnalysis analysis : analyses)
+                for (Pattern pattern : analysis.getPatternsFor(h))
+                    strengths.add(pattern.getAverageStrength());
+            if (strengths.size() < 2) continue;
+            double mean = strengths.stream().mapToDouble(Double::doubleValue).average().orElseThrow();
+            double squares = strengths.stream().mapToDouble(s -> (s - mean) * (s - mean)).sum();
+            assertEquals(mean, profile.getStrengthMean(h), 1e-9, "гармоника " + h);
+            assertEquals(squares / (strengths.size() - 1), profile.getStrengthVariance(h), 1e-9, "гармоника " + h);
+            checked = true;
+        }
+        assertTrue(checked, "ни на одной гармонике нет двух паттернов");
+    }
+
+    @Test
+    void differentEdgesDoNotMerge() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HarmonicProfile(EDGE).combine(new HarmonicProfile(EDGE + 1)));
+    }
+}
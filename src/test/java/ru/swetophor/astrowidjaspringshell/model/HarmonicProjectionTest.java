@@ -0,0 +1,55 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.getArcForHarmonic;
+
+class HarmonicProjectionTest {
+
+    @Test
+    void conjunctionsMatchResonanceBatches() {
+        Random random = new Random(35);
+        int edge = Settings.getEdgeHarmonic();
+        double orb = Settings.getPrimalOrb();
+        for (int c = 0; c < 10; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            List<Astra> astras = chart.getAstras();
+            AstroMatrix matrix = new AstroMatrix(chart);
+            HarmonicProjection projection = HarmonicProjection.of(chart, edge);
+
+            for (int h = 1; h <= edge; h++) {
+                Set<Long> found = new HashSet<>();
+                projection.forEachConjunction(h, orb, (i, j, clearance) ->
+                        assertTrue(found.add((long) i << 32 | j), "пара найдена дважды"));
+
+                for (int i = 0; i < astras.size() - 1; i++)
+                    for (int j = i + 1; j < astras.size(); j++) {
+                        Astra a = astras.get(i), b = astras.get(j);
+                        boolean conjunct = found.contains((long) i << 32 | j);
+                        assertEquals(getArcForHarmonic(a, b, h) < orb, conjunct, "гармоника " + h);
+                        ResonanceBatch batch = matrix.getResonanceFor(a, b);
+                        if (batch.hasGivenHarmonic(h) || batch.hasHarmonicPattern(h))
+                            assertTrue(conjunct, "гармоника " + h);
+                    }
+            }
+        }
+    }
+
+    @Test
+    void harmonicChartMultipliesPositions() {
+        Chart chart = new Chart("исходная");
+        chart.addAstra(new Astra("Солнце", 100.0));
+        chart.addAstra(new Astra("Луна", 350.5));
+        Chart fifth = HarmonicProjection.harmonicChart(chart, 5);
+        assertEquals(140.0, fifth.getAstras().get(0).getZodiacPosition(), 1e-9);
+        assertEquals(312.5, fifth.getAstras().get(1).getZodiacPosition(), 1e-9);
+    }
+}
@@ -2,6 +2,8 @@ package ru.swetophor.astrowidjaspringshell.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class HarmonicsTest {
@@ -10,4 +12,21 @@ class HarmonicsTest {
     void findMultiplier() {
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void multipliersAreSameInsideAndBeyondTable() {
+        assertEquals(List.of(0), Harmonics.multipliersExplicate(0));
+        assertEquals(List.of(1), Harmonics.multipliersExplicate(1));
+        assertEquals(List.of(3, 3, 3, 2, 2), Harmonics.multipliersExplicate(108));
+        for (int n = 2; n <= Harmonics.FACTOR_TABLE_EDGE + 500; n++) {
+            List<Integer> multipliers = Harmonics.multipliersExplicate(n);
+            int product = 1;
+            for (int i = 0; i < multipliers.size(); i++) {
+                product *= multipliers.get(i);
+                if (i > 0) assertTrue(multipliers.get(i) <= multipliers.get(i - 1));
+            }
+            assertEquals(n, product);
+            assertEquals(multipliers.size() == 1, new Harmonics(n).isSimple());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class MatrixBufferTest {
+
+    @Test
+    void matchesAstroMatrixPatterns() {
+        Random random = new Random(31);
+        int edge = Settings.getEdgeHarmonic();
+        for (int c = 0; c < 20; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            List<Astra> astras = chart.getAstras();
+            int n = astras.size();
+            double[] positions = new double[n];
+            for (int i = 0; i < n; i++)
+                positions[i] = astras.get(i).getZodiacPosition();
+
+            MatrixBuffer buffer = new MatrixBuffer(n, edge);
+            buffer.load(positions, n, Settings.getPrimalOrb());
+            buffer.analyze();
+            AstroMatrix matrix = new AstroMatrix(chart);
+
+            for (int h = 1; h <= edge; h++) {
+                for (int i = 0; i < n - 1; i++)
+                    for (int j = i + 1; j < n; j++) {
+                        ResonanceBatch batch = matrix.getResonanceFor(astras.get(i), astras.get(j));
+                        assertEquals(batch.hasHarmonicPattern(h), buffer.isConnected(i, j, h));
+                        assertEquals(batch.hasGivenHarmonic(h), buffer.hasGiven(i, j, h));
+                    }
+
+                List<Pattern> patterns = matrix.findPatterns(h);
+                assertEquals(patterns.size(), buffer.getPatternCount(h), "гармоника " + h);
+                assertEquals(patterns.stream().mapToInt(Pattern::size).sum(), buffer.getParticipation(h));
+
+                buffer.analyzeHarmonic(h);
+                for (Pattern pattern : patterns) {
+                    int first = astras.indexOf(pattern.getAstrasByConnectivity().get(0));
+                    assertTrue(buffer.inValidPattern(first));
+                    assertEquals(pattern.size(), buffer.patternSize(first));
+                    assertEquals(pattern.getAverageStrength(), buffer.patternStrength(first), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesAstroMatrixForSynastry() {
+        Random random = new Random(32);
+        int edge = Settings.getEdgeHarmonic();
+        Chart a = randomChart(random, "А"), b = randomChart(random, "Б");
+        AstroMatrix matrix = new AstroMatrix(a, b);
+        List<Astra> astras = matrix.getAllAstras();
+        int n = astras.size();
+        double[] positions = new double[n];
+        int[] heavens = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = astras.get(i).getZodiacPosition();
+            heavens[i] = astras.get(i).getHeaven() == a ? 0 : 1;
+        }
+        MatrixBuffer buffer = new MatrixBuffer(n, edge);
+        buffer.load(positions, heavens, n, Settings.getPrimalOrb(), Settings.isHalfOrbsForDoubles());
+        buffer.analyze();
+
+        for (int h = 1; h <= edge; h++) {
+            List<Pattern> patterns = matrix.findPatterns(h);
+            assertEquals(patterns.size(), buffer.getPatternCount(h), "гармоника " + h);
+            buffer.analyzeHarmonic(h);
+            for (Pattern pattern : patterns) {
+                int first = astras.indexOf(pattern.getAstrasByConnectivity().get(0));
+                assertEquals(pattern.size(), buffer.patternSize(first));
+                assertEquals(pattern.getAverageStrength(), buffer.patternStrength(first), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void restoresSnapshotWithoutRecalculation() {
+        Random random = new Random(43);
+        int edge = Settings.getEdgeHarmonic();
+        for (int c = 0; c < 10; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            int n = chart.getAstras().size();
+            MatrixBuffer calculated = new MatrixBuffer(n, edge);
+            calculated.load(chart, Settings.getPrimalOrb());
+            ChartResonances snapshot = calculated.snapshot(ChartResonances.contentHash(chart));
+            assertTrue(snapshot.matches(ChartResonances.contentHash(chart), Settings.getPrimalOrb(), edge));
+
+            MatrixBuffer restored = new MatrixBuffer(n, edge);
+            restored.load(snapshot);
+            calculated.analyze();
+            restored.analyze();
+            for (int h = 1; h <= edge; h++) {
+                for (int i = 0; i < n - 1; i++)
+                    for (int j = i + 1; j < n; j++)
+                        assertEquals(calculated.isConnected(i, j, h), restored.isConnected(i, j, h));
+                assertEquals(calculated.getPatternCount(h), restored.getPatternCount(h));
+                assertEquals(calculated.getWeight(h), restored.getWeight(h));
+            }
+        }
+        Chart moved = randomChart(new Random(43), "карта 0");
+        Chart original = randomChart(new Random(43), "карта 0");
+        moved.getAstras().get(0).setZodiacPosition(moved.getAstras().get(0).getZodiacPosition() + 1e-9);
+        assertNotEquals(ChartResonances.contentHash(original), ChartResonances.contentHash(moved));
+    }
+}
@@ -0,0 +1,55 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+class MidpointTreeTest {
+
+    @Test
+    void findsSameResonancesAsBruteForce() {
+        Random random = new Random(38);
+        double orb = 12.0;
+        List<Astra> astras = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+            astras.add(new Astra("точка " + i, random.nextDouble() * 360));
+        MidpointTree tree = new MidpointTree(astras);
+        assertEquals(30 * 29 / 2, tree.size());
+        for (int k = 1; k < tree.size(); k++)
+            assertTrue(tree.midpoint(k - 1) <= tree.midpoint(k));
+
+        for (int harmonic : new int[]{1, 4, 8, 16, 45}) {
+            int expected = 0;
+            for (int a = 0; a < astras.size(); a++)
+                for (int i = 0; i < astras.size() - 1; i++)
+                    for (int j = i + 1; j < astras.size(); j++) {
+                        if (a == i || a == j) continue;
+                        double midpoint = findMedian(astras.get(i).getZodiacPosition(), astras.get(j).getZodiacPosition());
+                        Astra point = new Astra("мидпойнт", midpoint);
+                        if (getArcForHarmonic(astras.get(a), point, harmonic) < orb)
+                            expected++;
+                    }
+            assertEquals(expected, tree.astraResonances(harmonic, orb).size(), "гармоника " + harmonic);
+
+            int[] counted = new int[1];
+            for (int m = 0; m < tree.size(); m++) {
+                double position = tree.midpoint(m);
+                tree.forEachResonating(position, harmonic, orb, (other, clearance) -> {
+                    assertEquals(getArcForHarmonic(getArc(position, tree.midpoint(other)), harmonic), clearance);
+                    counted[0]++;
+                });
+            }
+            int brute = 0;
+            for (int m = 0; m < tree.size(); m++)
+                for (int other = 0; other < tree.size(); other++)
+                    if (getArcForHarmonic(getArc(tree.midpoint(m), tree.midpoint(other)), harmonic) < orb)
+                        brute++;
+            assertEquals(brute, counted[0], "гармоника " + harmonic);
+        }
+    }
+}
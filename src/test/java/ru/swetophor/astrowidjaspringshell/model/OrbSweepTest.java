@@ -0,0 +1,56 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.CIRCLE;
+
+class OrbSweepTest {
+
+    private static void assertMatchesRecalculation(double[] positions, OrbSweep sweep, String chart) {
+        int edge = sweep.getEdge();
+        MatrixBuffer buffer = new MatrixBuffer(positions.length, edge);
+        for (int s = 0; s < sweep.steps(); s++) {
+            buffer.load(positions, positions.length, CIRCLE / sweep.divisor(s));
+            buffer.analyze();
+            for (int h = 1; h <= edge; h++) {
+                String where = "%s, делитель %d, гармоника %d".formatted(chart, sweep.divisor(s), h);
+                assertEquals(buffer.getPatternCount(h), sweep.patternCount(s, h), where);
+                assertEquals(buffer.getParticipation(h), sweep.participation(s, h), where);
+                assertEquals(buffer.getWeight(h), sweep.weight(s, h), 1e-9, where);
+            }
+        }
+    }
+
+    @Test
+    void everyStepMatchesRecalculation() {
+        Random random = new Random(17);
+        for (int c = 0; c < 30; c++) {
+            double[] positions = new double[12];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = random.nextDouble() * 360;
+            OrbSweep sweep = OrbSweep.of(positions, 8, 60, 36);
+            assertEquals(53, sweep.steps());
+            assertMatchesRecalculation(positions, sweep, "карта " + c);
+        }
+    }
+
+    /**
+     * Тесные скопления дают соединения, при которых отсечение кратных гармоник
+     * зависит от орбиса, а предельная гармоника за 64 занимает два слова битов.
+     */
+    @Test
+    void conjunctionsBeyondFirstWordMatchRecalculation() {
+        Random random = new Random(44);
+        for (int c = 0; c < 10; c++) {
+            double[] positions = new double[10];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = random.nextDouble() * 70;
+            OrbSweep sweep = OrbSweep.of(positions, 4, 40, 80);
+            assertTrue(sweep.eventCount() > 0);
+            assertMatchesRecalculation(positions, sweep, "скопление " + c);
+        }
+    }
+}
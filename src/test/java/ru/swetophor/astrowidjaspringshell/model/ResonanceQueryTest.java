@@ -0,0 +1,61 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class ResonanceQueryTest {
+
+    private static boolean contains(Pattern pattern, AstraEntity entity) {
+        return pattern.getAstrasByConnectivity().stream().anyMatch(a -> a.getName().equals(entity.name));
+    }
+
+    @Test
+    void queriesMatchPatternsOfMatrix() {
+        Random random = new Random(42);
+        List<Chart> charts = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int c = 0; c < 300; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            charts.add(chart);
+            keys.add("альбом/" + chart.getName());
+        }
+        ResonanceIndex index = ResonanceIndex.build(List.of("альбом"), keys, new int[charts.size()],
+                charts, Settings.getPrimalOrb(), Settings.getEdgeHarmonic());
+        List<AstroMatrix> matrices = charts.stream().map(AstroMatrix::new).toList();
+
+        check(index, matrices, "pattern(h = 7, with Солнце+Луна, strength > 60)",
+                m -> m.findPatterns(7).stream().anyMatch(p ->
+                        contains(p, AstraEntity.SOL) && contains(p, AstraEntity.LUN) && p.getAverageStrength() > 60));
+        check(index, matrices, "паттерн(гармоника >= 5, гармоника <= 9, размер >= 4) и не pattern(h = 1, size > 2)",
+                m -> IntStream.rangeClosed(5, 9).anyMatch(h -> m.findPatterns(h).stream().anyMatch(p -> p.size() >= 4))
+                        && m.findPatterns(1).stream().noneMatch(p -> p.size() > 2));
+        check(index, matrices, "count(h = 11) >= 2 or pattern(with ☉ + ♄, h = 4)",
+                m -> m.findPatterns(11).size() >= 2 || m.findPatterns(4).stream().anyMatch(p ->
+                        contains(p, AstraEntity.SOL) && contains(p, AstraEntity.SAT)));
+    }
+
+    private static void check(ResonanceIndex index, List<AstroMatrix> matrices, String query,
+                              Predicate<AstroMatrix> expected) {
+        int[] selected = ResonanceQuery.parse(query).select(index, null);
+        int[] brute = IntStream.range(0, matrices.size()).filter(c -> expected.test(matrices.get(c))).toArray();
+        assertArrayEquals(brute, selected, query);
+        assertTrue(selected.length > 0, query);
+    }
+
+    @Test
+    void rejectsMalformedQueries() {
+        assertThrows(IllegalArgumentException.class, () -> ResonanceQuery.parse("pattern(h = 7"));
+        assertThrows(IllegalArgumentException.class, () -> ResonanceQuery.parse("pattern(with Вулкан)"));
+        assertThrows(IllegalArgumentException.class, () -> ResonanceQuery.parse("pattern(h ~ 3)"));
+        assertThrows(IllegalArgumentException.class, () -> ResonanceQuery.parse("pattern() pattern()"));
+    }
+}
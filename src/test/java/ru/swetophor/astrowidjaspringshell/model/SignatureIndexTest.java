@@ -0,0 +1,64 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class SignatureIndexTest {
+
+    @Test
+    void nearestMatchesFullSort() {
+        Random random = new Random(41);
+        int edge = Settings.getEdgeHarmonic();
+        double orb = Settings.getPrimalOrb();
+        List<String> keys = new ArrayList<>();
+        List<Chart> charts = new ArrayList<>();
+        for (int c = 0; c < 9000; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            keys.add("альбом/" + chart.getName());
+            charts.add(chart);
+        }
+        SignatureIndex index = SignatureIndex.build(keys, charts, orb, edge);
+        assertEquals(9000, index.size());
+
+        float[] query = SignatureIndex.signature(charts.get(4321), orb, edge);
+        assertArrayEquals(query, index.vector(4321));
+        double norm = 0;
+        for (float x : query) norm += x * x;
+        assertEquals(1.0, norm, 1e-5);
+
+        List<SignatureIndex.Neighbour> nearest = index.nearest(query, 5, -1);
+        assertEquals(4321, nearest.get(0).index());
+        assertEquals(1.0, nearest.get(0).similarity(), 1e-5);
+
+        List<SignatureIndex.Neighbour> others = index.nearest(query, 7, 4321);
+        double[] expected = IntStream.range(0, index.size())
+                .filter(i -> i != 4321)
+                .mapToDouble(i -> cosine(query, index.vector(i)))
+                .boxed()
+                .sorted(Comparator.reverseOrder())
+                .limit(7)
+                .mapToDouble(Double::doubleValue)
+                .toArray();
+        assertEquals(7, others.size());
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], others.get(k).similarity(), 1e-5);
+            assertNotEquals(4321, others.get(k).index());
+        }
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double sum = 0;
+        for (int d = 0; d < a.length; d++)
+            sum += a[d] * b[d];
+        return sum;
+    }
+}
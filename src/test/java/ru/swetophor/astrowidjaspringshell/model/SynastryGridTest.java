@@ -0,0 +1,46 @@
+package ru.swetophor.astrowidjaspringshell.model;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class SynastryGridTest {
+
+    @Test
+    void scoresMatchSynastricResonances() {
+        Random random = new Random(40);
+        List<Chart> charts = new ArrayList<>();
+        for (int c = 0; c < 70; c++) {
+            Chart chart = randomChart(random, "карта " + c);
+            charts.add(chart);
+        }
+        SynastryGrid grid = SynastryGrid.of(charts);
+
+        for (int i = 0; i < charts.size(); i += 7)
+            for (int j = i + 1; j < charts.size(); j += 5) {
+                double expected = new AstroMatrix(charts.get(i), charts.get(j)).stream()
+                        .filter(ResonanceBatch::isSynastric)
+                        .flatMap(batch -> batch.getAspects().stream())
+                        .mapToDouble(aspect -> aspect.getStrength() / 100)
+                        .sum();
+                assertEquals(expected, grid.score(i, j), 1e-9);
+                assertEquals(grid.score(i, j), grid.score(j, i));
+            }
+
+        List<SynastryGrid.Match> ranking = grid.ranking(10);
+        assertEquals(10, ranking.size());
+        double best = 0;
+        for (int i = 0; i < charts.size() - 1; i++)
+            for (int j = i + 1; j < charts.size(); j++)
+                best = Math.max(best, grid.score(i, j));
+        assertEquals(best, ranking.get(0).score());
+        for (int k = 1; k < ranking.size(); k++)
+            assertTrue(ranking.get(k - 1).score() >= ranking.get(k).score());
+    }
+}
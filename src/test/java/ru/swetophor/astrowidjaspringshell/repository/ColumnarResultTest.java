@@ -0,0 +1,107 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.repository.ColumnarResultReader.Memberships;
+import ru.swetophor.astrowidjaspringshell.repository.ColumnarResultReader.Resonances;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarResultTest {
+
+    private static byte[] write(int resonances, int patterns) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ColumnarResultWriter writer = new ColumnarResultWriter(bytes)) {
+            for (int row = 0; row < resonances; row++)
+                writer.addResonance(writer.chartId("альбом/карта " + row % 7), writer.astraId("астра " + row % 13),
+                        writer.chartId("альбом/карта " + (row + 1) % 7), writer.astraId("астра " + (row + 5) % 13),
+                        row % 108 + 1, row % 4 + 1, row % 100 / 10.0, row % 97, row % 3);
+            for (int p = 0; p < patterns; p++) {
+                int id = writer.nextPattern();
+                for (int member = 0; member < 3; member++)
+                    writer.addMember(id, p % 36 + 1, writer.chartId("альбом/карта " + p % 7),
+                            writer.astraId("астра " + (p + member) % 13), 3, p % 50);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Object> read(ColumnarResultReader reader, byte[] file) throws IOException {
+        List<Object> batches = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(file), new ColumnarResultReader.Visitor() {
+            @Override
+            public void resonances(Resonances batch) {
+                batches.add(batch);
+            }
+
+            @Override
+            public void memberships(Memberships batch) {
+                batches.add(batch);
+            }
+        });
+        return batches;
+    }
+
+    @Test
+    void rowsSurviveRoundTrip() throws IOException {
+        int resonances = ColumnarResultWriter.BATCH_ROWS + 1000;
+        ColumnarResultReader reader = new ColumnarResultReader();
+        List<Object> batches = read(reader, write(resonances, 40));
+
+        int row = 0, members = 0;
+        for (Object batch : batches) {
+            if (batch instanceof Resonances r) {
+                for (int i = 0; i < r.rows(); i++, row++) {
+                    assertEquals("альбом/карта " + row % 7, reader.chartName(r.chart1()[i]));
+                    assertEquals("астра " + row % 13, reader.astraName(r.astra1()[i]));
+                    assertEquals("альбом/карта " + (row + 1) % 7, reader.chartName(r.chart2()[i]));
+                    assertEquals("астра " + (row + 5) % 13, reader.astraName(r.astra2()[i]));
+                    assertEquals(row % 108 + 1, r.harmonic()[i]);
+                    assertEquals(row % 4 + 1, r.multiplicity()[i]);
+                    assertEquals((float) (row % 100 / 10.0), r.clearance()[i]);
+                    assertEquals((float) (row % 97), r.strength()[i]);
+                    assertEquals(row % 3, r.depth()[i]);
+                }
+            } else if (batch instanceof Memberships m) {
+                for (int i = 0; i < m.rows(); i++, members++) {
+                    int p = members / 3;
+                    assertEquals(p, m.pattern()[i]);
+                    assertEquals(p % 36 + 1, m.harmonic()[i]);
+                    assertEquals("альбом/карта " + p % 7, reader.chartName(m.chart()[i]));
+                    assertEquals("астра " + (p + members % 3) % 13, reader.astraName(m.astra()[i]));
+                    assertEquals(3, m.size()[i]);
+                    assertEquals((float) (p % 50), m.strength()[i]);
+                }
+            }
+        }
+        assertEquals(resonances, row);
+        assertEquals(120, members);
+        assertTrue(batches.get(0) instanceof Resonances r && r.rows() == ColumnarResultWriter.BATCH_ROWS,
+                "полная пачка сбрасывается сразу по заполнении");
+    }
+
+    @Test
+    void emptyResultHasNoBatches() throws IOException {
+        byte[] file = write(0, 0);
+        assertEquals(9, file.length, "сигнатура, версия и метка конца");
+        assertTrue(read(new ColumnarResultReader(), file).isEmpty());
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        byte[] file = write(500, 10);
+        for (int length : new int[]{0, 6, 8, file.length / 2, file.length - 1}) {
+            try {
+                read(new ColumnarResultReader(), Arrays.copyOf(file, length));
+                fail("обрезанный до %d байт файл прочитан".formatted(length));
+            } catch (IOException expected) {
+            }
+        }
+    }
+}
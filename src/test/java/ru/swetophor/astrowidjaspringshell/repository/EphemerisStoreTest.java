@@ -0,0 +1,132 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.model.EphemerisSeries;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EphemerisStoreTest {
+    private static final double START = 1_700_000_000;
+    private static final double STEP = 86_400;
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Суточные отсчёты: равномерно идущая астра и астра с попятным участком.
+     * Число отсчётов не кратно блоку, так что последний блок неполный.
+     */
+    private EphemerisStore store(int samples) throws IOException {
+        double[] times = new double[samples];
+        double[][] longitudes = new double[2][samples];
+        for (int i = 0; i < samples; i++) {
+            times[i] = START + i * STEP;
+            longitudes[0][i] = (10 + 13.2 * i) % 360;
+            longitudes[1][i] = (300 + 0.5 * i + 6 * Math.sin(i / 20.0)) % 360;
+        }
+        Path file = folder.resolve("ephemeris.awe");
+        EphemerisStore.compile(new EphemerisSeries(times, List.of("Луна", "Марс"), longitudes), file);
+        return new EphemerisStore(file.toString());
+    }
+
+    @Test
+    void interpolationHitsSamplesAtBlockBoundaries() throws IOException {
+        int samples = 3 * EphemerisStore.BLOCK + 7;
+        EphemerisStore store = store(samples);
+        assertEquals(START + (samples - 1) * STEP, store.getEnd());
+
+        for (int i : new int[]{0, 1, EphemerisStore.BLOCK - 1, EphemerisStore.BLOCK, EphemerisStore.BLOCK + 1,
+                2 * EphemerisStore.BLOCK, 3 * EphemerisStore.BLOCK, samples - 2, samples - 1}) {
+            double time = START + i * STEP;
+            assertEquals(10 + 13.2 * i, store.unwrappedLongitude(0, time), 1e-9, "отсчёт " + i);
+            assertEquals((300 + 0.5 * i + 6 * Math.sin(i / 20.0)) % 360, store.longitude(1, time), 1e-9,
+                    "отсчёт " + i);
+        }
+        // равномерное движение многочлен Эрмита воспроизводит и между отсчётами,
+        // в том числе по обе стороны границы блока
+        for (double x : new double[]{0.25, EphemerisStore.BLOCK - 0.5, EphemerisStore.BLOCK + 0.5,
+                samples - 1.5, samples - 1.001})
+            assertEquals(10 + 13.2 * x, store.unwrappedLongitude(0, START + x * STEP), 1e-9, "момент " + x);
+        double boundary = START + EphemerisStore.BLOCK * STEP;
+        assertEquals(store.unwrappedLongitude(1, boundary - 1), store.unwrappedLongitude(1, boundary + 1), 1e-3,
+                "разрыв на границе блока");
+
+        assertThrows(IllegalArgumentException.class, () -> store.unwrappedLongitude(0, START - 1));
+        assertThrows(IllegalArgumentException.class, () -> store.unwrappedLongitude(0, store.getEnd() + 1));
+        store.close();
+    }
+
+    @Test
+    void leastRecentlyUsedBlockIsEvicted() throws IOException {
+        int blocks = EphemerisStore.CACHED_BLOCKS + 1;
+        EphemerisStore store = store(blocks * EphemerisStore.BLOCK + 1);
+        for (int b = 0; b < EphemerisStore.CACHED_BLOCKS; b++)
+            store.unwrappedLongitude(0, START + (b * EphemerisStore.BLOCK + 1) * STEP);
+        assertEquals(EphemerisStore.CACHED_BLOCKS, store.cachedBlocks().size());
+
+        store.unwrappedLongitude(1, START + STEP);
+        store.unwrappedLongitude(0, START + (EphemerisStore.CACHED_BLOCKS * EphemerisStore.BLOCK + 1) * STEP);
+
+        List<Integer> cached = store.cachedBlocks();
+        assertEquals(EphemerisStore.CACHED_BLOCKS, cached.size());
+        assertFalse(cached.contains(1), "давно не использованный блок остался в кэше");
+        assertTrue(cached.contains(0), "недавно использованный блок вытеснен");
+        assertEquals(List.of(0, EphemerisStore.CACHED_BLOCKS), cached.subList(cached.size() - 2, cached.size()));
+        store.close();
+    }
+
+    @Test
+    void recompilingReplacesFileOnlyOnSuccess() throws IOException {
+        EphemerisStore store = store(40);
+        assertEquals(10.0, store.unwrappedLongitude(0, START), 1e-9);
+
+        Path broken = folder.resolve("сбойная.tsv");
+        Files.writeString(broken, "время\tЛуна\n2024-01-01\t1\n2024-01-02\t2\n2024-01-04\t3\n",
+                StandardCharsets.UTF_8);
+        String failed = store.compileFrom(broken);
+        assertTrue(failed.startsWith("Не удалось собрать эфемериду"), failed);
+        assertEquals(List.of("Луна", "Марс"), store.getAstraNames());
+        assertEquals(10 + 13.2 * 5, store.unwrappedLongitude(0, START + 5 * STEP), 1e-9);
+
+        Path table = folder.resolve("новая.tsv");
+        Files.writeString(table, "время\tЛуна\n2024-01-01\t100\n2024-01-02\t101\n2024-01-03\t102\n",
+                StandardCharsets.UTF_8);
+        String compiled = store.compileFrom(table);
+        assertEquals("Эфемерида %s собрана: 1 астр, 3 отсчётов".formatted(folder.resolve("ephemeris.awe")), compiled);
+        assertEquals(List.of("Луна"), store.getAstraNames());
+        assertEquals(101.0, store.unwrappedLongitude(0, store.getStart() + STEP), 1e-9);
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(List.of(), files.filter(f -> f.toString().endsWith(".tmp")).toList(),
+                    "временный файл остался");
+        }
+        store.close();
+    }
+
+    @Test
+    void oversizedEphemerisIsRejected() {
+        int samples = 1 << 16, astras = 2100;
+        double[] times = new double[samples];
+        double[] longitudes = new double[samples];
+        for (int i = 0; i < samples; i++)
+            times[i] = START + i * STEP;
+        double[][] rows = new double[astras][];
+        Arrays.fill(rows, longitudes);
+        EphemerisSeries series = new EphemerisSeries(times, Collections.nCopies(astras, "Луна"), rows);
+        Path target = folder.resolve("большая.awe");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> EphemerisStore.compile(series, target));
+        assertTrue(e.getMessage().contains("больше предела 2047 МБ"), e.getMessage());
+        assertFalse(Files.exists(target));
+    }
+}
@@ -0,0 +1,126 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import ru.swetophor.astrowidjaspringshell.model.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class MVStoreChartRepositoryTest {
+
+    @TempDir
+    Path folder;
+
+    private String storeFile() {
+        return folder.resolve("astrowidja.mv").toString();
+    }
+
+    private static void assertSameChart(Chart expected, ChartObject actual) {
+        assertEquals(expected.getName(), actual.getName());
+        List<Astra> astras = expected.getAstras(), read = ((Chart) actual).getAstras();
+        assertEquals(astras.size(), read.size());
+        for (int a = 0; a < astras.size(); a++)
+            assertEquals(astras.get(a).getZodiacPosition(), read.get(a).getZodiacPosition(), 1e-3);
+    }
+
+    @Test
+    void embeddedProfileSelectsStore() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withUserConfiguration(FileChartRepository.class, MVStoreChartRepository.class)
+                .withPropertyValues("astrowidja.store=" + storeFile());
+        runner.withPropertyValues("spring.profiles.active=embedded")
+                .run(context -> assertTrue(context.getBean(ChartRepository.class) instanceof MVStoreChartRepository));
+        runner.run(context -> assertTrue(context.getBean(ChartRepository.class) instanceof FileChartRepository));
+    }
+
+    @Test
+    void batchInsertsSurviveReopening() {
+        Random random = new Random(26);
+        List<Chart> charts = IntStream.range(0, 500)
+                .mapToObj(c -> randomChart(random, "карта " + c))
+                .toList();
+        MVStoreChartRepository repository = new MVStoreChartRepository(storeFile());
+        assertEquals(300, repository.insertCharts("выборка.awb", charts.subList(0, 300)));
+        assertEquals(200, repository.insertCharts("выборка.awb", charts.subList(300, 500)));
+        repository.close();
+
+        repository = new MVStoreChartRepository(storeFile());
+        assertTrue(repository.albumExists("выборка.awb"));
+        ChartList album = repository.getAlbumContent("выборка.awb");
+        assertEquals(500, album.size());
+        for (int c = 0; c < 500; c++)
+            assertSameChart(charts.get(c), album.get(c));
+        repository.close();
+    }
+
+    @Test
+    void renamingSaveLeavesSourceUntouched() {
+        Random random = new Random(47);
+        MVStoreChartRepository repository = new MVStoreChartRepository(storeFile());
+        repository.insertCharts("альбом.awb", List.of(randomChart(random, "карта")));
+        ChartList desk = new ChartList("стол");
+        Chart chart = randomChart(random, "карта");
+        desk.addItem(chart);
+
+        repository.addChartsToAlbum(desk, "альбом.awb", CollisionPolicy.RENAME);
+        repository.addChartsToAlbum("альбом.awb", CollisionPolicy.RENAME, chart);
+
+        assertEquals(List.of("карта"), desk.getNames());
+        assertTrue(desk.contains("карта"));
+        assertTrue(chart == desk.get("карта"));
+        for (Astra astra : chart.getAstras())
+            assertTrue(astra.getHeaven() == chart, "астра копии указывает на исходную карту");
+        ChartList album = repository.getAlbumContent("альбом.awb");
+        assertEquals(List.of("карта", "карта (2)", "карта (3)"), album.getNames());
+        assertSameChart(chart.copyWithName("карта (2)"), album.get(1));
+        repository.close();
+    }
+
+    @Test
+    void failedMoveIsRolledBack() {
+        Random random = new Random(27);
+        AtomicBoolean failing = new AtomicBoolean();
+        MVStoreChartRepository repository = new MVStoreChartRepository(storeFile()) {
+            @Override
+            String encode(ChartObject chart) {
+                if (failing.get() && chart.getName().equals("карта 2"))
+                    throw new IllegalStateException("сбой записи");
+                return super.encode(chart);
+            }
+        };
+        List<Chart> source = IntStream.range(0, 4).mapToObj(c -> randomChart(random, "карта " + c)).toList();
+        Chart resident = randomChart(random, "старожил");
+        repository.insertCharts("откуда.awb", source);
+        repository.insertCharts("куда.awb", List.of(resident));
+
+        failing.set(true);
+        assertThrows(IllegalStateException.class, () -> repository.moveChartsBetweenAlbums(
+                "откуда.awb", "куда.awb", List.of("карта 1", "карта 2"), CollisionPolicy.RENAME));
+        repository.close();
+
+        MVStoreChartRepository reopened = new MVStoreChartRepository(storeFile());
+        ChartList from = reopened.getAlbumContent("откуда.awb"), to = reopened.getAlbumContent("куда.awb");
+        assertEquals(4, from.size());
+        for (int c = 0; c < 4; c++)
+            assertSameChart(source.get(c), from.get(c));
+        assertEquals(1, to.size());
+        assertSameChart(resident, to.get(0));
+
+        assertEquals("Перенесено из откуда.awb в куда.awb карт: 2", reopened.moveChartsBetweenAlbums(
+                "откуда.awb", "куда.awb", List.of("карта 1", "карта 2"), CollisionPolicy.RENAME));
+        assertEquals(2, reopened.getAlbumContent("откуда.awb").size());
+        assertEquals(List.of("старожил", "карта 1", "карта 2"), reopened.getAlbumContent("куда.awb").getNames());
+
+        reopened.deleteAlbum("куда.awb");
+        assertFalse(reopened.albumExists("куда.awb"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.swetophor.astrowidjaspringshell.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.MatrixBuffer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class ResonanceStoreTest {
+    private static final int EDGE = 72;
+    private static final String ALBUM = "альбом.awb";
+
+    @TempDir
+    Path folder;
+
+    private static void assertSameBuffer(MatrixBuffer expected, MatrixBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size() - 1; i++)
+            for (int j = i + 1; j < expected.size(); j++) {
+                assertEquals(expected.arc(i, j), actual.arc(i, j));
+                for (int h = 1; h <= EDGE; h++) {
+                    assertEquals(expected.hasGiven(i, j, h), actual.hasGiven(i, j, h));
+                    assertEquals(expected.isConnected(i, j, h), actual.isConnected(i, j, h));
+                }
+            }
+    }
+
+    @Test
+    void storedResonancesSurviveReopening() {
+        Random random = new Random(43);
+        List<Chart> charts = List.of(randomChart(random, "первая"), randomChart(random, "вторая"));
+        String resonances = folder.resolve("resonances").toString();
+
+        ResonanceStore store = new ResonanceStore(resonances);
+        MatrixBuffer buffer = new MatrixBuffer(charts.get(0).getAstras().size(), EDGE);
+        for (Chart chart : charts)
+            store.loadInto(buffer, ALBUM, chart, 12);
+        assertEquals("Записано расчётов альбомов: 1", store.flush());
+        assertTrue(Files.exists(folder.resolve("resonances").resolve(ALBUM + ResonanceStore.EXTENSION)));
+
+        ResonanceStore reopened = new ResonanceStore(resonances);
+        MatrixBuffer fresh = new MatrixBuffer(buffer.size(), EDGE);
+        for (Chart chart : charts) {
+            reopened.loadInto(buffer, ALBUM, chart, 12);
+            fresh.load(chart, 12);
+            assertSameBuffer(fresh, buffer);
+        }
+        assertEquals("Записано расчётов альбомов: 0", reopened.flush(), "прочитанные расчёты пересчитаны");
+    }
+
+    @Test
+    void changedSettingsResetAlbum() {
+        Random random = new Random(44);
+        Chart first = randomChart(random, "первая"), second = randomChart(random, "вторая");
+        String resonances = folder.resolve("resonances").toString();
+        MatrixBuffer buffer = new MatrixBuffer(first.getAstras().size(), EDGE);
+
+        ResonanceStore store = new ResonanceStore(resonances);
+        store.loadInto(buffer, ALBUM, first, 12);
+        store.loadInto(buffer, ALBUM, second, 10);
+        store.flush();
+
+        // файл записан при орбисе 10 и содержит только вторую карту
+        ResonanceStore reopened = new ResonanceStore(resonances);
+        reopened.loadInto(buffer, ALBUM, second, 10);
+        assertEquals("Записано расчётов альбомов: 0", reopened.flush());
+        reopened.loadInto(buffer, ALBUM, first, 10);
+        assertEquals("Записано расчётов альбомов: 1", reopened.flush());
+
+        // файл, рассчитанный при другом орбисе, не читается
+        ResonanceStore otherOrb = new ResonanceStore(resonances);
+        otherOrb.loadInto(buffer, ALBUM, second, 12);
+        assertEquals("Записано расчётов альбомов: 1", otherOrb.flush());
+        MatrixBuffer fresh = new MatrixBuffer(buffer.size(), EDGE);
+        fresh.load(second, 12);
+        assertSameBuffer(fresh, buffer);
+    }
+
+    @Test
+    void damagedFileStartsEmpty() throws IOException {
+        Random random = new Random(45);
+        Chart chart = randomChart(random, "карта");
+        Path resonances = folder.resolve("resonances");
+        Files.createDirectories(resonances);
+        Files.write(resonances.resolve(ALBUM + ResonanceStore.EXTENSION), new byte[]{0x41, 0x57, 0x58});
+
+        ResonanceStore store = new ResonanceStore(resonances.toString());
+        MatrixBuffer buffer = new MatrixBuffer(chart.getAstras().size(), EDGE);
+        store.loadInto(buffer, ALBUM, chart, 12);
+        MatrixBuffer fresh = new MatrixBuffer(buffer.size(), EDGE);
+        fresh.load(chart, 12);
+        assertSameBuffer(fresh, buffer);
+        assertEquals("Записано расчётов альбомов: 1", store.flush());
+    }
+}
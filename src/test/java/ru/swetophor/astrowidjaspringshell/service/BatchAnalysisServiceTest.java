@@ -0,0 +1,177 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.config.Settings;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.model.Pattern;
+import ru.swetophor.astrowidjaspringshell.model.PatternAnalysis;
+import ru.swetophor.astrowidjaspringshell.repository.MVStoreChartRepository;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisPlan;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.AnalysisTask;
+import ru.swetophor.astrowidjaspringshell.service.BatchAnalysisService.BatchReport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class BatchAnalysisServiceTest {
+
+    @TempDir
+    Path folder;
+
+    private BatchAnalysisService serviceWith(MVStoreChartRepository repository, int charts) {
+        Random random = new Random(28);
+        List<ChartObject> album = new ArrayList<>();
+        for (int i = 0; i < charts; i++)
+            album.add(randomChart(random, "карта " + i));
+        repository.insertCharts("пакет.awb", album);
+        return new BatchAnalysisService(new LibraryService(repository, null));
+    }
+
+    @Test
+    void pairsAreEnumeratedByOrdinal() {
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        AnalysisPlan plan = serviceWith(repository, 7).collectTasks(List.of("пакет.awb"), true);
+
+        assertEquals(21, plan.size());
+        long ordinal = 0;
+        for (int i = 0; i < 7; i++)
+            for (int j = i + 1; j < 7; j++) {
+                AnalysisTask task = plan.task(ordinal++);
+                assertEquals("пакет.awb/карта %d|пакет.awb/карта %d".formatted(i, j), task.key());
+            }
+        assertThrows(IndexOutOfBoundsException.class, () -> plan.task(21));
+        repository.close();
+    }
+
+    @Test
+    void resumeSkipsFinishedPairs() throws IOException {
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        BatchAnalysisService service = serviceWith(repository, 60);
+        AnalysisPlan plan = service.collectTasks(List.of("пакет.awb"), true);
+        Path reference = folder.resolve("полный.tsv");
+        Path output = folder.resolve("прерванный.tsv");
+
+        BatchReport full = service.run(plan, reference, false, 4, message -> {});
+        assertEquals(1770, full.total());
+        assertEquals(1770, full.analyzed());
+
+        try {
+            service.run(plan, output, false, 4, message -> {
+                throw new IllegalStateException("обрыв на " + message);
+            });
+            fail("прогон не оборвался");
+        } catch (IllegalStateException expected) {
+        }
+        // строки, записанные после последней отметки, при возобновлении отбрасываются
+        Files.writeString(output, "недописанная строка", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        BatchReport resumed = service.run(plan, output, true, 4, message -> {});
+        assertEquals(BatchAnalysisService.REPORT_EVERY, resumed.skipped());
+        assertEquals(resumed.total() - resumed.skipped(), resumed.analyzed());
+        assertEquals(0, resumed.failed());
+        assertEquals(Files.readAllLines(reference, StandardCharsets.UTF_8),
+                Files.readAllLines(output, StandardCharsets.UTF_8));
+
+        BatchReport again = service.run(plan, output, true, 4, message -> {});
+        assertEquals(1770, again.skipped());
+        assertEquals(0, again.analyzed());
+        repository.close();
+    }
+
+    @Test
+    void resumeOfAnotherRunIsRefused() throws IOException {
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        BatchAnalysisService service = serviceWith(repository, 60);
+        AnalysisPlan plan = service.collectTasks(List.of("пакет.awb"), true);
+        Path output = folder.resolve("прерванный.tsv");
+        try {
+            service.run(plan, output, false, 2, message -> {
+                throw new IllegalStateException("обрыв на " + message);
+            });
+            fail("прогон не оборвался");
+        } catch (IllegalStateException expected) {
+        }
+        byte[] written = Files.readAllBytes(output);
+
+        AnalysisPlan single = service.collectTasks(List.of("пакет.awb"), false);
+        assertRefused(() -> service.run(single, output, true, 2, message -> {}), "заданий 60, а не 1770");
+        List<Chart> edited = new ArrayList<>(plan.charts());
+        edited.set(7, randomChart(new Random(1), "карта 7"));
+        AnalysisPlan changed = new AnalysisPlan(plan.keys(), edited, true);
+        assertRefused(() -> service.run(changed, output, true, 2, message -> {}), "карты альбомов изменились");
+
+        int divisor = Settings.getOrbDivisor();
+        Settings.setOrbDivider(divisor + 1);
+        try {
+            assertRefused(() -> service.run(plan, output, true, 2, message -> {}),
+                    "делитель орбиса %d, а не %d".formatted(divisor + 1, divisor));
+        } finally {
+            Settings.setOrbDivider(divisor);
+        }
+        assertArrayEquals(written, Files.readAllBytes(output), "выходной файл изменён отказанным возобновлением");
+
+        BatchReport resumed = service.run(plan, output, true, 2, message -> {});
+        assertEquals(BatchAnalysisService.REPORT_EVERY, resumed.skipped());
+        repository.close();
+    }
+
+    private interface Run {
+        void run() throws IOException;
+    }
+
+    private static void assertRefused(Run run, String reason) {
+        try {
+            run.run();
+            fail("возобновление чужого прогона не отказано");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(reason), e.getMessage());
+        }
+    }
+
+    @Test
+    void singleChartOutputMatchesPatternTable() throws IOException {
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        BatchAnalysisService service = serviceWith(repository, 12);
+        AnalysisPlan plan = service.collectTasks(List.of("пакет.awb"), false);
+        Path output = folder.resolve("карты.tsv");
+        service.run(plan, output, false, 3, message -> {});
+
+        Map<String, List<String>> written = Files.readAllLines(output, StandardCharsets.UTF_8).stream()
+                .map(line -> line.split("\t"))
+                .collect(Collectors.groupingBy(columns -> columns[0],
+                        Collectors.mapping(columns -> String.join(" ", columns[2], columns[3], columns[4], columns[5]),
+                                Collectors.toList())));
+
+        HarmonicService interactive = new HarmonicService();
+        for (int i = 0; i < plan.size(); i++) {
+            Chart chart = plan.charts().get(i);
+            PatternAnalysis analysis = interactive.calculatePatternTable(chart).getAnalyses().get(List.of(chart));
+            List<String> expected = new ArrayList<>();
+            if (analysis != null)
+                for (Map.Entry<Integer, List<Pattern>> entry : analysis)
+                    for (Pattern pattern : entry.getValue())
+                        expected.add(String.join(" ",
+                                String.valueOf(entry.getKey()),
+                                pattern.getAstrasByConnectivity().stream()
+                                        .map(Astra::getName)
+                                        .collect(Collectors.joining(",")),
+                                String.valueOf(pattern.size()),
+                                String.format(Locale.ROOT, "%.2f", pattern.getAverageStrength())));
+            assertFalse(expected.isEmpty(), "у случайной карты нет паттернов");
+            assertEquals(expected, written.getOrDefault(plan.keys().get(i), List.of()),
+                    "паттерны карты " + chart.getName());
+        }
+        repository.close();
+    }
+}
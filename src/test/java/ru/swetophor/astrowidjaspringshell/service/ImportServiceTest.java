@@ -0,0 +1,103 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.model.*;
+import ru.swetophor.astrowidjaspringshell.repository.MVStoreChartRepository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class ImportServiceTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Хранилище, запоминающее размеры записанных пачек.
+     */
+    private static class RecordingRepository extends MVStoreChartRepository {
+        private final List<Integer> batches = new ArrayList<>();
+
+        RecordingRepository(String storeFile) {
+            super(storeFile);
+        }
+
+        @Override
+        public int insertCharts(String album, List<? extends ChartObject> charts) {
+            batches.add(charts.size());
+            return super.insertCharts(album, charts);
+        }
+    }
+
+    @Test
+    void tableIsImportedInBatches() throws IOException {
+        int rows = ImportService.BATCH_SIZE * 2 + 17;
+        Random random = new Random(27);
+        List<Chart> charts = new ArrayList<>();
+        StringBuilder table = new StringBuilder("имя\tSun\tMoon\tMars\n");
+        for (int r = 0; r < rows; r++) {
+            Chart chart = randomChart(random, "карта " + r);
+            charts.add(chart);
+            table.append(chart.getName());
+            for (int a : new int[]{0, 1, 4})
+                table.append('\t').append(chart.getAstras().get(a).getZodiacPosition());
+            table.append('\n');
+            if (r == 10) table.append("кривая\tабв\t1\t2\n");
+            if (r == 20) table.append("карта 3\t1\t2\t3\n");
+        }
+        Path source = folder.resolve("выборка.tsv");
+        Files.writeString(source, table, StandardCharsets.UTF_8);
+
+        RecordingRepository repository = new RecordingRepository(folder.resolve("store.mv").toString());
+        repository.insertCharts("выборка.awb", List.of(randomChart(random, "карта 0")));
+        repository.batches.clear();
+        List<String> progress = new ArrayList<>();
+        ImportService.ImportReport report = new ImportService(repository)
+                .importCharts(source, "выборка", progress::add);
+
+        assertEquals(rows + 2, report.read());
+        assertEquals(1, report.invalid());
+        assertEquals(2, report.doubles());
+        assertEquals(rows - 1, report.accepted());
+        assertEquals(List.of(ImportService.BATCH_SIZE - 3, ImportService.BATCH_SIZE, 19), repository.batches);
+        assertEquals(3, progress.size());
+
+        ChartList album = repository.getAlbumContent("выборка.awb");
+        assertEquals(rows, album.size());
+        for (int r = 1; r < rows; r += 101) {
+            Chart imported = (Chart) album.get("карта " + r);
+            assertEquals(List.of(AstraEntity.SOL.name, AstraEntity.LUN.name, AstraEntity.MAR.name),
+                    imported.getAstras().stream().map(Astra::getName).toList());
+            for (int a = 0; a < 3; a++)
+                assertEquals(charts.get(r).getAstras().get(new int[]{0, 1, 4}[a]).getZodiacPosition(),
+                        imported.getAstras().get(a).getZodiacPosition(), 1e-3);
+        }
+        repository.close();
+    }
+
+    @Test
+    void awbRecordsAreValidated() throws IOException {
+        Random random = new Random(28);
+        Chart first = randomChart(random, "первая"), second = randomChart(random, "вторая");
+        Path source = folder.resolve("альбом.awb");
+        Files.writeString(source, "// выгрузка\n" + first.getString() + "#пустая\n" + second.getString(),
+                StandardCharsets.UTF_8);
+
+        RecordingRepository repository = new RecordingRepository(folder.resolve("store.mv").toString());
+        ImportService.ImportReport report = new ImportService(repository)
+                .importCharts(source, "альбом", message -> { });
+        assertEquals(3, report.read());
+        assertEquals(1, report.invalid());
+        assertEquals(List.of("первая", "вторая"), repository.getAlbumContent("альбом.awb").getNames());
+        repository.close();
+    }
+}
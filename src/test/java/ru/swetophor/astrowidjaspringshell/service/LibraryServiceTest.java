@@ -0,0 +1,118 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.client.UserController;
+import ru.swetophor.astrowidjaspringshell.model.ChartList;
+import ru.swetophor.astrowidjaspringshell.model.CollisionPolicy;
+import ru.swetophor.astrowidjaspringshell.repository.MVStoreChartRepository;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class LibraryServiceTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Соглашается только на вопросы, в которых есть данная строка, и запоминает вопросы.
+     */
+    private static UserController agreeingTo(String agreed, List<String> prompts) {
+        return new UserController() {
+            @Override
+            public void welcome() {
+            }
+
+            @Override
+            public boolean confirmationAnswer(String prompt) {
+                prompts.add(prompt);
+                return prompt.contains(agreed);
+            }
+        };
+    }
+
+    @Test
+    void deletionAsksForEveryAlbum() {
+        Random random = new Random(26);
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        for (String album : List.of("а.awb", "аб.awb", "в.awb"))
+            repository.insertCharts(album, List.of(randomChart(random, "карта " + album)));
+        List<String> prompts = new ArrayList<>();
+        LibraryService library = new LibraryService(repository, agreeingTo("аб.awb", prompts));
+
+        library.deleteAlbum("а***");
+        assertEquals(List.of("Точно удалить а.awb?", "Точно удалить аб.awb?"), prompts);
+        assertEquals(List.of("а.awb", "в.awb"), library.albumNames());
+
+        prompts.clear();
+        assertEquals("не найдено альбома г", library.deleteAlbum("г"));
+        assertTrue(prompts.isEmpty());
+        repository.close();
+    }
+
+    @Test
+    void libraryIsReadOnFirstCall() {
+        Random random = new Random(49);
+        AtomicInteger reads = new AtomicInteger();
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString()) {
+            @Override
+            public List<String> albumNames() {
+                reads.incrementAndGet();
+                return super.albumNames();
+            }
+
+            @Override
+            public List<ChartList> getAllAlbums() {
+                reads.incrementAndGet();
+                return super.getAllAlbums();
+            }
+        };
+        repository.insertCharts("альбом.awb", List.of(randomChart(random, "карта")));
+
+        LibraryService library = new LibraryService(repository, null);
+        assertEquals(0, reads.get(), "библиотека прочитана до первого обращения");
+        assertEquals(List.of("альбом.awb"), library.albumNames());
+        int afterFirst = reads.get();
+        assertTrue(afterFirst > 0);
+        library.listLibrary();
+        library.getRevision();
+        assertEquals(afterFirst, reads.get(), "библиотека перечитана без изменений");
+        repository.close();
+    }
+
+    @Test
+    void writesPublishNewSnapshot() {
+        Random random = new Random(46);
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        repository.insertCharts("альбом.awb", List.of(randomChart(random, "карта")));
+        LibraryService library = new LibraryService(repository, null);
+
+        long revision = library.getRevision();
+        ChartList before = library.getAlbum("альбом.awb");
+        assertEquals("Альбом альбом.awb обновлён",
+                library.addChartsToAlbum("альбом.awb", CollisionPolicy.RENAME, randomChart(random, "вторая")));
+        assertTrue(library.getRevision() > revision, "запись в альбом не сменила номер библиотеки");
+        assertEquals(1, before.size(), "прежний снимок изменился");
+        assertEquals(List.of("карта", "вторая"), library.getAlbum("альбом.awb").getNames());
+
+        revision = library.getRevision();
+        ChartList desk = new ChartList("стол");
+        desk.addItem(randomChart(random, "на столе"));
+        library.saveChartsAsAlbum(desk, "стол.awb");
+        assertTrue(library.getRevision() > revision, "сохранение альбома не сменило номер библиотеки");
+        assertTrue(library.albumNames().contains("стол.awb"));
+
+        revision = library.getRevision();
+        library.addChartListToAlbum(desk, "альбом.awb");
+        assertTrue(library.getRevision() > revision, "добавление списка не сменило номер библиотеки");
+        assertEquals(3, library.getAlbum("альбом.awb").size());
+        repository.close();
+    }
+}
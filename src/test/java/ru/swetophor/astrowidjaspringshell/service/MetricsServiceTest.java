@@ -0,0 +1,81 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import ru.swetophor.astrowidjaspringshell.config.EngineMetrics;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class MetricsServiceTest {
+
+    private static MetricsService service(SimpleMeterRegistry registry) {
+        return new MetricsService(registry,
+                new StaticListableBeanFactory().getBeanProvider(PrometheusMeterRegistry.class), "");
+    }
+
+    @Test
+    void reportListsFiredMetersByTotalTime() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Timer slow = Timer.builder("проба.медленно").register(registry);
+        Timer fast = Timer.builder("проба.быстро").register(registry);
+        slow.record(30, TimeUnit.MILLISECONDS);
+        fast.record(5, TimeUnit.MILLISECONDS);
+        fast.record(5, TimeUnit.MILLISECONDS);
+        Counter counter = Counter.builder("проба.счёт").tag("вид", "а").register(registry);
+        counter.increment(3);
+        Counter.builder("проба.покой").register(registry);
+        Timer.builder("другое").register(registry).record(1, TimeUnit.SECONDS);
+
+        List<String> lines = service(registry).report("проба.").lines().toList();
+        assertEquals("всего, мс\tвызовов\tсреднее, мс\tнаиб., мс\tизмерение", lines.get(0));
+        assertTrue(lines.get(1).startsWith("30") && lines.get(1).endsWith("проба.медленно"), lines.get(1));
+        assertTrue(lines.get(2).endsWith("проба.быстро") && lines.get(2).contains("\t2\t"), lines.get(2));
+        assertEquals("", lines.get(3));
+        assertEquals("счёт\tизмерение", lines.get(4));
+        assertEquals("3\tпроба.счёт{вид=а}", lines.get(5));
+        assertEquals(6, lines.size(), "в отчёт попали несработавшие или чужие измерения");
+    }
+
+    @Test
+    void reportExplainsEmptyPrefix() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Counter.builder("проба.покой").register(registry);
+        MetricsService service = service(registry);
+        assertEquals("Измерений с именами на 'нет.' нет.", service.report("нет."));
+        assertEquals("Измерения 'проба.' есть, но ещё ни разу не срабатывали.", service.report("проба."));
+        assertEquals("Выгрузка в формате Prometheus отключена (management.prometheus.metrics.export.enabled).",
+                service.export("не-записывается.prom"));
+    }
+
+    @Test
+    void harmonicServiceCountsMatrixCache() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            HarmonicService harmonicService = new HarmonicService();
+            Chart chart = randomChart(new Random(50), "карта");
+            harmonicService.calculatePatternTable(chart);
+            harmonicService.calculateAspectTable(chart);
+
+            String cache = EngineMetrics.PREFIX + "harmonic.cache";
+            assertEquals(1.0, registry.get(cache).tag("result", "miss").counter().count());
+            assertEquals(1.0, registry.get(cache).tag("result", "hit").counter().count());
+            String report = service(registry).report(cache);
+            assertTrue(report.contains("1\t" + cache + "{result=hit}"), report);
+            assertTrue(report.contains("1\t" + cache + "{result=miss}"), report);
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
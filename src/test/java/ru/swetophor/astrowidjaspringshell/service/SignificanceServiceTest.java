@@ -0,0 +1,36 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.model.AstraEntity;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.service.SignificanceService.SignificanceReport;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.chart;
+
+class SignificanceServiceTest {
+
+    @Test
+    void conjunctionIsSignificantAndReproducible() {
+        double[] positions = new double[AstraEntity.values().length];
+        Arrays.fill(positions, 123.0);
+        Chart conjunction = chart("соединение", positions);
+        SignificanceService service = new SignificanceService();
+        int runs = 3000;
+
+        SignificanceReport report = service.assess(conjunction, runs, 31);
+        assertEquals(positions.length, report.participation()[1]);
+        assertEquals(1.0 / (runs + 1), report.pWeight()[1], 1e-12,
+                "все астры в точном соединении, а случайная карта набрала не меньший вес");
+        assertTrue(report.pParticipation()[1] < 0.01, report.toString());
+        for (int h = 2; h < report.participation().length; h++)
+            if (report.participation()[h] == 0)
+                assertEquals(1.0, report.pParticipation()[h], 1e-12, "гармоника без паттернов значима: " + h);
+
+        SignificanceReport again = service.assess(conjunction, runs, 31);
+        assertArrayEquals(report.pParticipation(), again.pParticipation());
+        assertArrayEquals(report.pWeight(), again.pWeight());
+    }
+}
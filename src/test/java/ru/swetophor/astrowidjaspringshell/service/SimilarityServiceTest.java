@@ -0,0 +1,49 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.ChartObject;
+import ru.swetophor.astrowidjaspringshell.repository.MVStoreChartRepository;
+import ru.swetophor.astrowidjaspringshell.repository.ResonanceStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class SimilarityServiceTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void libraryChartIsNotItsOwnNeighbour() {
+        Random random = new Random(41);
+        List<ChartObject> charts = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            charts.add(randomChart(random, "карта " + i));
+        MVStoreChartRepository repository = new MVStoreChartRepository(folder.resolve("store.mv").toString());
+        repository.insertCharts("подписи.awb", charts);
+        SimilarityService service = new SimilarityService(new LibraryService(repository, null),
+                new ResonanceStore(folder.resolve("resonances").toString()));
+
+        Chart probe = (Chart) charts.get(7);
+        String similar = service.findSimilar(probe, 5);
+        assertFalse(similar.contains("подписи.awb/карта 7\t"), similar);
+        assertEquals(6, similar.lines().count(), "пять соседей и итог");
+
+        String all = service.findSimilar(probe, 20);
+        assertEquals(20, all.lines().count(), "все, кроме самой карты, и итог");
+        assertFalse(all.contains("подписи.awb/карта 7\t"), all);
+
+        Chart outsider = randomChart(random, "карта 7");
+        String around = service.findSimilar(outsider, 20);
+        assertEquals(21, around.lines().count(), "все карты и итог");
+        assertTrue(around.contains("подписи.awb/карта 7\t"), "одноимённая карта с другими астрами исключена");
+        repository.close();
+    }
+}
@@ -0,0 +1,98 @@
+package ru.swetophor.astrowidjaspringshell.service;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.model.Astra;
+import ru.swetophor.astrowidjaspringshell.model.Chart;
+import ru.swetophor.astrowidjaspringshell.model.EphemerisSeries;
+import ru.swetophor.astrowidjaspringshell.model.TransitEvent;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+
+class TransitServiceTest {
+    private static final double HOUR = 3600;
+    private static final int EDGE = 12;
+    private static final double ORB = 12;
+
+    /**
+     * Часовые отсчёты за месяц: быстрая прямая астра и медленная с попятным участком.
+     */
+    private static EphemerisSeries series() {
+        int samples = 24 * 30;
+        double[] times = new double[samples];
+        double[][] longitudes = new double[2][samples];
+        for (int i = 0; i < samples; i++) {
+            times[i] = 1_700_000_000 + i * HOUR;
+            double days = i / 24.0;
+            longitudes[0][i] = (200 + 13.2 * days) % 360;
+            longitudes[1][i] = (350 + 0.5 * days + 4 * Math.sin(days / 3)) % 360;
+        }
+        return new EphemerisSeries(times, List.of("Луна", "Марс"), longitudes);
+    }
+
+    private static double longitudeAt(EphemerisSeries series, int astra, double time) {
+        double[] times = series.getTimes();
+        int s = Arrays.binarySearch(times, time);
+        if (s < 0) s = -s - 2;
+        s = Math.min(s, times.length - 2);
+        double[] longitudes = series.getLongitudes()[astra];
+        double share = (time - times[s]) / (times[s + 1] - times[s]);
+        return longitudes[s] + share * (longitudes[s + 1] - longitudes[s]);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Test
+    void windowsAgreeWithSampling() {
+        EphemerisSeries series = series();
+        Chart natal = randomChart(new Random(32), "натал");
+        double from = series.getTimes()[10] + HOUR / 2, to = series.getTimes()[600];
+        List<TransitEvent> events = new TransitService().scan(natal, series, from, to, EDGE, ORB).toList();
+        assertFalse(events.isEmpty());
+
+        Map<String, List<TransitEvent>> byAspect = new HashMap<>();
+        for (TransitEvent event : events)
+            byAspect.computeIfAbsent(event.transiting() + event.natal() + event.harmonic(), k -> new ArrayList<>())
+                    .add(event);
+
+        int inside = 0;
+        for (double t = from; t <= to; t += 300)
+            for (int moving = 0; moving < 2; moving++)
+                for (Astra astra : natal.getAstras())
+                    for (int h = 1; h <= EDGE; h++) {
+                        double u = h * (longitudeAt(series, moving, t) - astra.getZodiacPosition());
+                        long j = Math.round(u / 360);
+                        double clearance = Math.abs(u - 360.0 * j);
+                        if (Math.abs(clearance - ORB) < 1e-6) continue;
+                        boolean expected = clearance < ORB && gcd((int) Math.floorMod(j, (long) h), h) == 1;
+                        double time = t;
+                        boolean covered = byAspect.getOrDefault(
+                                        series.getAstraNames().get(moving) + astra.getName() + h, List.of())
+                                .stream()
+                                .anyMatch(e -> e.start() <= time && time <= e.end());
+                        assertEquals(expected, covered, "%s к %s, гармоника %d, момент %.0f"
+                                .formatted(series.getAstraNames().get(moving), astra.getName(), h, t));
+                        if (expected) inside++;
+                    }
+        assertTrue(inside > 0);
+    }
+
+    @Test
+    void windowsComeInTimeOrder() {
+        EphemerisSeries series = series();
+        Chart natal = randomChart(new Random(33), "натал");
+        List<TransitEvent> events = new TransitService()
+                .scan(natal, series, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, EDGE, ORB).toList();
+        for (int i = 1; i < events.size(); i++)
+            assertTrue(events.get(i - 1).start() <= events.get(i).start(), "окно " + i + " не по порядку");
+
+        List<TransitEvent> limited = new TransitService()
+                .scan(natal, series, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, EDGE, ORB)
+                .limit(10).toList();
+        assertEquals(events.subList(0, 10), limited);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.swetophor.astrowidjaspringshell.utils;
+
+import org.junit.jupiter.api.Test;
+import ru.swetophor.astrowidjaspringshell.model.*;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.swetophor.astrowidjaspringshell.model.ChartFixtures.randomChart;
+import static ru.swetophor.astrowidjaspringshell.utils.CelestialMechanics.*;
+
+class MechanicsTest {
+
+    @Test
+    void compositeOfTwoIsMidpoint() {
+        Random random = new Random(39);
+        for (int c = 0; c < 100; c++) {
+            Chart a = randomChart(random, "А"), b = randomChart(random, "Б");
+            Chart composite = Mechanics.composite(a, b);
+            assertEquals("Средняя карта А и Б", composite.getName());
+            assertEquals(a.getAstras().size(), composite.getAstras().size());
+            for (Astra astra : composite.getAstras()) {
+                if (astra.getName().equals(AstraEntity.MER.name) || astra.getName().equals(AstraEntity.VEN.name))
+                    continue;
+                double median = findMedian(a.getAstra(astra.getName()).getZodiacPosition(),
+                        b.getAstra(astra.getName()).getZodiacPosition());
+                assertEquals(0, getArc(median, astra.getZodiacPosition()), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void groupCompositeAveragesAllCharts() {
+        Random random = new Random(139);
+        Chart[] group = new Chart[25];
+        for (int i = 0; i < group.length; i++)
+            group[i] = randomChart(random, "карта " + i);
+        group[7].getAstras().removeIf(a -> a.getName().equals(AstraEntity.PLU.name));
+
+        Chart composite = Mechanics.composite(new MultiChart("группа", group));
+        assertNull(composite.getAstra(AstraEntity.PLU.name));
+
+        double x = 0, y = 0;
+        for (Chart chart : group) {
+            double angle = Math.toRadians(chart.getAstra(AstraEntity.MAR.name).getZodiacPosition());
+            x += Math.cos(angle);
+            y += Math.sin(angle);
+        }
+        assertEquals(0, getArc(normalizeCoordinate(Math.toDegrees(Math.atan2(y, x))),
+                composite.getAstra(AstraEntity.MAR.name).getZodiacPosition()), 1e-9);
+    }
+}